@@ -0,0 +1,55 @@
+-- HJ_SCM BOM 版本快照
+-- 版本: v1.1
+-- 日期: 2026-10-18
+-- 用途: BOM 按生效日期发布不可变版本；读者钉住发布序号读取一致快照，写者在单事务内发布新版本
+
+-- ==================== BOM 版本表 ====================
+CREATE TABLE IF NOT EXISTS mm_bom_version (
+    id BIGSERIAL PRIMARY KEY,            -- 发布序号（全局单调），读者以此钉住快照
+    bom_id VARCHAR(50) NOT NULL,
+    version_no INTEGER NOT NULL,
+    material VARCHAR(50) NOT NULL,
+    bom_usage DECIMAL(15, 5),
+    bom_unit VARCHAR(20),
+    status VARCHAR(10) NOT NULL,          -- ACTIVE / INACTIVE（删除发布为 INACTIVE 版本）
+    effective_from TIMESTAMP NOT NULL,
+    effective_to TIMESTAMP,               -- BOM 有效期结束，空为长期
+    published_by VARCHAR(50),
+    published_time TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+
+    CONSTRAINT uk_mm_bom_version UNIQUE (bom_id, version_no)
+);
+
+CREATE INDEX IF NOT EXISTS idx_mm_bom_version_material ON mm_bom_version(material, effective_from);
+
+COMMENT ON TABLE mm_bom_version IS 'BOM 版本 - 只插入不更新；某日期某发布序号下的生效版本为 id <= 序号且 effective_from <= 日期中 effective_from 最大者（同值取最大 id）';
+
+-- ==================== BOM 版本子件表 ====================
+CREATE TABLE IF NOT EXISTS mm_bom_version_item (
+    id BIGSERIAL PRIMARY KEY,
+    version_id BIGINT NOT NULL REFERENCES mm_bom_version(id),
+    component_material VARCHAR(50) NOT NULL,
+    component_qty DECIMAL(15, 5) NOT NULL,
+    operation_id VARCHAR(50),
+    work_center VARCHAR(50),
+    scrap_add_rate DECIMAL(8, 6) DEFAULT 0,
+    is_phantom BOOLEAN DEFAULT FALSE,
+    is_subcontract BOOLEAN DEFAULT FALSE,
+    item_sequence INTEGER
+);
+
+CREATE INDEX IF NOT EXISTS idx_mm_bom_version_item_version ON mm_bom_version_item(version_id, item_sequence);
+
+-- 已有 BOM 以当前子件发布为第 1 版
+INSERT INTO mm_bom_version (bom_id, version_no, material, bom_usage, bom_unit, status, effective_from, effective_to, published_by)
+SELECT b.bom_id, 1, b.material, b.bom_usage, b.bom_unit, b.status,
+       COALESCE(b.validity_start, b.created_time, CURRENT_TIMESTAMP), b.validity_end, b.created_by
+FROM mm_bom b
+WHERE NOT EXISTS (SELECT 1 FROM mm_bom_version v WHERE v.bom_id = b.bom_id);
+
+INSERT INTO mm_bom_version_item (version_id, component_material, component_qty, operation_id, work_center,
+                                 scrap_add_rate, is_phantom, is_subcontract, item_sequence)
+SELECT v.id, bi.component_material, bi.component_qty, bi.operation_id, bi.work_center,
+       bi.scrap_add_rate, bi.is_phantom, bi.is_subcontract, bi.item_sequence
+FROM mm_bom_version v JOIN mm_bom_item bi ON bi.bom_id = v.bom_id
+WHERE v.version_no = 1 AND NOT EXISTS (SELECT 1 FROM mm_bom_version_item vi WHERE vi.version_id = v.id);
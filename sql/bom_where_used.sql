@@ -0,0 +1,45 @@
+-- HJ_SCM BOM 反查闭包
+-- 版本: v1.2
+-- 日期: 2026-10-18
+-- 用途: 有效 BOM 的传递闭包（祖先物料 → 后代物料），支持全层级 where-used 单次查询；随 BOM 增改删增量维护
+
+CREATE TABLE IF NOT EXISTS mm_bom_where_used (
+    ancestor_material VARCHAR(50) NOT NULL,
+    descendant_material VARCHAR(50) NOT NULL,
+    path_count BIGINT NOT NULL,   -- 祖先到后代的路径条数，增量删除边时据此判断是否仍可达
+    PRIMARY KEY (descendant_material, ancestor_material)
+);
+
+CREATE INDEX IF NOT EXISTS idx_mm_bom_where_used_ancestor ON mm_bom_where_used(ancestor_material);
+
+COMMENT ON TABLE mm_bom_where_used IS 'BOM 反查闭包 - 每对（祖先，后代）一行，path_count 为路径条数';
+
+-- 闭包版本：每次写闭包递增，写入方持有该行锁至事务提交（各节点写入串行）；读者比对版本判断是否需重新加载
+CREATE TABLE IF NOT EXISTS mm_bom_where_used_version (
+    id INTEGER PRIMARY KEY,
+    version BIGINT NOT NULL
+);
+
+INSERT INTO mm_bom_where_used_version (id, version) VALUES (1, 0) ON CONFLICT (id) DO NOTHING;
+
+-- 回填：闭包表为空时由有效 BOM 边生成（每条路径一行，按（祖先，后代）计数；同一父子多个子件行各计一条路径）。
+-- 应用不再在读路径上重建闭包，部署本脚本后闭包随 BOM 增改删增量维护。循环引用在写入时即被拒绝，visited 仅防御存量脏数据。
+WITH RECURSIVE edge AS (
+    SELECT b.material AS parent, bi.component_material AS child
+    FROM mm_bom b
+    JOIN mm_bom_item bi ON bi.bom_id = b.bom_id
+    WHERE b.status = 'ACTIVE' AND b.material <> bi.component_material
+),
+path (ancestor, descendant, visited) AS (
+    SELECT parent, child, ARRAY[parent, child]::VARCHAR[] FROM edge
+    UNION ALL
+    SELECT p.ancestor, e.child, p.visited || e.child
+    FROM path p
+    JOIN edge e ON e.parent = p.descendant
+    WHERE NOT e.child = ANY (p.visited)
+)
+INSERT INTO mm_bom_where_used (ancestor_material, descendant_material, path_count)
+SELECT ancestor, descendant, COUNT(*)
+FROM path
+WHERE NOT EXISTS (SELECT 1 FROM mm_bom_where_used)
+GROUP BY ancestor, descendant;
@@ -0,0 +1,11 @@
+-- HJ_SCM MRP 批量规则
+-- 版本: v1.1
+-- 日期: 2026-10-18
+-- 用途: MRP 约束增加批量规则（LFL / FOQ / EOQ / POQ / WW）及其成本参数
+
+ALTER TABLE mrp_constraints ADD COLUMN IF NOT EXISTS lot_sizing_rule VARCHAR(10);       -- 批量规则，空为 LFL
+ALTER TABLE mrp_constraints ADD COLUMN IF NOT EXISTS order_cost DECIMAL(18,4);          -- 单次订货成本（EOQ / POQ / WW）
+ALTER TABLE mrp_constraints ADD COLUMN IF NOT EXISTS holding_cost_per_day DECIMAL(18,6); -- 单位日持有成本（EOQ / POQ / WW）
+ALTER TABLE mrp_constraints ADD COLUMN IF NOT EXISTS poq_periods INTEGER;               -- POQ 合并期数，空时按 EOQ 推算
+
+COMMENT ON COLUMN mrp_constraints.lot_sizing_rule IS 'LFL 按需 / FOQ 固定批量(batch_size) / EOQ 经济批量 / POQ 定期批量 / WW Wagner-Whitin';
@@ -0,0 +1,48 @@
+-- HJ_SCM MRP 运行结果表
+-- 版本: v1.1
+-- 日期: 2026-10-18
+-- 用途: MRP 净需求 / 齐套结果持久化（JDBC 批量写入），采购建议编码唯一约束
+
+-- ==================== MRP 净需求表 ====================
+CREATE TABLE IF NOT EXISTS mrp_net_requirements (
+    id VARCHAR(36) PRIMARY KEY,
+    mrp_run_id VARCHAR(50) NOT NULL,
+    item_code VARCHAR(50) NOT NULL,
+    gross_qty DECIMAL(18,4) NOT NULL,
+    available_qty DECIMAL(18,4),
+    safety_stock DECIMAL(18,4),
+    net_qty DECIMAL(18,4) NOT NULL,
+    required_date DATE,
+    lead_time_days INTEGER,
+    trace_id VARCHAR(50),
+    created_time TIMESTAMP DEFAULT CURRENT_TIMESTAMP
+);
+
+CREATE INDEX idx_mrp_net_req_run ON mrp_net_requirements(mrp_run_id);
+CREATE INDEX idx_mrp_net_req_item ON mrp_net_requirements(item_code, required_date);
+
+COMMENT ON TABLE mrp_net_requirements IS 'MRP 净需求 - 每次运行的尾项净需求';
+
+-- ==================== MRP 齐套结果表 ====================
+CREATE TABLE IF NOT EXISTS mrp_kit_results (
+    id VARCHAR(36) PRIMARY KEY,
+    mrp_run_id VARCHAR(50) NOT NULL,
+    item_code VARCHAR(50) NOT NULL,
+    required_qty DECIMAL(18,4) NOT NULL,
+    available_qty DECIMAL(18,4),
+    fill_rate DECIMAL(7,4),
+    shortage_qty DECIMAL(18,4),  -- 不缺料时为 NULL
+    urgency_level VARCHAR(10),   -- CRITICAL/HIGH/MEDIUM
+    required_date DATE,
+    trace_id VARCHAR(50),
+    created_time TIMESTAMP DEFAULT CURRENT_TIMESTAMP
+);
+
+CREATE INDEX idx_mrp_kit_run ON mrp_kit_results(mrp_run_id);
+CREATE INDEX IF NOT EXISTS idx_mrp_kit_created ON mrp_kit_results(created_time);  -- 最近一次运行
+
+COMMENT ON TABLE mrp_kit_results IS 'MRP 齐套结果 - 每次运行的逐物料齐套率与缺料';
+
+-- ==================== 采购建议编码唯一 ====================
+CREATE UNIQUE INDEX IF NOT EXISTS uk_procurement_suggestion_code ON procurement_suggestion(suggestion_code);
+CREATE INDEX IF NOT EXISTS idx_procurement_suggestion_run ON procurement_suggestion(mrp_run_id);
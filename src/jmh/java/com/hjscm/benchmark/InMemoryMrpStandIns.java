@@ -0,0 +1,91 @@
+package com.hjscm.benchmark;
+
+import com.hjscm.dto.*;
+import com.hjscm.service.BomGraphService;
+import com.hjscm.service.MRPEngineService;
+import com.hjscm.service.MrpDataService;
+import com.hjscm.service.TraceIdService;
+import com.hjscm.service.mrp.BomGraphSnapshot;
+import com.hjscm.service.mrp.MrpDataContext;
+import com.hjscm.service.mrp.MrpSourceList;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.*;
+
+/**
+ * 内存替身 - 以合成数据替代数据库访问，供基准测试直接构造 MRPEngineService
+ *
+ * 仓储均传 null：引擎热路径只经 MrpDataService / BomGraphService 读取数据，
+ * 二者在此以内存实现覆盖；保存结果为空操作，基准只衡量计算本身。
+ */
+final class InMemoryMrpStandIns {
+
+    private InMemoryMrpStandIns() {
+    }
+
+    static MRPEngineService engine(SyntheticMrpData data, BomGraphSnapshot bomGraph) {
+        return new MRPEngineService(new TraceIdService(),
+            new InMemoryMrpDataService(data), new FixedBomGraphService(bomGraph),
+            null, null, event -> { });
+    }
+
+    /**
+     * MRP 数据服务替身
+     */
+    static final class InMemoryMrpDataService extends MrpDataService {
+
+        private final SyntheticMrpData data;
+        private final MrpSourceList sourceList = MrpSourceList.builder().defaultSupplier(
+            SupplierInfo.builder()
+                .supplierCode("SYN-SUP-A").supplierName("合成供应商 A")
+                .moq(BigDecimal.valueOf(100)).leadTime(7)
+                .price(BigDecimal.valueOf(85.00)).otdRate(0.95)
+                .build()).build();
+
+        InMemoryMrpDataService(SyntheticMrpData data) {
+            super(null, null, null, null, null, null, null, null, null, null);
+            this.data = data;
+        }
+
+        @Override
+        public List<MpsRequirement> getMpsRequirements(MrpRunRequest request) {
+            return data.getMpsRequirements();
+        }
+
+        @Override
+        public MrpDataContext buildDataContext(Collection<String> materialCodes, LocalDate fromDate,
+                String plantCode) {
+            return data.buildContext(materialCodes, fromDate);
+        }
+
+        @Override
+        public MrpSourceList getSourceList() {
+            return sourceList;
+        }
+
+        @Override
+        public int saveMrpResults(String runId, List<MrpNetRequirement> requirements,
+                KitCheckResult kitResult, List<ProcurementSuggestion> suggestions) {
+            return 0;
+        }
+    }
+
+    /**
+     * BOM 图服务替身：固定返回同一快照
+     */
+    static final class FixedBomGraphService extends BomGraphService {
+
+        private final BomGraphSnapshot snapshot;
+
+        FixedBomGraphService(BomGraphSnapshot snapshot) {
+            super(null);
+            this.snapshot = snapshot;
+        }
+
+        @Override
+        public BomGraphSnapshot current() {
+            return snapshot;
+        }
+    }
+}
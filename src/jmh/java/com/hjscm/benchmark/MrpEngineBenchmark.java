@@ -0,0 +1,107 @@
+package com.hjscm.benchmark;
+
+import com.hjscm.dto.*;
+import com.hjscm.service.MRPEngineService;
+import com.hjscm.service.mrp.BomGraphSnapshot;
+import com.hjscm.service.mrp.MrpDataContext;
+import com.hjscm.service.mrp.MrpNettingState;
+import com.hjscm.service.mrp.MrpPhaseRunner;
+import com.hjscm.service.mrp.MrpRunProgress;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * MRP 引擎基准测试（JMH）
+ *
+ * 以 SyntheticMrpData 生成的 BOM / 库存 / 在途数据，分别测量
+ * BOM 展开、LLC 净算、齐套检查、采购建议生成，以及端到端运行。
+ *
+ * 运行：./gradlew jmh 或 mvn -P jmh verify（需启用 src/jmh/java 源集），
+ * 也可用 -p itemCount=100000 -p sharedRatio=0.5 覆盖参数。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public class MrpEngineBenchmark {
+
+    private static final LocalDate FROM_DATE = LocalDate.of(2026, 1, 5);
+    private static final long SEED = 20260105L;
+
+    @Param({"1000", "10000", "100000"})
+    private int itemCount;
+
+    @Param({"4"})
+    private int depth;
+
+    @Param({"5"})
+    private int fanOut;
+
+    @Param({"0.2"})
+    private double sharedRatio;
+
+    private SyntheticMrpData data;
+    private BomGraphSnapshot bomGraph;
+    private MRPEngineService engine;
+    private MrpDataContext dataContext;
+    private List<MrpNetRequirement> netRequirements;
+    private List<KitShortage> shortages;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        data = SyntheticMrpData.generate(itemCount, depth, fanOut, sharedRatio, SEED, FROM_DATE);
+        bomGraph = BomGraphSnapshot.build(1L, data.getBomLines());
+        engine = InMemoryMrpStandIns.engine(data, bomGraph);
+        dataContext = data.buildContext(data.getItemCodes(), FROM_DATE);
+
+        // 后续阶段基准的输入取自前一阶段的真实输出
+        netRequirements = engine.planByLlc(bomGraph, data.getMpsRequirements(), dataContext,
+            MrpRunProgress.none()).netRequirements();
+        KitCheckResult kitResult = engine.checkKitAvailability(netRequirements, dataContext, MrpRunProgress.none());
+        shortages = kitResult.getShortages() != null ? kitResult.getShortages() : Collections.emptyList();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        engine.shutdown();
+    }
+
+    @Benchmark
+    public void explodeBom(Blackhole blackhole) {
+        for (MpsRequirement mps : data.getMpsRequirements()) {
+            blackhole.consume(engine.explodeBom(bomGraph, mps.getMaterialCode(),
+                BigDecimal.valueOf(mps.getQuantity()), depth));
+        }
+    }
+
+    @Benchmark
+    public MrpNettingState netting() {
+        return engine.planByLlc(bomGraph, data.getMpsRequirements(), dataContext, MrpRunProgress.none());
+    }
+
+    @Benchmark
+    public KitCheckResult checkKitAvailability() {
+        return engine.checkKitAvailability(netRequirements, dataContext, MrpRunProgress.none());
+    }
+
+    @Benchmark
+    public List<ProcurementSuggestion> generateSuggestions() {
+        return engine.generateSuggestions(shortages, dataContext, MrpRunProgress.none());
+    }
+
+    @Benchmark
+    public MrpRunResponse fullRun() {
+        MrpRunRequest request = MrpRunRequest.builder()
+            .planFromDate(FROM_DATE)
+            .planningMode("LLC")
+            .build();
+        return engine.executeRun(request, "MRP-RUN-BENCH", MrpRunProgress.none(), MrpPhaseRunner.DIRECT);
+    }
+}
@@ -0,0 +1,165 @@
+package com.hjscm.benchmark;
+
+import com.hjscm.dto.*;
+import com.hjscm.entity.BomLine;
+import com.hjscm.service.mrp.MrpDataContext;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.*;
+
+/**
+ * MRP 基准测试合成数据
+ *
+ * 按层生成 BOM：每个父项挂 fanOut 个子项，其中约 sharedRatio 比例复用下一层已有物料
+ * （共用件），其余新建，总物料数不超过 itemCount。同时生成 MPS、库存、在途与约束数据。
+ * 相同参数与种子生成完全相同的数据，保证优化前后基准可比。
+ */
+public final class SyntheticMrpData {
+
+    private final LocalDate fromDate;
+    private final List<String> itemCodes = new ArrayList<>();
+    private final List<BomLine> bomLines = new ArrayList<>();
+    private final List<MpsRequirement> mpsRequirements = new ArrayList<>();
+
+    // 按物料下标的库存 / 约束数据
+    private final List<BigDecimal> onHand = new ArrayList<>();
+    private final List<BigDecimal> safetyStock = new ArrayList<>();
+    private final List<Integer> leadTime = new ArrayList<>();
+    private final List<Integer> moq = new ArrayList<>();
+    // 在途：物料下标 → 到货日期 / 数量
+    private final List<Integer> inTransitItems = new ArrayList<>();
+    private final List<LocalDate> inTransitDates = new ArrayList<>();
+    private final List<BigDecimal> inTransitQty = new ArrayList<>();
+
+    private SyntheticMrpData(LocalDate fromDate) {
+        this.fromDate = fromDate;
+    }
+
+    /**
+     * @param itemCount 物料总数上限
+     * @param depth BOM 层数（顶层为 0，尾项层为 depth）
+     * @param fanOut 每个父项子项数
+     * @param sharedRatio 子项复用已有物料的比例（0～1）
+     * @param seed 随机种子
+     */
+    public static SyntheticMrpData generate(int itemCount, int depth, int fanOut, double sharedRatio,
+            long seed, LocalDate fromDate) {
+
+        SyntheticMrpData data = new SyntheticMrpData(fromDate);
+        Random random = new Random(seed);
+
+        // 顶层物料数：使各层新建物料之和约等于 itemCount
+        double growth = Math.max(1.0, fanOut * (1 - sharedRatio));
+        double perRoot = 0;
+        for (int level = 0; level <= depth; level++) {
+            perRoot += Math.pow(growth, level);
+        }
+        int roots = Math.max(1, (int) (itemCount / perRoot));
+
+        List<Integer> level = new ArrayList<>();
+        for (int i = 0; i < roots; i++) {
+            level.add(data.newItem(random, 0));
+        }
+        List<Integer> topLevel = new ArrayList<>(level);
+
+        for (int l = 1; l <= depth && !level.isEmpty(); l++) {
+            List<Integer> next = new ArrayList<>();
+            for (int parent : level) {
+                Set<Integer> children = new HashSet<>();
+                for (int k = 0; k < fanOut; k++) {
+                    int child;
+                    boolean share = !next.isEmpty()
+                        && (random.nextDouble() < sharedRatio || data.itemCodes.size() >= itemCount);
+                    if (share) {
+                        child = next.get(random.nextInt(next.size()));
+                    } else if (data.itemCodes.size() < itemCount) {
+                        child = data.newItem(random, l);
+                        next.add(child);
+                    } else {
+                        continue;
+                    }
+                    if (children.add(child)) {
+                        data.bomLines.add(BomLine.builder()
+                            .parentItem(data.itemCodes.get(parent))
+                            .childItem(data.itemCodes.get(child))
+                            .usagePerParent(BigDecimal.valueOf(1 + random.nextInt(4)))
+                            .yieldRate(random.nextInt(10) == 0 ? new BigDecimal("0.98") : BigDecimal.ONE)
+                            .active(true)
+                            .build());
+                    }
+                }
+            }
+            level = next;
+        }
+
+        // MPS：每个顶层物料一条，交期分布在 8 周内
+        for (int root : topLevel) {
+            data.mpsRequirements.add(MpsRequirement.builder()
+                .id("MPS-" + root)
+                .materialCode(data.itemCodes.get(root))
+                .quantity(100 + random.nextInt(900))
+                .dueDate(fromDate.plusDays(random.nextInt(56)))
+                .priority(random.nextBoolean() ? "HIGH" : "MEDIUM")
+                .build());
+        }
+        return data;
+    }
+
+    private int newItem(Random random, int level) {
+        int index = itemCodes.size();
+        itemCodes.add(String.format("SYN-L%d-%06d", level, index));
+        onHand.add(BigDecimal.valueOf(random.nextInt(2000)));
+        safetyStock.add(BigDecimal.valueOf(random.nextInt(100)));
+        leadTime.add(3 + random.nextInt(19));
+        moq.add(50 + random.nextInt(450));
+        // 约 30% 物料有 1～2 笔在途
+        if (random.nextInt(10) < 3) {
+            int receipts = 1 + random.nextInt(2);
+            for (int r = 0; r < receipts; r++) {
+                inTransitItems.add(index);
+                inTransitDates.add(fromDate.plusDays(1 + random.nextInt(60)));
+                inTransitQty.add(BigDecimal.valueOf(50 + random.nextInt(500)));
+            }
+        }
+        return index;
+    }
+
+    /**
+     * 由合成库存 / 在途 / 约束构建数据上下文（替代数据库预取）
+     */
+    public MrpDataContext buildContext(Collection<String> materialCodes, LocalDate from) {
+        MrpDataContext.Builder builder = MrpDataContext.builder(materialCodes, from);
+        for (int i = 0; i < itemCodes.size(); i++) {
+            String code = itemCodes.get(i);
+            builder.onHand(code, onHand.get(i));
+            builder.available(code, onHand.get(i));
+            builder.safetyStock(code, safetyStock.get(i));
+            builder.leadTime(code, leadTime.get(i));
+            builder.moq(code, moq.get(i));
+        }
+        for (int k = 0; k < inTransitItems.size(); k++) {
+            LocalDate arrival = inTransitDates.get(k);
+            if (arrival.isAfter(from)) {
+                builder.addInTransit(itemCodes.get(inTransitItems.get(k)), arrival, inTransitQty.get(k));
+            }
+        }
+        return builder.build();
+    }
+
+    public LocalDate getFromDate() {
+        return fromDate;
+    }
+
+    public List<String> getItemCodes() {
+        return Collections.unmodifiableList(itemCodes);
+    }
+
+    public List<BomLine> getBomLines() {
+        return Collections.unmodifiableList(bomLines);
+    }
+
+    public List<MpsRequirement> getMpsRequirements() {
+        return Collections.unmodifiableList(mpsRequirements);
+    }
+}
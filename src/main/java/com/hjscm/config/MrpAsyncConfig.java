@@ -0,0 +1,34 @@
+package com.hjscm.config;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableAsync;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.concurrent.ThreadPoolExecutor;
+
+/**
+ * MRP 异步执行配置
+ *
+ * 净改变 MRP 使用独立单线程执行器：一个运行中 + 一个排队。
+ * 排队的重算开始时才读取已登记物料，已有排队任务时新的触发直接丢弃（合并到排队任务），
+ * 高频库存过账既不阻塞过账线程，也不会堆积重算任务。
+ */
+@Configuration
+@EnableAsync
+public class MrpAsyncConfig {
+
+    public static final String NET_CHANGE_EXECUTOR = "mrpNetChangeExecutor";
+
+    @Bean(name = NET_CHANGE_EXECUTOR)
+    public ThreadPoolTaskExecutor mrpNetChangeExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(1);
+        executor.setMaxPoolSize(1);
+        executor.setQueueCapacity(1);
+        executor.setThreadNamePrefix("mrp-net-change-");
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.DiscardPolicy());
+        executor.setWaitForTasksToCompleteOnShutdown(false);
+        return executor;
+    }
+}
@@ -4,11 +4,17 @@ import com.hjscm.dto.*;
 import com.hjscm.service.*;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
  * MRP API控制器
@@ -23,10 +29,18 @@ public class MRPController {
 
     private final MRPEngineService mrpEngineService;
     private final MrpDataService mrpDataService;
+    private final NetChangeMrpService netChangeMrpService;
+    private final MrpJobService mrpJobService;
+    private final MrpSimulationService mrpSimulationService;
+    private final MrpPeggingService mrpPeggingService;
+    private final MrpRunCacheService mrpRunCacheService;
+    private final MrpExportService mrpExportService;
 
     /**
      * 执行 MRP 运算
      * 
+     * parallel=true 按工厂分别净算（各工厂库存互不借用），默认按各工厂合计净算。
+     * 
      * 前端调用: mrpApi.runMrp(params)
      */
     @PostMapping("/run")
@@ -43,6 +57,117 @@ public class MRPController {
         }
     }
 
+    /**
+     * 提交异步 MRP 作业，立即返回 runId
+     */
+    @PostMapping("/jobs")
+    public ResponseEntity<MrpJobStatus> submitJob(@RequestBody MrpRunRequest request) {
+        log.info("[API] MRP job submitted. mode={}, from={}, to={}", 
+            request.getRunMode(), request.getPlanFromDate(), request.getPlanToDate());
+        try {
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(mrpJobService.submit(request));
+        } catch (RejectedExecutionException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+        }
+    }
+
+    /**
+     * 查询 MRP 作业状态（含分阶段进度）
+     */
+    @GetMapping("/jobs/{runId}")
+    public ResponseEntity<MrpJobStatus> getJob(@PathVariable String runId) {
+        return mrpJobService.getStatus(runId)
+            .map(ResponseEntity::ok)
+            .orElse(ResponseEntity.notFound().build());
+    }
+
+    /**
+     * 订阅 MRP 作业状态（SSE）
+     */
+    @GetMapping(value = "/jobs/{runId}/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> streamJob(@PathVariable String runId) {
+        return mrpJobService.stream(runId)
+            .map(ResponseEntity::ok)
+            .orElse(ResponseEntity.notFound().build());
+    }
+
+    /**
+     * 取消 MRP 作业
+     */
+    @DeleteMapping("/jobs/{runId}")
+    public ResponseEntity<MrpJobStatus> cancelJob(@PathVariable String runId) {
+        return mrpJobService.cancel(runId)
+            .map(ResponseEntity::ok)
+            .orElse(ResponseEntity.notFound().build());
+    }
+
+    /**
+     * 净改变 MRP：仅重算库存变更影响的物料，返回采购建议差异
+     */
+    @PostMapping("/net-change")
+    public ResponseEntity<MrpSuggestionDiff> runNetChange() {
+        log.info("[API] MRP net-change requested");
+        return ResponseEntity.ok(netChangeMrpService.runNetChange());
+    }
+
+    /**
+     * 捕获模拟基线（MPS / BOM / 库存在途快照常驻内存）
+     */
+    @PostMapping("/simulations/bases")
+    public ResponseEntity<MrpSimulationBase> captureSimulationBase(@RequestBody MrpRunRequest request) {
+        log.info("[API] MRP simulation base requested. mode={}, from={}, to={}",
+            request.getRunMode(), request.getPlanFromDate(), request.getPlanToDate());
+        return ResponseEntity.ok(mrpSimulationService.captureBase(request));
+    }
+
+    /**
+     * 模拟（假设分析）：在基线上叠加覆盖项重算，不保存结果
+     */
+    @PostMapping("/simulations")
+    public ResponseEntity<MrpSimulationResponse> simulate(@RequestBody MrpSimulationRequest request) {
+        log.info("[API] MRP simulation requested. scenario={}, baseId={}",
+            request.getScenarioName(), request.getBaseId());
+
+        MrpSimulationResponse response = mrpSimulationService.simulate(request);
+
+        if ("COMPLETED".equals(response.getStatus())) {
+            return ResponseEntity.ok(response);
+        } else {
+            return ResponseEntity.badRequest().body(response);
+        }
+    }
+
+    /**
+     * 并发运行多个模拟场景
+     */
+    @PostMapping("/simulations/batch")
+    public ResponseEntity<List<MrpSimulationResponse>> simulateBatch(@RequestBody List<MrpSimulationRequest> requests) {
+        log.info("[API] MRP simulation batch requested. scenarios={}", requests.size());
+        return ResponseEntity.ok(mrpSimulationService.simulateAll(requests));
+    }
+
+    /**
+     * 追溯：组件 → 受影响的 MPS / 销售订单（runId 可为 latest）
+     */
+    @GetMapping("/runs/{runId}/pegging/components/{itemCode}")
+    public ResponseEntity<List<MrpPegEntry>> getComponentPegging(@PathVariable String runId,
+            @PathVariable String itemCode) {
+        return mrpPeggingService.demandsOf(runId, itemCode)
+            .map(ResponseEntity::ok)
+            .orElse(ResponseEntity.notFound().build());
+    }
+
+    /**
+     * 追溯：MPS → 各层组件需求（runId 可为 latest）
+     */
+    @GetMapping("/runs/{runId}/pegging/mps/{mpsId}")
+    public ResponseEntity<List<MrpPegEntry>> getMpsPegging(@PathVariable String runId,
+            @PathVariable String mpsId) {
+        return mrpPeggingService.componentsOf(runId, mpsId)
+            .map(ResponseEntity::ok)
+            .orElse(ResponseEntity.notFound().build());
+    }
+
     /**
      * 查询物料需求
      * 
@@ -69,22 +194,68 @@ public class MRPController {
      * 齐套检查
      * 
      * 前端调用: mrpApi.checkKit(params)
+     * 
+     * 传 runId 时读取该运行的缓存结果；否则按参数在内存中计算（不保存结果，不影响净改变基线）。
      */
     @PostMapping("/kit-check")
     public ResponseEntity<KitCheckResult> checkKit(@RequestBody Map<String, Object> params) {
-        // TODO: 实现齐套检查
-        return ResponseEntity.ok(new KitCheckResult());
+        String runId = (String) params.get("runId");
+        if (runId != null) {
+            return mrpRunCacheService.findByRunId(runId)
+                .map(entry -> ResponseEntity.ok(entry.getKitResult()))
+                .orElse(ResponseEntity.notFound().build());
+        }
+        
+        MrpRunRequest request = MrpRunRequest.builder()
+            .runMode(params.get("runMode") != null ? (String) params.get("runMode") : "FORECAST")
+            .planFromDate(params.get("fromDate") != null 
+                ? java.time.LocalDate.parse((String) params.get("fromDate")) : java.time.LocalDate.now())
+            .planToDate(params.get("toDate") != null 
+                ? java.time.LocalDate.parse((String) params.get("toDate")) : java.time.LocalDate.now().plusMonths(3))
+            .plantCode(params.get("plantCode") != null ? (String) params.get("plantCode") : "PLA-001")
+            .planningMode((String) params.get("planningMode"))
+            .build();
+        return ResponseEntity.ok(mrpSimulationService.checkKit(request));
     }
 
     /**
      * 获取采购建议
      * 
      * 前端调用: mrpApi.getSuggestions()
+     * 
+     * 返回指定运行（缺省为最近一次保存了结果的运行）已保存的采购建议。
      */
     @GetMapping("/suggestions")
-    public ResponseEntity<List<ProcurementSuggestion>> getSuggestions() {
-        // TODO: 从数据库查询采购建议
-        return ResponseEntity.ok(List.of());
+    public ResponseEntity<List<ProcurementSuggestion>> getSuggestions(
+            @RequestParam(required = false) String runId) {
+        return ResponseEntity.ok(mrpExportService.getSuggestions(runId));
+    }
+
+    /**
+     * 流式导出运行结果
+     * 
+     * dataset: net-requirements / shortages / suggestions；format: ndjson / csv。
+     * urgency 过滤缺料与采购建议，supplier 过滤采购建议。
+     * 结果由数据库游标逐行写出，不在服务端缓冲整个结果集。
+     */
+    @GetMapping("/runs/{runId}/export/{dataset}")
+    public ResponseEntity<StreamingResponseBody> exportRun(@PathVariable String runId,
+            @PathVariable String dataset,
+            @RequestParam(defaultValue = MrpExportService.FORMAT_NDJSON) String format,
+            @RequestParam(required = false) String urgency,
+            @RequestParam(required = false) String supplier) {
+        if (!MrpExportService.isSupportedDataset(dataset) || !MrpExportService.isSupportedFormat(format)) {
+            return ResponseEntity.badRequest().build();
+        }
+        MediaType contentType = MrpExportService.FORMAT_CSV.equals(format)
+            ? new MediaType("text", "csv", java.nio.charset.StandardCharsets.UTF_8)
+            : new MediaType("application", "x-ndjson", java.nio.charset.StandardCharsets.UTF_8);
+        StreamingResponseBody body = out -> mrpExportService.export(runId, dataset, format, urgency, supplier, out);
+        return ResponseEntity.ok()
+            .contentType(contentType)
+            .header(HttpHeaders.CONTENT_DISPOSITION,
+                "attachment; filename=\"" + runId + "-" + dataset + "." + format + "\"")
+            .body(body);
     }
 
     /**
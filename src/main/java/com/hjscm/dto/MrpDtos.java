@@ -7,6 +7,7 @@ import lombok.NoArgsConstructor;
 
 import java.math.BigDecimal;
 import java.util.List;
+import java.util.Map;
 
 /**
  * 采购建议
@@ -20,6 +21,9 @@ public class ProcurementSuggestion {
     private String itemName;
     private BigDecimal suggestedQty;
     private java.time.LocalDate suggestedDate;
+    private java.time.LocalDate requiredDate;
+    private String plantCode;
+    private Integer leadTime;
     private String supplierCode;
     private String supplierName;
     private BigDecimal estimatedPrice;
@@ -60,6 +64,11 @@ class MrpRunRequest {
     private String plantCode;
     private Boolean includeKitCheck;
     private Boolean generateSuggestions;
+    private String planningMode;  // BFS（默认，逐 MPS 展开）/ LLC（低层码逐层净算）/ TIME_PHASED（分时段 LLC）
+    private String bucketSize;  // DAY / WEEK（分时段模式时段粒度，默认 WEEK）
+    // 按工厂 × BOM 连通分量分区并行计算。注意同时切换净算口径：true 时各工厂库存 / 在途分别净算，
+    // 默认（false）全部 MPS 在一个分区中以各工厂合计的库存 / 在途净算，两者的短缺与建议可能不同
+    private Boolean parallel;
 }
 
 /**
@@ -79,6 +88,70 @@ class MrpRunResponse {
     private List<String> warnings;
     private String errorMessage;
     private java.time.LocalDateTime createdAt;
+    private Boolean cacheHit;  // 输入指纹命中运行缓存，runId 为原运行
+    private List<MrpPhaseTiming> phaseBreakdown;  // 各阶段耗时（MPS_FETCH 计入 PREPARE）
+    private Map<String, Long> metrics;  // 展开量、数据库调用、缓存命中等计数
+}
+
+/**
+ * MRP 阶段耗时
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+class MrpPhaseTiming {
+    private String phase;
+    private Long durationMs;
+}
+
+/**
+ * MRP 运行缓存条目（按输入指纹缓存的运行结果）
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+class MrpRunCacheEntry {
+    private String fingerprint;
+    private MrpRunResponse response;
+    private KitCheckResult kitResult;
+    private List<ProcurementSuggestion> suggestions;
+    private java.time.LocalDateTime cachedAt;
+}
+
+/**
+ * MRP 异步作业状态
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+class MrpJobStatus {
+    private String runId;
+    private String status;  // QUEUED / RUNNING / COMPLETED / FAILED / CANCELLED
+    private String currentPhase;
+    private List<MrpPhaseProgress> phases;
+    private java.time.LocalDateTime submittedAt;
+    private java.time.LocalDateTime startedAt;
+    private java.time.LocalDateTime finishedAt;
+    private MrpRunResponse result;
+    private String errorMessage;
+}
+
+/**
+ * MRP 阶段进度
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+class MrpPhaseProgress {
+    private String phase;  // PREPARE / EXPLODE / NET / KIT / SUGGEST / SAVE
+    private Long done;
+    private Long total;
+    private Boolean finished;
+    private Long durationMs;
 }
 
 /**
@@ -131,6 +204,7 @@ class KitCheckResult {
     private List<KitItem> kitItems;
     private List<KitShortage> shortages;
     private Double overallFillRate;
+    private List<KitOrderAllocation> orderAllocations;  // 按优先级分配后的订单齐套情况（按分配顺序）
     
     public void addKitItem(KitItem item) {
         if (kitItems == null) kitItems = new java.util.ArrayList<>();
@@ -152,6 +226,29 @@ class KitCheckResult {
     }
 }
 
+/**
+ * 订单齐套分配结果
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+class KitOrderAllocation {
+    private String mpsId;
+    private String materialCode;
+    private String sourceDocument;
+    private String plantCode;
+    private String priority;
+    private java.time.LocalDate dueDate;
+    private Integer sequence;  // 分配顺序（1 起）
+    private Double completeness;  // 各组件已分配 / 需求的最小值
+    private Boolean kitComplete;
+    private Integer shortComponentCount;
+    private String bindingComponent;  // 约束组件（齐套率最低），齐套时为 null
+    private BigDecimal bindingRequiredQty;
+    private BigDecimal bindingAllocatedQty;
+}
+
 /**
  * 齐套项
  */
@@ -186,16 +283,146 @@ class KitShortage {
 }
 
 /**
- * MPS 需求
+ * 净改变 MRP 采购建议差异
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+class MrpSuggestionDiff {
+    private String runId;
+    private String baseRunId;
+    private Integer dirtyItemCount;
+    private List<ProcurementSuggestion> added;
+    private List<ProcurementSuggestion> changed;
+    private List<ProcurementSuggestion> removed;
+    private Boolean fullRunRequired;  // 基线缺失或 BOM 快照版本已变，需全量重算
+    private String message;
+    private Long durationMs;
+}
+
+/**
+ * MRP 模拟基线（内存快照：MPS、BOM 快照版本、数据上下文及基线结果）
  */
 @Data
 @Builder
 @NoArgsConstructor
 @AllArgsConstructor
+class MrpSimulationBase {
+    private String baseId;
+    private Long bomVersion;
+    private Integer mpsCount;
+    private Integer requirementCount;
+    private Integer shortageCount;
+    private Integer suggestionCount;
+    private Long durationMs;
+    private java.time.LocalDateTime capturedAt;
+}
+
+/**
+ * MRP 模拟场景覆盖项
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+class MrpScenarioOverride {
+    private String type;  // MPS / IN_TRANSIT_DELAY / INVENTORY_ADJUST
+    private String mpsId;  // MPS：按 MPS ID 匹配，为空时按物料匹配全部 MPS
+    private String materialCode;
+    private String plantCode;  // INVENTORY_ADJUST / IN_TRANSIT_DELAY：为空时作用于全部工厂
+    private Integer quantity;  // MPS：新数量
+    private java.time.LocalDate dueDate;  // MPS：新交期（仅 TIME_PHASED 基线生效）
+    private java.time.LocalDate arrivalDate;  // IN_TRANSIT_DELAY：原到货日期，为空时推迟全部在途
+    private Integer delayDays;  // IN_TRANSIT_DELAY
+    private BigDecimal quantityDelta;  // INVENTORY_ADJUST：库存增减量
+}
+
+/**
+ * MRP 模拟请求
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+class MrpSimulationRequest {
+    private String scenarioName;
+    private String baseId;  // 为空时按 runRequest 新建基线
+    private MrpRunRequest runRequest;
+    private List<MrpScenarioOverride> overrides;
+}
+
+/**
+ * 净需求变化
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+class MrpRequirementDelta {
+    private String itemCode;
+    private BigDecimal baseNetRequirement;
+    private BigDecimal netRequirement;
+    private BigDecimal delta;
+}
+
+/**
+ * MRP 模拟结果（与基线的差异，不持久化）
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+class MrpSimulationResponse {
+    private String scenarioId;
+    private String scenarioName;
+    private String baseId;
+    private String status;  // COMPLETED / FAILED
+    private Integer baseShortageCount;
+    private Integer shortageCount;
+    private List<MrpRequirementDelta> requirementDeltas;
+    private MrpSuggestionDiff suggestionDiff;
+    private List<String> warnings;
+    private String errorMessage;
+    private Long durationMs;
+}
+
+/**
+ * 追溯条目（组件需求 ↔ MPS 需求行）
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+class MrpPegEntry {
+    private String mpsId;
+    private String mpsMaterialCode;
+    private String sourceDocument;  // 来源单据（销售订单等）
+    private String plantCode;
+    private java.time.LocalDate dueDate;
+    private String componentCode;
+    private BigDecimal peggedQty;  // 该 MPS 经 BOM 展开对组件的毛需求份额
+    private BigDecimal shortageQty;  // 组件缺料按份额分摊到该 MPS 的数量（无缺料为 null）
+}
+
+/**
+ * MPS 需求
+ */
+@Data
+@Builder(toBuilder = true)
+@NoArgsConstructor
+@AllArgsConstructor
 class MpsRequirement {
+    private String id;
     private String materialCode;
+    private String materialName;
     private Integer quantity;
+    private String unit;
     private java.time.LocalDate requirementDate;
+    private java.time.LocalDate dueDate;
+    private String priority;
+    private String plantCode;
+    private String source;
     private String sourceDocument;
 }
 
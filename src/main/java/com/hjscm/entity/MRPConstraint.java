@@ -36,6 +36,22 @@ public class MRPConstraint {
     @Column(name = "pack_unit")
     private Integer packUnit;
     
+    // 批量规则：LFL / FOQ（固定批量取 batchSize）/ EOQ / POQ / WW，空为 LFL
+    @Column(name = "lot_sizing_rule", length = 10)
+    private String lotSizingRule;
+    
+    // 单次订货成本（EOQ / POQ / WW）
+    @Column(name = "order_cost", precision = 18, scale = 4)
+    private BigDecimal orderCost;
+    
+    // 单位日持有成本（EOQ / POQ / WW）
+    @Column(name = "holding_cost_per_day", precision = 18, scale = 6)
+    private BigDecimal holdingCostPerDay;
+    
+    // POQ 合并期数，空时按 EOQ 推算
+    @Column(name = "poq_periods")
+    private Integer poqPeriods;
+    
     // 首选供应商
     @Column(name = "preferred_supplier_id", length = 50)
     private String preferredSupplierId;
@@ -0,0 +1,27 @@
+package com.hjscm.event;
+
+import lombok.Builder;
+import lombok.Data;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+/**
+ * ATP 供需来源变更事件（在途订单 / MRP 预留 / 销售分配）
+ *
+ * 新增：old* 为空；删除 / 取消：new* 为空；改期或改量：两者均填。
+ */
+@Data
+@Builder
+public class AtpSourceChangeEvent {
+    private String sourceType; // IN_TRANSIT/RESERVATION/ALLOCATION
+    private String sourceId;
+    private String materialCode;
+    private String plantCode;
+    private LocalDate oldDate;
+    private BigDecimal oldQty;
+    private LocalDate newDate;
+    private BigDecimal newQty;
+    private LocalDateTime occurredAt;
+}
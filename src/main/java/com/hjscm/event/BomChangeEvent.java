@@ -0,0 +1,19 @@
+package com.hjscm.event;
+
+import lombok.Builder;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+/**
+ * BOM 变更事件
+ */
+@Data
+@Builder
+public class BomChangeEvent {
+    private String bomId;
+    private String material;
+    private String changeType; // CREATE/UPDATE/DELETE
+    private String userId;
+    private LocalDateTime occurredAt;
+}
@@ -0,0 +1,25 @@
+package com.hjscm.event;
+
+import com.hjscm.dto.*;
+import com.hjscm.service.mrp.MrpNettingState;
+import com.hjscm.service.mrp.MrpPegging;
+import lombok.Builder;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * MRP 运行完成事件
+ */
+@Data
+@Builder
+public class MrpRunCompletedEvent {
+    private String runId;
+    private MrpNettingState nettingState; // 仅 LLC 模式，其余为 null
+    private String plantCode;             // nettingState 所属工厂，不按工厂分区时为 null（全部工厂合计）
+    private KitCheckResult kitResult;
+    private List<ProcurementSuggestion> suggestions;
+    private MrpPegging pegging;
+    private LocalDateTime completedAt;
+}
@@ -4,14 +4,23 @@ import com.hjscm.mdm.dto.BOMDTO;
 import com.hjscm.mdm.dto.BOMItemDTO;
 import com.hjscm.mdm.entity.BOMEntity;
 import com.hjscm.mdm.entity.BOMItemEntity;
+import com.hjscm.mdm.entity.BOMVersionEntity;
+import com.hjscm.mdm.dto.BOMImportResultDTO;
+import com.hjscm.mdm.service.BOMImportService;
 import com.hjscm.mdm.service.BOMService;
+import com.hjscm.mdm.service.BOMVersionService;
 import org.springframework.beans.BeanUtils;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.LocalDateTime;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 /**
@@ -22,9 +31,14 @@ import java.util.stream.Collectors;
 public class BOMController {
     
     private final BOMService bomService;
+    private final BOMVersionService versionService;
+    private final BOMImportService importService;
     
-    public BOMController(BOMService bomService) {
+    public BOMController(BOMService bomService, BOMVersionService versionService,
+                         BOMImportService importService) {
         this.bomService = bomService;
+        this.versionService = versionService;
+        this.importService = importService;
     }
     
     /**
@@ -57,6 +71,31 @@ public class BOMController {
         return ResponseEntity.ok(response);
     }
     
+    /**
+     * 批量导入BOM（请求体为 CSV 或 NDJSON 流）
+     * 
+     * 逐行解析、分块批量写入，单个BOM的错误不影响其余BOM
+     */
+    @PostMapping(value = "/import", consumes = {"text/csv", "application/x-ndjson", "application/octet-stream"})
+    public ResponseEntity<Map<String, Object>> importBOMs(
+            @RequestParam(defaultValue = BOMImportService.FORMAT_CSV) String format,
+            InputStream body) throws IOException {
+        if (!BOMImportService.FORMAT_CSV.equals(format) && !BOMImportService.FORMAT_NDJSON.equals(format)) {
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", false);
+            response.put("message", "不支持的导入格式: " + format);
+            return ResponseEntity.badRequest().body(response);
+        }
+        BOMImportResultDTO result = importService.importBOMs(body, format, "admin");
+        
+        Map<String, Object> response = new HashMap<>();
+        response.put("success", result.getFailedBoms() == 0);
+        response.put("message", "BOM导入完成");
+        response.put("data", result);
+        
+        return ResponseEntity.ok(response);
+    }
+    
     /**
      * 更新BOM
      */
@@ -133,14 +172,25 @@ public class BOMController {
     
     /**
      * 展开BOM
+     * 
+     * 传 asOf 或 pin 时按版本快照展开（pin 缺省为当前发布序号，asOf 缺省为当前时间）
      */
     @GetMapping("/{material}/explode")
     public ResponseEntity<Map<String, Object>> explodeBOM(
             @PathVariable String material,
-            @RequestParam(defaultValue = "5") int maxLevel) {
-        List<BOMItemEntity> exploded = bomService.explodeBOM(material, maxLevel);
-        
+            @RequestParam(defaultValue = "5") int maxLevel,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime asOf,
+            @RequestParam(required = false) Long pin) {
         Map<String, Object> response = new HashMap<>();
+        List<BOMItemEntity> exploded;
+        if (asOf == null && pin == null) {
+            exploded = bomService.explodeBOM(material, maxLevel);
+        } else {
+            long snapshotPin = pin != null ? pin : versionService.currentPin();
+            exploded = bomService.explodeBOM(material, maxLevel, asOf != null ? asOf : LocalDateTime.now(), snapshotPin);
+            response.put("pin", snapshotPin);
+        }
+        
         response.put("success", true);
         response.put("data", exploded);
         response.put("total", exploded.size());
@@ -148,6 +198,76 @@ public class BOMController {
         return ResponseEntity.ok(response);
     }
     
+    /**
+     * 当前BOM发布序号（读者钉住后按此读取版本快照）
+     */
+    @GetMapping("/versions/pin")
+    public ResponseEntity<Map<String, Object>> getCurrentPin() {
+        Map<String, Object> response = new HashMap<>();
+        response.put("success", true);
+        response.put("data", versionService.currentPin());
+        
+        return ResponseEntity.ok(response);
+    }
+    
+    /**
+     * BOM版本历史
+     */
+    @GetMapping("/{bomId}/versions")
+    public ResponseEntity<Map<String, Object>> getVersionHistory(@PathVariable String bomId) {
+        List<BOMVersionEntity> versions = versionService.getVersionHistory(bomId);
+        
+        Map<String, Object> response = new HashMap<>();
+        response.put("success", true);
+        response.put("data", versions);
+        response.put("total", versions.size());
+        
+        return ResponseEntity.ok(response);
+    }
+    
+    /**
+     * BOM版本快照（指定时点、发布序号下生效的版本及其子件）
+     */
+    @GetMapping("/{bomId}/snapshot")
+    public ResponseEntity<Map<String, Object>> getSnapshot(
+            @PathVariable String bomId,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime asOf,
+            @RequestParam(required = false) Long pin) {
+        long snapshotPin = pin != null ? pin : versionService.currentPin();
+        return versionService.getEffectiveVersion(bomId, asOf != null ? asOf : LocalDateTime.now(), snapshotPin)
+                .map(version -> {
+                    Map<String, Object> data = new HashMap<>();
+                    data.put("version", version);
+                    data.put("items", versionService.getVersionItems(version.getId()));
+                    
+                    Map<String, Object> response = new HashMap<>();
+                    response.put("success", true);
+                    response.put("pin", snapshotPin);
+                    response.put("data", data);
+                    return ResponseEntity.ok(response);
+                })
+                .orElse(ResponseEntity.notFound().build());
+    }
+    
+    /**
+     * 全层级反查（where-used）
+     * 
+     * topLevelOnly=true 时只返回顶层物料（如成品）
+     */
+    @GetMapping("/{material}/where-used")
+    public ResponseEntity<Map<String, Object>> getWhereUsed(
+            @PathVariable String material,
+            @RequestParam(defaultValue = "false") boolean topLevelOnly) {
+        Set<String> whereUsed = bomService.getWhereUsed(material, topLevelOnly);
+        
+        Map<String, Object> response = new HashMap<>();
+        response.put("success", true);
+        response.put("data", whereUsed);
+        response.put("total", whereUsed.size());
+        
+        return ResponseEntity.ok(response);
+    }
+    
     /**
      * 删除BOM
      */
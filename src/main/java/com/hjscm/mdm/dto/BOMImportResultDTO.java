@@ -0,0 +1,34 @@
+package com.hjscm.mdm.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * BOM批量导入结果DTO
+ */
+@Data
+public class BOMImportResultDTO {
+    
+    private long totalRows;          // 读取的数据行数（CSV 为子件行，NDJSON 为BOM行）
+    private long importedBoms;
+    private long importedItems;
+    private long failedBoms;
+    private long errorCount;         // 错误总数（errors 只保留前若干条）
+    private List<RowError> errors = new ArrayList<>();
+    
+    /**
+     * 行错误
+     */
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class RowError {
+        private long line;           // 文件行号（从 1 开始，含表头）
+        private String bomId;
+        private String message;
+    }
+}
@@ -0,0 +1,55 @@
+package com.hjscm.mdm.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import org.hibernate.annotations.Immutable;
+import java.time.LocalDateTime;
+
+/**
+ * BOM版本实体（不可变快照，只插入不更新）
+ */
+@Entity
+@Immutable
+@Table(name = "mm_bom_version")
+@Data
+public class BOMVersionEntity {
+    
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;                 // 发布序号（全局单调）
+    
+    @Column(name = "bom_id", nullable = false, length = 50)
+    private String bomId;            // BOM编码
+    
+    @Column(name = "version_no", nullable = false)
+    private Integer versionNo;       // 版本号（BOM内递增）
+    
+    @Column(name = "material", nullable = false, length = 50)
+    private String material;         // 父级物料编码
+    
+    @Column(name = "bom_usage", precision = 15, scale = 5)
+    private java.math.BigDecimal bomUsage;  // 用量
+    
+    @Column(name = "bom_unit", length = 20)
+    private String bomUnit;          // 单位
+    
+    @Column(name = "status", nullable = false, length = 10)
+    private String status;           // ACTIVE/INACTIVE
+    
+    @Column(name = "effective_from", nullable = false)
+    private LocalDateTime effectiveFrom;  // 生效日期
+    
+    @Column(name = "effective_to")
+    private LocalDateTime effectiveTo;    // 失效日期
+    
+    @Column(name = "published_by", length = 50)
+    private String publishedBy;
+    
+    @Column(name = "published_time")
+    private LocalDateTime publishedTime;
+    
+    @PrePersist
+    protected void onCreate() {
+        publishedTime = LocalDateTime.now();
+    }
+}
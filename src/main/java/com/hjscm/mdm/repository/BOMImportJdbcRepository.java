@@ -0,0 +1,111 @@
+package com.hjscm.mdm.repository;
+
+import com.hjscm.mdm.entity.BOMEntity;
+import com.hjscm.mdm.entity.BOMItemEntity;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * BOM批量导入（JDBC batch）
+ *
+ * 表头、子件按块批量插入；初始版本（见 sql/bom_versions.sql）按块以 INSERT ... SELECT 集合写入。
+ */
+@Repository
+public class BOMImportJdbcRepository {
+
+    private static final String INSERT_BOM =
+        "INSERT INTO mm_bom (bom_id, bom_name, material, bom_usage, bom_unit, bom_level, validity_start, " +
+        "validity_end, alternative_group, status, created_by, created_time) " +
+        "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private static final String INSERT_BOM_ITEM =
+        "INSERT INTO mm_bom_item (bom_id, component_material, component_qty, operation_id, work_center, " +
+        "scrap_add_rate, is_phantom, is_subcontract, item_sequence, created_by, created_time) " +
+        "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private static final String INSERT_VERSION =
+        "INSERT INTO mm_bom_version (bom_id, version_no, material, bom_usage, bom_unit, status, " +
+        "effective_from, effective_to, published_by, published_time) " +
+        "SELECT b.bom_id, 1, b.material, b.bom_usage, b.bom_unit, b.status, " +
+        "COALESCE(b.validity_start, b.created_time), b.validity_end, b.created_by, CURRENT_TIMESTAMP " +
+        "FROM mm_bom b WHERE b.bom_id = ANY(?)";
+
+    private static final String INSERT_VERSION_ITEM =
+        "INSERT INTO mm_bom_version_item (version_id, component_material, component_qty, operation_id, " +
+        "work_center, scrap_add_rate, is_phantom, is_subcontract, item_sequence) " +
+        "SELECT v.id, bi.component_material, bi.component_qty, bi.operation_id, bi.work_center, " +
+        "bi.scrap_add_rate, bi.is_phantom, bi.is_subcontract, bi.item_sequence " +
+        "FROM mm_bom_version v JOIN mm_bom_item bi ON bi.bom_id = v.bom_id " +
+        "WHERE v.version_no = 1 AND v.bom_id = ANY(?)";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public BOMImportJdbcRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * 已存在的BOM编码
+     */
+    public List<String> findExistingBomIds(Collection<String> bomIds) {
+        if (bomIds.isEmpty()) {
+            return new ArrayList<>();
+        }
+        String[] ids = bomIds.toArray(new String[0]);
+        return jdbcTemplate.query("SELECT bom_id FROM mm_bom WHERE bom_id = ANY(?)",
+            ps -> ps.setArray(1, ps.getConnection().createArrayOf("varchar", ids)),
+            (rs, i) -> rs.getString(1));
+    }
+
+    public void insertBoms(List<BOMEntity> boms) {
+        jdbcTemplate.batchUpdate(INSERT_BOM, boms, boms.size(), (ps, b) -> {
+            ps.setString(1, b.getBomId());
+            ps.setString(2, b.getBomName());
+            ps.setString(3, b.getMaterial());
+            ps.setBigDecimal(4, b.getBomUsage());
+            ps.setString(5, b.getBomUnit());
+            ps.setInt(6, b.getBomLevel());
+            ps.setTimestamp(7, toTimestamp(b.getValidityStart()));
+            ps.setTimestamp(8, toTimestamp(b.getValidityEnd()));
+            ps.setString(9, b.getAlternativeGroup());
+            ps.setString(10, b.getStatus());
+            ps.setString(11, b.getCreatedBy());
+            ps.setTimestamp(12, toTimestamp(b.getCreatedTime()));
+        });
+    }
+
+    public void insertItems(List<BOMItemEntity> items, int batchSize) {
+        jdbcTemplate.batchUpdate(INSERT_BOM_ITEM, items, batchSize, (ps, i) -> {
+            ps.setString(1, i.getBomId());
+            ps.setString(2, i.getComponentMaterial());
+            ps.setBigDecimal(3, i.getComponentQty());
+            ps.setString(4, i.getOperationId());
+            ps.setString(5, i.getWorkCenter());
+            ps.setBigDecimal(6, i.getScrapAddRate());
+            ps.setObject(7, i.getIsPhantom());
+            ps.setObject(8, i.getIsSubcontract());
+            ps.setObject(9, i.getItemSequence());
+            ps.setString(10, i.getCreatedBy());
+            ps.setTimestamp(11, toTimestamp(i.getCreatedTime()));
+        });
+    }
+
+    /**
+     * 为刚导入的BOM发布第 1 版（调用方需先持有版本发布锁）
+     */
+    public void insertInitialVersions(Collection<String> bomIds) {
+        String[] ids = bomIds.toArray(new String[0]);
+        jdbcTemplate.update(INSERT_VERSION, ps -> ps.setArray(1, ps.getConnection().createArrayOf("varchar", ids)));
+        jdbcTemplate.update(INSERT_VERSION_ITEM, ps -> ps.setArray(1, ps.getConnection().createArrayOf("varchar", ids)));
+    }
+
+    private static Timestamp toTimestamp(LocalDateTime time) {
+        return time != null ? Timestamp.valueOf(time) : null;
+    }
+}
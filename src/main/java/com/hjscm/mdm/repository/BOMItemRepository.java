@@ -25,4 +25,49 @@ public interface BOMItemRepository extends JpaRepository<BOMItemEntity, Long> {
     List<BOMItemEntity> findByOperationId(@Param("operationId") String operationId);
     
     void deleteByBomId(String bomId);
+    
+    /**
+     * 全部有效BOM的父子边（父级物料, 子件物料），每个子件行一条
+     */
+    @Query("SELECT b.material, bi.componentMaterial FROM BOMEntity b, BOMItemEntity bi " +
+           "WHERE bi.bomId = b.bomId AND b.status = 'ACTIVE'")
+    List<Object[]> findActiveEdges();
+    
+    /**
+     * 多层BOM展开（一次 WITH RECURSIVE 查询）
+     * 
+     * 每行：bom_id, component_material, 累计用量, operation_id, work_center, scrap_add_rate,
+     * is_phantom, is_subcontract, 层级, 物料路径, 是否成环。
+     * 仅取有效BOM（ACTIVE 且在有效期内）；路径中已出现的子件标记为成环且不再向下展开；
+     * 层级不超过 maxLevel。按 (BOM主键, 项目序号) 路径排序，即深度优先先序。
+     */
+    @Query(value = "WITH RECURSIVE explosion (bom_id, component_material, qty, operation_id, work_center, " +
+            "scrap_add_rate, is_phantom, is_subcontract, lvl, path, sort_key, is_cycle) AS ( " +
+            "  SELECT bi.bom_id, bi.component_material, CAST(bi.component_qty AS NUMERIC), bi.operation_id, " +
+            "         bi.work_center, bi.scrap_add_rate, bi.is_phantom, bi.is_subcontract, 1, " +
+            "         ARRAY[CAST(:material AS TEXT), CAST(bi.component_material AS TEXT)], " +
+            "         ARRAY[b.id, CAST(bi.item_sequence AS BIGINT)], " +
+            "         bi.component_material = :material " +
+            "  FROM mm_bom b JOIN mm_bom_item bi ON bi.bom_id = b.bom_id " +
+            "  WHERE b.material = :material AND b.status = 'ACTIVE' " +
+            "    AND (b.validity_start IS NULL OR b.validity_start <= CURRENT_TIMESTAMP) " +
+            "    AND (b.validity_end IS NULL OR b.validity_end >= CURRENT_TIMESTAMP) " +
+            "  UNION ALL " +
+            "  SELECT bi.bom_id, bi.component_material, e.qty * bi.component_qty, bi.operation_id, " +
+            "         bi.work_center, bi.scrap_add_rate, bi.is_phantom, bi.is_subcontract, e.lvl + 1, " +
+            "         e.path || CAST(bi.component_material AS TEXT), " +
+            "         e.sort_key || ARRAY[b.id, CAST(bi.item_sequence AS BIGINT)], " +
+            "         CAST(bi.component_material AS TEXT) = ANY(e.path) " +
+            "  FROM explosion e " +
+            "  JOIN mm_bom b ON b.material = e.component_material AND b.status = 'ACTIVE' " +
+            "    AND (b.validity_start IS NULL OR b.validity_start <= CURRENT_TIMESTAMP) " +
+            "    AND (b.validity_end IS NULL OR b.validity_end >= CURRENT_TIMESTAMP) " +
+            "  JOIN mm_bom_item bi ON bi.bom_id = b.bom_id " +
+            "  WHERE e.lvl < :maxLevel AND NOT e.is_cycle " +
+            ") " +
+            "SELECT bom_id, component_material, qty, operation_id, work_center, scrap_add_rate, " +
+            "       is_phantom, is_subcontract, lvl, array_to_string(path, '/'), is_cycle " +
+            "FROM explosion ORDER BY sort_key",
+            nativeQuery = true)
+    List<Object[]> explodeRecursive(@Param("material") String material, @Param("maxLevel") int maxLevel);
 }
@@ -0,0 +1,60 @@
+package com.hjscm.mdm.repository;
+
+import com.hjscm.mdm.entity.BOMVersionItemEntity;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * BOM版本子件Repository
+ */
+@Repository
+public interface BOMVersionItemRepository extends JpaRepository<BOMVersionItemEntity, Long> {
+    
+    List<BOMVersionItemEntity> findByVersionIdOrderByItemSequenceAsc(Long versionId);
+    
+    /**
+     * 按版本快照多层展开（一次 WITH RECURSIVE 查询）
+     * 
+     * 每个BOM取发布序号 pin 之内、asOf 时点生效的版本（最晚生效者，同时点取最后发布者，同 BOMVersionRepository.findEffective），
+     * 仅展开其中 ACTIVE 且未过期者；
+     * 输出列与 BOMItemRepository.explodeRecursive 相同。
+     */
+    @Query(value = "WITH RECURSIVE effective AS ( " +
+            "  SELECT DISTINCT ON (v.bom_id) v.id, v.bom_id, v.material, v.status, v.effective_to " +
+            "  FROM mm_bom_version v WHERE v.id <= :pin AND v.effective_from <= :asOf " +
+            "  ORDER BY v.bom_id, v.effective_from DESC, v.id DESC " +
+            "), active AS ( " +
+            "  SELECT id, bom_id, material FROM effective " +
+            "  WHERE status = 'ACTIVE' AND (effective_to IS NULL OR effective_to >= :asOf) " +
+            "), explosion (bom_id, component_material, qty, operation_id, work_center, " +
+            "scrap_add_rate, is_phantom, is_subcontract, lvl, path, sort_key, is_cycle) AS ( " +
+            "  SELECT a.bom_id, vi.component_material, CAST(vi.component_qty AS NUMERIC), vi.operation_id, " +
+            "         vi.work_center, vi.scrap_add_rate, vi.is_phantom, vi.is_subcontract, 1, " +
+            "         ARRAY[CAST(:material AS TEXT), CAST(vi.component_material AS TEXT)], " +
+            "         ARRAY[a.id, CAST(vi.item_sequence AS BIGINT)], " +
+            "         vi.component_material = :material " +
+            "  FROM active a JOIN mm_bom_version_item vi ON vi.version_id = a.id " +
+            "  WHERE a.material = :material " +
+            "  UNION ALL " +
+            "  SELECT a.bom_id, vi.component_material, e.qty * vi.component_qty, vi.operation_id, " +
+            "         vi.work_center, vi.scrap_add_rate, vi.is_phantom, vi.is_subcontract, e.lvl + 1, " +
+            "         e.path || CAST(vi.component_material AS TEXT), " +
+            "         e.sort_key || ARRAY[a.id, CAST(vi.item_sequence AS BIGINT)], " +
+            "         CAST(vi.component_material AS TEXT) = ANY(e.path) " +
+            "  FROM explosion e " +
+            "  JOIN active a ON a.material = e.component_material " +
+            "  JOIN mm_bom_version_item vi ON vi.version_id = a.id " +
+            "  WHERE e.lvl < :maxLevel AND NOT e.is_cycle " +
+            ") " +
+            "SELECT bom_id, component_material, qty, operation_id, work_center, scrap_add_rate, " +
+            "       is_phantom, is_subcontract, lvl, array_to_string(path, '/'), is_cycle " +
+            "FROM explosion ORDER BY sort_key",
+            nativeQuery = true)
+    List<Object[]> explodeRecursiveAsOf(@Param("material") String material, @Param("maxLevel") int maxLevel,
+                                        @Param("asOf") LocalDateTime asOf, @Param("pin") long pin);
+}
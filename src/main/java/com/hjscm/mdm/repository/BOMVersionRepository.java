@@ -0,0 +1,53 @@
+package com.hjscm.mdm.repository;
+
+import com.hjscm.mdm.entity.BOMVersionEntity;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * BOM版本Repository
+ */
+@Repository
+public interface BOMVersionRepository extends JpaRepository<BOMVersionEntity, Long> {
+    
+    List<BOMVersionEntity> findByBomIdOrderByVersionNoAsc(String bomId);
+    
+    /**
+     * 最新发布序号（读者钉住的快照上限），无版本时为 0
+     */
+    @Query("SELECT COALESCE(MAX(v.id), 0) FROM BOMVersionEntity v")
+    long findLatestPin();
+    
+    /**
+     * 发布锁（事务级 advisory lock，提交 / 回滚时释放）
+     * 
+     * 发布串行化使发布序号按提交顺序递增：读者看到序号 P 时，序号不大于 P 的版本都已提交，
+     * 钉住 P 后再读不会出现新的旧序号版本。
+     */
+    @Query(value = "SELECT 1 FROM (SELECT pg_advisory_xact_lock(:lockKey)) l", nativeQuery = true)
+    Integer acquirePublishLock(@Param("lockKey") long lockKey);
+    
+    @Query("SELECT COALESCE(MAX(v.versionNo), 0) FROM BOMVersionEntity v WHERE v.bomId = :bomId")
+    int findMaxVersionNo(@Param("bomId") String bomId);
+    
+    /**
+     * 发布序号 pin 之内、asOf 时点生效的版本
+     * 
+     * 取 effective_from 不晚于 asOf 的最晚生效者，同一生效时点取最后发布者：
+     * 预先发布的未来版本到期后生效，不会被其后发布、生效更早的版本遮盖。
+     */
+    @Query("SELECT v FROM BOMVersionEntity v WHERE v.id = (" +
+           "SELECT MAX(v2.id) FROM BOMVersionEntity v2 WHERE v2.bomId = :bomId AND v2.id <= :pin " +
+           "AND v2.effectiveFrom = (" +
+           "SELECT MAX(v3.effectiveFrom) FROM BOMVersionEntity v3 WHERE v3.bomId = :bomId " +
+           "AND v3.id <= :pin AND v3.effectiveFrom <= :asOf))")
+    Optional<BOMVersionEntity> findEffective(@Param("bomId") String bomId,
+                                             @Param("asOf") LocalDateTime asOf,
+                                             @Param("pin") long pin);
+}
@@ -0,0 +1,92 @@
+package com.hjscm.mdm.repository;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Repository;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * BOM反查闭包Repository（mm_bom_where_used，JDBC 批量增量写入）
+ *
+ * 表结构见 sql/bom_where_used.sql
+ */
+@Repository
+public class BOMWhereUsedRepository {
+
+    private static final String UPSERT =
+        "INSERT INTO mm_bom_where_used (ancestor_material, descendant_material, path_count) VALUES (?, ?, ?) " +
+        "ON CONFLICT (descendant_material, ancestor_material) " +
+        "DO UPDATE SET path_count = mm_bom_where_used.path_count + EXCLUDED.path_count";
+
+    private static final String DELETE_UNREACHABLE =
+        "DELETE FROM mm_bom_where_used WHERE descendant_material = ? AND path_count <= 0";
+
+    private static final String NEXT_VERSION =
+        "UPDATE mm_bom_where_used_version SET version = version + 1 WHERE id = 1 RETURNING version";
+
+    private static final int BATCH_SIZE = 500;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public BOMWhereUsedRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * 逐行读取全部闭包（ancestor, descendant, path_count）
+     */
+    public void forEach(ClosureRowHandler handler) {
+        jdbcTemplate.query("SELECT ancestor_material, descendant_material, path_count FROM mm_bom_where_used",
+            (RowCallbackHandler) rs -> handler.accept(rs.getString(1), rs.getString(2), rs.getLong(3)));
+    }
+
+    /**
+     * 按路径条数增量更新闭包：descendant → (ancestor → 增量)，减到 0 的行删除
+     */
+    public void applyDeltas(Map<String, Map<String, Long>> deltas) {
+        List<Object[]> rows = new ArrayList<>();
+        deltas.forEach((descendant, byAncestor) -> byAncestor.forEach((ancestor, delta) -> {
+            if (delta != 0) {
+                rows.add(new Object[] {ancestor, descendant, delta});
+            }
+        }));
+        if (rows.isEmpty()) {
+            return;
+        }
+        for (int from = 0; from < rows.size(); from += BATCH_SIZE) {
+            jdbcTemplate.batchUpdate(UPSERT, rows.subList(from, Math.min(rows.size(), from + BATCH_SIZE)));
+        }
+        List<Object[]> descendants = new ArrayList<>(deltas.size());
+        for (String descendant : deltas.keySet()) {
+            descendants.add(new Object[] {descendant});
+        }
+        jdbcTemplate.batchUpdate(DELETE_UNREACHABLE, descendants);
+    }
+
+    /**
+     * 当前闭包版本（已提交）
+     */
+    public long currentVersion() {
+        Long version = jdbcTemplate.queryForObject("SELECT version FROM mm_bom_where_used_version WHERE id = 1",
+            Long.class);
+        return version != null ? version : 0L;
+    }
+
+    /**
+     * 递增闭包版本并持有版本行锁至事务结束（各节点写闭包串行化）
+     *
+     * @return 本次写入的版本号，持久化的上一版本为其减一
+     */
+    public long nextVersion() {
+        Long version = jdbcTemplate.queryForObject(NEXT_VERSION, Long.class);
+        return version != null ? version : 0L;
+    }
+
+    @FunctionalInterface
+    public interface ClosureRowHandler {
+        void accept(String ancestor, String descendant, long pathCount);
+    }
+}
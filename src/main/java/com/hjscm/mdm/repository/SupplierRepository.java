@@ -6,6 +6,7 @@ import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -25,6 +26,8 @@ public interface SupplierRepository extends JpaRepository<SupplierEntity, Long>
     
     List<SupplierEntity> findByStatus(String status);
     
+    List<SupplierEntity> findBySupplierIdInAndStatus(Collection<String> supplierIds, String status);
+    
     @Query("SELECT s FROM SupplierEntity s WHERE s.supplierName LIKE %:keyword% OR s.supplierId LIKE %:keyword%")
     List<SupplierEntity> searchByKeyword(@Param("keyword") String keyword);
     
@@ -33,4 +36,10 @@ public interface SupplierRepository extends JpaRepository<SupplierEntity, Long>
     
     @Query("SELECT COUNT(s) FROM SupplierEntity s WHERE s.status = :status")
     long countByStatus(@Param("status") String status);
+    
+    /**
+     * 供应商水位（行数、整行哈希合计），用于 MRP 运行缓存指纹
+     */
+    @Query(value = "SELECT COUNT(*), SUM(CAST(CAST('x' || SUBSTR(MD5(CAST(s AS TEXT)), 1, 16) AS BIT(64)) AS BIGINT)) FROM mm_supplier s", nativeQuery = true)
+    List<Object[]> findWatermark();
 }
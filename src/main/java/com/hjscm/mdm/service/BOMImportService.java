@@ -0,0 +1,461 @@
+package com.hjscm.mdm.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hjscm.event.BomChangeEvent;
+import com.hjscm.mdm.dto.BOMDTO;
+import com.hjscm.mdm.dto.BOMImportResultDTO;
+import com.hjscm.mdm.dto.BOMItemDTO;
+import com.hjscm.mdm.entity.BOMEntity;
+import com.hjscm.mdm.entity.BOMItemEntity;
+import com.hjscm.mdm.repository.BOMImportJdbcRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.*;
+
+/**
+ * BOM批量导入服务
+ *
+ * 输入：
+ * - CSV：首行为表头（列名同 BOMDTO / BOMItemDTO 字段），每行一个子件，bomId 相同的连续行组成一个BOM，
+ *   BOM表头字段取该组第一行；bomId 为空时每行视为一个单子件BOM
+ * - NDJSON：每行一个 BOMDTO（含 items）
+ *
+ * 逐行解析校验，内存中只保留当前BOM与当前块；每块一个事务，表头 / 子件 JDBC 批量插入，
+ * 同时发布第 1 版并更新反查索引。块失败时逐个BOM重试，失败的BOM记为行错误，不影响其余BOM。
+ */
+@Slf4j
+@Service
+public class BOMImportService {
+
+    public static final String FORMAT_CSV = "csv";
+    public static final String FORMAT_NDJSON = "ndjson";
+
+    private final BOMImportJdbcRepository importRepository;
+    private final BOMVersionService versionService;
+    private final BOMWhereUsedIndex whereUsedIndex;
+    private final ApplicationEventPublisher eventPublisher;
+    private final ObjectMapper objectMapper;
+    private final TransactionTemplate writeTx;
+
+    // 每块BOM数（一次事务）
+    @Value("${mdm.bom-import.chunk-size:500}")
+    private int chunkSize = 500;
+
+    @Value("${mdm.bom-import.item-batch-size:1000}")
+    private int itemBatchSize = 1000;
+
+    // 结果中保留的错误条数上限（errorCount 仍计全部错误）
+    @Value("${mdm.bom-import.max-reported-errors:1000}")
+    private int maxReportedErrors = 1000;
+
+    public BOMImportService(BOMImportJdbcRepository importRepository, BOMVersionService versionService,
+                            BOMWhereUsedIndex whereUsedIndex, ApplicationEventPublisher eventPublisher,
+                            ObjectMapper objectMapper, PlatformTransactionManager transactionManager) {
+        this.importRepository = importRepository;
+        this.versionService = versionService;
+        this.whereUsedIndex = whereUsedIndex;
+        this.eventPublisher = eventPublisher;
+        this.objectMapper = objectMapper;
+        this.writeTx = new TransactionTemplate(transactionManager);
+    }
+
+    /**
+     * 解析中的BOM（起始行号 + DTO）
+     */
+    private static final class PendingBom {
+        private final long line;
+        private final BOMDTO dto;
+        private String error;
+
+        PendingBom(long line, BOMDTO dto) {
+            this.line = line;
+            this.dto = dto;
+        }
+    }
+
+    /**
+     * 流式导入
+     */
+    public BOMImportResultDTO importBOMs(InputStream in, String format, String userId) throws IOException {
+        long start = System.currentTimeMillis();
+        BOMImportResultDTO result = new BOMImportResultDTO();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8), 64 * 1024);
+        List<PendingBom> chunk = new ArrayList<>(chunkSize);
+        if (FORMAT_NDJSON.equals(format)) {
+            readNdjson(reader, result, chunk, userId);
+        } else if (FORMAT_CSV.equals(format)) {
+            readCsv(reader, result, chunk, userId);
+        } else {
+            throw new IllegalArgumentException("不支持的导入格式: " + format);
+        }
+        flush(chunk, result, userId);
+
+        log.info("[BOM-Import] Done. format={}, rows={}, boms={}, items={}, failedBoms={}, errors={}, duration={}ms",
+                format, result.getTotalRows(), result.getImportedBoms(), result.getImportedItems(),
+                result.getFailedBoms(), result.getErrorCount(), System.currentTimeMillis() - start);
+        return result;
+    }
+
+    private void readNdjson(BufferedReader reader, BOMImportResultDTO result, List<PendingBom> chunk,
+                            String userId) throws IOException {
+        String text;
+        long line = 0;
+        while ((text = reader.readLine()) != null) {
+            line++;
+            if (text.isBlank()) {
+                continue;
+            }
+            result.setTotalRows(result.getTotalRows() + 1);
+            BOMDTO dto;
+            try {
+                dto = objectMapper.readValue(text, BOMDTO.class);
+            } catch (IOException e) {
+                addError(result, line, null, "JSON格式错误: " + e.getOriginalMessage());
+                result.setFailedBoms(result.getFailedBoms() + 1);
+                continue;
+            }
+            accept(new PendingBom(line, dto), chunk, result, userId);
+        }
+    }
+
+    private void readCsv(BufferedReader reader, BOMImportResultDTO result, List<PendingBom> chunk,
+                         String userId) throws IOException {
+        long[] line = {0};
+        List<String> header = readCsvRecord(reader, line);
+        if (header == null) {
+            return;
+        }
+        Map<String, Integer> columns = new HashMap<>();
+        for (int i = 0; i < header.size(); i++) {
+            columns.put(header.get(i).trim(), i);
+        }
+
+        PendingBom current = null;
+        List<String> record;
+        while ((record = readCsvRecord(reader, line)) != null) {
+            if (record.size() == 1 && record.get(0).isBlank()) {
+                continue;
+            }
+            result.setTotalRows(result.getTotalRows() + 1);
+            String bomId = blankToNull(field(record, columns, "bomId"));
+            if (current == null || bomId == null || !bomId.equals(current.dto.getBomId())) {
+                if (current != null) {
+                    accept(current, chunk, result, userId);
+                }
+                current = new PendingBom(line[0], new BOMDTO());
+                current.dto.setItems(new ArrayList<>());
+            }
+            try {
+                if (current.dto.getItems().isEmpty()) {
+                    BOMDTO dto = current.dto;
+                    dto.setBomId(bomId);
+                    dto.setBomName(blankToNull(field(record, columns, "bomName")));
+                    dto.setMaterial(blankToNull(field(record, columns, "material")));
+                    dto.setBomUsage(decimal(field(record, columns, "bomUsage")));
+                    dto.setBomUnit(blankToNull(field(record, columns, "bomUnit")));
+                    String level = blankToNull(field(record, columns, "bomLevel"));
+                    dto.setBomLevel(level != null ? Integer.valueOf(level.trim()) : null);
+                    dto.setValidityStart(dateTime(field(record, columns, "validityStart")));
+                    dto.setValidityEnd(dateTime(field(record, columns, "validityEnd")));
+                    dto.setAlternativeGroup(blankToNull(field(record, columns, "alternativeGroup")));
+                }
+                BOMItemDTO item = new BOMItemDTO();
+                item.setComponentMaterial(blankToNull(field(record, columns, "componentMaterial")));
+                item.setComponentQty(decimal(field(record, columns, "componentQty")));
+                item.setOperationId(blankToNull(field(record, columns, "operationId")));
+                item.setWorkCenter(blankToNull(field(record, columns, "workCenter")));
+                item.setScrapAddRate(decimal(field(record, columns, "scrapAddRate")));
+                item.setIsPhantom(bool(field(record, columns, "isPhantom")));
+                item.setIsSubcontract(bool(field(record, columns, "isSubcontract")));
+                current.dto.getItems().add(item);
+            } catch (RuntimeException e) {
+                // 同一BOM只报告第一处错误，整组不导入
+                if (current.error == null) {
+                    current.error = "第" + line[0] + "行格式错误: " + e.getMessage();
+                }
+            }
+        }
+        if (current != null) {
+            accept(current, chunk, result, userId);
+        }
+    }
+
+    /**
+     * 校验一个BOM，通过则加入当前块，块满即写入
+     */
+    private void accept(PendingBom pending, List<PendingBom> chunk, BOMImportResultDTO result, String userId) {
+        String error = pending.error != null ? pending.error : validate(pending.dto);
+        if (error == null) {
+            for (PendingBom other : chunk) {
+                if (pending.dto.getBomId() != null && pending.dto.getBomId().equals(other.dto.getBomId())) {
+                    error = "BOM编码在文件中重复: " + pending.dto.getBomId();
+                    break;
+                }
+            }
+        }
+        if (error != null) {
+            addError(result, pending.line, pending.dto.getBomId(), error);
+            result.setFailedBoms(result.getFailedBoms() + 1);
+            return;
+        }
+        chunk.add(pending);
+        if (chunk.size() >= chunkSize) {
+            flush(chunk, result, userId);
+        }
+    }
+
+    private static String validate(BOMDTO dto) {
+        if (dto.getMaterial() == null || dto.getMaterial().isBlank()) {
+            return "父级物料不能为空";
+        }
+        if (dto.getBomLevel() != null && (dto.getBomLevel() < 1 || dto.getBomLevel() > 10)) {
+            return "BOM层级须在1-10之间: " + dto.getBomLevel();
+        }
+        if (dto.getBomName() != null && dto.getBomName().length() > 200) {
+            return "BOM名称长度不能超过200";
+        }
+        if (dto.getItems() == null || dto.getItems().isEmpty()) {
+            return "BOM子件为空";
+        }
+        for (BOMItemDTO item : dto.getItems()) {
+            if (item.getComponentMaterial() == null || item.getComponentMaterial().isBlank()) {
+                return "子件物料不能为空";
+            }
+            if (item.getComponentQty() == null || item.getComponentQty().signum() <= 0) {
+                return "子件用量须大于0: " + item.getComponentMaterial();
+            }
+            if (item.getComponentMaterial().equals(dto.getMaterial())) {
+                return "子件不能为父级物料本身: " + item.getComponentMaterial();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 写入一块：先剔除库中已存在的编码，整块一个事务；失败时逐个BOM重试
+     */
+    private void flush(List<PendingBom> chunk, BOMImportResultDTO result, String userId) {
+        if (chunk.isEmpty()) {
+            return;
+        }
+        LocalDateTime now = LocalDateTime.now();
+        for (PendingBom pending : chunk) {
+            if (pending.dto.getBomId() == null || pending.dto.getBomId().isBlank()) {
+                pending.dto.setBomId(generateBOMId());
+            }
+        }
+        Set<String> existing = new HashSet<>(importRepository.findExistingBomIds(
+                chunk.stream().map(p -> p.dto.getBomId()).toList()));
+        List<PendingBom> writable = new ArrayList<>(chunk.size());
+        for (PendingBom pending : chunk) {
+            if (existing.contains(pending.dto.getBomId())) {
+                addError(result, pending.line, pending.dto.getBomId(), "BOM编码已存在: " + pending.dto.getBomId());
+                result.setFailedBoms(result.getFailedBoms() + 1);
+            } else {
+                writable.add(pending);
+            }
+        }
+        chunk.clear();
+
+        try {
+            writeTx.executeWithoutResult(status -> insertChunk(writable, userId, now));
+            countImported(writable, result);
+        } catch (RuntimeException e) {
+            log.warn("[BOM-Import] Chunk failed, retrying BOM by BOM. boms={}, error={}", writable.size(), e.getMessage());
+            for (PendingBom pending : writable) {
+                try {
+                    writeTx.executeWithoutResult(status -> insertChunk(List.of(pending), userId, now));
+                    countImported(List.of(pending), result);
+                } catch (RuntimeException single) {
+                    addError(result, pending.line, pending.dto.getBomId(), rootMessage(single));
+                    result.setFailedBoms(result.getFailedBoms() + 1);
+                }
+            }
+        }
+    }
+
+    private void insertChunk(List<PendingBom> boms, String userId, LocalDateTime now) {
+        if (boms.isEmpty()) {
+            return;
+        }
+        List<BOMEntity> headers = new ArrayList<>(boms.size());
+        List<BOMItemEntity> items = new ArrayList<>();
+        List<BOMWhereUsedIndex.Edge> edges = new ArrayList<>();
+        for (PendingBom pending : boms) {
+            BOMDTO dto = pending.dto;
+            BOMEntity bom = new BOMEntity();
+            bom.setBomId(dto.getBomId());
+            bom.setBomName(dto.getBomName() != null ? dto.getBomName() : dto.getMaterial());
+            bom.setMaterial(dto.getMaterial());
+            bom.setBomUsage(dto.getBomUsage() != null ? dto.getBomUsage() : BigDecimal.ONE);
+            bom.setBomUnit(dto.getBomUnit());
+            bom.setBomLevel(dto.getBomLevel() != null ? dto.getBomLevel() : 1);
+            bom.setValidityStart(dto.getValidityStart());
+            bom.setValidityEnd(dto.getValidityEnd());
+            bom.setAlternativeGroup(dto.getAlternativeGroup());
+            bom.setStatus("ACTIVE");
+            bom.setCreatedBy(userId);
+            bom.setCreatedTime(now);
+            headers.add(bom);
+
+            int seq = 1;
+            for (BOMItemDTO itemDto : dto.getItems()) {
+                BOMItemEntity item = new BOMItemEntity();
+                item.setBomId(dto.getBomId());
+                item.setComponentMaterial(itemDto.getComponentMaterial());
+                item.setComponentQty(itemDto.getComponentQty());
+                item.setOperationId(itemDto.getOperationId());
+                item.setWorkCenter(itemDto.getWorkCenter());
+                item.setScrapAddRate(itemDto.getScrapAddRate() != null ? itemDto.getScrapAddRate() : BigDecimal.ZERO);
+                item.setIsPhantom(itemDto.getIsPhantom() != null ? itemDto.getIsPhantom() : Boolean.FALSE);
+                item.setIsSubcontract(itemDto.getIsSubcontract() != null ? itemDto.getIsSubcontract() : Boolean.FALSE);
+                item.setItemSequence(seq++);
+                item.setCreatedBy(userId);
+                item.setCreatedTime(now);
+                items.add(item);
+                edges.add(new BOMWhereUsedIndex.Edge(dto.getMaterial(), itemDto.getComponentMaterial()));
+            }
+        }
+
+        importRepository.insertBoms(headers);
+        importRepository.insertItems(items, itemBatchSize);
+        versionService.lockPublication();
+        importRepository.insertInitialVersions(headers.stream().map(BOMEntity::getBomId).toList());
+        whereUsedIndex.applyChanges(List.of(), edges);
+        // 每块一个事件（提交后 MRP BOM 快照、运行缓存失效）
+        eventPublisher.publishEvent(BomChangeEvent.builder()
+                .bomId(boms.size() == 1 ? boms.get(0).dto.getBomId() : null)
+                .changeType("IMPORT")
+                .userId(userId)
+                .occurredAt(now)
+                .build());
+    }
+
+    private static void countImported(List<PendingBom> boms, BOMImportResultDTO result) {
+        long items = 0;
+        for (PendingBom pending : boms) {
+            items += pending.dto.getItems().size();
+        }
+        result.setImportedBoms(result.getImportedBoms() + boms.size());
+        result.setImportedItems(result.getImportedItems() + items);
+    }
+
+    private void addError(BOMImportResultDTO result, long line, String bomId, String message) {
+        result.setErrorCount(result.getErrorCount() + 1);
+        if (result.getErrors().size() < maxReportedErrors) {
+            result.getErrors().add(new BOMImportResultDTO.RowError(line, bomId, message));
+        }
+    }
+
+    /**
+     * 读取一条 CSV 记录（支持双引号转义及引号内换行），文件结束返回 null
+     */
+    static List<String> readCsvRecord(BufferedReader reader, long[] line) throws IOException {
+        String text = reader.readLine();
+        if (text == null) {
+            return null;
+        }
+        line[0]++;
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        int i = 0;
+        while (true) {
+            if (i >= text.length()) {
+                if (!quoted) {
+                    break;
+                }
+                // 引号内换行：续读下一行
+                String next = reader.readLine();
+                if (next == null) {
+                    throw new IOException("第" + line[0] + "行引号未闭合");
+                }
+                line[0]++;
+                field.append('\n');
+                text = next;
+                i = 0;
+                continue;
+            }
+            char c = text.charAt(i++);
+            if (quoted) {
+                if (c == '"') {
+                    if (i < text.length() && text.charAt(i) == '"') {
+                        field.append('"');
+                        i++;
+                    } else {
+                        quoted = false;
+                    }
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+
+    private static String field(List<String> record, Map<String, Integer> columns, String name) {
+        Integer index = columns.get(name);
+        return index != null && index < record.size() ? record.get(index) : null;
+    }
+
+    private static String blankToNull(String value) {
+        return value == null || value.isBlank() ? null : value.trim();
+    }
+
+    private static BigDecimal decimal(String value) {
+        String text = blankToNull(value);
+        return text != null ? new BigDecimal(text) : null;
+    }
+
+    private static Boolean bool(String value) {
+        String text = blankToNull(value);
+        if (text == null) {
+            return null;
+        }
+        return "true".equalsIgnoreCase(text) || "1".equals(text) || "Y".equalsIgnoreCase(text);
+    }
+
+    private static LocalDateTime dateTime(String value) {
+        String text = blankToNull(value);
+        if (text == null) {
+            return null;
+        }
+        return text.length() <= 10 ? LocalDate.parse(text).atStartOfDay() : LocalDateTime.parse(text);
+    }
+
+    private static String rootMessage(Throwable e) {
+        Throwable root = e;
+        while (root.getCause() != null) {
+            root = root.getCause();
+        }
+        return root.getMessage();
+    }
+
+    private static String generateBOMId() {
+        // 批量导入同日可生成数万编码，随机段取 12 位避免碰撞
+        String date = LocalDateTime.now().toLocalDate().toString().replace("-", "");
+        String uuid = UUID.randomUUID().toString().replace("-", "").substring(0, 12).toUpperCase();
+        return "BOM-" + date + "-" + uuid;
+    }
+}
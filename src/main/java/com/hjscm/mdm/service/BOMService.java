@@ -1,31 +1,48 @@
 package com.hjscm.mdm.service;
 
+import com.hjscm.event.BomChangeEvent;
 import com.hjscm.mdm.entity.BOMEntity;
 import com.hjscm.mdm.entity.BOMItemEntity;
 import com.hjscm.mdm.repository.BOMRepository;
 import com.hjscm.mdm.repository.BOMItemRepository;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.BeanUtils;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.math.BigDecimal;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
 import java.util.UUID;
 
 /**
  * BOM服务
  */
+@Slf4j
 @Service
 @Transactional
 public class BOMService {
     
+    // 展开层数上限（防止异常数据导致递归查询失控）
+    private static final int MAX_EXPLODE_LEVEL = 50;
+    
     private final BOMRepository bomRepository;
     private final BOMItemRepository bomItemRepository;
+    private final BOMWhereUsedIndex whereUsedIndex;
+    private final BOMVersionService versionService;
+    private final ApplicationEventPublisher eventPublisher;
     
-    public BOMService(BOMRepository bomRepository, BOMItemRepository bomItemRepository) {
+    public BOMService(BOMRepository bomRepository, BOMItemRepository bomItemRepository,
+                      BOMWhereUsedIndex whereUsedIndex, BOMVersionService versionService,
+                      ApplicationEventPublisher eventPublisher) {
         this.bomRepository = bomRepository;
         this.bomItemRepository = bomItemRepository;
+        this.whereUsedIndex = whereUsedIndex;
+        this.versionService = versionService;
+        this.eventPublisher = eventPublisher;
     }
     
     /**
@@ -54,19 +71,46 @@ public class BOMService {
             }
         }
         
+        whereUsedIndex.applyChanges(List.of(), edgesOf(savedBOM, items));
+        versionService.publish(savedBOM, items, savedBOM.getValidityStart(), userId);
+        publishChange(savedBOM, "CREATE", userId);
         return savedBOM;
     }
     
     /**
      * 更新BOM
+     * 
+     * 同时发布新版本。生效日期晚于当前时间时为预先发布的工程变更：只发布版本，
+     * 工作副本（表头及 mm_bom_item）保持当前生产口径，到期后按版本读取的读者才看到。
      */
     public BOMEntity updateBOM(String bomId, BOMEntity dto, List<BOMItemEntity> items, String userId) {
         BOMEntity entity = bomRepository.findByBomId(bomId)
                 .orElseThrow(() -> new RuntimeException("BOM不存在: " + bomId));
+        List<BOMItemEntity> oldItems = bomItemRepository.findByBomIdOrderByItemSequenceAsc(bomId);
+        LocalDateTime now = LocalDateTime.now();
+        
+        if (dto.getValidityStart() != null && dto.getValidityStart().isAfter(now)) {
+            BOMEntity scheduled = new BOMEntity();
+            BeanUtils.copyProperties(entity, scheduled);
+            BeanUtils.copyProperties(dto, scheduled);
+            scheduled.setBomId(bomId);
+            List<BOMItemEntity> scheduledItems = items != null ? items : oldItems;
+            int seq = 1;
+            for (BOMItemEntity item : scheduledItems) {
+                item.setBomId(bomId);
+                item.setItemSequence(seq++);
+            }
+            versionService.publish(scheduled, scheduledItems, dto.getValidityStart(), userId);
+            // 工作副本未变，不发布 BomChangeEvent（BOM 图快照 / 运行缓存均基于工作副本）
+            log.info("[BOM] Engineering change scheduled. bomId={}, effectiveFrom={}", bomId, dto.getValidityStart());
+            return entity;
+        }
+        
+        List<BOMWhereUsedIndex.Edge> oldEdges = edgesOf(entity, oldItems);
         
         BeanUtils.copyProperties(dto, entity);
         entity.setUpdatedBy(userId);
-        entity.setUpdatedTime(LocalDateTime.now());
+        entity.setUpdatedTime(now);
         
         // 更新子件
         if (items != null) {
@@ -80,7 +124,12 @@ public class BOMService {
             }
         }
         
-        return bomRepository.save(entity);
+        BOMEntity savedBOM = bomRepository.save(entity);
+        List<BOMItemEntity> newItems = items != null ? items : oldItems;
+        whereUsedIndex.applyChanges(oldEdges, edgesOf(savedBOM, newItems));
+        versionService.publish(savedBOM, newItems, now, userId);
+        publishChange(savedBOM, "UPDATE", userId);
+        return savedBOM;
     }
     
     /**
@@ -128,48 +177,55 @@ public class BOMService {
     
     /**
      * 展开BOM（多层级）
+     * 
+     * 整个多层结构由一次递归 CTE 查询取回（见 BOMItemRepository.explodeRecursive），
+     * 结果按深度优先先序排列：componentQty 为相对顶层物料的累计用量，itemSequence 为层级。
+     * 成环的子件保留在结果中但不再向下展开。
      */
     @Transactional(readOnly = true)
     public List<BOMItemEntity> explodeBOM(String material, int maxLevel) {
-        List<BOMItemEntity> result = new ArrayList<>();
-        explodeBOMRecursive(material, 1, maxLevel, 1.0, result);
-        return result;
-    }
-    
-    private void explodeBOMRecursive(String material, int currentLevel, int maxLevel, 
-                                     java.math.BigDecimal parentQty, List<BOMItemEntity> result) {
-        if (currentLevel > maxLevel) {
-            return;
+        int levels = Math.min(maxLevel, MAX_EXPLODE_LEVEL);
+        if (levels < 1) {
+            return new ArrayList<>();
         }
         
-        List<BOMEntity> boms = getActiveBOMsByMaterial(material);
-        if (boms.isEmpty()) {
-            return;
+        return toExplodedItems(material, bomItemRepository.explodeRecursive(material, levels));
+    }
+    
+    /**
+     * 按版本快照展开BOM（多层级）
+     * 
+     * 各BOM取发布序号 pin 之内、asOf 时点生效的版本；同一 pin 反复读取结果一致，不受并发编辑影响。
+     */
+    @Transactional(readOnly = true)
+    public List<BOMItemEntity> explodeBOM(String material, int maxLevel, LocalDateTime asOf, long pin) {
+        int levels = Math.min(maxLevel, MAX_EXPLODE_LEVEL);
+        if (levels < 1) {
+            return new ArrayList<>();
         }
-        
-        for (BOMEntity bom : boms) {
-            List<BOMItemEntity> items = bomItemRepository.findByBomIdOrderByItemSequenceAsc(bom.getBomId());
-            for (BOMItemEntity item : items) {
-                // 计算需求量
-                java.math.BigDecimal requiredQty = parentQty.multiply(item.getComponentQty());
-                
-                // 创建展开结果
-                BOMItemEntity explodedItem = new BOMItemEntity();
-                explodedItem.setComponentMaterial(item.getComponentMaterial());
-                explodedItem.setComponentQty(requiredQty);
-                explodedItem.setBomId(bom.getBomId());
-                explodedItem.setOperationId(item.getOperationId());
-                explodedItem.setScrapAddRate(item.getScrapAddRate());
-                explodedItem.setItemSequence(currentLevel);
-                
-                result.add(explodedItem);
-                
-                // 递归展开子件
-                if (currentLevel < maxLevel) {
-                    explodeBOMRecursive(item.getComponentMaterial(), currentLevel + 1, maxLevel, requiredQty, result);
-                }
+        return toExplodedItems(material, versionService.explodeAsOf(material, levels, asOf, pin));
+    }
+    
+    private List<BOMItemEntity> toExplodedItems(String material, List<Object[]> rows) {
+        List<BOMItemEntity> result = new ArrayList<>(rows.size());
+        for (Object[] row : rows) {
+            BOMItemEntity explodedItem = new BOMItemEntity();
+            explodedItem.setBomId((String) row[0]);
+            explodedItem.setComponentMaterial((String) row[1]);
+            explodedItem.setComponentQty((BigDecimal) row[2]);
+            explodedItem.setOperationId((String) row[3]);
+            explodedItem.setWorkCenter((String) row[4]);
+            explodedItem.setScrapAddRate((BigDecimal) row[5]);
+            explodedItem.setIsPhantom((Boolean) row[6]);
+            explodedItem.setIsSubcontract((Boolean) row[7]);
+            explodedItem.setItemSequence(((Number) row[8]).intValue());
+            result.add(explodedItem);
+            
+            if (Boolean.TRUE.equals(row[10])) {
+                log.warn("[BOM] Cycle detected during explosion. material={}, path={}", material, row[9]);
             }
         }
+        return result;
     }
     
     /**
@@ -178,11 +234,51 @@ public class BOMService {
     public void deleteBOM(String bomId, String userId) {
         BOMEntity entity = bomRepository.findByBomId(bomId)
                 .orElseThrow(() -> new RuntimeException("BOM不存在: " + bomId));
+        List<BOMWhereUsedIndex.Edge> oldEdges = edgesOf(entity,
+                bomItemRepository.findByBomIdOrderByItemSequenceAsc(bomId));
         
         entity.setStatus("INACTIVE");
         entity.setUpdatedBy(userId);
         entity.setUpdatedTime(LocalDateTime.now());
         bomRepository.save(entity);
+        whereUsedIndex.applyChanges(oldEdges, List.of());
+        versionService.publish(entity, List.of(), null, userId);
+        publishChange(entity, "DELETE", userId);
+    }
+    
+    /**
+     * 全层级反查：直接或间接使用该物料的全部上级物料
+     */
+    @Transactional(readOnly = true)
+    public Set<String> getWhereUsed(String material, boolean topLevelOnly) {
+        return topLevelOnly ? whereUsedIndex.topLevelWhereUsed(material) : whereUsedIndex.whereUsed(material);
+    }
+    
+    /**
+     * 有效BOM的父子边（失效BOM不参与反查）
+     */
+    private static List<BOMWhereUsedIndex.Edge> edgesOf(BOMEntity bom, List<BOMItemEntity> items) {
+        if (!"ACTIVE".equals(bom.getStatus()) || items == null) {
+            return List.of();
+        }
+        List<BOMWhereUsedIndex.Edge> edges = new ArrayList<>(items.size());
+        for (BOMItemEntity item : items) {
+            edges.add(new BOMWhereUsedIndex.Edge(bom.getMaterial(), item.getComponentMaterial()));
+        }
+        return edges;
+    }
+    
+    /**
+     * 发布BOM变更事件（供 MRP BOM 快照等监听）
+     */
+    private void publishChange(BOMEntity bom, String changeType, String userId) {
+        eventPublisher.publishEvent(BomChangeEvent.builder()
+                .bomId(bom.getBomId())
+                .material(bom.getMaterial())
+                .changeType(changeType)
+                .userId(userId)
+                .occurredAt(LocalDateTime.now())
+                .build());
     }
     
     private String generateBOMId() {
@@ -0,0 +1,130 @@
+package com.hjscm.mdm.service;
+
+import com.hjscm.mdm.entity.BOMEntity;
+import com.hjscm.mdm.entity.BOMItemEntity;
+import com.hjscm.mdm.entity.BOMVersionEntity;
+import com.hjscm.mdm.entity.BOMVersionItemEntity;
+import com.hjscm.mdm.repository.BOMVersionItemRepository;
+import com.hjscm.mdm.repository.BOMVersionRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * BOM版本服务
+ * 
+ * 每次创建 / 更新 / 删除BOM都发布一个不可变版本（表头 + 全部子件），与BOM变更同一事务提交，
+ * 提交前对读者不可见，提交后整体可见。
+ * 读者先取发布序号（pin），之后按 pin + 生效日期读取，运行期间始终看到同一组版本，无需加锁。
+ */
+@Slf4j
+@Service
+@Transactional
+public class BOMVersionService {
+    
+    // pg_advisory_xact_lock 键：BOM版本发布
+    private static final long PUBLISH_LOCK_KEY = 0x424F4D5645524CL;
+    
+    private final BOMVersionRepository versionRepository;
+    private final BOMVersionItemRepository versionItemRepository;
+    
+    public BOMVersionService(BOMVersionRepository versionRepository,
+                             BOMVersionItemRepository versionItemRepository) {
+        this.versionRepository = versionRepository;
+        this.versionItemRepository = versionItemRepository;
+    }
+    
+    /**
+     * 发布新版本
+     * 
+     * @param effectiveFrom 生效日期，为空时立即生效
+     */
+    public BOMVersionEntity publish(BOMEntity bom, List<BOMItemEntity> items,
+                                    LocalDateTime effectiveFrom, String userId) {
+        versionRepository.acquirePublishLock(PUBLISH_LOCK_KEY);
+        
+        BOMVersionEntity version = new BOMVersionEntity();
+        version.setBomId(bom.getBomId());
+        version.setVersionNo(versionRepository.findMaxVersionNo(bom.getBomId()) + 1);
+        version.setMaterial(bom.getMaterial());
+        version.setBomUsage(bom.getBomUsage());
+        version.setBomUnit(bom.getBomUnit());
+        version.setStatus(bom.getStatus());
+        version.setEffectiveFrom(effectiveFrom != null ? effectiveFrom : LocalDateTime.now());
+        version.setEffectiveTo(bom.getValidityEnd());
+        version.setPublishedBy(userId);
+        BOMVersionEntity saved = versionRepository.save(version);
+        
+        if (items != null && !items.isEmpty()) {
+            List<BOMVersionItemEntity> versionItems = new ArrayList<>(items.size());
+            for (BOMItemEntity item : items) {
+                BOMVersionItemEntity versionItem = new BOMVersionItemEntity();
+                versionItem.setVersionId(saved.getId());
+                versionItem.setComponentMaterial(item.getComponentMaterial());
+                versionItem.setComponentQty(item.getComponentQty());
+                versionItem.setOperationId(item.getOperationId());
+                versionItem.setWorkCenter(item.getWorkCenter());
+                versionItem.setScrapAddRate(item.getScrapAddRate());
+                versionItem.setIsPhantom(item.getIsPhantom());
+                versionItem.setIsSubcontract(item.getIsSubcontract());
+                versionItem.setItemSequence(item.getItemSequence());
+                versionItems.add(versionItem);
+            }
+            versionItemRepository.saveAll(versionItems);
+        }
+        
+        log.info("[BOM] Version published. bomId={}, version={}, pin={}, status={}, effectiveFrom={}, items={}",
+                saved.getBomId(), saved.getVersionNo(), saved.getId(), saved.getStatus(),
+                saved.getEffectiveFrom(), items != null ? items.size() : 0);
+        return saved;
+    }
+    
+    /**
+     * 获取版本发布锁（批量导入以集合方式写入版本前调用）
+     */
+    public void lockPublication() {
+        versionRepository.acquirePublishLock(PUBLISH_LOCK_KEY);
+    }
+    
+    /**
+     * 当前发布序号：读者在运行开始时取一次，整个运行按此读取
+     */
+    @Transactional(readOnly = true)
+    public long currentPin() {
+        return versionRepository.findLatestPin();
+    }
+    
+    /**
+     * 指定发布序号、时点下生效的版本
+     */
+    @Transactional(readOnly = true)
+    public Optional<BOMVersionEntity> getEffectiveVersion(String bomId, LocalDateTime asOf, long pin) {
+        return versionRepository.findEffective(bomId, asOf, pin);
+    }
+    
+    @Transactional(readOnly = true)
+    public List<BOMVersionItemEntity> getVersionItems(Long versionId) {
+        return versionItemRepository.findByVersionIdOrderByItemSequenceAsc(versionId);
+    }
+    
+    /**
+     * 版本历史
+     */
+    @Transactional(readOnly = true)
+    public List<BOMVersionEntity> getVersionHistory(String bomId) {
+        return versionRepository.findByBomIdOrderByVersionNoAsc(bomId);
+    }
+    
+    /**
+     * 按版本快照多层展开，行格式同 BOMItemRepository.explodeRecursive
+     */
+    @Transactional(readOnly = true)
+    public List<Object[]> explodeAsOf(String material, int maxLevel, LocalDateTime asOf, long pin) {
+        return versionItemRepository.explodeRecursiveAsOf(material, maxLevel, asOf, pin);
+    }
+}
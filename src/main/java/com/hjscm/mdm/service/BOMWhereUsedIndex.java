@@ -0,0 +1,422 @@
+package com.hjscm.mdm.service;
+
+import com.hjscm.mdm.repository.BOMItemRepository;
+import com.hjscm.mdm.repository.BOMWhereUsedRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.*;
+
+/**
+ * BOM反查（where-used）闭包索引
+ *
+ * 内存中保存：
+ * - 子 → 父反向邻接（边重数：同一父子出现在多个BOM / 多个子件行时计多条）
+ * - 传递闭包：后代 → 祖先 → 路径条数，以及祖先 → 后代的正向镜像
+ * 闭包同时持久化到 mm_bom_where_used（初始内容由 sql/bom_where_used.sql 回填），内存只从表加载、不重建。
+ *
+ * 增量维护：加一条边 p→c，对 p 的每个祖先 a（含 p）和 c 的每个后代 d（含 c），
+ * 路径数 (a, d) 增加 paths(a, p) × paths(c, d)；删边时减去同样的量，路径数归零即不可达。
+ * 全层级 where-used 为一次哈希查找。
+ *
+ * 一致性：
+ * - 写操作先递增闭包版本（mm_bom_where_used_version 行锁使各节点写入串行），再在调用方事务内持久化增量；
+ *   取得版本时发现持久化版本不是本节点最近一次写入，说明其他节点已修改，先从闭包表重新加载再计算增量
+ * - 读写数据库均在监视器之外进行，监视器只保护内存结构
+ * - 未提交的增量另行登记，读者只看到已提交的闭包；事务回滚时按逆操作恢复
+ * - 读者按 bom.where-used.refresh-seconds 间隔比对持久化版本，其他节点提交的变更在一个间隔内可见
+ */
+@Slf4j
+@Component
+public class BOMWhereUsedIndex {
+
+    private final BOMItemRepository bomItemRepository;
+    private final BOMWhereUsedRepository whereUsedRepository;
+
+    private final Map<String, Map<String, Integer>> parents = new HashMap<>();
+    private final Map<String, Map<String, Long>> ancestors = new HashMap<>();
+    private final Map<String, Map<String, Long>> descendants = new HashMap<>();
+    // 未提交事务的闭包增量：后代 → 祖先 → 路径数增量（读者从内存闭包中扣除）
+    private final Map<String, Map<String, Long>> uncommitted = new HashMap<>();
+    private int pendingChanges;
+    // 内存闭包对应的持久化版本（含未提交的本节点写入）
+    private long appliedVersion;
+    // 每次重新加载递增，加载前登记的事务回调不再作用于新内存
+    private long generation;
+    private long checkedAt;
+    private boolean loaded;
+
+    // 读者比对持久化闭包版本的间隔
+    @Value("${bom.where-used.refresh-seconds:60}")
+    private long refreshSeconds = 60;
+
+    public BOMWhereUsedIndex(BOMItemRepository bomItemRepository, BOMWhereUsedRepository whereUsedRepository) {
+        this.bomItemRepository = bomItemRepository;
+        this.whereUsedRepository = whereUsedRepository;
+    }
+
+    /**
+     * 父子边（父级物料 → 子件物料）
+     */
+    public static final class Edge {
+        private final String parent;
+        private final String child;
+
+        public Edge(String parent, String child) {
+            this.parent = parent;
+            this.child = child;
+        }
+
+        public String getParent() {
+            return parent;
+        }
+
+        public String getChild() {
+            return child;
+        }
+    }
+
+    /**
+     * 闭包表快照（版本 + 有效BOM边 + 闭包行），在监视器之外读取
+     */
+    private static final class Snapshot {
+        private final long version;
+        private final List<Object[]> edges;
+        private final List<Object[]> closure;
+
+        private Snapshot(long version, List<Object[]> edges, List<Object[]> closure) {
+            this.version = version;
+            this.edges = edges;
+            this.closure = closure;
+        }
+    }
+
+    /**
+     * 全层级 where-used：直接或间接使用该物料的全部上级物料
+     */
+    public Set<String> whereUsed(String material) {
+        ensureFresh();
+        synchronized (this) {
+            return new HashSet<>(committedAncestors(material).keySet());
+        }
+    }
+
+    /**
+     * 使用该物料的顶层物料（自身不再被任何BOM使用，如成品）
+     */
+    public Set<String> topLevelWhereUsed(String material) {
+        ensureFresh();
+        synchronized (this) {
+            Set<String> result = new HashSet<>();
+            for (String ancestor : committedAncestors(material).keySet()) {
+                if (committedAncestors(ancestor).isEmpty()) {
+                    result.add(ancestor);
+                }
+            }
+            return result;
+        }
+    }
+
+    /**
+     * ancestor 的BOM（任意层级）中是否含有 component
+     */
+    public boolean isUsedIn(String component, String ancestor) {
+        ensureFresh();
+        synchronized (this) {
+            return committedAncestors(component).containsKey(ancestor);
+        }
+    }
+
+    /**
+     * 应用BOM边变更（先删后加），在调用方事务内持久化闭包增量
+     *
+     * 先取版本行锁（持有至事务结束，其间闭包表不会被其他事务修改），需要时在锁内重新加载；
+     * 监视器内只计算内存增量，JDBC 读写均在监视器之外，不阻塞本节点读者。
+     *
+     * @throws RuntimeException 新增边构成循环引用时（已应用的变更先行撤销）
+     */
+    public void applyChanges(List<Edge> removed, List<Edge> added) {
+        if (removed.isEmpty() && added.isEmpty()) {
+            return;
+        }
+        long version = whereUsedRepository.nextVersion();
+        Snapshot snapshot = null;
+        if (!isApplied(version - 1)) {
+            log.info("[BOM] Where-used closure changed elsewhere or not loaded, reloading. persisted=v{}",
+                version - 1);
+            // 已持有版本行锁：读到的闭包即版本 version - 1
+            snapshot = readSnapshot(version - 1);
+        }
+
+        Map<String, Map<String, Long>> deltas = new HashMap<>();
+        List<Edge> appliedRemovals = new ArrayList<>();
+        List<Edge> appliedAdds = new ArrayList<>();
+        long gen;
+        synchronized (this) {
+            if (snapshot != null && !isApplied(version - 1)) {
+                install(snapshot);
+            }
+            try {
+                for (Edge edge : removed) {
+                    if (removeEdge(edge, deltas)) {
+                        appliedRemovals.add(edge);
+                    }
+                }
+                for (Edge edge : added) {
+                    addEdge(edge, deltas);
+                    appliedAdds.add(edge);
+                }
+            } catch (RuntimeException e) {
+                // 撤销已应用到内存的变更（持久化尚未发生）
+                undo(appliedRemovals, appliedAdds);
+                throw e;
+            }
+            appliedVersion = version;
+            gen = generation;
+            if (TransactionSynchronizationManager.isSynchronizationActive()) {
+                // 提交前对读者隐藏
+                pendingChanges++;
+                mergeDeltas(uncommitted, deltas, 1);
+                registerCompletion(deltas, appliedRemovals, appliedAdds, version, gen);
+            }
+        }
+
+        try {
+            whereUsedRepository.applyDeltas(deltas);
+        } catch (RuntimeException e) {
+            if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+                // 无事务时无回滚回调，直接撤销；有事务时由回滚回调撤销
+                synchronized (this) {
+                    if (gen == generation) {
+                        undo(appliedRemovals, appliedAdds);
+                        appliedVersion = version - 1;
+                    }
+                }
+            }
+            throw e;
+        }
+        log.debug("[BOM] Where-used index updated. version={}, removed={}, added={}, closurePairs={}",
+            version, appliedRemovals.size(), appliedAdds.size(), deltas.values().stream().mapToInt(Map::size).sum());
+    }
+
+    private void registerCompletion(Map<String, Map<String, Long>> deltas, List<Edge> appliedRemovals,
+                                    List<Edge> appliedAdds, long version, long gen) {
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                synchronized (BOMWhereUsedIndex.this) {
+                    if (gen != generation) {
+                        // 期间已从闭包表重新加载
+                        return;
+                    }
+                    pendingChanges--;
+                    mergeDeltas(uncommitted, deltas, -1);
+                    if (status == STATUS_ROLLED_BACK) {
+                        undo(appliedRemovals, appliedAdds);
+                        appliedVersion = version - 1;
+                        log.info("[BOM] Where-used changes reverted after rollback. removed={}, added={}",
+                            appliedRemovals.size(), appliedAdds.size());
+                    } else if (status == STATUS_UNKNOWN) {
+                        loaded = false;
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * 从闭包表重新加载（只读：闭包由 sql/bom_where_used.sql 回填，此后随BOM变更增量维护）
+     */
+    public void reload() {
+        // 先读版本再读闭包：期间提交的变更只会让版本显得更旧，下次比对时再加载一次
+        Snapshot snapshot = readSnapshot(whereUsedRepository.currentVersion());
+        synchronized (this) {
+            // 本节点有未提交写入，或内存已是更新版本（本节点写入已提交）时不覆盖
+            if (!loaded || (pendingChanges == 0 && snapshot.version > appliedVersion)) {
+                install(snapshot);
+            }
+        }
+    }
+
+    private Snapshot readSnapshot(long version) {
+        List<Object[]> edges = bomItemRepository.findActiveEdges();
+        List<Object[]> closure = new ArrayList<>();
+        whereUsedRepository.forEach((ancestor, descendant, pathCount) ->
+            closure.add(new Object[] {ancestor, descendant, pathCount}));
+        return new Snapshot(version, edges, closure);
+    }
+
+    /**
+     * 以快照替换内存闭包（调用方持有监视器）
+     */
+    private void install(Snapshot snapshot) {
+        parents.clear();
+        ancestors.clear();
+        descendants.clear();
+        uncommitted.clear();
+        pendingChanges = 0;
+        generation++;
+        for (Object[] row : snapshot.closure) {
+            put((String) row[0], (String) row[1], (Long) row[2]);
+        }
+        for (Object[] row : snapshot.edges) {
+            parents.computeIfAbsent((String) row[1], k -> new HashMap<>()).merge((String) row[0], 1, Integer::sum);
+        }
+        appliedVersion = snapshot.version;
+        checkedAt = System.currentTimeMillis();
+        loaded = true;
+        if (snapshot.closure.isEmpty() && !snapshot.edges.isEmpty()) {
+            log.warn("[BOM] Where-used closure table is empty but {} active BOM edges exist; " +
+                "run the back-fill in sql/bom_where_used.sql", snapshot.edges.size());
+        }
+        log.info("[BOM] Where-used index loaded. version={}, edges={}, closurePairs={}",
+            snapshot.version, snapshot.edges.size(), snapshot.closure.size());
+    }
+
+    private synchronized boolean isApplied(long version) {
+        return loaded && appliedVersion == version;
+    }
+
+    /**
+     * 读者入口：未加载时加载；超过刷新间隔且无本节点未提交写入时比对持久化版本（查询在监视器之外）
+     */
+    private void ensureFresh() {
+        long applied;
+        synchronized (this) {
+            if (loaded) {
+                long now = System.currentTimeMillis();
+                if (pendingChanges > 0 || now - checkedAt < refreshSeconds * 1000) {
+                    return;
+                }
+                checkedAt = now;
+            }
+            applied = loaded ? appliedVersion : -1;
+        }
+        if (applied < 0) {
+            reload();
+            return;
+        }
+        long persisted = whereUsedRepository.currentVersion();
+        if (persisted != applied) {
+            log.info("[BOM] Where-used closure changed on another node, reloading. local=v{}, persisted=v{}",
+                applied, persisted);
+            reload();
+        }
+    }
+
+    /**
+     * 已提交的祖先 → 路径数（内存闭包扣除未提交增量）
+     */
+    private Map<String, Long> committedAncestors(String material) {
+        Map<String, Long> up = ancestors.getOrDefault(material, Collections.emptyMap());
+        Map<String, Long> pending = uncommitted.get(material);
+        if (pending == null) {
+            return up;
+        }
+        Map<String, Long> committed = new HashMap<>(up);
+        pending.forEach((ancestor, delta) -> committed.merge(ancestor, -delta, Long::sum));
+        committed.values().removeIf(paths -> paths <= 0);
+        return committed;
+    }
+
+    private static void mergeDeltas(Map<String, Map<String, Long>> target, Map<String, Map<String, Long>> deltas,
+                                    int sign) {
+        deltas.forEach((descendant, byAncestor) -> {
+            Map<String, Long> merged = target.computeIfAbsent(descendant, k -> new HashMap<>());
+            byAncestor.forEach((ancestor, delta) -> {
+                long total = merged.getOrDefault(ancestor, 0L) + sign * delta;
+                if (total == 0) {
+                    merged.remove(ancestor);
+                } else {
+                    merged.put(ancestor, total);
+                }
+            });
+            if (merged.isEmpty()) {
+                target.remove(descendant);
+            }
+        });
+    }
+
+    private void undo(List<Edge> appliedRemovals, List<Edge> appliedAdds) {
+        Map<String, Map<String, Long>> ignored = new HashMap<>();
+        for (Edge edge : appliedAdds) {
+            removeEdge(edge, ignored);
+        }
+        for (Edge edge : appliedRemovals) {
+            addEdge(edge, ignored);
+        }
+    }
+
+    private void addEdge(Edge edge, Map<String, Map<String, Long>> deltas) {
+        if (edge.parent.equals(edge.child) || pathCount(edge.child, edge.parent) > 0) {
+            throw new RuntimeException("BOM存在循环引用: " + edge.parent + " -> " + edge.child);
+        }
+        adjust(edge, 1, deltas);
+        parents.computeIfAbsent(edge.child, k -> new HashMap<>()).merge(edge.parent, 1, Integer::sum);
+    }
+
+    private boolean removeEdge(Edge edge, Map<String, Map<String, Long>> deltas) {
+        Map<String, Integer> up = parents.get(edge.child);
+        Integer count = up != null ? up.get(edge.parent) : null;
+        if (count == null) {
+            return false;
+        }
+        if (count == 1) {
+            up.remove(edge.parent);
+            if (up.isEmpty()) {
+                parents.remove(edge.child);
+            }
+        } else {
+            up.put(edge.parent, count - 1);
+        }
+        // 边已移出邻接表；闭包中经过该边的路径数 = paths(a, p) × paths(c, d)，与边是否在邻接表无关
+        adjust(edge, -1, deltas);
+        return true;
+    }
+
+    /**
+     * 按 sign 调整经过边 p→c 的全部（祖先，后代）路径数
+     */
+    private void adjust(Edge edge, int sign, Map<String, Map<String, Long>> deltas) {
+        Map<String, Long> up = new HashMap<>(ancestors.getOrDefault(edge.parent, Collections.emptyMap()));
+        up.put(edge.parent, 1L);
+        Map<String, Long> down = new HashMap<>(descendants.getOrDefault(edge.child, Collections.emptyMap()));
+        down.put(edge.child, 1L);
+        for (Map.Entry<String, Long> d : down.entrySet()) {
+            Map<String, Long> delta = deltas.computeIfAbsent(d.getKey(), k -> new HashMap<>());
+            for (Map.Entry<String, Long> a : up.entrySet()) {
+                long paths = sign * a.getValue() * d.getValue();
+                put(a.getKey(), d.getKey(), paths);
+                delta.merge(a.getKey(), paths, Long::sum);
+            }
+        }
+    }
+
+    private long pathCount(String ancestor, String descendant) {
+        Map<String, Long> up = ancestors.get(descendant);
+        Long count = up != null ? up.get(ancestor) : null;
+        return count != null ? count : 0;
+    }
+
+    private void put(String ancestor, String descendant, long paths) {
+        Map<String, Long> up = ancestors.computeIfAbsent(descendant, k -> new HashMap<>());
+        Map<String, Long> down = descendants.computeIfAbsent(ancestor, k -> new HashMap<>());
+        long total = up.getOrDefault(ancestor, 0L) + paths;
+        if (total > 0) {
+            up.put(ancestor, total);
+            down.put(descendant, total);
+            return;
+        }
+        up.remove(ancestor);
+        down.remove(descendant);
+        if (up.isEmpty()) {
+            ancestors.remove(descendant);
+        }
+        if (down.isEmpty()) {
+            descendants.remove(ancestor);
+        }
+    }
+}
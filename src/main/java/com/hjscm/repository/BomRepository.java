@@ -1,6 +1,7 @@
 package com.hjscm.repository;
 
 import com.hjscm.entity.BomEntity;
+import com.hjscm.entity.BomLine;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
@@ -52,6 +53,12 @@ public interface BomRepository extends JpaRepository<BomEntity, String> {
     @Query("SELECT b FROM BomEntity b WHERE b.isActive = true")
     List<BomEntity> findActiveBoms();
 
+    /**
+     * 查询全部有效 BOM 行（构建 MRP BOM 图快照用）
+     */
+    @Query("SELECT l FROM BomLine l WHERE l.active = true")
+    List<BomLine> findAllActiveLines();
+
     /**
      * 检查 BOM 是否存在
      */
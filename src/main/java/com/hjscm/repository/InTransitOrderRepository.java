@@ -7,6 +7,7 @@ import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.time.LocalDate;
+import java.util.Collection;
 import java.util.List;
 
 /**
@@ -63,8 +64,32 @@ public interface InTransitOrderRepository extends JpaRepository<InTransitOrderEn
         @Param("materialCode") String materialCode,
         @Param("date") LocalDate date);
 
+    /**
+     * 批量查询指定日期后预计到货的在途订单（MrpDataContext 预取）
+     */
+    @Query("SELECT i FROM InTransitOrderEntity i WHERE i.materialCode IN :materialCodes AND i.estimatedArrivalDate > :date AND i.status = 'PENDING'")
+    List<InTransitOrderEntity> findByMaterialCodeInAndArrivalDateAfter(
+        @Param("materialCodes") List<String> materialCodes,
+        @Param("date") LocalDate date);
+
+    /**
+     * 批量查询物料 / 工厂的指定状态在途订单（批量 ATP，调用方按物料+工厂组合过滤）
+     */
+    @Query("SELECT i FROM InTransitOrderEntity i WHERE i.materialCode IN :materialCodes AND i.plantCode IN :plantCodes AND i.status IN :statuses")
+    List<InTransitOrderEntity> findByMaterialCodeInAndPlantCodeInAndStatusIn(
+        @Param("materialCodes") Collection<String> materialCodes,
+        @Param("plantCodes") Collection<String> plantCodes,
+        @Param("statuses") Collection<String> statuses);
+
     /**
      * 根据物料编码和状态查询
      */
     List<InTransitOrderEntity> findByMaterialCodeAndStatus(String materialCode, String status);
+
+    /**
+     * 在途水位（行数、整行哈希合计），用于 MRP 运行缓存指纹（哈希口径同 InventoryBalanceRepository.findWatermark）
+     */
+    @Query(value = "SELECT COUNT(*), SUM(CAST(CAST('x' || SUBSTR(MD5(CAST(i AS TEXT)), 1, 16) AS BIT(64)) AS BIGINT)) FROM in_transit_order i",
+            nativeQuery = true)
+    List<Object[]> findWatermark();
 }
@@ -9,6 +9,7 @@ import org.springframework.stereotype.Repository;
 import java.math.BigDecimal;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -48,6 +49,19 @@ public interface InventoryBalanceRepository extends JpaRepository<InventoryBalan
      * 根据物料编码和工厂查询
      */
     Optional<InventoryBalance> findByMaterialCodeAndPlantCode(String materialCode, String plantCode);
+
+    /**
+     * 根据物料编码和工厂查询全部余额行（可能有多个时点，调用方取最新一条）
+     */
+    List<InventoryBalance> findAllByMaterialCodeAndPlantCode(String materialCode, String plantCode);
+
+    /**
+     * 根据物料编码与工厂列表批量查询（批量 ATP，调用方按物料+工厂组合过滤）
+     */
+    @Query("SELECT b FROM InventoryBalance b WHERE b.materialCode IN :materialCodes AND b.plantCode IN :plantCodes")
+    List<InventoryBalance> findByMaterialCodeInAndPlantCodeIn(
+        @Param("materialCodes") Collection<String> materialCodes,
+        @Param("plantCodes") Collection<String> plantCodes);
     
     /**
      * 根据物料编码和日期查询库存（测试用例使用）
@@ -78,4 +92,14 @@ public interface InventoryBalanceRepository extends JpaRepository<InventoryBalan
      * 根据工厂查询库存
      */
     List<InventoryBalance> findByPlantCode(String plantCode);
+
+    /**
+     * 库存水位（行数、整行哈希合计），用于判断库存是否有变化（MRP 运行缓存指纹）
+     * 
+     * 每行取整行文本 MD5 的前 64 位求和：任一列变化都改变该行哈希，
+     * 调拨等数量合计不变的变更也不会相互抵消。
+     */
+    @Query(value = "SELECT COUNT(*), SUM(CAST(CAST('x' || SUBSTR(MD5(CAST(b AS TEXT)), 1, 16) AS BIT(64)) AS BIGINT)) FROM inventory_balances b",
+            nativeQuery = true)
+    List<Object[]> findWatermark();
 }
@@ -2,6 +2,7 @@ package com.hjscm.repository;
 
 import com.hjscm.entity.MRPConstraint;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 import java.util.List;
 import java.util.Optional;
@@ -19,4 +20,17 @@ public interface MRPConstraintRepository extends JpaRepository<MRPConstraint, St
     Optional<MRPConstraint> findByMaterialIdAndBatchTrackingRequiredTrue(
         String materialId
     );
+
+    /**
+     * 已指定首选供应商的物料约束（MRP 货源清单）
+     */
+    List<MRPConstraint> findByPreferredSupplierIdIsNotNull();
+
+    /**
+     * 约束水位（行数、整行哈希合计），覆盖提前期、MOQ 及批量规则 / 成本参数等全部列，
+     * 用于 MRP 运行缓存指纹（哈希口径同 InventoryBalanceRepository.findWatermark）
+     */
+    @Query(value = "SELECT COUNT(*), SUM(CAST(CAST('x' || SUBSTR(MD5(CAST(c AS TEXT)), 1, 16) AS BIT(64)) AS BIGINT)) FROM mrp_constraints c",
+            nativeQuery = true)
+    List<Object[]> findWatermark();
 }
@@ -0,0 +1,58 @@
+package com.hjscm.repository;
+
+import com.hjscm.entity.MrpReservation;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * MRP 预留仓储接口
+ *
+ * 功能：
+ * - 查询物料在工厂的有效预留
+ * - 支持 ATP 台账加载
+ */
+@Repository
+public interface MrpReservationRepository extends JpaRepository<MrpReservation, Long> {
+
+    /**
+     * 查询物料 / 工厂在指定日期仍有效（未过期）的预留
+     */
+    @Query("SELECT r FROM MrpReservation r WHERE r.materialCode = :materialCode AND r.plantCode = :plantCode "
+        + "AND (r.expirationDate IS NULL OR r.expirationDate >= :date)")
+    List<MrpReservation> findOpenByMaterialAndPlant(
+        @Param("materialCode") String materialCode,
+        @Param("plantCode") String plantCode,
+        @Param("date") LocalDate date);
+
+    /**
+     * 批量查询物料 / 工厂在指定日期仍有效的预留（批量 ATP，调用方按物料+工厂组合过滤）
+     */
+    @Query("SELECT r FROM MrpReservation r WHERE r.materialCode IN :materialCodes AND r.plantCode IN :plantCodes "
+        + "AND (r.expirationDate IS NULL OR r.expirationDate >= :date)")
+    List<MrpReservation> findOpenByMaterialsAndPlants(
+        @Param("materialCodes") Collection<String> materialCodes,
+        @Param("plantCodes") Collection<String> plantCodes,
+        @Param("date") LocalDate date);
+
+    /**
+     * 批量查询物料在指定日期仍有效的预留（MrpDataContext 预取，调用方按工厂过滤）
+     */
+    @Query("SELECT r FROM MrpReservation r WHERE r.materialCode IN :materialCodes "
+        + "AND (r.expirationDate IS NULL OR r.expirationDate >= :date)")
+    List<MrpReservation> findOpenByMaterialCodeIn(
+        @Param("materialCodes") Collection<String> materialCodes,
+        @Param("date") LocalDate date);
+
+    /**
+     * 预留水位（行数、整行哈希合计），用于 MRP 运行缓存指纹（哈希口径同 InventoryBalanceRepository.findWatermark）
+     */
+    @Query(value = "SELECT COUNT(*), SUM(CAST(CAST('x' || SUBSTR(MD5(CAST(r AS TEXT)), 1, 16) AS BIT(64)) AS BIGINT)) FROM mrp_reservations r",
+            nativeQuery = true)
+    List<Object[]> findWatermark();
+}
@@ -0,0 +1,280 @@
+package com.hjscm.repository;
+
+import com.hjscm.dto.*;
+import com.hjscm.entity.ProcurementSuggestionEntity;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Repository;
+
+import java.math.BigDecimal;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * MRP 结果批量写入（JDBC batch）
+ *
+ * 功能：
+ * - 采购建议 / 净需求 / 齐套结果按块批量插入
+ * - 每块一次 executeBatch（PostgreSQL 驱动开启 reWriteBatchedInserts 后合并为多值 INSERT）
+ * - 按运行游标式读取（只进结果集 + fetchSize），逐行回调，供流式导出
+ *
+ * 表结构见 sql/mrp_results.sql
+ */
+@Repository
+@RequiredArgsConstructor
+public class MrpResultJdbcRepository {
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private static final String INSERT_SUGGESTION =
+        "INSERT INTO procurement_suggestion (id, suggestion_code, material_code, material_name, plant_code, " +
+        "suggested_quantity, suggested_date, required_date, priority, supplier_code, supplier_name, unit_price, " +
+        "lead_time_days, status, mrp_run_id, trace_id, created_time) " +
+        "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private static final String INSERT_NET_REQUIREMENT =
+        "INSERT INTO mrp_net_requirements (id, mrp_run_id, item_code, gross_qty, available_qty, safety_stock, " +
+        "net_qty, required_date, lead_time_days, trace_id, created_time) " +
+        "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private static final String INSERT_KIT_RESULT =
+        "INSERT INTO mrp_kit_results (id, mrp_run_id, item_code, required_qty, available_qty, fill_rate, " +
+        "shortage_qty, urgency_level, required_date, trace_id, created_time) " +
+        "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    /**
+     * 批量插入采购建议
+     *
+     * @return 执行的批次数（数据库往返次数）
+     */
+    public int insertSuggestions(List<ProcurementSuggestionEntity> entities, int batchSize) {
+        return jdbcTemplate.batchUpdate(INSERT_SUGGESTION, entities, batchSize, (ps, e) -> {
+            ps.setString(1, e.getId());
+            ps.setString(2, e.getSuggestionCode());
+            ps.setString(3, e.getMaterialCode());
+            ps.setString(4, e.getMaterialName());
+            ps.setString(5, e.getPlantCode());
+            ps.setBigDecimal(6, e.getSuggestedQuantity());
+            ps.setDate(7, toDate(e.getSuggestedDate()));
+            ps.setDate(8, toDate(e.getRequiredDate()));
+            ps.setString(9, e.getPriority());
+            ps.setString(10, e.getSupplierCode());
+            ps.setString(11, e.getSupplierName());
+            ps.setBigDecimal(12, e.getUnitPrice());
+            ps.setObject(13, e.getLeadTimeDays());
+            ps.setString(14, e.getStatus());
+            ps.setString(15, e.getMrpRunId());
+            ps.setString(16, e.getTraceId());
+            ps.setTimestamp(17, toTimestamp(e.getCreatedTime()));
+        }).length;
+    }
+
+    /**
+     * 批量插入净需求
+     *
+     * @return 执行的批次数
+     */
+    public int insertNetRequirements(String runId, List<MrpNetRequirement> requirements, int batchSize) {
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        return jdbcTemplate.batchUpdate(INSERT_NET_REQUIREMENT, requirements, batchSize, (ps, r) -> {
+            ps.setString(1, UUID.randomUUID().toString());
+            ps.setString(2, runId);
+            ps.setString(3, r.getItemCode());
+            ps.setBigDecimal(4, r.getGrossRequirement());
+            ps.setBigDecimal(5, r.getAvailableQty());
+            ps.setBigDecimal(6, r.getSafetyStock());
+            ps.setBigDecimal(7, r.getNetRequirement());
+            ps.setDate(8, toDate(r.getRequiredDate()));
+            ps.setObject(9, r.getLeadTime());
+            ps.setString(10, r.getTraceId());
+            ps.setTimestamp(11, now);
+        }).length;
+    }
+
+    /**
+     * 批量插入齐套结果：每个齐套项一行，缺料项附带缺料量与紧急度
+     *
+     * @return 执行的批次数
+     */
+    public int insertKitResults(String runId, KitCheckResult kitResult, int batchSize) {
+        if (kitResult == null || kitResult.getKitItems() == null) {
+            return 0;
+        }
+
+        // 缺料与齐套项按生成顺序一一对应（可用量不足的齐套项才有缺料）
+        Map<String, Deque<KitShortage>> shortagesByItem = new HashMap<>();
+        if (kitResult.getShortages() != null) {
+            for (KitShortage shortage : kitResult.getShortages()) {
+                shortagesByItem.computeIfAbsent(shortage.getItemCode(), k -> new ArrayDeque<>()).add(shortage);
+            }
+        }
+        List<KitRow> rows = new ArrayList<>(kitResult.getKitItems().size());
+        for (KitItem item : kitResult.getKitItems()) {
+            KitShortage shortage = null;
+            if (item.getAvailableQty().compareTo(item.getRequiredQty()) < 0) {
+                Deque<KitShortage> queue = shortagesByItem.get(item.getItemCode());
+                shortage = queue != null ? queue.poll() : null;
+            }
+            rows.add(new KitRow(item, shortage));
+        }
+
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        return jdbcTemplate.batchUpdate(INSERT_KIT_RESULT, rows, batchSize, (ps, row) -> {
+            ps.setString(1, UUID.randomUUID().toString());
+            ps.setString(2, runId);
+            ps.setString(3, row.item.getItemCode());
+            ps.setBigDecimal(4, row.item.getRequiredQty());
+            ps.setBigDecimal(5, row.item.getAvailableQty());
+            ps.setBigDecimal(6, row.item.getFillRate() != null ? BigDecimal.valueOf(row.item.getFillRate()) : null);
+            ps.setBigDecimal(7, row.shortage != null ? row.shortage.getShortageQty() : null);
+            ps.setString(8, row.shortage != null ? row.shortage.getUrgencyLevel() : null);
+            ps.setDate(9, row.shortage != null ? toDate(row.shortage.getRequiredDate()) : null);
+            ps.setString(10, row.shortage != null ? row.shortage.getTraceId() : null);
+            ps.setTimestamp(11, now);
+        }).length;
+    }
+
+    /**
+     * 最近一次保存了结果的运行（按齐套结果写入时间）
+     */
+    public Optional<String> findLatestRunId() {
+        List<String> ids = jdbcTemplate.queryForList(
+            "SELECT mrp_run_id FROM mrp_kit_results ORDER BY created_time DESC LIMIT 1", String.class);
+        return ids.stream().findFirst();
+    }
+
+    /**
+     * 游标读取净需求
+     *
+     * PostgreSQL 驱动仅在事务内（非自动提交）按 fetchSize 分批取数，调用方需开启事务。
+     */
+    public void streamNetRequirements(String runId, int fetchSize, Consumer<MrpNetRequirement> sink) {
+        String sql = "SELECT item_code, gross_qty, available_qty, safety_stock, net_qty, required_date, " +
+            "lead_time_days, trace_id FROM mrp_net_requirements WHERE mrp_run_id = ? " +
+            "ORDER BY item_code, required_date";
+        jdbcTemplate.query(cursor(sql, fetchSize, runId), (RowCallbackHandler) rs -> sink.accept(
+            MrpNetRequirement.builder()
+                .itemCode(rs.getString("item_code"))
+                .grossRequirement(rs.getBigDecimal("gross_qty"))
+                .availableQty(rs.getBigDecimal("available_qty"))
+                .safetyStock(rs.getBigDecimal("safety_stock"))
+                .netRequirement(rs.getBigDecimal("net_qty"))
+                .requiredDate(toLocalDate(rs.getDate("required_date")))
+                .leadTime(getInteger(rs, "lead_time_days"))
+                .traceId(rs.getString("trace_id"))
+                .build()));
+    }
+
+    /**
+     * 游标读取缺料（齐套结果中缺料量非空的行），可按紧急度过滤
+     */
+    public void streamShortages(String runId, String urgencyLevel, int fetchSize, Consumer<KitShortage> sink) {
+        StringBuilder sql = new StringBuilder(
+            "SELECT item_code, required_qty, available_qty, shortage_qty, fill_rate, urgency_level, " +
+            "required_date, trace_id FROM mrp_kit_results WHERE mrp_run_id = ? AND shortage_qty IS NOT NULL");
+        List<Object> args = new ArrayList<>(List.of(runId));
+        if (urgencyLevel != null) {
+            sql.append(" AND urgency_level = ?");
+            args.add(urgencyLevel);
+        }
+        sql.append(" ORDER BY required_date, item_code");
+        jdbcTemplate.query(cursor(sql.toString(), fetchSize, args.toArray()), (RowCallbackHandler) rs -> {
+            BigDecimal fillRate = rs.getBigDecimal("fill_rate");
+            String urgency = rs.getString("urgency_level");
+            sink.accept(KitShortage.builder()
+                .itemCode(rs.getString("item_code"))
+                .requiredQty(rs.getBigDecimal("required_qty"))
+                .availableQty(rs.getBigDecimal("available_qty"))
+                .shortageQty(rs.getBigDecimal("shortage_qty"))
+                .fillRate(fillRate != null ? fillRate.doubleValue() : null)
+                .urgencyLevel(urgency)
+                .requiredDate(toLocalDate(rs.getDate("required_date")))
+                .traceId(rs.getString("trace_id"))
+                .urgent("CRITICAL".equals(urgency) || "HIGH".equals(urgency))
+                .build());
+        });
+    }
+
+    /**
+     * 游标读取采购建议，可按紧急度（priority 列）与供应商过滤
+     */
+    public void streamSuggestions(String runId, String urgencyLevel, String supplierCode, int fetchSize,
+            Consumer<ProcurementSuggestion> sink) {
+        StringBuilder sql = new StringBuilder(
+            "SELECT material_code, material_name, plant_code, suggested_quantity, suggested_date, required_date, " +
+            "priority, supplier_code, supplier_name, unit_price, lead_time_days, trace_id " +
+            "FROM procurement_suggestion WHERE mrp_run_id = ?");
+        List<Object> args = new ArrayList<>(List.of(runId));
+        if (urgencyLevel != null) {
+            sql.append(" AND priority = ?");
+            args.add(urgencyLevel);
+        }
+        if (supplierCode != null) {
+            sql.append(" AND supplier_code = ?");
+            args.add(supplierCode);
+        }
+        sql.append(" ORDER BY suggestion_code");
+        jdbcTemplate.query(cursor(sql.toString(), fetchSize, args.toArray()), (RowCallbackHandler) rs -> sink.accept(
+            ProcurementSuggestion.builder()
+                .itemCode(rs.getString("material_code"))
+                .itemName(rs.getString("material_name"))
+                .plantCode(rs.getString("plant_code"))
+                .suggestedQty(rs.getBigDecimal("suggested_quantity"))
+                .suggestedDate(toLocalDate(rs.getDate("suggested_date")))
+                .requiredDate(toLocalDate(rs.getDate("required_date")))
+                .urgencyLevel(rs.getString("priority"))
+                .supplierCode(rs.getString("supplier_code"))
+                .supplierName(rs.getString("supplier_name"))
+                .estimatedPrice(rs.getBigDecimal("unit_price"))
+                .leadTime(getInteger(rs, "lead_time_days"))
+                .traceId(rs.getString("trace_id"))
+                .build()));
+    }
+
+    private static PreparedStatementCreator cursor(String sql, int fetchSize, Object... args) {
+        return con -> {
+            PreparedStatement ps = con.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            ps.setFetchSize(fetchSize);
+            for (int i = 0; i < args.length; i++) {
+                ps.setObject(i + 1, args[i]);
+            }
+            return ps;
+        };
+    }
+
+    private static Integer getInteger(ResultSet rs, String column) throws SQLException {
+        int value = rs.getInt(column);
+        return rs.wasNull() ? null : value;
+    }
+
+    private static LocalDate toLocalDate(Date date) {
+        return date != null ? date.toLocalDate() : null;
+    }
+
+    private static Date toDate(LocalDate date) {
+        return date != null ? Date.valueOf(date) : null;
+    }
+
+    private static Timestamp toTimestamp(LocalDateTime time) {
+        return time != null ? Timestamp.valueOf(time) : null;
+    }
+
+    private static class KitRow {
+        private final KitItem item;
+        private final KitShortage shortage;
+
+        KitRow(KitItem item, KitShortage shortage) {
+            this.item = item;
+            this.shortage = shortage;
+        }
+    }
+}
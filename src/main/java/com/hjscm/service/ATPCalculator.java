@@ -1,8 +1,6 @@
 package com.hjscm.service;
 
-import com.hjscm.dto.*;
-import com.hjscm.entity.*;
-import com.hjscm.repository.*;
+import com.hjscm.service.atp.AtpLedger;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
@@ -22,89 +20,62 @@ import java.util.stream.Collectors;
 @RequiredArgsConstructor
 public class ATPCalculator {
 
-    private final InventoryBalanceRepository inventoryRepository;
-    private final InTransitOrderRepository inTransitRepository;
-    private final SalesOrderRepository salesOrderRepository;
-    private final MrpReservationRepository reservationRepository;
+    // 最早可承诺日的搜索期限（天）
+    private static final int PROMISE_HORIZON_DAYS = 90;
+
+    private final AtpLedgerService ledgerService;
 
     /**
      * 计算 ATP
      * 
      * ATP = 可用库存 + 在途量 - 已分配量 - 预留量
+     * 各分量与最早可承诺日均取自分时段 ATP 台账（二分查找），台账已缓存时不访问数据库
      */
     public ATPResult calculateATP(ATPRequest request) {
         log.info("[ATP] Calculating for {} qty={} date={}", 
             request.getMaterialCode(), request.getRequestedQty(), request.getRequestedDate());
         
-        // 1. 查询可用库存
-        BigDecimal availableQty = getAvailableQty(
-            request.getMaterialCode(), 
-            request.getPlantCode()
-        );
-        
-        // 2. 查询在途量（需求日期之前到货）
-        BigDecimal inTransitQty = getInTransitQty(
-            request.getMaterialCode(),
-            request.getPlantCode(),
-            request.getRequestedDate()
-        );
-        
-        // 3. 查询已分配量（已承诺给其他订单）
-        BigDecimal allocatedQty = getAllocatedQty(
-            request.getMaterialCode(),
-            request.getPlantCode(),
-            request.getRequestedDate()
-        );
-        
-        // 4. 查询 MRP 预留
-        BigDecimal reservedQty = getReservedQty(
-            request.getMaterialCode(),
-            request.getPlantCode(),
-            request.getRequestedDate()
-        );
+        ATPResult result = ledgerService.read(request.getMaterialCode(), request.getPlantCode(),
+            ledger -> evaluate(request, ledger));
         
-        // 5. 计算 ATP
-        BigDecimal atp = availableQty
-            .add(inTransitQty)
-            .subtract(allocatedQty)
-            .subtract(reservedQty);
-        
-        // 6. 判断是否可满足
-        boolean canFulfill = atp.compareTo(request.getRequestedQty()) >= 0;
-        
-        // 7. 计算最早可承诺日期
-        LocalDate promisedDate = canFulfill 
-            ? request.getRequestedDate()
-            : calculateFirstAvailableDate(request);
-        
-        ATPResult result = ATPResult.builder()
-            .materialCode(request.getMaterialCode())
-            .plantCode(request.getPlantCode())
-            .requestedDate(request.getRequestedDate())
-            .requestedQty(request.getRequestedQty())
-            .availableQty(availableQty)
-            .inTransitQty(inTransitQty)
-            .allocatedQty(allocatedQty)
-            .reservedQty(reservedQty)
-            .atpQty(atp)
-            .canFulfill(canFulfill)
-            .promisedDate(promisedDate)
-            .traceId("ATP-" + UUID.randomUUID().toString().substring(0, 8))
-            .calculatedAt(LocalDateTime.now())
-            .build();
-        
-        log.info("[ATP] Result: atp={} canFulfill={}", atp, canFulfill);
+        log.info("[ATP] Result: atp={} canFulfill={}", result.getAtpQty(), result.isCanFulfill());
         
         return result;
     }
 
     /**
      * 批量计算 ATP
+     * 
+     * 按物料 / 工厂分组，缺失的台账以少量 IN 查询一次加载，在台账副本上按请求顺序计算：
+     * 每行可承诺后即在承诺日占用，同一物料的后续行只能承诺剩余量。结果顺序与请求一致。
      */
     public List<ATPResult> calculateBatchATP(List<ATPRequest> requests) {
-        return requests.stream()
-            .map(this::calculateATP)
-            .collect(Collectors.toList());
+        long start = System.currentTimeMillis();
+        
+        Set<AtpLedgerService.Key> keys = new LinkedHashSet<>();
+        for (ATPRequest request : requests) {
+            keys.add(new AtpLedgerService.Key(request.getMaterialCode(), request.getPlantCode()));
+        }
+        Map<AtpLedgerService.Key, AtpLedger> ledgers = ledgerService.copies(keys);
+        
+        List<ATPResult> results = new ArrayList<>(requests.size());
+        int fulfilled = 0;
+        for (ATPRequest request : requests) {
+            AtpLedger ledger = ledgers.get(new AtpLedgerService.Key(request.getMaterialCode(), request.getPlantCode()));
+            ATPResult result = evaluate(request, ledger);
+            if (result.getPromisedDate() != null) {
+                ledger.adjustReservation(result.getPromisedDate(), request.getRequestedQty());
+            }
+            if (result.isCanFulfill()) {
+                fulfilled++;
+            }
+            results.add(result);
+        }
+        
+        log.info("[ATP] Batch calculated. lines={}, keys={}, fulfilled={}, elapsed={}ms",
+            requests.size(), keys.size(), fulfilled, System.currentTimeMillis() - start);
+        
+        return results;
     }
 
     /**
@@ -149,38 +120,51 @@ public class ATPCalculator {
             .build();
     }
 
-    // === 查询方法 ===
+    // === 台账计算 ===
 
-    private BigDecimal getAvailableQty(String materialCode, String plantCode) {
-        return inventoryRepository
-            .findByMaterialCodeAndPlantCode(materialCode, plantCode)
-            .map(b -> b.getQuantity().subtract(b.getReservedQty()))
-            .orElse(BigDecimal.ZERO);
-    }
-
-    private BigDecimal getInTransitQty(String materialCode, String plantCode, LocalDate beforeDate) {
-        return inTransitRepository
-            .findByMaterialCodeAndPlantCodeAndArrivalDateBefore(
-                materialCode, plantCode, beforeDate)
-            .stream()
-            .map(InTransitOrder::getQuantity)
-            .reduce(BigDecimal.ZERO, BigDecimal::add);
-    }
-
-    private BigDecimal getAllocatedQty(String materialCode, String plantCode, LocalDate date) {
-        return salesOrderRepository
-            .findAllocatedByMaterialAndDate(materialCode, plantCode, date)
-            .stream()
-            .map(SalesOrderItem::getQuantity)
-            .reduce(BigDecimal.ZERO, BigDecimal::add);
-    }
-
-    private BigDecimal getReservedQty(String materialCode, String plantCode, LocalDate date) {
-        return reservationRepository
-            .findByMaterialCodeAndPlantCodeAndDate(materialCode, plantCode, date)
-            .stream()
-            .map(MrpReservation::getQuantity)
-            .reduce(BigDecimal.ZERO, BigDecimal::add);
+    private ATPResult evaluate(ATPRequest request, AtpLedger ledger) {
+        LocalDate date = request.getRequestedDate();
+        
+        // 1. 可用库存
+        BigDecimal availableQty = ledger.getOnHand();
+        
+        // 2. 在途量（需求日期及之前到货）
+        BigDecimal inTransitQty = ledger.receiptsThrough(date);
+        
+        // 3. 已分配量（已承诺给其他订单）
+        BigDecimal allocatedQty = ledger.getAllocated();
+        
+        // 4. MRP 预留
+        BigDecimal reservedQty = ledger.reservedThrough(date);
+        
+        // 5. 计算 ATP
+        BigDecimal atp = availableQty
+            .add(inTransitQty)
+            .subtract(allocatedQty)
+            .subtract(reservedQty);
+        
+        // 6. 最早可承诺日：不早于需求日、且此后 ATP 不再低于需求量
+        LocalDate promisedDate = ledger.promiseDate(
+            request.getRequestedQty(), date, date.plusDays(PROMISE_HORIZON_DAYS));
+        
+        // 7. 需求日当天可承诺即可满足
+        boolean canFulfill = date.equals(promisedDate);
+        
+        return ATPResult.builder()
+            .materialCode(request.getMaterialCode())
+            .plantCode(request.getPlantCode())
+            .requestedDate(date)
+            .requestedQty(request.getRequestedQty())
+            .availableQty(availableQty)
+            .inTransitQty(inTransitQty)
+            .allocatedQty(allocatedQty)
+            .reservedQty(reservedQty)
+            .atpQty(atp)
+            .canFulfill(canFulfill)
+            .promisedDate(promisedDate)
+            .traceId("ATP-" + UUID.randomUUID().toString().substring(0, 8))
+            .calculatedAt(LocalDateTime.now())
+            .build();
     }
 
     private BigDecimal getAvailableCapacity(String plantCode, String workstationCode, LocalDate date) {
@@ -188,31 +172,6 @@ public class ATPCalculator {
         return BigDecimal.valueOf(1000); // 模拟值
     }
 
-    private LocalDate calculateFirstAvailableDate(ATPRequest request) {
-        // 计算何时有足够库存
-        LocalDate date = request.getRequestedDate();
-        BigDecimal neededQty = request.getRequestedQty();
-        
-        while (true) {
-            BigDecimal futureInTransit = getInTransitQty(
-                request.getMaterialCode(),
-                request.getPlantCode(),
-                date
-            );
-            
-            if (futureInTransit.compareTo(neededQty) >= 0) {
-                return date;
-            }
-            
-            neededQty = neededQty.subtract(futureInTransit);
-            date = date.plusDays(1);
-            
-            if (date.isAfter(request.getRequestedDate().plusDays(90))) {
-                return null; // 90天内无法满足
-            }
-        }
-    }
-
     /**
      * ATP 请求
      */
@@ -0,0 +1,391 @@
+package com.hjscm.service;
+
+import com.hjscm.entity.*;
+import com.hjscm.event.AtpSourceChangeEvent;
+import com.hjscm.event.InventoryChangeEvent;
+import com.hjscm.repository.*;
+import com.hjscm.service.atp.AtpLedger;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * ATP 台账服务
+ *
+ * 功能：
+ * - 按物料 / 工厂缓存分时段 ATP 台账，首次查询时从库存、在途、销售分配、MRP 预留加载
+ * - 库存变更、在途 / 预留 / 分配变更事件（事务提交后）增量更新已缓存的台账；
+ *   无法判断加载结果是否已含该变更（提交与加载重叠）时丢弃台账，下次查询重新加载
+ * - 台账超过 max-age 后下次查询重新加载，兜底未发布事件的变更
+ * - 批量 ATP：缺失的台账以 IN 查询一次加载，返回副本供顺序占用
+ *
+ * 订单录入的 ATP 检查命中缓存时不访问数据库。
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class AtpLedgerService {
+
+    public static final String SOURCE_IN_TRANSIT = "IN_TRANSIT";
+    public static final String SOURCE_RESERVATION = "RESERVATION";
+    public static final String SOURCE_ALLOCATION = "ALLOCATION";
+
+    private static final Set<String> OPEN_IN_TRANSIT = Set.of("PENDING", "IN_TRANSIT");
+
+    // 加载期间有变更提交时的最多加载次数
+    private static final int MAX_LOAD_ATTEMPTS = 3;
+
+    private final InventoryBalanceRepository inventoryRepository;
+    private final InTransitOrderRepository inTransitRepository;
+    private final SalesOrderRepository salesOrderRepository;
+    private final MrpReservationRepository reservationRepository;
+
+    // 销售分配无交期，加载该期限内的已分配量并自起点占用
+    @Value("${atp.ledger.allocation-horizon-days:365}")
+    private int allocationHorizonDays = 365;
+
+    @Value("${atp.ledger.max-age-minutes:30}")
+    private long maxAgeMinutes = 30;
+
+    private final Map<String, AtpLedger> ledgers = new ConcurrentHashMap<>();
+    // 物料 / 工厂 → 最近一次变更事件的处理时刻（事务已提交），识别与加载重叠的提交
+    private final Map<String, LocalDateTime> lastCommittedAt = new ConcurrentHashMap<>();
+
+    /**
+     * 在台账上执行只读计算（按台账加锁）
+     */
+    public <T> T read(String materialCode, String plantCode, Function<AtpLedger, T> reader) {
+        AtpLedger ledger = ledger(materialCode, plantCode);
+        synchronized (ledger) {
+            return reader.apply(ledger);
+        }
+    }
+
+    /**
+     * 当前台账（缺失或过期时加载）
+     *
+     * 加载期间有变更提交时，该变更可能既未被读到、又因台账尚未入缓存而未增量计入，丢弃后重新加载。
+     */
+    public AtpLedger ledger(String materialCode, String plantCode) {
+        String key = key(materialCode, plantCode);
+        AtpLedger ledger = ledgers.get(key);
+        if (ledger != null && !isExpired(ledger)) {
+            return ledger;
+        }
+        for (int attempt = 1; ; attempt++) {
+            AtpLedger[] fresh = new AtpLedger[1];
+            ledger = ledgers.compute(key, (k, current) ->
+                current != null && !isExpired(current) ? current : (fresh[0] = load(materialCode, plantCode)));
+            if (ledger != fresh[0] || attempt >= MAX_LOAD_ATTEMPTS || !committedDuringLoad(key, ledger)) {
+                return ledger;
+            }
+            ledgers.remove(key, ledger);
+            log.debug("[ATP] Change committed during ledger load, reloading. material={}, plant={}, attempt={}",
+                materialCode, plantCode, attempt);
+        }
+    }
+
+    /**
+     * 批量取台账副本（缺失或过期的组合以少量 IN 查询一次加载）
+     *
+     * 副本供批量承诺顺序占用，不影响缓存中的台账。
+     */
+    public Map<Key, AtpLedger> copies(Collection<Key> keys) {
+        List<Key> missing = new ArrayList<>();
+        for (Key key : keys) {
+            AtpLedger ledger = ledgers.get(key.toString());
+            if (ledger == null || isExpired(ledger)) {
+                missing.add(key);
+            }
+        }
+        if (!missing.isEmpty()) {
+            loadAll(missing).forEach((key, loaded) -> {
+                String k = key.toString();
+                AtpLedger cached = ledgers.merge(k, loaded, (current, fresh) -> isExpired(current) ? fresh : current);
+                if (cached == loaded && committedDuringLoad(k, loaded)) {
+                    // 由下方 ledger() 单独重新加载
+                    ledgers.remove(k, loaded);
+                }
+            });
+        }
+
+        Map<Key, AtpLedger> copies = new LinkedHashMap<>();
+        for (Key key : keys) {
+            AtpLedger ledger = ledger(key.getMaterialCode(), key.getPlantCode());
+            synchronized (ledger) {
+                copies.put(key, ledger.copy());
+            }
+        }
+        return copies;
+    }
+
+    /**
+     * 台账键（物料 + 工厂）
+     */
+    public static final class Key {
+        private final String materialCode;
+        private final String plantCode;
+
+        public Key(String materialCode, String plantCode) {
+            this.materialCode = materialCode;
+            this.plantCode = plantCode;
+        }
+
+        public String getMaterialCode() {
+            return materialCode;
+        }
+
+        public String getPlantCode() {
+            return plantCode;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return Objects.equals(materialCode, other.materialCode) && Objects.equals(plantCode, other.plantCode);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(materialCode, plantCode);
+        }
+
+        @Override
+        public String toString() {
+            return key(materialCode, plantCode);
+        }
+    }
+
+    /**
+     * 丢弃台账，下次查询重新加载
+     */
+    public void invalidate(String materialCode, String plantCode) {
+        ledgers.remove(key(materialCode, plantCode));
+    }
+
+    public void clear() {
+        ledgers.clear();
+    }
+
+    public int size() {
+        return ledgers.size();
+    }
+
+    /**
+     * 库存变更（事务提交后）→ 可用库存增量
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onInventoryChanged(InventoryChangeEvent event) {
+        apply(event.getMaterialCode(), event.getPlantCode(), event.getOccurredAt(),
+            ledger -> ledger.adjustOnHand(event.getChangeQty()));
+    }
+
+    /**
+     * 在途 / 预留 / 分配变更（事务提交后）→ 撤销旧事件、登记新事件
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onSourceChanged(AtpSourceChangeEvent event) {
+        String type = event.getSourceType();
+        if (SOURCE_IN_TRANSIT.equals(type)) {
+            apply(event.getMaterialCode(), event.getPlantCode(), event.getOccurredAt(), ledger -> {
+                ledger.adjustReceipt(event.getOldDate(), negate(event.getOldQty()));
+                ledger.adjustReceipt(event.getNewDate(), event.getNewQty());
+            });
+        } else if (SOURCE_RESERVATION.equals(type)) {
+            apply(event.getMaterialCode(), event.getPlantCode(), event.getOccurredAt(), ledger -> {
+                ledger.adjustReservation(event.getOldDate(), negate(event.getOldQty()));
+                ledger.adjustReservation(event.getNewDate(), event.getNewQty());
+            });
+        } else if (SOURCE_ALLOCATION.equals(type)) {
+            apply(event.getMaterialCode(), event.getPlantCode(), event.getOccurredAt(), ledger -> {
+                ledger.adjustAllocated(negate(event.getOldQty()));
+                ledger.adjustAllocated(event.getNewQty());
+            });
+        } else {
+            invalidate(event.getMaterialCode(), event.getPlantCode());
+        }
+    }
+
+    /**
+     * 仅更新已缓存的台账
+     *
+     * 事件在提交前发布（occurredAt），监听在提交后执行，提交时刻介于两者之间：
+     * - 台账加载完成早于 occurredAt：加载结果不含该变更，增量计入
+     * - 台账加载开始晚于监听时刻：加载结果已含该变更，跳过
+     * - 其余情况无法判断，丢弃台账，下次查询重新加载
+     */
+    private void apply(String materialCode, String plantCode, LocalDateTime occurredAt,
+                       Consumer<AtpLedger> change) {
+        if (materialCode == null) {
+            return;
+        }
+        String key = key(materialCode, plantCode);
+        LocalDateTime committedBy = LocalDateTime.now();
+        lastCommittedAt.merge(key, committedBy, (a, b) -> b.isAfter(a) ? b : a);
+        AtpLedger ledger = ledgers.get(key);
+        if (ledger == null) {
+            return;
+        }
+        synchronized (ledger) {
+            if (occurredAt != null && ledger.getLoadCompletedAt().isBefore(occurredAt)) {
+                change.accept(ledger);
+                return;
+            }
+        }
+        if (!ledger.getLoadedAt().isAfter(committedBy)) {
+            ledgers.remove(key, ledger);
+            log.debug("[ATP] Change overlaps ledger load, ledger dropped. material={}, plant={}, occurredAt={}",
+                materialCode, plantCode, occurredAt);
+        }
+    }
+
+    /**
+     * 加载开始之后是否处理过该物料 / 工厂的变更事件
+     */
+    private boolean committedDuringLoad(String key, AtpLedger ledger) {
+        LocalDateTime committed = lastCommittedAt.get(key);
+        return committed != null && !committed.isBefore(ledger.getLoadedAt());
+    }
+
+    private AtpLedger load(String materialCode, String plantCode) {
+        long start = System.currentTimeMillis();
+        // 以加载开始时刻为准：此后发生的变更由事件增量计入
+        LocalDateTime loadedAt = LocalDateTime.now();
+        LocalDate today = loadedAt.toLocalDate();
+
+        // 与批量加载一致：同一物料 / 工厂有多条余额时取时点最新的一条
+        BigDecimal onHand = inventoryRepository
+            .findAllByMaterialCodeAndPlantCode(materialCode, plantCode).stream()
+            .reduce(AtpLedgerService::newer)
+            .map(AtpLedgerService::onHandOf)
+            .orElse(BigDecimal.ZERO);
+
+        AtpLedger ledger = new AtpLedger(materialCode, plantCode, onHand,
+            allocatedOf(materialCode, plantCode, today), loadedAt);
+        for (InTransitOrderEntity order : inTransitRepository.findByMaterialCodeAndPlantCode(materialCode, plantCode)) {
+            if (OPEN_IN_TRANSIT.contains(order.getStatus())) {
+                addReceipt(ledger, order);
+            }
+        }
+        for (MrpReservation reservation : reservationRepository.findOpenByMaterialAndPlant(materialCode, plantCode, today)) {
+            addReservation(ledger, reservation, today);
+        }
+
+        ledger.completeLoad(LocalDateTime.now());
+        log.debug("[ATP] Ledger loaded. material={}, plant={}, eventDates={}, elapsed={}ms",
+            materialCode, plantCode, ledger.eventDates(), System.currentTimeMillis() - start);
+        return ledger;
+    }
+
+    /**
+     * 批量加载：库存、在途、预留各一次 IN 查询（物料列表 × 工厂列表），结果按组合过滤
+     */
+    private Map<Key, AtpLedger> loadAll(List<Key> keys) {
+        long start = System.currentTimeMillis();
+        LocalDateTime loadedAt = LocalDateTime.now();
+        LocalDate today = loadedAt.toLocalDate();
+        Set<String> materials = new HashSet<>();
+        Set<String> plants = new HashSet<>();
+        for (Key key : keys) {
+            materials.add(key.getMaterialCode());
+            plants.add(key.getPlantCode());
+        }
+
+        // 同一物料 / 工厂多条余额时取时点最新一条（同 MrpDataService）
+        Map<Key, InventoryBalance> latest = new HashMap<>();
+        for (InventoryBalance b : inventoryRepository.findByMaterialCodeInAndPlantCodeIn(materials, plants)) {
+            latest.merge(new Key(b.getMaterialCode(), b.getPlantCode()), b, AtpLedgerService::newer);
+        }
+        Map<Key, BigDecimal> onHand = new HashMap<>();
+        latest.forEach((key, b) -> onHand.put(key, onHandOf(b)));
+
+        Map<Key, AtpLedger> loaded = new LinkedHashMap<>();
+        for (Key key : keys) {
+            // 销售分配暂无按物料集合的查询，按组合逐个汇总（每个物料 / 工厂一次，而非每个请求一次）
+            loaded.put(key, new AtpLedger(key.getMaterialCode(), key.getPlantCode(),
+                onHand.get(key), allocatedOf(key.getMaterialCode(), key.getPlantCode(), today), loadedAt));
+        }
+        for (InTransitOrderEntity order : inTransitRepository
+                .findByMaterialCodeInAndPlantCodeInAndStatusIn(materials, plants, OPEN_IN_TRANSIT)) {
+            AtpLedger ledger = loaded.get(new Key(order.getMaterialCode(), order.getPlantCode()));
+            if (ledger != null) {
+                addReceipt(ledger, order);
+            }
+        }
+        for (MrpReservation reservation : reservationRepository.findOpenByMaterialsAndPlants(materials, plants, today)) {
+            AtpLedger ledger = loaded.get(new Key(reservation.getMaterialCode(), reservation.getPlantCode()));
+            if (ledger != null) {
+                addReservation(ledger, reservation, today);
+            }
+        }
+
+        LocalDateTime completedAt = LocalDateTime.now();
+        loaded.values().forEach(ledger -> ledger.completeLoad(completedAt));
+        log.info("[ATP] Ledgers bulk loaded. keys={}, materials={}, plants={}, elapsed={}ms",
+            keys.size(), materials.size(), plants.size(), System.currentTimeMillis() - start);
+        return loaded;
+    }
+
+    private BigDecimal allocatedOf(String materialCode, String plantCode, LocalDate today) {
+        return salesOrderRepository
+            .findAllocatedByMaterialAndDate(materialCode, plantCode, today.plusDays(allocationHorizonDays))
+            .stream()
+            .map(SalesOrderItem::getQuantity)
+            .reduce(BigDecimal.ZERO, BigDecimal::add);
+    }
+
+    private static BigDecimal onHandOf(InventoryBalance balance) {
+        return nz(balance.getQuantity()).subtract(nz(balance.getReservedQty()));
+    }
+
+    private static InventoryBalance newer(InventoryBalance a, InventoryBalance b) {
+        if (a.getAsOfDate() == null) return b;
+        if (b.getAsOfDate() == null) return a;
+        return b.getAsOfDate().isAfter(a.getAsOfDate()) ? b : a;
+    }
+
+    private static void addReceipt(AtpLedger ledger, InTransitOrderEntity order) {
+        if (order.getEstimatedArrivalDate() != null) {
+            ledger.adjustReceipt(order.getEstimatedArrivalDate(),
+                nz(order.getOrderQuantity()).subtract(nz(order.getReceivedQuantity())));
+        }
+    }
+
+    private static void addReservation(AtpLedger ledger, MrpReservation reservation, LocalDate today) {
+        // 无预留日期视为即时占用
+        LocalDate date = reservation.getReservationDate() != null ? reservation.getReservationDate() : today;
+        ledger.adjustReservation(date, reservation.getQuantity());
+    }
+
+    private boolean isExpired(AtpLedger ledger) {
+        return maxAgeMinutes > 0 && ledger.getLoadedAt().plusMinutes(maxAgeMinutes).isBefore(LocalDateTime.now());
+    }
+
+    private static String key(String materialCode, String plantCode) {
+        return materialCode + "|" + plantCode;
+    }
+
+    private static BigDecimal negate(BigDecimal qty) {
+        return qty != null ? qty.negate() : null;
+    }
+
+    private static BigDecimal nz(BigDecimal value) {
+        return value != null ? value : BigDecimal.ZERO;
+    }
+}
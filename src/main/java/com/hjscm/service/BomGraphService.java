@@ -0,0 +1,107 @@
+package com.hjscm.service;
+
+import com.hjscm.entity.BomLine;
+import com.hjscm.event.BomChangeEvent;
+import com.hjscm.repository.BomRepository;
+import com.hjscm.service.mrp.BomExplosionCache;
+import com.hjscm.service.mrp.BomGraphSnapshot;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * BOM 图快照服务
+ *
+ * 功能：
+ * - 常驻当前版本的 BOM 图快照
+ * - BOM 变更后标记失效，下次读取时重建
+ * - MRP 每次运行开始时取一次快照，整个运行期间固定使用该版本
+ * - 持有最新快照版本的展开记忆化缓存，BOM 变更时一并丢弃
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class BomGraphService {
+
+    private final BomRepository bomRepository;
+
+    private final AtomicLong versionSequence = new AtomicLong();
+    private volatile BomGraphSnapshot current;
+    private volatile boolean stale = true;
+    private volatile BomExplosionCache explosionCache;
+
+    /**
+     * 获取当前快照（失效时重建）
+     */
+    public BomGraphSnapshot current() {
+        BomGraphSnapshot snapshot = current;
+        if (snapshot != null && !stale) {
+            return snapshot;
+        }
+        synchronized (this) {
+            if (current == null || stale) {
+                rebuild();
+            }
+            return current;
+        }
+    }
+
+    /**
+     * 重新加载全部有效 BOM 行并发布新快照
+     */
+    @Transactional(readOnly = true)
+    public synchronized BomGraphSnapshot rebuild() {
+        long start = System.currentTimeMillis();
+        // 先清除标记：加载期间到达的变更会再次置位，下次读取时重建
+        stale = false;
+
+        List<BomLine> lines = bomRepository.findAllActiveLines();
+        BomGraphSnapshot snapshot = BomGraphSnapshot.build(versionSequence.incrementAndGet(), lines);
+        current = snapshot;
+
+        log.info("[MRP-BOM] Snapshot v{} built. items={}, edges={}, duration={}ms",
+            snapshot.getVersion(), snapshot.size(), snapshot.edgeCount(),
+            System.currentTimeMillis() - start);
+        return snapshot;
+    }
+
+    /**
+     * 获取指定快照的展开缓存
+     * 
+     * 只保留最新版本的缓存；运行中仍持有旧快照时得到该运行独用的新缓存。
+     */
+    public BomExplosionCache explosionCache(BomGraphSnapshot snapshot) {
+        BomExplosionCache cache = explosionCache;
+        if (cache != null && cache.getVersion() == snapshot.getVersion()) {
+            return cache;
+        }
+        synchronized (this) {
+            cache = explosionCache;
+            if (cache != null && cache.getVersion() == snapshot.getVersion()) {
+                return cache;
+            }
+            BomExplosionCache created = new BomExplosionCache(snapshot);
+            if (!stale && (cache == null || snapshot.getVersion() > cache.getVersion())) {
+                explosionCache = created;
+            }
+            return created;
+        }
+    }
+
+    /**
+     * BOM 变更（事务提交后）→ 快照及展开缓存失效
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onBomChanged(BomChangeEvent event) {
+        BomExplosionCache cache = explosionCache;
+        log.info("[MRP-BOM] BOM changed: bomId={}, type={}, snapshot marked stale, explosion cache dropped ({} vectors)",
+            event.getBomId(), event.getChangeType(), cache != null ? cache.size() : 0);
+        stale = true;
+        explosionCache = null;
+    }
+}
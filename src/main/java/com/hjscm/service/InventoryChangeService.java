@@ -7,6 +7,8 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
@@ -24,6 +26,7 @@ public class InventoryChangeService {
     private final InventoryTransactionRepository transactionRepository;
     private final ApplicationEventPublisher eventPublisher;
     private final MrpEngineService mrpEngineService;
+    private final NetChangeMrpService netChangeMrpService;
 
     /**
      * 处理库存变更
@@ -135,7 +138,17 @@ public class InventoryChangeService {
     private void triggerMrpRerun(String materialCode, String plantCode) {
         log.info("[Inventory] Triggering MRP rerun for {} in {}", materialCode, plantCode);
         
-        // 异步触发 MRP 重算
-        // TODO: 实际实现应该是异步任务
+        // 异步触发净改变 MRP（变更物料已由 InventoryChangeEvent 登记），
+        // 须在库存事务提交后执行，否则重算读不到本次变更
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    netChangeMrpService.runNetChangeAsync();
+                }
+            });
+        } else {
+            netChangeMrpService.runNetChangeAsync();
+        }
     }
 }
@@ -2,16 +2,40 @@ package com.hjscm.service;
 
 import com.hjscm.dto.*;
 import com.hjscm.entity.*;
-import com.hjscm.repository.*;
+import com.hjscm.event.MrpRunCompletedEvent;
+import com.hjscm.service.mrp.BomExplosionCache;
+import com.hjscm.service.mrp.BomGraphSnapshot;
+import com.hjscm.service.mrp.MrpBuckets;
+import com.hjscm.service.mrp.MrpDataContext;
+import com.hjscm.service.mrp.MrpGrossRequirements;
+import com.hjscm.service.mrp.MrpKitAllocation;
+import com.hjscm.service.mrp.MrpLotSizing;
+import com.hjscm.service.mrp.MrpNettingState;
+import com.hjscm.service.mrp.MrpPartition;
+import com.hjscm.service.mrp.MrpPegging;
+import com.hjscm.service.mrp.MrpPhaseRunner;
+import com.hjscm.service.mrp.MrpPlanResult;
+import com.hjscm.service.mrp.MrpQuantity;
+import com.hjscm.service.mrp.MrpRunMetrics;
+import com.hjscm.service.mrp.MrpRunProgress;
+import com.hjscm.service.mrp.MrpSourceList;
+import com.hjscm.service.mrp.MrpTimePhasedPlan;
+import com.hjscm.service.mrp.MrpTimePhasedRecord;
+import jakarta.annotation.PreDestroy;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
-import java.math.RoundingMode;
 import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
 import java.util.*;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 /**
@@ -26,197 +50,759 @@ import java.util.stream.Collectors;
  * - Trace ID 关联
  * 
  * @Updated 2026-02-19: 引入 MrpDataService 提供数据层抽象
+ * @Updated 2026-10-18: BOM 展开改为基于内存 BOM 图快照
+ * @Updated 2026-10-18: 新增低层码（LLC）逐层净需求计算模式
+ * @Updated 2026-10-18: 净算/齐套/建议改读批量预取的 MrpDataContext
+ * @Updated 2026-10-18: 支持按工厂 × BOM 连通分量分区并行计算
+ * @Updated 2026-10-18: 新增分时段（日 / 周）MRP 记录模式，按 MPS 交期与在途到货日期净算
+ * @Updated 2026-10-18: 展开/汇总/净算改用定点 long 数量（MrpQuantity），仅在 DTO 边界转换 BigDecimal
+ * @Updated 2026-10-18: BOM 展开改为共用子装配单位向量的记忆化缩放求和，并检测循环引用
+ * @Updated 2026-10-18: 采购建议数量改由可配置批量规则（LFL / FOQ / EOQ / POQ / WW）计算
+ * @Updated 2026-10-18: 供应商选择改查预排序货源清单索引（按采购量二分），不再逐条缺料排序
+ * @Updated 2026-10-18: 计算与保存拆分，新增不持久化的模拟计算（假设分析）
+ * @Updated 2026-10-18: 每次运行构建组件 ↔ MPS 多级追溯索引（Pegging）
+ * @Updated 2026-10-18: 齐套阶段按 MPS 优先级 / 交期分配竞争组件，输出订单齐套率与约束组件
+ * @Updated 2026-10-18: 按输入指纹缓存运行结果，输入未变的重复运行直接返回
+ * @Updated 2026-10-18: 分阶段 Micrometer 指标（耗时 / 展开量 / 数据库调用 / 缓存命中），运行响应附阶段明细
  */
 @Slf4j
 @Service
 @RequiredArgsConstructor
 public class MRPEngineService {
 
-    private final MaterialDemandRepository demandRepository;
-    private final InventoryBalanceRepository inventoryRepository;
-    private final InTransitOrderRepository inTransitRepository;
-    private final MRPConstraintRepository constraintRepository;
-    private final BomRepository bomRepository;
     private final TraceIdService traceIdService;
-    private final ProcurementSuggestionRepository procurementRepository;
     private final MrpDataService mrpDataService;
+    private final BomGraphService bomGraphService;
+    private final MrpRunCacheService mrpRunCacheService;
+    private final MrpMetricsService mrpMetricsService;
+    private final ApplicationEventPublisher eventPublisher;
 
     // 默认配置
-    private static final int DEFAULT_LEAD_TIME = 7;
-    private static final int DEFAULT_MOQ = 100;
-    private static final double DEFAULT_YIELD_RATE = 1.0;
+    private static final String PLANNING_MODE_LLC = "LLC";
+    private static final String PLANNING_MODE_TIME_PHASED = "TIME_PHASED";
+    // 普通模式展开层数；LLC / 分时段模式展开到底
+    private static final int DEFAULT_EXPLODE_LEVELS = 3;
+
+    // 分区并行计算线程池（分区任务只读内存数据，不访问数据库）
+    private final ForkJoinPool partitionPool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
 
     /**
-     * 执行 MRP 运算（主入口）
+     * 执行 MRP 运算（主入口，同步，单事务）
      */
     @Transactional
     public MrpRunResponse runMrp(MrpRunRequest request) {
-        long startTime = System.currentTimeMillis();
         String traceId = traceIdService.generateRunTraceId();
+        return executeRun(request, traceId, MrpRunProgress.none(), MrpPhaseRunner.DIRECT);
+    }
+
+    /**
+     * 按阶段执行 MRP 运算
+     * 
+     * 阶段：准备(MPS/快照/输入指纹/数据预取，命中运行缓存时不预取) → 展开 → 净算 → 齐套 → 建议 → 保存。
+     * 每个阶段经 phaseRunner 执行（异步作业中各自独立短事务），
+     * 阶段内循环通过 progress 计数并响应取消。
+     */
+    public MrpRunResponse executeRun(MrpRunRequest request, String traceId,
+            MrpRunProgress progress, MrpPhaseRunner phaseRunner) {
+        long startTime = System.currentTimeMillis();
+        // 阶段耗时经包装的执行器记录；未注入运行缓存 / 指标服务时（基准、单元测试）跳过对应步骤
+        MrpRunMetrics metrics = new MrpRunMetrics();
+        MrpPhaseRunner timedRunner = metrics.timed(phaseRunner);
         
         log.info("[MRP] Run started. mode={}, from={}, to={}, traceId={}", 
             request.getRunMode(), request.getPlanFromDate(), 
             request.getPlanToDate(), traceId);
         
         try {
-            // 1. 获取 MPS 需求（通过 MrpDataService）
-            List<MpsRequirement> mpsRequirements = mrpDataService.getMpsRequirements(request);
-            
-            // 2. BOM 展开
-            List<MrpRequirement> explodedRequirements = new ArrayList<>();
-            for (MpsRequirement mps : mpsRequirements) {
-                explodedRequirements.addAll(
-                    explodeBom(mps.getMaterialCode(), 
-                        BigDecimal.valueOf(mps.getQuantity()), 3)
-                );
+            // 1. 准备：MPS 需求、BOM 快照（整个运行固定同一版本）、分区；
+            //    输入指纹命中运行缓存时直接返回原运行结果（原运行已保存），未命中才按工厂批量预取数据
+            progress.startPhase(MrpRunProgress.PHASE_PREPARE, 1);
+            PreparedRun prepared = timedRunner.run(MrpRunProgress.PHASE_PREPARE, () -> {
+                long mpsStart = System.nanoTime();
+                List<MpsRequirement> mps = mrpDataService.getMpsRequirements(request);
+                metrics.recordPhase(MrpRunMetrics.PHASE_MPS_FETCH, System.nanoTime() - mpsStart);
+                BomGraphSnapshot graph = bomGraphService.current();
+                String fp = null;
+                if (mrpRunCacheService != null && mrpRunCacheService.isEnabled()) {
+                    MrpDataService.InputWatermark watermark = mrpDataService.getInputWatermark();
+                    metrics.addDbCalls(watermark.getQueryCount());
+                    fp = mrpRunCacheService.fingerprint(request, mps, graph, watermark.getValue());
+                    Optional<MrpRunCacheEntry> cached = mrpRunCacheService.get(fp);
+                    if (cached.isPresent()) {
+                        return new PreparedRun(null, fp, cached.get());
+                    }
+                }
+                List<MrpPartition> parts = partitionsOf(request, graph, mps);
+                Map<String, MrpDataContext> contexts = buildPlantContexts(graph, parts,
+                    request.getPlanFromDate());
+                for (MrpDataContext context : contexts.values()) {
+                    metrics.addDbCalls(context.getQueryCount());
+                }
+                return new PreparedRun(new RunInput(mps, graph, bomGraphService.explosionCache(graph), parts,
+                    contexts), fp, null);
+            });
+            progress.step();
+            String fingerprint = prepared.fingerprint;
+            if (prepared.cached != null) {
+                MrpRunResponse hit = prepared.cached.getResponse();
+                metrics.markRunCacheHit();
+                log.info("[MRP] Run served from cache. traceId={}, cachedRunId={}, cachedAt={}", 
+                    traceId, hit.getRunId(), prepared.cached.getCachedAt());
+                return MrpRunResponse.builder()
+                    .runId(hit.getRunId())
+                    .status(hit.getStatus())
+                    .durationMs(System.currentTimeMillis() - startTime)
+                    .requirementCount(hit.getRequirementCount())
+                    .shortageCount(hit.getShortageCount())
+                    .suggestionCount(hit.getSuggestionCount())
+                    .warnings(hit.getWarnings())
+                    .createdAt(hit.getCreatedAt())
+                    .cacheHit(true)
+                    .phaseBreakdown(recordMetrics(metrics, "CACHE_HIT"))
+                    .metrics(metrics.getCounters())
+                    .build();
             }
+            RunInput input = prepared.input;
+            List<MrpPartition> partitions = input.partitions;
+            log.info("[MRP] Using BOM snapshot v{}, partitions={}. traceId={}", 
+                input.bomGraph.getVersion(), partitions.size(), traceId);
             
-            // 3. 计算净需求
-            List<MrpNetRequirement> netRequirements = 
-                calculateNetRequirements(explodedRequirements, request.getPlanFromDate());
+            // 2-5. 展开 / 净算 / 齐套 / 建议
+            long cacheHits = input.explosionCache.getHitCount();
+            long cacheMisses = input.explosionCache.getMissCount();
+            MrpPlanResult plan = computePlan(request, traceId, input, progress, timedRunner);
+            metrics.addExplosionCache(input.explosionCache.getHitCount() - cacheHits,
+                input.explosionCache.getMissCount() - cacheMisses);
+            List<MrpNetRequirement> netRequirements = plan.getNetRequirements();
+            KitCheckResult kitResult = plan.getKitResult();
+            List<KitShortage> shortages = plan.getShortages();
+            List<ProcurementSuggestion> suggestions = plan.getSuggestions();
+            Map<String, MrpNettingState> nettingStates = plan.getNettingStates();
+            metrics.recordExplosion(plan.getPegging());
             
-            // 4. 齐套检查
-            KitCheckResult kitResult = checkKitAvailability(netRequirements);
+            // 6. 保存结果（保存前最后一次检查取消，之前各阶段均无写入）
+            progress.startPhase(MrpRunProgress.PHASE_SAVE, suggestions.size());
+            int batches = timedRunner.run(MrpRunProgress.PHASE_SAVE, () ->
+                mrpDataService.saveMrpResults(traceId, netRequirements, kitResult, suggestions));
+            metrics.addDbCalls(batches);
+            progress.stepBy(suggestions.size());
+            progress.endPhase();
             
-            // 5. 生成采购建议
-            List<ProcurementSuggestion> suggestions = 
-                generateSuggestions(kitResult.getShortages());
-            
-            // 6. 保存结果
-            mrpDataService.saveMrpResults(traceId, netRequirements, kitResult, suggestions);
+            // 7. 发布运行完成事件（LLC 单工厂运行附带净算状态，作为净改变 MRP 的基线）
+            if (nettingStates.size() > 1) {
+                log.info("[MRP] Multi-plant run, net-change baseline not published. plants={}", 
+                    nettingStates.size());
+            }
+            eventPublisher.publishEvent(MrpRunCompletedEvent.builder()
+                .runId(traceId)
+                .nettingState(nettingStates.size() == 1 ? nettingStates.values().iterator().next() : null)
+                .plantCode(nettingStates.size() == 1 ? nettingStates.keySet().iterator().next() : null)
+                .kitResult(kitResult)
+                .suggestions(suggestions)
+                .pegging(plan.getPegging())
+                .completedAt(java.time.LocalDateTime.now())
+                .build());
             
             long duration = System.currentTimeMillis() - startTime;
             
             log.info("[MRP] Run completed. traceId={}, duration={}ms, requirements={}, shortages={}", 
-                traceId, duration, netRequirements.size(), kitResult.getShortages().size());
+                traceId, duration, netRequirements.size(), shortages.size());
             
-            return MrpRunResponse.builder()
+            MrpRunResponse response = MrpRunResponse.builder()
                 .runId(traceId)
                 .status("COMPLETED")
                 .durationMs(duration)
                 .requirementCount(netRequirements.size())
-                .shortageCount(kitResult.getShortages().size())
+                .shortageCount(shortages.size())
                 .suggestionCount(suggestions.size())
-                .warnings(Collections.emptyList())
+                .warnings(plan.getWarnings())
                 .createdAt(LocalDate.now())
+                .cacheHit(false)
+                .phaseBreakdown(recordMetrics(metrics, "COMPLETED"))
+                .metrics(metrics.getCounters())
                 .build();
+            if (fingerprint != null) {
+                mrpRunCacheService.put(fingerprint, response, kitResult, suggestions);
+            }
+            return response;
                 
+        } catch (CancellationException e) {
+            log.warn("[MRP] Run cancelled. traceId={}, phase={}", traceId, progress.getCurrentPhase());
+            return MrpRunResponse.builder()
+                .runId(traceId)
+                .status("CANCELLED")
+                .durationMs(System.currentTimeMillis() - startTime)
+                .errorMessage(e.getMessage())
+                .phaseBreakdown(recordMetrics(metrics, "CANCELLED"))
+                .build();
         } catch (Exception e) {
             log.error("[MRP] Run failed. traceId={}", traceId, e);
             return MrpRunResponse.builder()
                 .runId(traceId)
                 .status("FAILED")
                 .errorMessage(e.getMessage())
+                .phaseBreakdown(recordMetrics(metrics, "FAILED"))
                 .build();
         }
     }
 
+    private List<MrpPhaseTiming> recordMetrics(MrpRunMetrics metrics, String status) {
+        if (mrpMetricsService == null) {
+            return Collections.emptyList();
+        }
+        return mrpMetricsService.record(metrics, status);
+    }
+
+    /**
+     * 按运行参数为给定 MPS 批量预取数据上下文
+     * 
+     * @return 工厂编码 → 数据上下文（不分区时键为 null），可供 simulate 反复使用
+     */
+    public Map<String, MrpDataContext> buildDataContexts(MrpRunRequest request, BomGraphSnapshot bomGraph,
+            List<MpsRequirement> mpsRequirements) {
+        return buildPlantContexts(bomGraph, partitionsOf(request, bomGraph, mpsRequirements),
+            request.getPlanFromDate());
+    }
+
+    /**
+     * 模拟计算：基于给定 MPS、BOM 快照与数据上下文计算，不写库、不发布事件
+     * 
+     * 只读入参，可被多个场景并发调用。
+     */
+    public MrpPlanResult simulate(MrpRunRequest request, String scenarioId, List<MpsRequirement> mpsRequirements,
+            BomGraphSnapshot bomGraph, Map<String, MrpDataContext> dataContexts) {
+        RunInput input = new RunInput(mpsRequirements, bomGraph, bomGraphService.explosionCache(bomGraph),
+            partitionsOf(request, bomGraph, mpsRequirements), dataContexts);
+        return computePlan(request, scenarioId, input, MrpRunProgress.none(), MrpPhaseRunner.DIRECT);
+    }
+
+    /**
+     * 运行分区：parallel 时按工厂 × BOM 连通分量，否则整图一个分区
+     * 
+     * 分区方式决定净算口径：按工厂分区时每个工厂一个数据上下文，库存 / 在途只在本工厂内抵扣；
+     * 不分区时数据上下文不限工厂，各工厂库存 / 在途合计后净算。
+     */
+    private static List<MrpPartition> partitionsOf(MrpRunRequest request, BomGraphSnapshot bomGraph,
+            List<MpsRequirement> mpsRequirements) {
+        return Boolean.TRUE.equals(request.getParallel())
+            ? MrpPartition.partition(bomGraph, mpsRequirements)
+            : Collections.singletonList(MrpPartition.whole(mpsRequirements));
+    }
+
+    /**
+     * 展开、净算、齐套、生成建议（不保存）
+     */
+    private MrpPlanResult computePlan(MrpRunRequest request, String traceId, RunInput input,
+            MrpRunProgress progress, MrpPhaseRunner phaseRunner) {
+        // 逐层模式：落在含循环引用的 BOM 分量中的 MPS 跳过并告警，其余分量照常计算
+        List<String> warnings = new ArrayList<>();
+        List<MpsRequirement> plannedMps = PLANNING_MODE_LLC.equals(request.getPlanningMode())
+            || PLANNING_MODE_TIME_PHASED.equals(request.getPlanningMode())
+            ? excludeCyclic(input.bomGraph, input.mpsRequirements, warnings) : input.mpsRequirements;
+        List<MrpPartition> partitions = plannedMps.size() < input.mpsRequirements.size()
+            ? partitionsOf(request, input.bomGraph, plannedMps) : input.partitions;
+        if (!warnings.isEmpty()) {
+            log.warn("[MRP] MPS in cyclic BOMs skipped. skipped={}, warnings={}, traceId={}",
+                input.mpsRequirements.size() - plannedMps.size(), warnings, traceId);
+        }
+        
+        // 2/3. 展开 + 计算净需求（各分区在 partitionPool 上并行，只读内存数据）
+        Map<String, MrpNettingState> nettingStates = new LinkedHashMap<>();
+        if (PLANNING_MODE_LLC.equals(request.getPlanningMode())) {
+            // LLC 模式展开与净算合并为一次逐层遍历
+            long items = 0;
+            for (MrpPartition partition : partitions) {
+                items += partition.itemsInLowLevelCodeOrder(input.bomGraph).length;
+            }
+            progress.startPhase(MrpRunProgress.PHASE_NET, items);
+            phaseRunner.run(MrpRunProgress.PHASE_NET, () -> {
+                // 同一工厂的分区共用净算状态（各自只写本分量的物料下标）
+                for (MrpPartition partition : partitions) {
+                    MrpNettingState state = nettingStates.computeIfAbsent(partition.getPlantCode(),
+                        plant -> new MrpNettingState(input.bomGraph, request.getPlanFromDate()));
+                    for (MpsRequirement mps : partition.getMpsRequirements()) {
+                        state.addIndependentDemand(mps.getMaterialCode(), MrpQuantity.of(mps.getQuantity()));
+                    }
+                }
+                forEachPartition(partitions, partition -> partition.setNetRequirements(
+                    netPartitionByLlc(nettingStates.get(partition.getPlantCode()), partition,
+                        input.contextOf(partition), progress)));
+                return null;
+            });
+        } else if (PLANNING_MODE_TIME_PHASED.equals(request.getPlanningMode())) {
+            // 分时段模式：逐层按时段净算，计划下达作为子项对应时段毛需求
+            MrpBuckets buckets = MrpBuckets.of(request.getBucketSize(), 
+                request.getPlanFromDate(), request.getPlanToDate());
+            long items = 0;
+            for (MrpPartition partition : partitions) {
+                items += partition.itemsInLowLevelCodeOrder(input.bomGraph).length;
+            }
+            progress.startPhase(MrpRunProgress.PHASE_NET, items);
+            phaseRunner.run(MrpRunProgress.PHASE_NET, () -> {
+                Map<String, MrpTimePhasedPlan> plans = new HashMap<>();
+                for (MrpPartition partition : partitions) {
+                    MrpTimePhasedPlan plan = plans.computeIfAbsent(partition.getPlantCode(),
+                        plant -> new MrpTimePhasedPlan(input.bomGraph, buckets));
+                    for (MpsRequirement mps : partition.getMpsRequirements()) {
+                        plan.addIndependentDemand(mps.getMaterialCode(), dueDateOf(mps, request), 
+                            MrpQuantity.of(mps.getQuantity()));
+                    }
+                }
+                plans.forEach((plant, plan) -> {
+                    if (plan.getBeyondHorizon() > 0) {
+                        log.warn("[MRP] MPS due beyond horizon ignored. plant={}, count={}, traceId={}", 
+                            plant, plan.getBeyondHorizon(), traceId);
+                    }
+                });
+                forEachPartition(partitions, partition -> partition.setNetRequirements(
+                    netPartitionTimePhased(plans.get(partition.getPlantCode()), partition,
+                        input.contextOf(partition), progress)));
+                return null;
+            });
+        } else {
+            progress.startPhase(MrpRunProgress.PHASE_EXPLODE, plannedMps.size());
+            phaseRunner.run(MrpRunProgress.PHASE_EXPLODE, () -> {
+                forEachPartition(partitions, partition -> {
+                    // 展开结果直接按物料汇总（定点），不生成中间需求对象
+                    MrpGrossRequirements gross = new MrpGrossRequirements();
+                    for (MpsRequirement mps : partition.getMpsRequirements()) {
+                        explode(input.bomGraph, input.explosionCache, mps.getMaterialCode(),
+                            MrpQuantity.of(mps.getQuantity()), DEFAULT_EXPLODE_LEVELS,
+                            (itemCode, qty, level) -> gross.add(itemCode, qty));
+                        progress.step();
+                    }
+                    partition.setGrossRequirements(gross);
+                });
+                return null;
+            });
+            long exploded = 0;
+            for (MrpPartition partition : partitions) {
+                exploded += partition.getGrossRequirements().size();
+            }
+            progress.startPhase(MrpRunProgress.PHASE_NET, exploded);
+            phaseRunner.run(MrpRunProgress.PHASE_NET, () -> {
+                forEachPartition(partitions, partition -> partition.setNetRequirements(
+                    netGrossRequirements(partition.getGrossRequirements(),
+                        input.contextOf(partition), progress)));
+                return null;
+            });
+        }
+        List<MrpNetRequirement> netRequirements = new ArrayList<>();
+        for (MrpPartition partition : partitions) {
+            netRequirements.addAll(partition.getNetRequirements());
+        }
+        
+        // 追溯索引：复用展开向量，按 MPS 顺序登记各组件毛需求份额
+        int pegLevels = PLANNING_MODE_LLC.equals(request.getPlanningMode())
+            || PLANNING_MODE_TIME_PHASED.equals(request.getPlanningMode())
+            ? Integer.MAX_VALUE : DEFAULT_EXPLODE_LEVELS;
+        MrpPegging pegging = MrpPegging.build(input.bomGraph, input.explosionCache,
+            plannedMps, pegLevels);
+        log.debug("[MRP] Pegging built. mps={}, components={}, pegs={}, traceId={}",
+            pegging.mpsCount(), pegging.componentCount(), pegging.pegCount(), traceId);
+        
+        // 4. 齐套检查
+        progress.startPhase(MrpRunProgress.PHASE_KIT, netRequirements.size());
+        phaseRunner.run(MrpRunProgress.PHASE_KIT, () -> {
+            forEachPartition(partitions, partition -> partition.setKitResult(
+                checkKitAvailability(partition.getNetRequirements(), input.contextOf(partition), progress)));
+            return null;
+        });
+        KitCheckResult kitResult = mergeKitResults(partitions);
+        // 订单级齐套：按优先级 / 交期依次占用组件余额
+        List<KitOrderAllocation> allocations = MrpKitAllocation.allocate(pegging, input.dataContexts);
+        kitResult.setOrderAllocations(allocations);
+        log.info("[MRP] Kit allocation done. orders={}, incomplete={}, traceId={}", allocations.size(),
+            allocations.stream().filter(a -> !a.getKitComplete()).count(), traceId);
+        List<KitShortage> shortages = kitResult.getShortages() != null
+            ? kitResult.getShortages() : Collections.emptyList();
+        
+        // 5. 生成采购建议
+        progress.startPhase(MrpRunProgress.PHASE_SUGGEST, shortages.size());
+        phaseRunner.run(MrpRunProgress.PHASE_SUGGEST, () -> {
+            forEachPartition(partitions, partition -> {
+                List<KitShortage> partitionShortages = partition.getKitResult().getShortages();
+                partition.setSuggestions(partitionShortages != null
+                    ? generateSuggestions(partitionShortages, input.contextOf(partition), progress)
+                    : Collections.emptyList());
+                String plantCode = partition.getPlantCode() != null 
+                    ? partition.getPlantCode() : request.getPlantCode();
+                partition.getSuggestions().forEach(suggestion -> suggestion.setPlantCode(plantCode));
+            });
+            return null;
+        });
+        List<ProcurementSuggestion> suggestions = new ArrayList<>();
+        for (MrpPartition partition : partitions) {
+            suggestions.addAll(partition.getSuggestions());
+        }
+        
+        return new MrpPlanResult(netRequirements, kitResult, suggestions, nettingStates, pegging, warnings);
+    }
+
     /**
-     * BOM 多级展开
+     * BOM 多级展开（使用当前 BOM 图快照）
      */
     public List<MrpRequirement> explodeBom(String parentCode, 
             BigDecimal qty, int maxLevel) {
+        return explodeBom(bomGraphService.current(), parentCode, qty, maxLevel);
+    }
+
+    /**
+     * BOM 多级展开（纯内存，基于指定快照）
+     * 
+     * 同一尾项在同一层级的多条路径合并为一条需求。
+     */
+    public List<MrpRequirement> explodeBom(BomGraphSnapshot bomGraph, String parentCode, 
+            BigDecimal qty, int maxLevel) {
         
         List<MrpRequirement> requirements = new ArrayList<>();
-        Queue<BomNode> queue = new LinkedList<>();
+        explode(bomGraph, bomGraphService.explosionCache(bomGraph), parentCode, MrpQuantity.of(qty), maxLevel,
+            (itemCode, leafQty, level) ->
+                requirements.add(buildRequirement(itemCode, MrpQuantity.toBigDecimal(leafQty), level)));
+        return requirements;
+    }
+
+    /**
+     * BOM 多级展开（定点数量），每个尾项回调一次
+     * 
+     * 取父项的单位尾项向量（共用子装配只计算一次）按数量缩放，不再逐路径遍历子树。
+     */
+    private static void explode(BomGraphSnapshot bomGraph, BomExplosionCache explosionCache,
+            String parentCode, long qty, int maxLevel, LeafConsumer consumer) {
         
-        // 根节点入队
-        queue.offer(new BomNode(parentCode, qty, 0));
+        int root = bomGraph.indexOf(parentCode);
+        if (root < 0) {
+            // 不在任何 BOM 中，视为尾项
+            consumer.accept(parentCode, qty, 0);
+            return;
+        }
         
-        while (!queue.isEmpty()) {
-            BomNode node = queue.poll();
-            
-            // 达到最大层级，停止展开
-            if (node.getLevel() >= maxLevel) {
-                requirements.add(buildRequirement(node));
+        BomExplosionCache.ExplosionVector vector = explosionCache.vectorOf(root, maxLevel);
+        for (int i = 0; i < vector.size(); i++) {
+            consumer.accept(bomGraph.itemCode(vector.leafAt(i)),
+                MrpQuantity.applyFactor(qty, vector.factorAt(i)), vector.levelAt(i));
+        }
+    }
+
+    /**
+     * 构建物料需求
+     */
+    private MrpRequirement buildRequirement(String itemCode, BigDecimal qty, int level) {
+        return MrpRequirement.builder()
+            .itemCode(itemCode)
+            .requiredQty(qty)
+            .level(level)
+            .traceId(traceIdService.generateRequirementTraceId(itemCode))
+            .build();
+    }
+
+    /**
+     * 收集 MPS 物料及其 BOM 下全部可达物料编码（用于批量预取）
+     */
+    private List<String> collectMaterialCodes(BomGraphSnapshot bomGraph,
+            List<MpsRequirement> mpsRequirements) {
+        
+        List<String> codes = new ArrayList<>();
+        boolean[] visited = new boolean[bomGraph.size()];
+        int[] stack = new int[bomGraph.size()];
+        int top = 0;
+        
+        for (MpsRequirement mps : mpsRequirements) {
+            int root = bomGraph.indexOf(mps.getMaterialCode());
+            if (root < 0) {
+                codes.add(mps.getMaterialCode());
+            } else if (!visited[root]) {
+                visited[root] = true;
+                stack[top++] = root;
+            }
+        }
+        
+        while (top > 0) {
+            int item = stack[--top];
+            codes.add(bomGraph.itemCode(item));
+            for (int e = bomGraph.childStart(item), end = bomGraph.childEnd(item); e < end; e++) {
+                int child = bomGraph.childAt(e);
+                if (!visited[child]) {
+                    visited[child] = true;
+                    stack[top++] = child;
+                }
+            }
+        }
+        
+        return codes;
+    }
+
+    /**
+     * 按工厂批量预取数据上下文（每个工厂只预取其 MPS 可达物料）
+     */
+    private Map<String, MrpDataContext> buildPlantContexts(BomGraphSnapshot bomGraph,
+            List<MrpPartition> partitions, LocalDate fromDate) {
+        
+        Map<String, List<MpsRequirement>> mpsByPlant = new LinkedHashMap<>();
+        for (MrpPartition partition : partitions) {
+            mpsByPlant.computeIfAbsent(partition.getPlantCode(), k -> new ArrayList<>())
+                .addAll(partition.getMpsRequirements());
+        }
+        
+        Map<String, MrpDataContext> contexts = new HashMap<>();
+        mpsByPlant.forEach((plant, mps) -> contexts.put(plant,
+            mrpDataService.buildDataContext(collectMaterialCodes(bomGraph, mps), fromDate, plant)));
+        return contexts;
+    }
+
+    /**
+     * 在分区线程池上执行各分区任务并等待全部完成
+     * 
+     * 结果由任务写回各自分区，调用方按分区顺序合并，与执行先后无关。
+     * 任一分区失败（含取消）时在全部任务结束后抛出首个异常。
+     */
+    private void forEachPartition(List<MrpPartition> partitions, Consumer<MrpPartition> task) {
+        if (partitions.size() <= 1) {
+            partitions.forEach(task);
+            return;
+        }
+        
+        List<ForkJoinTask<?>> tasks = new ArrayList<>(partitions.size());
+        for (MrpPartition partition : partitions) {
+            tasks.add(partitionPool.submit(() -> task.accept(partition)));
+        }
+        
+        RuntimeException failure = null;
+        for (ForkJoinTask<?> t : tasks) {
+            try {
+                t.join();
+            } catch (RuntimeException e) {
+                if (failure == null) {
+                    failure = e;
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * 按分区顺序合并齐套结果
+     */
+    private KitCheckResult mergeKitResults(List<MrpPartition> partitions) {
+        if (partitions.size() == 1) {
+            return partitions.get(0).getKitResult();
+        }
+        
+        KitCheckResult merged = new KitCheckResult();
+        merged.setCheckDate(LocalDate.now());
+        for (MrpPartition partition : partitions) {
+            KitCheckResult result = partition.getKitResult();
+            if (result.getKitItems() != null) {
+                result.getKitItems().forEach(merged::addKitItem);
+            }
+            if (result.getShortages() != null) {
+                result.getShortages().forEach(merged::addShortage);
+            }
+        }
+        merged.calculateOverallFillRate();
+        return merged;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        partitionPool.shutdownNow();
+    }
+
+    /**
+     * 对已汇总的毛需求逐物料净算
+     */
+    private List<MrpNetRequirement> netGrossRequirements(
+            MrpGrossRequirements gross, MrpDataContext dataContext, MrpRunProgress progress) {
+        
+        List<MrpNetRequirement> netRequirements = new ArrayList<>(gross.size());
+        gross.forEach((itemCode, grossQty) -> {
+            MrpNetRequirement netReqItem = netItem(itemCode, grossQty, dataContext);
+            if (netReqItem != null) {
+                netRequirements.add(netReqItem);
+            }
+            progress.step();
+        });
+        return netRequirements;
+    }
+
+    /**
+     * 按低层码逐层计算净需求（按 MPS 可达物料即时预取数据）
+     * 
+     * 所有 MPS 需求先汇总到顶层物料，再按 LLC 由浅到深逐层处理：
+     * 每个物料只在其全部父项处理完后净算一次，净需求按用量/产出率
+     * 累加到子项毛需求。中间层库存因此参与净算，共用子件也只展开一次。
+     * 返回尾项（无子项物料）的净需求。
+     */
+    public List<MrpNetRequirement> calculateNetRequirementsByLlc(BomGraphSnapshot bomGraph,
+            List<MpsRequirement> mpsRequirements, LocalDate fromDate) {
+        MrpDataContext dataContext = mrpDataService.buildDataContext(
+            collectMaterialCodes(bomGraph, mpsRequirements), fromDate);
+        return planByLlc(bomGraph, mpsRequirements, dataContext, MrpRunProgress.none())
+            .netRequirements();
+    }
+
+    /**
+     * LLC 逐层净算，返回完整净算状态（供净改变 MRP 复用）
+     */
+    public MrpNettingState planByLlc(BomGraphSnapshot bomGraph,
+            List<MpsRequirement> mpsRequirements, MrpDataContext dataContext, MrpRunProgress progress) {
+        
+        checkAcyclic(bomGraph, mpsRequirements);
+        
+        MrpNettingState state = new MrpNettingState(bomGraph, dataContext.getFromDate());
+        
+        // 汇总独立需求
+        for (MpsRequirement mps : mpsRequirements) {
+            state.addIndependentDemand(mps.getMaterialCode(), MrpQuantity.of(mps.getQuantity()));
+        }
+        
+        netPartitionByLlc(state, MrpPartition.whole(mpsRequirements), dataContext, progress);
+        return state;
+    }
+
+    /**
+     * MPS 可达的 BOM 分量含循环引用时无法计算低层码（其余分量的循环不影响）
+     */
+    private static void checkAcyclic(BomGraphSnapshot bomGraph, List<MpsRequirement> mpsRequirements) {
+        List<String> cyclic = new ArrayList<>();
+        if (excludeCyclic(bomGraph, mpsRequirements, cyclic).size() < mpsRequirements.size()) {
+            throw new IllegalStateException("无法计算低层码: " + String.join("; ", cyclic));
+        }
+    }
+
+    /**
+     * 剔除顶层物料位于含循环引用的 BOM 连通分量中的 MPS，每个分量一条告警
+     * 
+     * 循环只使所在分量的低层码无定义；MPS 沿 BOM 只能到达自身分量，其余 MPS 照常计算。
+     */
+    private static List<MpsRequirement> excludeCyclic(BomGraphSnapshot bomGraph,
+            List<MpsRequirement> mpsRequirements, List<String> warnings) {
+        if (!bomGraph.hasCycle()) {
+            return mpsRequirements;
+        }
+        List<MpsRequirement> acyclic = new ArrayList<>(mpsRequirements.size());
+        Map<Integer, List<String>> skippedByComponent = new TreeMap<>();
+        for (MpsRequirement mps : mpsRequirements) {
+            int item = bomGraph.indexOf(mps.getMaterialCode());
+            if (item >= 0 && bomGraph.hasCycle(bomGraph.componentOf(item))) {
+                skippedByComponent.computeIfAbsent(bomGraph.componentOf(item), k -> new ArrayList<>())
+                    .add(mps.getId() != null ? mps.getId() : mps.getMaterialCode());
+            } else {
+                acyclic.add(mps);
+            }
+        }
+        skippedByComponent.forEach((component, skipped) -> warnings.add(
+            "BOM 存在循环引用，已跳过 MPS " + skipped + "，循环物料: " + bomGraph.cyclicItemCodes(component)));
+        return acyclic;
+    }
+
+    /**
+     * 在已登记独立需求的净算状态上逐层净算一个分区，返回分区尾项净需求
+     * 
+     * 分区只读写本分区物料下标；同一工厂的其它分区可并发处理不相交的物料。
+     */
+    private List<MrpNetRequirement> netPartitionByLlc(MrpNettingState state, MrpPartition partition,
+            MrpDataContext dataContext, MrpRunProgress progress) {
+        
+        BomGraphSnapshot bomGraph = state.getBomGraph();
+        int[] items = partition.itemsInLowLevelCodeOrder(bomGraph);
+        List<MrpNetRequirement> netRequirements = new ArrayList<>();
+        
+        // 1. 按低层码逐层净算，净需求派生为子项毛需求
+        int netted = 0;
+        for (int item : items) {
+            progress.step();
+            if (!state.hasGross(item)) {
                 continue;
             }
-            
-            // 查询子项 BOM
-            List<BomLine> bomLines = bomRepository
-                .findByParentItemAndActive(node.getItemCode(), true);
-            
-            if (bomLines.isEmpty()) {
-                // 无子项，尾项
-                requirements.add(buildRequirement(node));
+            netted++;
+            long netReq = netItemInState(state, item, dataContext);
+            if (netReq == MrpQuantity.NONE || !bomGraph.hasChildren(item)) {
                 continue;
             }
-            
-            // 展开子项
-            for (BomLine line : bomLines) {
-                BigDecimal childQty = node.getQty()
-                    .multiply(line.getUsagePerParent() != null ? line.getUsagePerParent() : BigDecimal.ONE)
-                    .multiply(line.getYieldRate() != null ? line.getYieldRate() : BigDecimal.valueOf(DEFAULT_YIELD_RATE))
-                    .setScale(4, RoundingMode.HALF_UP);
-                
-                queue.offer(new BomNode(
-                    line.getChildItem(), childQty, node.getLevel() + 1));
+            for (int e = bomGraph.childStart(item), end = bomGraph.childEnd(item); e < end; e++) {
+                state.addGross(bomGraph.childAt(e), explodeQty(netReq, bomGraph, e));
+            }
+        }
+        for (int item : items) {
+            if (state.getLeafRequirement(item) != null) {
+                netRequirements.add(state.getLeafRequirement(item));
             }
         }
         
-        return requirements;
+        // 2. 不在 BOM 图中的 MPS 物料直接作为尾项净算
+        if (partition.includesStandalone()) {
+            for (Map.Entry<String, Long> entry : state.getStandaloneDemand().entrySet()) {
+                MrpNetRequirement requirement = netItem(entry.getKey(), entry.getValue(), dataContext);
+                state.setStandaloneRequirement(entry.getKey(), requirement);
+                if (requirement != null) {
+                    netRequirements.add(requirement);
+                    netted++;
+                }
+            }
+        }
+        
+        if (partition.getComponent() == MrpPartition.WHOLE) {
+            log.info("[MRP] LLC netting done. levels={}, netted={}", 
+                bomGraph.maxLowLevelCode() + 1, netted);
+        } else {
+            log.debug("[MRP] LLC netting done. partition={}, netted={}", partition, netted);
+        }
+        
+        return netRequirements;
     }
 
     /**
-     * 构建物料需求
+     * MPS 交期：dueDate，其次 requirementDate，均无时取计划起始日
      */
-    private MrpRequirement buildRequirement(BomNode node) {
-        return MrpRequirement.builder()
-            .itemCode(node.getItemCode())
-            .requiredQty(node.getQty())
-            .level(node.getLevel())
-            .traceId(traceIdService.generateRequirementTraceId(node.getItemCode()))
-            .build();
+    private static LocalDate dueDateOf(MpsRequirement mps, MrpRunRequest request) {
+        if (mps.getDueDate() != null) {
+            return mps.getDueDate();
+        }
+        return mps.getRequirementDate() != null ? mps.getRequirementDate() : request.getPlanFromDate();
     }
 
     /**
-     * 计算净需求
+     * 分时段逐层净算一个分区，返回尾项各时段计划收货作为净需求
+     * 
+     * 父项计划下达按用量 × 产出率计入子项同一时段毛需求；
+     * 在途按到货日期计入预计到货，提前期以时段数偏移。
      */
-    private List<MrpNetRequirement> calculateNetRequirements(
-            List<MrpRequirement> requirements, LocalDate fromDate) {
+    private List<MrpNetRequirement> netPartitionTimePhased(MrpTimePhasedPlan plan, MrpPartition partition,
+            MrpDataContext dataContext, MrpRunProgress progress) {
         
+        BomGraphSnapshot bomGraph = plan.getBomGraph();
         List<MrpNetRequirement> netRequirements = new ArrayList<>();
         
-        // 按物料汇总
-        Map<String, MrpRequirement> requirementMap = requirements.stream()
-            .collect(Collectors.groupingBy(
-                MrpRequirement::getItemCode,
-                Collectors.reducing(
-                    MrpRequirement.builder().build(),
-                    (a, b) -> MrpRequirement.builder()
-                        .itemCode(a.getItemCode() != null ? a.getItemCode() : b.getItemCode())
-                        .requiredQty(a.getRequiredQty() != null ? a.getRequiredQty().add(b.getRequiredQty()) : b.getRequiredQty())
-                        .level(Math.min(a.getLevel() != null ? a.getLevel() : 0, b.getLevel() != null ? b.getLevel() : 0))
-                        .build()
-                )
-            ));
-        
-        for (MrpRequirement req : requirementMap.values()) {
-            // 获取库存数据（通过 MrpDataService）
-            BigDecimal onHand = mrpDataService.getOnHand(req.getItemCode(), fromDate);
-            BigDecimal inTransit = mrpDataService.getInTransit(req.getItemCode(), fromDate);
-            BigDecimal allocated = mrpDataService.getAllocated(req.getItemCode(), fromDate);
-            BigDecimal safetyStock = mrpDataService.getSafetyStock(req.getItemCode());
-            
-            // 计算可用量
-            BigDecimal available = onHand.add(inTransit).subtract(allocated);
-            
-            // 计算净需求
-            BigDecimal netReq = req.getRequiredQty().subtract(available).subtract(safetyStock);
-            
-            if (netReq.compareTo(BigDecimal.ZERO) > 0) {
-                MrpNetRequirement netReqItem = MrpNetRequirement.builder()
-                    .itemCode(req.getItemCode())
-                    .grossRequirement(req.getRequiredQty())
-                    .availableQty(available)
-                    .safetyStock(safetyStock)
-                    .netRequirement(netReq)
-                    .requiredDate(fromDate.plusWeeks(2))
-                    .leadTime(mrpDataService.getLeadTime(req.getItemCode()))
-                    .traceId(traceIdService.generateRequirementTraceId(req.getItemCode()))
-                    .build();
-                
-                netRequirements.add(netReqItem);
+        for (int item : partition.itemsInLowLevelCodeOrder(bomGraph)) {
+            progress.step();
+            MrpTimePhasedRecord record = plan.getRecord(item);
+            if (record == null) {
+                continue;
+            }
+            planRecord(record, plan.getBuckets(), dataContext);
+            if (!bomGraph.hasChildren(item)) {
+                addPlannedReceipts(record, plan.getBuckets(), dataContext, netRequirements);
+                continue;
+            }
+            for (int e = bomGraph.childStart(item), end = bomGraph.childEnd(item); e < end; e++) {
+                long factor = bomGraph.factorAt(e);
+                MrpTimePhasedRecord child = plan.recordOf(bomGraph.childAt(e));
+                for (int t = 0; t < record.size(); t++) {
+                    long release = record.plannedRelease(t);
+                    if (release > 0) {
+                        child.addGross(t, MrpQuantity.applyFactor(release, factor));
+                    }
+                }
+            }
+        }
+        
+        if (partition.includesStandalone()) {
+            for (MrpTimePhasedRecord record : plan.getStandaloneRecords()) {
+                planRecord(record, plan.getBuckets(), dataContext);
+                addPlannedReceipts(record, plan.getBuckets(), dataContext, netRequirements);
             }
         }
         
@@ -224,16 +810,186 @@ public class MRPEngineService {
     }
 
     /**
-     * 齐套检查
+     * 计入预计到货并净算单条记录
+     */
+    private static void planRecord(MrpTimePhasedRecord record, MrpBuckets buckets, MrpDataContext dataContext) {
+        String itemCode = record.getItemCode();
+        int index = dataContext.indexOf(itemCode);
+        if (index >= 0) {
+            for (int k = dataContext.receiptStart(index), end = dataContext.receiptEnd(index); k < end; k++) {
+                int bucket = buckets.bucketOf(dataContext.receiptDate(k));
+                if (bucket >= 0) {
+                    record.addScheduledReceipt(bucket, dataContext.receiptQty(k));
+                }
+            }
+        }
+        long onHand = MrpQuantity.subtract(dataContext.onHandQty(itemCode), dataContext.allocatedQty(itemCode));
+        record.plan(onHand, dataContext.safetyStockQty(itemCode),
+            buckets.leadTimeBuckets(dataContext.getLeadTime(itemCode)));
+    }
+
+    /**
+     * 尾项各时段计划收货转为净需求（需求日期为时段起始日）
+     */
+    private void addPlannedReceipts(MrpTimePhasedRecord record, MrpBuckets buckets,
+            MrpDataContext dataContext, List<MrpNetRequirement> netRequirements) {
+        
+        String itemCode = record.getItemCode();
+        for (int t = 0; t < record.size(); t++) {
+            long receipt = record.plannedReceipt(t);
+            if (receipt <= 0) {
+                continue;
+            }
+            netRequirements.add(MrpNetRequirement.builder()
+                .itemCode(itemCode)
+                .grossRequirement(MrpQuantity.toBigDecimal(record.gross(t)))
+                .availableQty(MrpQuantity.toBigDecimal(record.projectedOnHand(t) - receipt))
+                .safetyStock(dataContext.getSafetyStock(itemCode))
+                .netRequirement(MrpQuantity.toBigDecimal(receipt))
+                .requiredDate(buckets.startOf(t))
+                .leadTime(dataContext.getLeadTime(itemCode))
+                .traceId(traceIdService.generateRequirementTraceId(itemCode))
+                .build());
+        }
+    }
+
+    /**
+     * 净改变：只重算脏物料
+     * 
+     * 脏集合须对子项封闭（脏物料的全部下级也为脏），按低层码顺序
+     * 由父项已有净需求回拉毛需求后重新净算；非脏物料保持上次结果。
+     *
+     * @param dirty 按快照物料下标标记的脏集合
+     * @param dirtyStandalone 不在 BOM 图中的脏 MPS 物料
+     * @param dataContext 至少覆盖脏物料的最新数据
+     */
+    public void renetByLlc(MrpNettingState state, boolean[] dirty,
+            Collection<String> dirtyStandalone, MrpDataContext dataContext) {
+        
+        BomGraphSnapshot bomGraph = state.getBomGraph();
+        int renetted = 0;
+        
+        for (int item : bomGraph.itemsInLowLevelCodeOrder()) {
+            if (!dirty[item]) {
+                continue;
+            }
+            state.resetGross(item);
+            for (int k = bomGraph.parentStart(item), end = bomGraph.parentEnd(item); k < end; k++) {
+                int e = bomGraph.parentEdgeAt(k);
+                long parentNet = state.getNet(bomGraph.edgeParent(e));
+                if (parentNet != MrpQuantity.NONE) {
+                    state.addGross(item, explodeQty(parentNet, bomGraph, e));
+                }
+            }
+            if (!state.hasGross(item)) {
+                state.setNet(item, MrpQuantity.NONE);
+                state.setLeafRequirement(item, null);
+                continue;
+            }
+            renetted++;
+            netItemInState(state, item, dataContext);
+        }
+        
+        for (String code : dirtyStandalone) {
+            Long demand = state.getStandaloneDemand().get(code);
+            if (demand != null) {
+                state.setStandaloneRequirement(code, netItem(code, demand, dataContext));
+                renetted++;
+            }
+        }
+        
+        log.info("[MRP] Net-change re-netting done. renetted={}", renetted);
+    }
+
+    /**
+     * 净算状态中的单个物料：记录净需求及尾项需求，返回净需求（无则 null）
+     */
+    private long netItemInState(MrpNettingState state, int item, MrpDataContext dataContext) {
+        BomGraphSnapshot bomGraph = state.getBomGraph();
+        String itemCode = bomGraph.itemCode(item);
+        long gross = state.getGross(item);
+        long netReq = netQty(itemCode, gross, dataContext);
+        if (netReq <= 0) {
+            netReq = MrpQuantity.NONE;
+        }
+        state.setNet(item, netReq);
+        state.setLeafRequirement(item, bomGraph.hasChildren(item) || netReq == MrpQuantity.NONE
+            ? null : buildNetRequirement(itemCode, gross, netReq, dataContext));
+        return netReq;
+    }
+
+    /**
+     * 子项需求量 = 父项数量 × 用量 × 产出率（定点，保留 4 位小数）
+     */
+    private static long explodeQty(long parentQty, BomGraphSnapshot bomGraph, int edge) {
+        return MrpQuantity.applyFactor(parentQty, bomGraph.factorAt(edge));
+    }
+
+    /**
+     * 可用量 = 现有量 + 在途 - 已分配（定点）
+     */
+    private static long availableQty(String itemCode, MrpDataContext dataContext) {
+        return MrpQuantity.subtract(
+            MrpQuantity.add(dataContext.onHandQty(itemCode), dataContext.inTransitQty(itemCode)),
+            dataContext.allocatedQty(itemCode));
+    }
+
+    /**
+     * 净需求 = 毛需求 - 可用量 - 安全库存（定点，可能 ≤ 0）
+     */
+    private static long netQty(String itemCode, long grossQty, MrpDataContext dataContext) {
+        return MrpQuantity.subtract(
+            MrpQuantity.subtract(grossQty, availableQty(itemCode, dataContext)),
+            dataContext.safetyStockQty(itemCode));
+    }
+
+    /**
+     * 单物料净算，无净需求时返回 null
+     */
+    private MrpNetRequirement netItem(String itemCode, long grossQty, MrpDataContext dataContext) {
+        long netReq = netQty(itemCode, grossQty, dataContext);
+        return netReq > 0 ? buildNetRequirement(itemCode, grossQty, netReq, dataContext) : null;
+    }
+
+    /**
+     * 构建净需求 DTO（定点 → BigDecimal 边界）
+     */
+    private MrpNetRequirement buildNetRequirement(String itemCode, long grossQty, long netReq,
+            MrpDataContext dataContext) {
+        return MrpNetRequirement.builder()
+            .itemCode(itemCode)
+            .grossRequirement(MrpQuantity.toBigDecimal(grossQty))
+            .availableQty(MrpQuantity.toBigDecimal(availableQty(itemCode, dataContext)))
+            .safetyStock(MrpQuantity.toBigDecimal(dataContext.safetyStockQty(itemCode)))
+            .netRequirement(MrpQuantity.toBigDecimal(netReq))
+            .requiredDate(dataContext.getFromDate().plusWeeks(2))
+            .leadTime(dataContext.getLeadTime(itemCode))
+            .traceId(traceIdService.generateRequirementTraceId(itemCode))
+            .build();
+    }
+
+    /**
+     * 齐套检查（按需求物料即时预取数据）
      */
     public KitCheckResult checkKitAvailability(
             List<MrpNetRequirement> requirements) {
+        MrpDataContext dataContext = mrpDataService.buildDataContext(
+            requirements.stream().map(MrpNetRequirement::getItemCode).collect(Collectors.toList()),
+            LocalDate.now());
+        return checkKitAvailability(requirements, dataContext, MrpRunProgress.none());
+    }
+
+    /**
+     * 齐套检查
+     */
+    public KitCheckResult checkKitAvailability(
+            List<MrpNetRequirement> requirements, MrpDataContext dataContext, MrpRunProgress progress) {
         
         KitCheckResult result = new KitCheckResult();
         result.setCheckDate(LocalDate.now());
         
         for (MrpNetRequirement req : requirements) {
-            BigDecimal available = mrpDataService.getAvailable(req.getItemCode());
+            BigDecimal available = dataContext.getAvailable(req.getItemCode());
             double fillRate = req.getNetRequirement().doubleValue() > 0 
                 ? Math.min(1.0, available.doubleValue() / req.getNetRequirement().doubleValue())
                 : 1.0;
@@ -264,6 +1020,7 @@ public class MRPEngineService {
                 .build();
             
             result.addKitItem(kitItem);
+            progress.step();
         }
         
         result.calculateOverallFillRate();
@@ -271,91 +1028,132 @@ public class MRPEngineService {
     }
 
     /**
-     * 生成采购建议
+     * 生成采购建议（按缺料物料即时预取数据）
      */
     public List<ProcurementSuggestion> generateSuggestions(
             List<KitShortage> shortages) {
+        MrpDataContext dataContext = mrpDataService.buildDataContext(
+            shortages.stream().map(KitShortage::getItemCode).collect(Collectors.toList()),
+            LocalDate.now());
+        return generateSuggestions(shortages, dataContext, MrpRunProgress.none());
+    }
+
+    /**
+     * 生成采购建议
+     * 
+     * 缺料按物料分组、组内按需求日期排序后一次性交给 MrpLotSizing 定批量
+     * （规则取自 MRPConstraint，默认按需 + MOQ），每笔计划订单生成一条建议。
+     */
+    public List<ProcurementSuggestion> generateSuggestions(
+            List<KitShortage> shortages, MrpDataContext dataContext, MrpRunProgress progress) {
         
-        List<ProcurementSuggestion> suggestions = new ArrayList<>();
-        
+        // 1. 按物料分组，组内按需求日期排序
+        Map<String, List<KitShortage>> shortagesByItem = new LinkedHashMap<>();
         for (KitShortage shortage : shortages) {
-            // 匹配供应商
-            List<SupplierInfo> suppliers = mrpDataService.findActiveSuppliers(shortage.getItemCode());
-            
-            if (suppliers.isEmpty()) {
-                log.warn("[MRP] No supplier found for {}", shortage.getItemCode());
-                continue;
+            shortagesByItem.computeIfAbsent(shortage.getItemCode(), k -> new ArrayList<>()).add(shortage);
+        }
+        
+        // 2. 整批定批量
+        LocalDate planStart = dataContext.getFromDate() != null ? dataContext.getFromDate() : LocalDate.now();
+        MrpLotSizing.Batch batch = new MrpLotSizing.Batch(shortagesByItem.size(), shortages.size());
+        List<KitShortage> periods = new ArrayList<>(shortages.size());
+        for (Map.Entry<String, List<KitShortage>> entry : shortagesByItem.entrySet()) {
+            List<KitShortage> itemShortages = entry.getValue();
+            itemShortages.sort(Comparator.comparing(KitShortage::getRequiredDate,
+                Comparator.nullsFirst(Comparator.naturalOrder())));
+            batch.addItem(dataContext.lotSizePolicy(entry.getKey()));
+            for (KitShortage shortage : itemShortages) {
+                int day = shortage.getRequiredDate() != null
+                    ? (int) Math.max(0, ChronoUnit.DAYS.between(planStart, shortage.getRequiredDate()))
+                    : 0;
+                batch.addPeriod(day, MrpQuantity.of(shortage.getShortageQty()));
+                periods.add(shortage);
             }
-            
-            // 选择最优供应商
-            SupplierInfo best = selectBestSupplier(suppliers, shortage.getRequiredQty());
-            
-            // 计算建议采购量
-            BigDecimal suggestedQty = calculateSuggestedQty(shortage);
-            
-            // 计算建议日期
-            LocalDate suggestedDate = shortage.getRequiredDate() != null 
-                ? shortage.getRequiredDate().minusDays(best.getLeadTime())
-                : LocalDate.now().plusDays(best.getLeadTime());
-            
-            ProcurementSuggestion suggestion = ProcurementSuggestion.builder()
-                .itemCode(shortage.getItemCode())
-                .suggestedQty(suggestedQty)
-                .suggestedDate(suggestedDate)
-                .supplierCode(best.getSupplierCode())
-                .supplierName(best.getSupplierName())
-                .urgencyLevel(shortage.getUrgencyLevel())
-                .traceId(traceIdService.generateSuggestionTraceId(shortage.getItemCode()))
-                .build();
-            
-            suggestions.add(suggestion);
+        }
+        long[] orders = MrpLotSizing.plan(batch);
+        
+        // 3. 每笔计划订单一条建议（供应商取自货源清单；无货源时建议不带供应商，由采购员指定）
+        MrpSourceList sourceList = mrpDataService.getSourceList();
+        List<ProcurementSuggestion> suggestions = new ArrayList<>();
+        Set<String> unsourced = new LinkedHashSet<>();
+        for (int item = 0; item < batch.itemCount(); item++) {
+            for (int p = batch.periodStart(item); p < batch.periodEnd(item); p++) {
+                progress.step();
+                if (orders[p] == 0) {
+                    // 已由前面合并的订单覆盖
+                    continue;
+                }
+                KitShortage shortage = periods.get(p);
+                
+                SupplierInfo supplier = sourceList.select(shortage.getItemCode());
+                if (supplier == null) {
+                    unsourced.add(shortage.getItemCode());
+                }
+                int leadTime = supplier != null && supplier.getLeadTime() != null ? supplier.getLeadTime()
+                    : dataContext.getLeadTime(shortage.getItemCode());
+                
+                // 计算建议日期
+                LocalDate suggestedDate = shortage.getRequiredDate() != null 
+                    ? shortage.getRequiredDate().minusDays(leadTime)
+                    : LocalDate.now().plusDays(leadTime);
+                
+                ProcurementSuggestion suggestion = ProcurementSuggestion.builder()
+                    .itemCode(shortage.getItemCode())
+                    .suggestedQty(MrpQuantity.toBigDecimal(orders[p]))
+                    .suggestedDate(suggestedDate)
+                    .requiredDate(shortage.getRequiredDate())
+                    .leadTime(leadTime)
+                    .estimatedPrice(supplier != null ? supplier.getPrice() : null)
+                    .supplierCode(supplier != null ? supplier.getSupplierCode() : null)
+                    .supplierName(supplier != null ? supplier.getSupplierName() : null)
+                    .urgencyLevel(shortage.getUrgencyLevel())
+                    .traceId(traceIdService.generateSuggestionTraceId(shortage.getItemCode()))
+                    .build();
+                
+                suggestions.add(suggestion);
+            }
+        }
+        if (!unsourced.isEmpty()) {
+            log.warn("[MRP] No supplier maintained for {} materials, suggestions left unassigned: {}",
+                unsourced.size(), unsourced);
         }
         
         return suggestions;
     }
 
     /**
-     * 计算建议采购量（考虑 MOQ 和包装量）
+     * 运行输入（准备阶段产出）
      */
-    private BigDecimal calculateSuggestedQty(KitShortage shortage) {
-        BigDecimal shortageQty = shortage.getShortageQty();
-        BigDecimal moq = mrpDataService.getMoq(shortage.getItemCode());
-        BigDecimal packQty = BigDecimal.ONE;
-        
-        BigDecimal withLoss = shortageQty;
-        
-        // 取整到包装量
-        if (packQty.compareTo(BigDecimal.ONE) > 0) {
-            withLoss = withLoss.divide(packQty, 0, RoundingMode.CEILING)
-                .multiply(packQty);
+    @lombok.AllArgsConstructor
+    private static class RunInput {
+        private final List<MpsRequirement> mpsRequirements;
+        private final BomGraphSnapshot bomGraph;
+        private final BomExplosionCache explosionCache;
+        private final List<MrpPartition> partitions;
+        // 工厂编码 → 数据上下文（不分区时键为 null）
+        private final Map<String, MrpDataContext> dataContexts;
+
+        MrpDataContext contextOf(MrpPartition partition) {
+            return dataContexts.get(partition.getPlantCode());
         }
-        
-        return withLoss.max(moq);
     }
 
     /**
-     * 选择最优供应商
+     * 准备阶段结果：命中运行缓存时只有 cached，否则为运行输入
      */
-    private SupplierInfo selectBestSupplier(
-            List<SupplierInfo> suppliers, BigDecimal qty) {
-        
-        return suppliers.stream()
-            .filter(s -> s.getMoq() == null || s.getMoq().compareTo(qty) <= 0)
-            .min(Comparator
-                .comparingDouble((SupplierInfo s) -> s.getPrice() != null ? s.getPrice().doubleValue() : Double.MAX_VALUE)
-                .thenComparingInt(s -> s.getLeadTime() != null ? s.getLeadTime() : DEFAULT_LEAD_TIME)
-                .thenComparingDouble(s -> s.getOtdRate() != null ? -s.getOtdRate() : 0))
-            .orElse(suppliers.get(0));
+    @lombok.AllArgsConstructor
+    private static class PreparedRun {
+        private final RunInput input;
+        private final String fingerprint;
+        private final MrpRunCacheEntry cached;
     }
 
     /**
-     * BOM 展开节点
+     * 展开尾项回调（数量为 MrpQuantity 定点）
      */
-    @lombok.Data
-    @lombok.AllArgsConstructor
-    private static class BomNode {
-        private String itemCode;
-        private BigDecimal qty;
-        private int level;
+    @FunctionalInterface
+    private interface LeafConsumer {
+        void accept(String itemCode, long qty, int level);
     }
+
 }
@@ -2,14 +2,22 @@ package com.hjscm.service;
 
 import com.hjscm.dto.*;
 import com.hjscm.entity.*;
+import com.hjscm.mdm.entity.SupplierEntity;
+import com.hjscm.mdm.repository.SupplierRepository;
 import com.hjscm.repository.*;
+import com.hjscm.service.mrp.MrpDataContext;
+import com.hjscm.service.mrp.MrpLotSizePolicy;
+import com.hjscm.service.mrp.MrpSourceList;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
 import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
 import java.util.*;
 import java.util.stream.Collectors;
 
@@ -18,8 +26,10 @@ import java.util.stream.Collectors;
  * 
  * 功能：
  * - MPS 需求查询
- * - 供应商匹配
- * - MRP 结果保存
+ * - MRP 数据上下文批量预取
+ * - 供应商货源清单索引（常驻，定期按供应商主数据刷新）
+ * - MRP 结果批量保存（采购建议 / 净需求 / 齐套结果）
+ * - 输入水位（库存 / 在途 / 约束），供 MRP 运行缓存判断输入是否变化
  * 
  * @DataSeeding 目前使用 Mock 数据，后续对接真实 MPS 模块
  */
@@ -35,6 +45,29 @@ public class MrpDataService {
     private final BomRepository bomRepository;
     private final ProcurementSuggestionRepository procurementRepository;
     private final TraceIdService traceIdService;
+    private final MrpResultJdbcRepository resultJdbcRepository;
+    private final MrpReservationRepository reservationRepository;
+    private final SupplierRepository supplierRepository;
+
+    // IN 查询单批参数上限（PostgreSQL 绑定参数上限 32767）
+    private static final int IN_QUERY_CHUNK = 5000;
+
+    private static final String DEFAULT_PLANT = "DEFAULT";
+    private static final DateTimeFormatter CODE_DATE = DateTimeFormatter.ofPattern("yyyyMMdd");
+
+    // 结果批量写入每批行数
+    @Value("${mrp.persistence.batch-size:1000}")
+    private int persistenceBatchSize = 1000;
+
+    // 货源清单索引刷新间隔
+    @Value("${mrp.source-list.refresh-seconds:600}")
+    private long sourceListRefreshSeconds = 600;
+
+    // 默认货源：未指定首选供应商的物料使用的供应商编码（留空则这些物料的采购建议不带供应商）
+    @Value("${mrp.source-list.default-supplier-id:}")
+    private String defaultSupplierId = "";
+
+    private volatile MrpSourceList sourceList;
 
     /**
      * 获取 MPS 需求（模拟数据）
@@ -82,6 +115,165 @@ public class MrpDataService {
         return mockRequirements;
     }
 
+    /**
+     * 批量构建 MRP 数据上下文
+     * 
+     * 库存、在途、约束、预留各一次集合查询（超过 IN_QUERY_CHUNK 时分批），
+     * 查询次数与物料数量无关。
+     */
+    @Transactional(readOnly = true)
+    public MrpDataContext buildDataContext(Collection<String> materialCodes, LocalDate fromDate) {
+        return buildDataContext(materialCodes, fromDate, null);
+    }
+
+    /**
+     * 批量构建指定工厂的 MRP 数据上下文
+     * 
+     * @param plantCode 工厂编码，为 null 时不按工厂过滤（全部工厂合计）
+     */
+    @Transactional(readOnly = true)
+    public MrpDataContext buildDataContext(Collection<String> materialCodes, LocalDate fromDate,
+            String plantCode) {
+        long start = System.currentTimeMillis();
+        MrpDataContext.Builder builder = MrpDataContext.builder(materialCodes, fromDate);
+        List<String> codes = builder.materialCodes();
+        
+        // 1. 库存余额：现有量取 fromDate 当日及之前最新一条，可用量/安全库存取最新一条
+        Map<String, InventoryBalance> latestAsOf = new HashMap<>();
+        Map<String, InventoryBalance> latest = new HashMap<>();
+        for (List<String> chunk : chunks(codes)) {
+            builder.countQuery();
+            for (InventoryBalance b : inventoryRepository.findByMaterialCodeIn(chunk)) {
+                if (plantCode != null && !plantCode.equals(b.getPlantCode())) {
+                    continue;
+                }
+                latest.merge(b.getMaterialCode(), b, MrpDataService::newer);
+                if (b.getAsOfDate() != null && !b.getAsOfDate().isAfter(fromDate)) {
+                    latestAsOf.merge(b.getMaterialCode(), b, MrpDataService::newer);
+                }
+            }
+        }
+        latestAsOf.forEach((code, b) -> builder.onHand(code, b.getQuantity()));
+        latest.forEach((code, b) -> {
+            BigDecimal qty = b.getQuantity() != null ? b.getQuantity() : BigDecimal.ZERO;
+            BigDecimal reserved = b.getReservedQty() != null ? b.getReservedQty() : BigDecimal.ZERO;
+            builder.available(code, qty.subtract(reserved));
+            builder.safetyStock(code, b.getSafetyStock());
+        });
+        
+        // 2. 在途
+        for (List<String> chunk : chunks(codes)) {
+            builder.countQuery();
+            for (InTransitOrderEntity order : inTransitRepository
+                    .findByMaterialCodeInAndArrivalDateAfter(chunk, fromDate)) {
+                if (plantCode != null && !plantCode.equals(order.getPlantCode())) {
+                    continue;
+                }
+                builder.addInTransit(order.getMaterialCode(), order.getEstimatedArrivalDate(),
+                    order.getOrderQuantity());
+            }
+        }
+        
+        // 3. MRP 约束（提前期 / MOQ / 批量规则）
+        for (List<String> chunk : chunks(codes)) {
+            builder.countQuery();
+            for (MRPConstraint c : constraintRepository.findByMaterialIdIn(chunk)) {
+                builder.leadTime(c.getMaterialId(), c.getLeadTime());
+                builder.moq(c.getMaterialId(), c.getMoq());
+                builder.lotSizePolicy(c.getMaterialId(), MrpLotSizePolicy.of(c.getLotSizingRule(),
+                    c.getMoq() != null ? c.getMoq() : MrpDataContext.DEFAULT_MOQ, c.getPackUnit(),
+                    c.getBatchSize(), c.getOrderCost(), c.getHoldingCostPerDay(), c.getPoqPeriods()));
+            }
+        }
+        
+        // 4. 已分配量：计划起始日仍有效的 MRP 预留合计
+        for (List<String> chunk : chunks(codes)) {
+            builder.countQuery();
+            for (MrpReservation r : reservationRepository.findOpenByMaterialCodeIn(chunk, fromDate)) {
+                if (plantCode != null && !plantCode.equals(r.getPlantCode())) {
+                    continue;
+                }
+                builder.addAllocated(r.getMaterialCode(), r.getQuantity());
+            }
+        }
+        
+        MrpDataContext context = builder.build();
+        log.info("[MRP-Data] Data context built. plant={}, materials={}, queries={}, duration={}ms",
+            plantCode, context.size(), context.getQueryCount(), System.currentTimeMillis() - start);
+        return context;
+    }
+
+    /**
+     * 输入水位：库存、在途、约束、预留、供应商五张表各一次聚合查询
+     * 
+     * 水位为行数与整行哈希合计，任一行任一列变化时随之变化（含调拨等合计不变的变更），
+     * 供 MRP 运行缓存判断输入是否变化。
+     * 各节点查询同一数据库，结果一致，可作为跨节点共享缓存的键。
+     */
+    @Transactional(readOnly = true)
+    public InputWatermark getInputWatermark() {
+        StringJoiner value = new StringJoiner("|");
+        int queries = 0;
+        value.add("inv:" + watermarkOf(inventoryRepository.findWatermark()));
+        queries++;
+        value.add("transit:" + watermarkOf(inTransitRepository.findWatermark()));
+        queries++;
+        value.add("constraint:" + watermarkOf(constraintRepository.findWatermark()));
+        queries++;
+        value.add("reservation:" + watermarkOf(reservationRepository.findWatermark()));
+        queries++;
+        value.add("supplier:" + watermarkOf(supplierRepository.findWatermark()));
+        queries++;
+        return new InputWatermark(value.toString(), queries);
+    }
+
+    /**
+     * 输入水位及取得它执行的数据库查询数
+     */
+    public static final class InputWatermark {
+        private final String value;
+        private final int queryCount;
+
+        public InputWatermark(String value, int queryCount) {
+            this.value = value;
+            this.queryCount = queryCount;
+        }
+
+        public String getValue() {
+            return value;
+        }
+
+        public int getQueryCount() {
+            return queryCount;
+        }
+    }
+
+    private static String watermarkOf(List<Object[]> rows) {
+        if (rows == null || rows.isEmpty() || rows.get(0) == null) {
+            return "-";
+        }
+        StringJoiner joiner = new StringJoiner(",");
+        for (Object value : rows.get(0)) {
+            joiner.add(value instanceof BigDecimal ? ((BigDecimal) value).stripTrailingZeros().toPlainString()
+                : String.valueOf(value));
+        }
+        return joiner.toString();
+    }
+
+    private static InventoryBalance newer(InventoryBalance a, InventoryBalance b) {
+        if (a.getAsOfDate() == null) return b;
+        if (b.getAsOfDate() == null) return a;
+        return b.getAsOfDate().isAfter(a.getAsOfDate()) ? b : a;
+    }
+
+    private static List<List<String>> chunks(List<String> codes) {
+        List<List<String>> chunks = new ArrayList<>();
+        for (int i = 0; i < codes.size(); i += IN_QUERY_CHUNK) {
+            chunks.add(codes.subList(i, Math.min(codes.size(), i + IN_QUERY_CHUNK)));
+        }
+        return chunks;
+    }
+
     /**
      * 获取物料当前库存
      */
@@ -107,8 +299,11 @@ public class MrpDataService {
      * 获取已分配数量
      */
     public BigDecimal getAllocated(String materialCode, LocalDate date) {
-        // TODO: 从预留表查询
-        return BigDecimal.ZERO;
+        return reservationRepository
+            .findOpenByMaterialCodeIn(List.of(materialCode), date)
+            .stream()
+            .map(MrpReservation::getQuantity)
+            .reduce(BigDecimal.ZERO, BigDecimal::add);
     }
 
     /**
@@ -154,64 +349,144 @@ public class MrpDataService {
     }
 
     /**
-     * 查找活跃供应商
+     * 查找活跃供应商（首选供应商或默认货源，至多一家）
      */
     public List<SupplierInfo> findActiveSuppliers(String materialCode) {
-        // 模拟供应商数据
-        List<SupplierInfo> suppliers = Arrays.asList(
-            SupplierInfo.builder()
-                .supplierId("SUP-CN-012")
-                .supplierCode("SUZHOU_JINGQU")
-                .supplierName("苏州精驱科技")
-                .moq(BigDecimal.valueOf(100))
-                .leadTime(7)
-                .price(BigDecimal.valueOf(85.00))
-                .otdRate(0.95)
-                .qualityRate(0.98)
-                .build(),
-                
-            SupplierInfo.builder()
-                .supplierId("SUP-TH-007")
-                .supplierCode("THAI_TECH")
-                .supplierName("泰国科技制造")
-                .moq(BigDecimal.valueOf(200))
-                .leadTime(14)
-                .price(BigDecimal.valueOf(82.00))
-                .otdRate(0.88)
-                .qualityRate(0.92)
-                .build()
-        );
-        
-        log.info("[MRP-Data] Found {} active suppliers for {}", suppliers.size(), materialCode);
-        return suppliers;
+        return getSourceList().suppliersOf(materialCode);
+    }
+
+    /**
+     * 获取常驻货源清单索引，超过刷新间隔时重建
+     */
+    public MrpSourceList getSourceList() {
+        MrpSourceList list = sourceList;
+        if (list != null && list.getBuiltAt().plusSeconds(sourceListRefreshSeconds).isAfter(LocalDateTime.now())) {
+            return list;
+        }
+        synchronized (this) {
+            list = sourceList;
+            if (list == null || !list.getBuiltAt().plusSeconds(sourceListRefreshSeconds).isAfter(LocalDateTime.now())) {
+                list = refreshSourceList();
+            }
+            return list;
+        }
+    }
+
+    /**
+     * 按物料约束的首选供应商重建货源清单索引（约束或供应商主数据变更后可主动调用）
+     * 
+     * 货源取 mrp_constraints.preferred_supplier_id，仅登记主数据中状态为 ACTIVE 的供应商；
+     * 起订量、交期取自该物料约束。未指定首选供应商的物料使用 mrp.source-list.default-supplier-id
+     * 配置的默认货源，未配置时采购建议不带供应商，由采购员指定。
+     */
+    public synchronized MrpSourceList refreshSourceList() {
+        long start = System.currentTimeMillis();
+        List<MRPConstraint> constraints = constraintRepository.findByPreferredSupplierIdIsNotNull();
+        Set<String> supplierIds = constraints.stream()
+            .map(MRPConstraint::getPreferredSupplierId)
+            .collect(Collectors.toCollection(HashSet::new));
+        boolean hasDefault = defaultSupplierId != null && !defaultSupplierId.isBlank();
+        if (hasDefault) {
+            supplierIds.add(defaultSupplierId);
+        }
+        Map<String, SupplierEntity> activeSuppliers = supplierIds.isEmpty()
+            ? Collections.emptyMap()
+            : supplierRepository.findBySupplierIdInAndStatus(supplierIds, "ACTIVE").stream()
+                .collect(Collectors.toMap(SupplierEntity::getSupplierId, s -> s, (a, b) -> a));
+
+        MrpSourceList.Builder builder = MrpSourceList.builder();
+        int skipped = 0;
+        for (MRPConstraint c : constraints) {
+            SupplierEntity supplier = activeSuppliers.get(c.getPreferredSupplierId());
+            if (supplier == null) {
+                skipped++;
+                continue;
+            }
+            builder.add(c.getMaterialId(), toSupplierInfo(supplier, c.getMoq(), c.getLeadTime()));
+        }
+        SupplierEntity defaultSupplier = hasDefault ? activeSuppliers.get(defaultSupplierId) : null;
+        if (defaultSupplier != null) {
+            builder.defaultSupplier(toSupplierInfo(defaultSupplier, null, null));
+        } else if (hasDefault) {
+            log.warn("[MRP-Data] Default supplier {} is not ACTIVE, ignored", defaultSupplierId);
+        }
+        MrpSourceList list = builder.build();
+        sourceList = list;
+        log.info("[MRP-Data] Source list rebuilt. materials={}, inactiveSuppliers={}, defaultSupplier={}, duration={}ms",
+            list.size(), skipped, defaultSupplier != null ? defaultSupplierId : null,
+            System.currentTimeMillis() - start);
+        return list;
+    }
+
+    private static SupplierInfo toSupplierInfo(SupplierEntity supplier, Integer moq, Integer leadTime) {
+        return SupplierInfo.builder()
+            .supplierCode(supplier.getSupplierId())
+            .supplierName(supplier.getSupplierName())
+            .moq(moq != null ? BigDecimal.valueOf(moq) : null)
+            .leadTime(leadTime != null ? leadTime : 7)
+            .build();
     }
 
     /**
      * 保存 MRP 结果
+     * 
+     * 采购建议、净需求、齐套结果均按 mrp.persistence.batch-size 分块 JDBC 批量插入，
+     * 每块一次数据库往返。
+     * 
+     * @return 批量插入次数（数据库往返数）
      */
     @Transactional
-    public void saveMrpResults(String runId, List<MrpNetRequirement> requirements,
+    public int saveMrpResults(String runId, List<MrpNetRequirement> requirements,
             KitCheckResult kitResult, List<ProcurementSuggestion> suggestions) {
         
-        // 保存采购建议
+        long start = System.currentTimeMillis();
+        LocalDateTime now = LocalDateTime.now();
+        String codePrefix = "PSG-" + now.format(CODE_DATE) + "-" + runSuffix(runId) + "-";
+        
+        // 1. 采购建议
+        List<ProcurementSuggestionEntity> entities = new ArrayList<>(suggestions.size());
+        int seq = 0;
         for (ProcurementSuggestion suggestion : suggestions) {
-            ProcurementSuggestionEntity entity = ProcurementSuggestionEntity.builder()
+            entities.add(ProcurementSuggestionEntity.builder()
                 .id(UUID.randomUUID().toString())
-                .suggestionCode("PSG-" + System.currentTimeMillis())
+                .suggestionCode(codePrefix + String.format("%06d", ++seq))
                 .materialCode(suggestion.getItemCode())
+                .materialName(suggestion.getItemName())
+                .plantCode(suggestion.getPlantCode() != null ? suggestion.getPlantCode() : DEFAULT_PLANT)
                 .suggestedQuantity(suggestion.getSuggestedQty())
                 .suggestedDate(suggestion.getSuggestedDate())
+                .requiredDate(suggestion.getRequiredDate())
+                .priority(suggestion.getUrgencyLevel())
                 .supplierCode(suggestion.getSupplierCode())
                 .supplierName(suggestion.getSupplierName())
+                .unitPrice(suggestion.getEstimatedPrice())
+                .leadTimeDays(suggestion.getLeadTime())
                 .status("PENDING")
                 .mrpRunId(runId)
                 .traceId(suggestion.getTraceId())
-                .createdTime(java.time.LocalDateTime.now())
-                .build();
-            
-            procurementRepository.save(entity);
+                .createdTime(now)
+                .build());
         }
+        int batches = resultJdbcRepository.insertSuggestions(entities, persistenceBatchSize);
+        
+        // 2. 净需求
+        batches += resultJdbcRepository.insertNetRequirements(runId, requirements, persistenceBatchSize);
         
-        log.info("[MRP-Data] Saved {} procurement suggestions", suggestions.size());
+        // 3. 齐套结果
+        batches += resultJdbcRepository.insertKitResults(runId, kitResult, persistenceBatchSize);
+        
+        log.info("[MRP-Data] Saved MRP results. runId={}, suggestions={}, requirements={}, kitItems={}, batches={}, duration={}ms",
+            runId, suggestions.size(), requirements.size(),
+            kitResult != null && kitResult.getKitItems() != null ? kitResult.getKitItems().size() : 0,
+            batches, System.currentTimeMillis() - start);
+        return batches;
+    }
+
+    /**
+     * 运行号随机段（MRP-RUN-XXXXXXXX → XXXXXXXX），与日期、序号组成唯一建议编码
+     */
+    private static String runSuffix(String runId) {
+        int i = runId.lastIndexOf('-');
+        return i >= 0 ? runId.substring(i + 1) : runId;
     }
 }
@@ -0,0 +1,214 @@
+package com.hjscm.service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.hjscm.dto.*;
+import com.hjscm.repository.MrpResultJdbcRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.*;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * MRP 结果流式导出
+ *
+ * 功能：
+ * - 净需求 / 缺料 / 采购建议按运行导出为 NDJSON 或 CSV
+ * - 数据库游标逐行读取、逐行写出，内存占用与行数无关
+ * - 缺料、采购建议可按紧急度过滤；采购建议可按供应商过滤
+ *
+ * 导出读取已保存的运行结果（每次完成的运行在保存阶段写入结果表）。
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class MrpExportService {
+
+    public static final String DATASET_NET_REQUIREMENTS = "net-requirements";
+    public static final String DATASET_SHORTAGES = "shortages";
+    public static final String DATASET_SUGGESTIONS = "suggestions";
+    public static final String FORMAT_NDJSON = "ndjson";
+    public static final String FORMAT_CSV = "csv";
+
+    private final MrpResultJdbcRepository resultJdbcRepository;
+    private final ObjectMapper objectMapper;
+
+    @Value("${mrp.export.fetch-size:1000}")
+    private int fetchSize = 1000;
+
+    // 每写出若干行刷新一次输出流，下游可边收边处理
+    @Value("${mrp.export.flush-rows:5000}")
+    private int flushRows = 5000;
+
+    private static final List<Column<MrpNetRequirement>> NET_REQUIREMENT_COLUMNS = List.of(
+        new Column<>("itemCode", MrpNetRequirement::getItemCode),
+        new Column<>("grossRequirement", MrpNetRequirement::getGrossRequirement),
+        new Column<>("availableQty", MrpNetRequirement::getAvailableQty),
+        new Column<>("safetyStock", MrpNetRequirement::getSafetyStock),
+        new Column<>("netRequirement", MrpNetRequirement::getNetRequirement),
+        new Column<>("requiredDate", MrpNetRequirement::getRequiredDate),
+        new Column<>("leadTime", MrpNetRequirement::getLeadTime),
+        new Column<>("traceId", MrpNetRequirement::getTraceId));
+
+    private static final List<Column<KitShortage>> SHORTAGE_COLUMNS = List.of(
+        new Column<>("itemCode", KitShortage::getItemCode),
+        new Column<>("requiredQty", KitShortage::getRequiredQty),
+        new Column<>("availableQty", KitShortage::getAvailableQty),
+        new Column<>("shortageQty", KitShortage::getShortageQty),
+        new Column<>("fillRate", KitShortage::getFillRate),
+        new Column<>("urgencyLevel", KitShortage::getUrgencyLevel),
+        new Column<>("requiredDate", KitShortage::getRequiredDate),
+        new Column<>("traceId", KitShortage::getTraceId));
+
+    private static final List<Column<ProcurementSuggestion>> SUGGESTION_COLUMNS = List.of(
+        new Column<>("itemCode", ProcurementSuggestion::getItemCode),
+        new Column<>("itemName", ProcurementSuggestion::getItemName),
+        new Column<>("plantCode", ProcurementSuggestion::getPlantCode),
+        new Column<>("suggestedQty", ProcurementSuggestion::getSuggestedQty),
+        new Column<>("suggestedDate", ProcurementSuggestion::getSuggestedDate),
+        new Column<>("requiredDate", ProcurementSuggestion::getRequiredDate),
+        new Column<>("urgencyLevel", ProcurementSuggestion::getUrgencyLevel),
+        new Column<>("supplierCode", ProcurementSuggestion::getSupplierCode),
+        new Column<>("supplierName", ProcurementSuggestion::getSupplierName),
+        new Column<>("estimatedPrice", ProcurementSuggestion::getEstimatedPrice),
+        new Column<>("leadTime", ProcurementSuggestion::getLeadTime),
+        new Column<>("traceId", ProcurementSuggestion::getTraceId));
+
+    public static boolean isSupportedDataset(String dataset) {
+        return DATASET_NET_REQUIREMENTS.equals(dataset) || DATASET_SHORTAGES.equals(dataset)
+            || DATASET_SUGGESTIONS.equals(dataset);
+    }
+
+    public static boolean isSupportedFormat(String format) {
+        return FORMAT_NDJSON.equals(format) || FORMAT_CSV.equals(format);
+    }
+
+    /**
+     * 导出一次运行的结果到输出流（只读事务内保持游标）
+     *
+     * @return 写出的行数
+     */
+    @Transactional(readOnly = true)
+    public long export(String runId, String dataset, String format, String urgencyLevel, String supplierCode,
+            OutputStream out) throws IOException {
+        long start = System.currentTimeMillis();
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 64 * 1024);
+        long rows;
+        switch (dataset) {
+            case DATASET_NET_REQUIREMENTS:
+                rows = write(writer, format, NET_REQUIREMENT_COLUMNS,
+                    sink -> resultJdbcRepository.streamNetRequirements(runId, fetchSize, sink));
+                break;
+            case DATASET_SHORTAGES:
+                rows = write(writer, format, SHORTAGE_COLUMNS,
+                    sink -> resultJdbcRepository.streamShortages(runId, urgencyLevel, fetchSize, sink));
+                break;
+            case DATASET_SUGGESTIONS:
+                rows = write(writer, format, SUGGESTION_COLUMNS,
+                    sink -> resultJdbcRepository.streamSuggestions(runId, urgencyLevel, supplierCode, fetchSize, sink));
+                break;
+            default:
+                throw new IllegalArgumentException("Unsupported dataset: " + dataset);
+        }
+        writer.flush();
+        log.info("[MRP-Export] Exported. runId={}, dataset={}, format={}, urgency={}, supplier={}, rows={}, duration={}ms",
+            runId, dataset, format, urgencyLevel, supplierCode, rows, System.currentTimeMillis() - start);
+        return rows;
+    }
+
+    /**
+     * 读取一次运行已保存的采购建议（runId 为空时取最近一次保存了结果的运行）
+     */
+    @Transactional(readOnly = true)
+    public List<ProcurementSuggestion> getSuggestions(String runId) {
+        String id = runId != null ? runId : resultJdbcRepository.findLatestRunId().orElse(null);
+        if (id == null) {
+            return Collections.emptyList();
+        }
+        List<ProcurementSuggestion> suggestions = new ArrayList<>();
+        resultJdbcRepository.streamSuggestions(id, null, null, fetchSize, suggestions::add);
+        return suggestions;
+    }
+
+    private <T> long write(Writer writer, String format, List<Column<T>> columns,
+            Consumer<Consumer<T>> source) throws IOException {
+        boolean csv = FORMAT_CSV.equals(format);
+        // 逐行写入缓冲区，不关闭、不逐行刷新底层输出流
+        ObjectWriter json = objectMapper.writer()
+            .without(JsonGenerator.Feature.AUTO_CLOSE_TARGET)
+            .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        if (csv) {
+            for (int i = 0; i < columns.size(); i++) {
+                writer.write(i > 0 ? "," : "");
+                writer.write(columns.get(i).header);
+            }
+            writer.write("\r\n");
+        }
+        long[] rows = {0};
+        try {
+            source.accept(row -> {
+                try {
+                    if (csv) {
+                        writeCsvRow(writer, columns, row);
+                    } else {
+                        json.writeValue(writer, row);
+                        writer.write('\n');
+                    }
+                    if (++rows[0] % flushRows == 0) {
+                        writer.flush();
+                    }
+                } catch (IOException e) {
+                    // 客户端断开等写出失败：中止游标读取
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        return rows[0];
+    }
+
+    private static <T> void writeCsvRow(Writer writer, List<Column<T>> columns, T row) throws IOException {
+        for (int i = 0; i < columns.size(); i++) {
+            if (i > 0) {
+                writer.write(',');
+            }
+            Object value = columns.get(i).value.apply(row);
+            if (value instanceof BigDecimal) {
+                writer.write(((BigDecimal) value).toPlainString());
+            } else if (value != null) {
+                writer.write(csvEscape(value.toString()));
+            }
+        }
+        writer.write("\r\n");
+    }
+
+    static String csvEscape(String value) {
+        boolean quote = false;
+        for (int i = 0; i < value.length() && !quote; i++) {
+            char c = value.charAt(i);
+            quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        return quote ? '"' + value.replace("\"", "\"\"") + '"' : value;
+    }
+
+    private static final class Column<T> {
+        private final String header;
+        private final Function<T, Object> value;
+
+        Column(String header, Function<T, Object> value) {
+            this.header = header;
+            this.value = value;
+        }
+    }
+}
@@ -0,0 +1,227 @@
+package com.hjscm.service;
+
+import com.hjscm.dto.*;
+import com.hjscm.service.mrp.MrpRunProgress;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import jakarta.annotation.PreDestroy;
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * MRP 异步作业服务
+ *
+ * 功能：
+ * - 提交后立即返回 runId，运算在有界线程池中执行
+ * - 各阶段（准备/展开/净算/齐套/建议/保存）独立短事务提交
+ * - 分阶段进度查询、SSE 状态推送、取消
+ */
+@Slf4j
+@Service
+public class MrpJobService {
+
+    // 同时运行的 MRP 作业数 / 排队上限
+    private static final int MAX_CONCURRENT_RUNS = 2;
+    private static final int MAX_QUEUED_RUNS = 16;
+    // 已结束作业保留时长
+    private static final long FINISHED_RETENTION_MINUTES = 60;
+    private static final long STREAM_INTERVAL_MS = 500;
+    private static final long STREAM_TIMEOUT_MS = 30 * 60 * 1000L;
+
+    private final MRPEngineService mrpEngineService;
+    private final TraceIdService traceIdService;
+    private final TransactionTemplate readOnlyTx;
+    private final TransactionTemplate writeTx;
+
+    private final ThreadPoolExecutor executor;
+    private final ScheduledExecutorService streamScheduler;
+    private final Map<String, Job> jobs = new ConcurrentHashMap<>();
+
+    public MrpJobService(MRPEngineService mrpEngineService, TraceIdService traceIdService,
+                         PlatformTransactionManager transactionManager) {
+        this.mrpEngineService = mrpEngineService;
+        this.traceIdService = traceIdService;
+
+        this.readOnlyTx = new TransactionTemplate(transactionManager);
+        this.readOnlyTx.setReadOnly(true);
+        this.writeTx = new TransactionTemplate(transactionManager);
+
+        this.executor = new ThreadPoolExecutor(
+            MAX_CONCURRENT_RUNS, MAX_CONCURRENT_RUNS, 0L, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(MAX_QUEUED_RUNS),
+            namedThreads("mrp-run-"),
+            new ThreadPoolExecutor.AbortPolicy());
+        this.streamScheduler = Executors.newSingleThreadScheduledExecutor(namedThreads("mrp-stream-"));
+    }
+
+    /**
+     * 提交 MRP 作业
+     *
+     * @throws RejectedExecutionException 队列已满
+     */
+    public MrpJobStatus submit(MrpRunRequest request) {
+        purgeFinished();
+
+        String runId = traceIdService.generateRunTraceId();
+        MrpRunProgress progress = new MrpRunProgress(runId);
+        Job job = new Job(progress);
+        jobs.put(runId, job);
+
+        try {
+            job.future = executor.submit(() -> execute(job, request));
+        } catch (RejectedExecutionException e) {
+            jobs.remove(runId);
+            log.warn("[MRP-Job] Rejected, queue full. active={}, queued={}",
+                executor.getActiveCount(), executor.getQueue().size());
+            throw e;
+        }
+
+        log.info("[MRP-Job] Submitted. runId={}, mode={}, planningMode={}",
+            runId, request.getRunMode(), request.getPlanningMode());
+        return toStatus(job);
+    }
+
+    /**
+     * 查询作业状态
+     */
+    public Optional<MrpJobStatus> getStatus(String runId) {
+        return Optional.ofNullable(jobs.get(runId)).map(this::toStatus);
+    }
+
+    /**
+     * 取消作业：排队中直接移除，运行中在下一个进度点中止（保存阶段前取消不会写入任何结果）
+     */
+    public Optional<MrpJobStatus> cancel(String runId) {
+        Job job = jobs.get(runId);
+        if (job == null) {
+            return Optional.empty();
+        }
+        if (!job.progress.isFinished()) {
+            job.progress.cancel();
+            if (MrpRunProgress.STATUS_QUEUED.equals(job.progress.getStatus())
+                    && job.future != null && job.future.cancel(false)) {
+                // 尚未开始执行
+                job.progress.finish(MrpRunProgress.STATUS_CANCELLED, "作业在排队中被取消");
+            }
+            log.info("[MRP-Job] Cancel requested. runId={}, status={}", runId, job.progress.getStatus());
+        }
+        return Optional.of(toStatus(job));
+    }
+
+    /**
+     * SSE 推送作业状态，作业结束后关闭
+     */
+    public Optional<SseEmitter> stream(String runId) {
+        Job job = jobs.get(runId);
+        if (job == null) {
+            return Optional.empty();
+        }
+
+        SseEmitter emitter = new SseEmitter(STREAM_TIMEOUT_MS);
+        ScheduledFuture<?> task = streamScheduler.scheduleAtFixedRate(() -> {
+            try {
+                emitter.send(SseEmitter.event().name("status").data(toStatus(job)));
+                if (job.progress.isFinished()) {
+                    emitter.complete();
+                    throw new CancellationException();  // 结束本定时任务
+                }
+            } catch (IOException e) {
+                emitter.completeWithError(e);
+                throw new CancellationException();
+            }
+        }, 0, STREAM_INTERVAL_MS, TimeUnit.MILLISECONDS);
+
+        emitter.onCompletion(() -> task.cancel(false));
+        emitter.onTimeout(() -> task.cancel(false));
+        return Optional.of(emitter);
+    }
+
+    private void execute(Job job, MrpRunRequest request) {
+        MrpRunProgress progress = job.progress;
+        progress.start();
+        MrpRunResponse response = mrpEngineService.executeRun(
+            request, progress.getRunId(), progress, this::inPhaseTransaction);
+        job.result = response;
+        progress.finish(response.getStatus(), response.getErrorMessage());
+    }
+
+    /**
+     * 每个阶段独立短事务：保存阶段读写，其余只读
+     */
+    private <T> T inPhaseTransaction(String phase, Supplier<T> body) {
+        TransactionTemplate tx = MrpRunProgress.PHASE_SAVE.equals(phase) ? writeTx : readOnlyTx;
+        return tx.execute(status -> body.get());
+    }
+
+    private void purgeFinished() {
+        LocalDateTime cutoff = LocalDateTime.now().minusMinutes(FINISHED_RETENTION_MINUTES);
+        jobs.values().removeIf(job -> job.progress.isFinished()
+            && job.progress.getFinishedAt().isBefore(cutoff));
+    }
+
+    private MrpJobStatus toStatus(Job job) {
+        MrpRunProgress progress = job.progress;
+        List<MrpPhaseProgress> phases = progress.getPhases().stream()
+            .map(p -> MrpPhaseProgress.builder()
+                .phase(p.getPhase())
+                .done(p.getDone())
+                .total(p.getTotal())
+                .finished(p.isFinished())
+                .durationMs(p.getDurationMs())
+                .build())
+            .collect(Collectors.toList());
+
+        return MrpJobStatus.builder()
+            .runId(progress.getRunId())
+            .status(progress.getStatus())
+            .currentPhase(progress.getCurrentPhase())
+            .phases(phases)
+            .submittedAt(progress.getSubmittedAt())
+            .startedAt(progress.getStartedAt())
+            .finishedAt(progress.getFinishedAt())
+            .result(job.result)
+            .errorMessage(progress.getErrorMessage())
+            .build();
+    }
+
+    private static ThreadFactory namedThreads(String prefix) {
+        return new ThreadFactory() {
+            private int seq;
+
+            @Override
+            public synchronized Thread newThread(Runnable r) {
+                Thread t = new Thread(r, prefix + (++seq));
+                t.setDaemon(true);
+                return t;
+            }
+        };
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        jobs.values().forEach(job -> job.progress.cancel());
+        executor.shutdown();
+        streamScheduler.shutdownNow();
+    }
+
+    /**
+     * 作业
+     */
+    private static class Job {
+        private final MrpRunProgress progress;
+        private volatile Future<?> future;
+        private volatile MrpRunResponse result;
+
+        Job(MrpRunProgress progress) {
+            this.progress = progress;
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package com.hjscm.service;
+
+import com.hjscm.dto.*;
+import com.hjscm.service.mrp.MrpRunMetrics;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * MRP 运行指标（Micrometer，经 actuator /actuator/metrics、/actuator/prometheus 暴露）
+ *
+ * 指标：
+ * - mrp.run.duration{status}：整次运行耗时
+ * - mrp.phase.duration{phase}：MPS_FETCH / PREPARE / EXPLODE / NET / KIT / SUGGEST / SAVE 各阶段耗时
+ * - mrp.items.exploded / mrp.db.calls：累计计数
+ * - mrp.explosion.cache{result}：BOM 展开向量缓存命中 / 未命中
+ * - mrp.run.cache{result}：运行结果缓存命中 / 未命中
+ * - mrp.bom.fanout.max：已见最大展开扇出（单个 MPS 展开出的组件数）
+ */
+@Slf4j
+@Service
+public class MrpMetricsService {
+
+    private final MeterRegistry registry;
+    private final AtomicLong maxFanOut = new AtomicLong();
+
+    public MrpMetricsService(MeterRegistry registry, MrpRunCacheService mrpRunCacheService) {
+        this.registry = registry;
+        Gauge.builder("mrp.bom.fanout.max", maxFanOut, AtomicLong::get)
+            .description("Largest BOM explosion fan-out seen (components per MPS line)")
+            .register(registry);
+        FunctionCounter.builder("mrp.run.cache", mrpRunCacheService, MrpRunCacheService::getHitCount)
+            .tag("result", "hit")
+            .register(registry);
+        FunctionCounter.builder("mrp.run.cache", mrpRunCacheService, MrpRunCacheService::getMissCount)
+            .tag("result", "miss")
+            .register(registry);
+    }
+
+    /**
+     * 记录一次运行的阶段耗时与计数，返回附在 MrpRunResponse 上的阶段明细
+     */
+    public List<MrpPhaseTiming> record(MrpRunMetrics metrics, String status) {
+        List<MrpPhaseTiming> timings = new ArrayList<>();
+        metrics.getPhaseNanos().forEach((phase, nanos) -> {
+            Timer.builder("mrp.phase.duration")
+                .tag("phase", phase)
+                .register(registry)
+                .record(nanos, TimeUnit.NANOSECONDS);
+            timings.add(MrpPhaseTiming.builder()
+                .phase(phase)
+                .durationMs(TimeUnit.NANOSECONDS.toMillis(nanos))
+                .build());
+        });
+        Timer.builder("mrp.run.duration")
+            .tag("status", status)
+            .register(registry)
+            .record(metrics.elapsedNanos(), TimeUnit.NANOSECONDS);
+
+        Map<String, Long> counters = metrics.getCounters();
+        registry.counter("mrp.items.exploded").increment(counters.get(MrpRunMetrics.ITEMS_EXPLODED));
+        registry.counter("mrp.db.calls").increment(counters.get(MrpRunMetrics.DB_CALLS));
+        registry.counter("mrp.explosion.cache", "result", "hit")
+            .increment(counters.get(MrpRunMetrics.EXPLOSION_CACHE_HITS));
+        registry.counter("mrp.explosion.cache", "result", "miss")
+            .increment(counters.get(MrpRunMetrics.EXPLOSION_CACHE_MISSES));
+        maxFanOut.accumulateAndGet(counters.get(MrpRunMetrics.MAX_FAN_OUT), Math::max);
+
+        log.info("[MRP-Metrics] status={}, runCacheHit={}, phases={}, counters={}",
+            status, metrics.isRunCacheHit(), timings, counters);
+        return timings;
+    }
+}
@@ -0,0 +1,154 @@
+package com.hjscm.service;
+
+import com.hjscm.dto.*;
+import com.hjscm.event.MrpRunCompletedEvent;
+import com.hjscm.service.mrp.MrpPegging;
+import com.hjscm.service.mrp.MrpQuantity;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.*;
+
+/**
+ * MRP 追溯查询服务
+ *
+ * 功能：
+ * - 保存最近几次运行的追溯索引及缺料汇总（内存，不落库）
+ * - 缺料 → 受影响 MPS / 销售订单：按毛需求份额分摊缺料数量
+ * - MPS → 组件：该 MPS 经各层 BOM 展开所需的全部组件
+ */
+@Slf4j
+@Service
+public class MrpPeggingService {
+
+    public static final String LATEST_RUN = "latest";
+
+    private static final int MAX_RUNS = 4;
+
+    private final Map<String, RunPegging> runs = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, RunPegging> eldest) {
+            return size() > MAX_RUNS;
+        }
+    };
+    private volatile String latestRunId;
+
+    /**
+     * 记录运行的追溯索引
+     */
+    @EventListener
+    public void onMrpRunCompleted(MrpRunCompletedEvent event) {
+        if (event.getPegging() == null) {
+            return;
+        }
+        Map<String, BigDecimal> shortageByItem = new HashMap<>();
+        if (event.getKitResult() != null && event.getKitResult().getShortages() != null) {
+            for (KitShortage shortage : event.getKitResult().getShortages()) {
+                if (shortage.getShortageQty() != null) {
+                    shortageByItem.merge(shortage.getItemCode(), shortage.getShortageQty(), BigDecimal::add);
+                }
+            }
+        }
+        synchronized (runs) {
+            runs.put(event.getRunId(), new RunPegging(event.getPegging(), shortageByItem));
+        }
+        latestRunId = event.getRunId();
+        log.info("[MRP-Peg] Pegging stored. runId={}, mps={}, components={}, pegs={}",
+            event.getRunId(), event.getPegging().mpsCount(), event.getPegging().componentCount(),
+            event.getPegging().pegCount());
+    }
+
+    /**
+     * 组件 → MPS：哪些 MPS（销售订单）需要该组件、各自受缺料影响多少
+     *
+     * @return 运行不存在时为空
+     */
+    public Optional<List<MrpPegEntry>> demandsOf(String runId, String componentCode) {
+        RunPegging run = runOf(runId);
+        if (run == null) {
+            return Optional.empty();
+        }
+        MrpPegging pegging = run.pegging;
+        int c = pegging.componentIndex(componentCode);
+        if (c < 0) {
+            return Optional.of(Collections.emptyList());
+        }
+        long total = pegging.totalQty(c);
+        BigDecimal shortage = run.shortageByItem.get(componentCode);
+        List<MrpPegEntry> entries = new ArrayList<>(pegging.mpsEnd(c) - pegging.mpsStart(c));
+        for (int k = pegging.mpsStart(c); k < pegging.mpsEnd(c); k++) {
+            entries.add(entry(pegging, pegging.mpsAt(k), componentCode, pegging.mpsQtyAt(k), total, shortage));
+        }
+        return Optional.of(entries);
+    }
+
+    /**
+     * MPS → 组件：该 MPS 的全部组件需求（含缺料分摊）
+     *
+     * @return 运行不存在时为空；MPS 不在运行中时为空列表
+     */
+    public Optional<List<MrpPegEntry>> componentsOf(String runId, String mpsId) {
+        RunPegging run = runOf(runId);
+        if (run == null) {
+            return Optional.empty();
+        }
+        MrpPegging pegging = run.pegging;
+        List<MrpPegEntry> entries = new ArrayList<>();
+        for (int i = 0; i < pegging.mpsCount(); i++) {
+            if (!Objects.equals(mpsId, pegging.mps(i).getId())) {
+                continue;
+            }
+            for (int k = pegging.componentStart(i); k < pegging.componentEnd(i); k++) {
+                int c = pegging.componentAt(k);
+                String componentCode = pegging.componentCode(c);
+                entries.add(entry(pegging, i, componentCode, pegging.componentQtyAt(k),
+                    pegging.totalQty(c), run.shortageByItem.get(componentCode)));
+            }
+        }
+        return Optional.of(entries);
+    }
+
+    private RunPegging runOf(String runId) {
+        String id = LATEST_RUN.equals(runId) ? latestRunId : runId;
+        if (id == null) {
+            return null;
+        }
+        synchronized (runs) {
+            return runs.get(id);
+        }
+    }
+
+    private static MrpPegEntry entry(MrpPegging pegging, int mpsIndex, String componentCode,
+            long peggedQty, long totalQty, BigDecimal shortage) {
+        MpsRequirement mps = pegging.mps(mpsIndex);
+        BigDecimal pegged = MrpQuantity.toBigDecimal(peggedQty);
+        return MrpPegEntry.builder()
+            .mpsId(mps.getId())
+            .mpsMaterialCode(mps.getMaterialCode())
+            .sourceDocument(mps.getSourceDocument())
+            .plantCode(mps.getPlantCode())
+            .dueDate(mps.getDueDate() != null ? mps.getDueDate() : mps.getRequirementDate())
+            .componentCode(componentCode)
+            .peggedQty(pegged)
+            .shortageQty(shortage != null && totalQty > 0
+                ? shortage.multiply(pegged).divide(MrpQuantity.toBigDecimal(totalQty), 4, RoundingMode.HALF_UP)
+                : null)
+            .build();
+    }
+
+    /**
+     * 单次运行的追溯数据
+     */
+    private static class RunPegging {
+        private final MrpPegging pegging;
+        private final Map<String, BigDecimal> shortageByItem;
+
+        RunPegging(MrpPegging pegging, Map<String, BigDecimal> shortageByItem) {
+            this.pegging = pegging;
+            this.shortageByItem = shortageByItem;
+        }
+    }
+}
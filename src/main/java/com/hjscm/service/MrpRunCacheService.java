@@ -0,0 +1,253 @@
+package com.hjscm.service;
+
+import com.hjscm.dto.*;
+import com.hjscm.event.BomChangeEvent;
+import com.hjscm.event.InventoryChangeEvent;
+import com.hjscm.service.mrp.BomGraphSnapshot;
+import com.hjscm.service.mrp.MrpRunCacheStore;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * MRP 运行缓存服务
+ *
+ * 功能：
+ * - 输入指纹 = SHA-256（运行参数、MPS 集合、BOM 内容哈希、库存 / 在途 / 约束水位）
+ * - 指纹相同的运行直接返回缓存结果（运行响应、齐套结果、采购建议）
+ * - 本地 LRU：按条目数与结果行数双重上限淘汰
+ * - 可选共享存储（Redis），本地未命中时回查，多个后端节点共享
+ *
+ * 任一输入版本推进后指纹随之变化，旧条目不再命中；
+ * 本节点收到 BOM / 库存变更事件时同时清空本地条目，尽早释放内存。
+ */
+@Slf4j
+@Service
+public class MrpRunCacheService {
+
+    private final MrpRunCacheStore sharedStore;
+
+    @Value("${mrp.run-cache.enabled:true}")
+    private boolean enabled = true;
+
+    @Value("${mrp.run-cache.max-entries:32}")
+    private int maxEntries = 32;
+
+    // 全部条目的结果行数（建议 + 齐套项 + 缺料 + 订单齐套）上限，近似内存上限
+    @Value("${mrp.run-cache.max-rows:500000}")
+    private long maxRows = 500_000;
+
+    private final LinkedHashMap<String, MrpRunCacheEntry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long cachedRows;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public MrpRunCacheService(ObjectProvider<MrpRunCacheStore> sharedStore) {
+        this.sharedStore = sharedStore.getIfAvailable();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 计算输入指纹
+     *
+     * @param inputWatermark 调用方查询的输入水位（MrpDataService.getInputWatermark）
+     */
+    public String fingerprint(MrpRunRequest request, List<MpsRequirement> mpsRequirements,
+            BomGraphSnapshot bomGraph, String inputWatermark) {
+        StringBuilder sb = new StringBuilder(256 + mpsRequirements.size() * 64);
+        sb.append(request.getRunMode()).append('|')
+            .append(request.getPlanFromDate()).append('|')
+            .append(request.getPlanToDate()).append('|')
+            .append(request.getItemCode()).append('|')
+            .append(request.getPlantCode()).append('|')
+            .append(request.getIncludeKitCheck()).append('|')
+            .append(request.getGenerateSuggestions()).append('|')
+            .append(request.getPlanningMode()).append('|')
+            .append(request.getBucketSize()).append('|')
+            .append(request.getParallel()).append('\n');
+
+        // MPS 顺序影响优先级并列时的分配顺序，按原顺序计入
+        for (MpsRequirement mps : mpsRequirements) {
+            sb.append(mps.getId()).append('|')
+                .append(mps.getMaterialCode()).append('|')
+                .append(mps.getQuantity()).append('|')
+                .append(mps.getRequirementDate()).append('|')
+                .append(mps.getDueDate()).append('|')
+                .append(mps.getPriority()).append('|')
+                .append(mps.getPlantCode()).append('\n');
+        }
+        sb.append("bom:").append(Long.toHexString(bomGraph.getContentHash())).append('\n');
+        sb.append(inputWatermark);
+        return sha256(sb.toString());
+    }
+
+    /**
+     * 按指纹查找（本地 → 共享存储）
+     */
+    public Optional<MrpRunCacheEntry> get(String fingerprint) {
+        if (!enabled) {
+            return Optional.empty();
+        }
+        MrpRunCacheEntry entry;
+        synchronized (entries) {
+            entry = entries.get(fingerprint);
+        }
+        if (entry == null && sharedStore != null) {
+            entry = sharedStore.get(fingerprint).orElse(null);
+            if (entry != null) {
+                putLocal(entry);
+            }
+        }
+        if (entry != null) {
+            hits.incrementAndGet();
+        } else {
+            misses.incrementAndGet();
+        }
+        return Optional.ofNullable(entry);
+    }
+
+    /**
+     * 按运行 ID 查找（/kit-check、/suggestions 读取已有运行结果）
+     */
+    public Optional<MrpRunCacheEntry> findByRunId(String runId) {
+        if (!enabled || runId == null) {
+            return Optional.empty();
+        }
+        synchronized (entries) {
+            for (MrpRunCacheEntry entry : entries.values()) {
+                if (runId.equals(entry.getResponse().getRunId())) {
+                    return Optional.of(entry);
+                }
+            }
+        }
+        if (sharedStore != null) {
+            return sharedStore.fingerprintOfRun(runId).flatMap(sharedStore::get);
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * 缓存已完成运行的结果
+     */
+    public void put(String fingerprint, MrpRunResponse response, KitCheckResult kitResult,
+            List<ProcurementSuggestion> suggestions) {
+        if (!enabled || !"COMPLETED".equals(response.getStatus())) {
+            return;
+        }
+        MrpRunCacheEntry entry = MrpRunCacheEntry.builder()
+            .fingerprint(fingerprint)
+            .response(response)
+            .kitResult(kitResult)
+            .suggestions(suggestions)
+            .cachedAt(LocalDateTime.now())
+            .build();
+        putLocal(entry);
+        if (sharedStore != null) {
+            sharedStore.put(entry);
+        }
+    }
+
+    private void putLocal(MrpRunCacheEntry entry) {
+        long rows = rowsOf(entry);
+        if (rows > maxRows) {
+            log.info("[MRP-Cache] Result too large for local cache. runId={}, rows={}",
+                entry.getResponse().getRunId(), rows);
+            return;
+        }
+        synchronized (entries) {
+            MrpRunCacheEntry previous = entries.put(entry.getFingerprint(), entry);
+            if (previous != null) {
+                cachedRows -= rowsOf(previous);
+            }
+            cachedRows += rows;
+            // LRU 淘汰：访问顺序最久的在前
+            Iterator<MrpRunCacheEntry> it = entries.values().iterator();
+            while ((entries.size() > maxEntries || cachedRows > maxRows) && it.hasNext()) {
+                MrpRunCacheEntry eldest = it.next();
+                if (eldest == entry) {
+                    break;
+                }
+                cachedRows -= rowsOf(eldest);
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * BOM 变更 → 本地条目全部失效（指纹中的 BOM 内容哈希随之变化）
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onBomChanged(BomChangeEvent event) {
+        clearLocal("BOM changed");
+    }
+
+    /**
+     * 库存变更 → 本地条目全部失效（指纹中的库存水位随之变化）
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onInventoryChanged(InventoryChangeEvent event) {
+        clearLocal("inventory changed");
+    }
+
+    private void clearLocal(String reason) {
+        synchronized (entries) {
+            if (entries.isEmpty()) {
+                return;
+            }
+            log.debug("[MRP-Cache] Local entries dropped: {}. entries={}", reason, entries.size());
+            entries.clear();
+            cachedRows = 0;
+        }
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    private static long rowsOf(MrpRunCacheEntry entry) {
+        long rows = entry.getSuggestions() != null ? entry.getSuggestions().size() : 0;
+        KitCheckResult kit = entry.getKitResult();
+        if (kit != null) {
+            rows += kit.getKitItems() != null ? kit.getKitItems().size() : 0;
+            rows += kit.getShortages() != null ? kit.getShortages().size() : 0;
+            rows += kit.getOrderAllocations() != null ? kit.getOrderAllocations().size() : 0;
+        }
+        return Math.max(1, rows);
+    }
+
+    private static String sha256(String text) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(text.getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,461 @@
+package com.hjscm.service;
+
+import com.hjscm.dto.*;
+import com.hjscm.service.mrp.BomGraphSnapshot;
+import com.hjscm.service.mrp.MrpDataContext;
+import com.hjscm.service.mrp.MrpPlanResult;
+import com.hjscm.service.mrp.MrpQuantity;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PreDestroy;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * MRP 模拟（假设分析）服务
+ *
+ * 功能：
+ * - 捕获基线：MPS、BOM 快照、按工厂预取的数据上下文及基线计算结果常驻内存
+ * - 场景：在基线上叠加覆盖项（MPS 数量 / 交期、在途推迟、库存调整）后重算
+ *   （日期类覆盖只在 TIME_PHASED 基线上影响结果，其它模式下返回告警）
+ * - 数据上下文以写时复制覆盖层修改，基线本身不变，多个场景可并发
+ * - 返回与基线的净需求 / 采购建议差异，不写库、不发布运行事件
+ *
+ * 场景重算不访问数据库，耗时与一次内存 MRP 计算相当（目标 1 秒内）。
+ */
+@Slf4j
+@Service
+public class MrpSimulationService {
+
+    public static final String OVERRIDE_MPS = "MPS";
+    public static final String OVERRIDE_IN_TRANSIT_DELAY = "IN_TRANSIT_DELAY";
+    public static final String OVERRIDE_INVENTORY_ADJUST = "INVENTORY_ADJUST";
+
+    private static final String PLANNING_MODE_TIME_PHASED = "TIME_PHASED";
+
+    // 常驻基线数 / 保留时长
+    private static final int MAX_BASES = 8;
+    private static final long BASE_RETENTION_MINUTES = 120;
+    // 交互式场景耗时目标
+    private static final long SCENARIO_TARGET_MS = 1000;
+
+    private final MRPEngineService mrpEngineService;
+    private final MrpDataService mrpDataService;
+    private final BomGraphService bomGraphService;
+
+    private final ExecutorService scenarioExecutor;
+    private final Map<String, Base> bases = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Base> eldest) {
+            return size() > MAX_BASES;
+        }
+    };
+
+    public MrpSimulationService(MRPEngineService mrpEngineService, MrpDataService mrpDataService,
+                                BomGraphService bomGraphService) {
+        this.mrpEngineService = mrpEngineService;
+        this.mrpDataService = mrpDataService;
+        this.bomGraphService = bomGraphService;
+        this.scenarioExecutor = Executors.newFixedThreadPool(
+            Runtime.getRuntime().availableProcessors(), new ThreadFactory() {
+                private int seq;
+
+                @Override
+                public synchronized Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "mrp-sim-" + (++seq));
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scenarioExecutor.shutdownNow();
+    }
+
+    /**
+     * 捕获模拟基线：读取当前 MPS / BOM 快照 / 库存在途数据并计算基线结果（不保存）
+     */
+    public MrpSimulationBase captureBase(MrpRunRequest request) {
+        return captureBaseInternal(request).summary;
+    }
+
+    private Base captureBaseInternal(MrpRunRequest request) {
+        long start = System.currentTimeMillis();
+        String baseId = "MRP-BASE-" + UUID.randomUUID().toString().substring(0, 8).toUpperCase();
+
+        List<MpsRequirement> mps = List.copyOf(mrpDataService.getMpsRequirements(request));
+        BomGraphSnapshot bomGraph = bomGraphService.current();
+        Map<String, MrpDataContext> contexts = Collections.unmodifiableMap(
+            mrpEngineService.buildDataContexts(request, bomGraph, mps));
+        MrpPlanResult result = mrpEngineService.simulate(request, baseId, mps, bomGraph, contexts);
+
+        MrpSimulationBase summary = MrpSimulationBase.builder()
+            .baseId(baseId)
+            .bomVersion(bomGraph.getVersion())
+            .mpsCount(mps.size())
+            .requirementCount(result.getNetRequirements().size())
+            .shortageCount(result.getShortages().size())
+            .suggestionCount(result.getSuggestions().size())
+            .durationMs(System.currentTimeMillis() - start)
+            .capturedAt(LocalDateTime.now())
+            .build();
+        Base base = new Base(request, mps, bomGraph, contexts, result, summary);
+        synchronized (bases) {
+            purgeExpired();
+            bases.put(baseId, base);
+        }
+
+        log.info("[MRP-Sim] Base captured. baseId={}, bomVersion={}, mps={}, suggestions={}, duration={}ms",
+            baseId, bomGraph.getVersion(), mps.size(), result.getSuggestions().size(), summary.getDurationMs());
+        return base;
+    }
+
+    /**
+     * 按运行参数做一次齐套检查：内存计算，不保存结果、不替换净改变基线
+     */
+    public KitCheckResult checkKit(MrpRunRequest request) {
+        String scenarioId = "MRP-KIT-" + UUID.randomUUID().toString().substring(0, 8).toUpperCase();
+        List<MpsRequirement> mps = mrpDataService.getMpsRequirements(request);
+        BomGraphSnapshot bomGraph = bomGraphService.current();
+        Map<String, MrpDataContext> contexts = mrpEngineService.buildDataContexts(request, bomGraph, mps);
+        return mrpEngineService.simulate(request, scenarioId, mps, bomGraph, contexts).getKitResult();
+    }
+
+    /**
+     * 运行一个模拟场景
+     */
+    public MrpSimulationResponse simulate(MrpSimulationRequest request) {
+        long start = System.currentTimeMillis();
+        String scenarioId = "MRP-SIM-" + UUID.randomUUID().toString().substring(0, 8).toUpperCase();
+
+        try {
+            Base base = resolveBase(request);
+            if (base == null) {
+                return failed(scenarioId, request, "模拟基线不存在或已过期: " + request.getBaseId(), start);
+            }
+
+            // 1. 覆盖项：MPS 复制后修改，数据上下文叠加写时复制覆盖层
+            List<String> warnings = new ArrayList<>();
+            List<MrpScenarioOverride> overrides = request.getOverrides() != null
+                ? request.getOverrides() : Collections.emptyList();
+            List<MpsRequirement> mps = applyMpsOverrides(base.mps, overrides, warnings);
+            Map<String, MrpDataContext> contexts = applyDataOverrides(base, overrides, warnings);
+            if (!PLANNING_MODE_TIME_PHASED.equals(base.request.getPlanningMode()) && hasDateOverride(overrides)) {
+                String mode = base.request.getPlanningMode() != null ? base.request.getPlanningMode() : "BFS";
+                warnings.add("基线计划模式 " + mode
+                    + " 不分时段（需求日期固定为起始日 + 2 周），交期 / 在途日期覆盖不改变计算结果，"
+                    + "仅推出计划区间的在途会减少供给；日期假设请使用 TIME_PHASED 基线");
+            }
+
+            // 2. 内存重算（不保存）
+            MrpPlanResult result = mrpEngineService.simulate(base.request, scenarioId, mps, base.bomGraph, contexts);
+            warnings.addAll(result.getWarnings());
+
+            // 3. 与基线比对
+            MrpSuggestionDiff diff = diffSuggestions(scenarioId, base, result);
+            long duration = System.currentTimeMillis() - start;
+            diff.setDurationMs(duration);
+            if (duration > SCENARIO_TARGET_MS) {
+                log.warn("[MRP-Sim] Scenario exceeded target. scenarioId={}, duration={}ms", scenarioId, duration);
+            }
+
+            log.info("[MRP-Sim] Scenario done. scenarioId={}, baseId={}, overrides={}, added={}, changed={}, removed={}, duration={}ms",
+                scenarioId, base.summary.getBaseId(), overrides.size(), diff.getAdded().size(),
+                diff.getChanged().size(), diff.getRemoved().size(), duration);
+
+            return MrpSimulationResponse.builder()
+                .scenarioId(scenarioId)
+                .scenarioName(request.getScenarioName())
+                .baseId(base.summary.getBaseId())
+                .status("COMPLETED")
+                .baseShortageCount(base.result.getShortages().size())
+                .shortageCount(result.getShortages().size())
+                .requirementDeltas(diffRequirements(base.result, result))
+                .suggestionDiff(diff)
+                .warnings(warnings)
+                .durationMs(duration)
+                .build();
+        } catch (Exception e) {
+            log.error("[MRP-Sim] Scenario failed. scenarioId={}", scenarioId, e);
+            return failed(scenarioId, request, e.getMessage(), start);
+        }
+    }
+
+    /**
+     * 并发运行多个场景，结果顺序与请求一致
+     */
+    public List<MrpSimulationResponse> simulateAll(List<MrpSimulationRequest> requests) {
+        List<Future<MrpSimulationResponse>> futures = new ArrayList<>(requests.size());
+        for (MrpSimulationRequest request : requests) {
+            futures.add(scenarioExecutor.submit(() -> simulate(request)));
+        }
+        List<MrpSimulationResponse> responses = new ArrayList<>(futures.size());
+        for (Future<MrpSimulationResponse> future : futures) {
+            try {
+                responses.add(future.get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CancellationException("模拟被中断");
+            } catch (ExecutionException e) {
+                throw new IllegalStateException(e.getCause());
+            }
+        }
+        return responses;
+    }
+
+    private Base resolveBase(MrpSimulationRequest request) {
+        if (request.getBaseId() != null) {
+            synchronized (bases) {
+                purgeExpired();
+                return bases.get(request.getBaseId());
+            }
+        }
+        if (request.getRunRequest() == null) {
+            throw new IllegalArgumentException("baseId 与 runRequest 不能同时为空");
+        }
+        return captureBaseInternal(request.getRunRequest());
+    }
+
+    private void purgeExpired() {
+        LocalDateTime cutoff = LocalDateTime.now().minusMinutes(BASE_RETENTION_MINUTES);
+        bases.values().removeIf(base -> base.summary.getCapturedAt().isBefore(cutoff));
+    }
+
+    /**
+     * MPS 覆盖：仅复制被修改的 MPS，其余沿用基线对象
+     */
+    private List<MpsRequirement> applyMpsOverrides(List<MpsRequirement> baseMps,
+            List<MrpScenarioOverride> overrides, List<String> warnings) {
+
+        List<MpsRequirement> mps = baseMps;
+        for (MrpScenarioOverride override : overrides) {
+            if (!OVERRIDE_MPS.equals(override.getType())) {
+                continue;
+            }
+            int matched = 0;
+            for (int i = 0; i < mps.size(); i++) {
+                MpsRequirement m = mps.get(i);
+                boolean match = override.getMpsId() != null
+                    ? override.getMpsId().equals(m.getId())
+                    : override.getMaterialCode() != null && override.getMaterialCode().equals(m.getMaterialCode());
+                if (!match) {
+                    continue;
+                }
+                if (mps == baseMps) {
+                    mps = new ArrayList<>(baseMps);
+                }
+                MpsRequirement.MpsRequirementBuilder changed = m.toBuilder();
+                if (override.getQuantity() != null) {
+                    changed.quantity(override.getQuantity());
+                }
+                if (override.getDueDate() != null) {
+                    changed.dueDate(override.getDueDate());
+                }
+                mps.set(i, changed.build());
+                matched++;
+            }
+            if (matched == 0) {
+                warnings.add("MPS 覆盖未匹配: " + (override.getMpsId() != null
+                    ? override.getMpsId() : override.getMaterialCode()));
+            }
+        }
+        return mps;
+    }
+
+    /**
+     * 是否含日期类覆盖（MPS 交期、在途推迟）
+     */
+    private static boolean hasDateOverride(List<MrpScenarioOverride> overrides) {
+        for (MrpScenarioOverride override : overrides) {
+            if (OVERRIDE_MPS.equals(override.getType()) && override.getDueDate() != null
+                || OVERRIDE_IN_TRANSIT_DELAY.equals(override.getType())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 在途 / 库存覆盖：按工厂叠加覆盖层，未涉及的工厂直接共用基线上下文
+     */
+    private Map<String, MrpDataContext> applyDataOverrides(Base base, List<MrpScenarioOverride> overrides,
+            List<String> warnings) {
+
+        Map<String, MrpDataContext.Overlay> overlays = new HashMap<>();
+        for (MrpScenarioOverride override : overrides) {
+            String type = override.getType();
+            if (OVERRIDE_MPS.equals(type)) {
+                continue;
+            }
+            if (!OVERRIDE_IN_TRANSIT_DELAY.equals(type) && !OVERRIDE_INVENTORY_ADJUST.equals(type)) {
+                warnings.add("未知覆盖类型: " + type);
+                continue;
+            }
+            boolean applied = false;
+            for (String plant : targetPlants(base, override.getPlantCode())) {
+                MrpDataContext.Overlay overlay = overlays.computeIfAbsent(plant,
+                    k -> base.contexts.get(k).overlay());
+                if (OVERRIDE_INVENTORY_ADJUST.equals(type)) {
+                    BigDecimal delta = override.getQuantityDelta() != null ? override.getQuantityDelta() : BigDecimal.ZERO;
+                    applied |= overlay.adjustInventory(override.getMaterialCode(), MrpQuantity.of(delta));
+                } else {
+                    int days = override.getDelayDays() != null ? override.getDelayDays() : 0;
+                    applied |= overlay.delayInTransit(override.getMaterialCode(), override.getArrivalDate(),
+                        days, base.request.getPlanToDate()) > 0;
+                }
+            }
+            if (!applied) {
+                warnings.add(type + " 覆盖未生效（物料不在基线计算范围或无匹配在途）: " + override.getMaterialCode());
+            }
+        }
+
+        if (overlays.isEmpty()) {
+            return base.contexts;
+        }
+        Map<String, MrpDataContext> contexts = new HashMap<>(base.contexts);
+        overlays.forEach((plant, overlay) -> contexts.put(plant, overlay.build()));
+        return contexts;
+    }
+
+    /**
+     * 覆盖项作用的上下文键：指定工厂且基线按工厂分区时只作用于该工厂，否则作用于全部
+     */
+    private static Collection<String> targetPlants(Base base, String plantCode) {
+        if (plantCode != null && base.contexts.containsKey(plantCode)) {
+            return Collections.singletonList(plantCode);
+        }
+        if (plantCode != null && !base.contexts.containsKey(null)) {
+            return Collections.emptyList();
+        }
+        return base.contexts.keySet();
+    }
+
+    /**
+     * 净需求差异（按物料汇总）
+     */
+    private static List<MrpRequirementDelta> diffRequirements(MrpPlanResult base, MrpPlanResult scenario) {
+        Map<String, BigDecimal> before = sumByItem(base.getNetRequirements());
+        Map<String, BigDecimal> after = sumByItem(scenario.getNetRequirements());
+        Set<String> items = new LinkedHashSet<>(before.keySet());
+        items.addAll(after.keySet());
+
+        List<MrpRequirementDelta> deltas = new ArrayList<>();
+        for (String item : items) {
+            BigDecimal b = before.getOrDefault(item, BigDecimal.ZERO);
+            BigDecimal a = after.getOrDefault(item, BigDecimal.ZERO);
+            if (a.compareTo(b) != 0) {
+                deltas.add(MrpRequirementDelta.builder()
+                    .itemCode(item)
+                    .baseNetRequirement(b)
+                    .netRequirement(a)
+                    .delta(a.subtract(b))
+                    .build());
+            }
+        }
+        return deltas;
+    }
+
+    private static Map<String, BigDecimal> sumByItem(List<MrpNetRequirement> requirements) {
+        Map<String, BigDecimal> sums = new LinkedHashMap<>();
+        for (MrpNetRequirement r : requirements) {
+            if (r.getNetRequirement() != null) {
+                sums.merge(r.getItemCode(), r.getNetRequirement(), BigDecimal::add);
+            }
+        }
+        return sums;
+    }
+
+    /**
+     * 采购建议差异：按（物料，需求日期）对应
+     */
+    private static MrpSuggestionDiff diffSuggestions(String scenarioId, Base base, MrpPlanResult scenario) {
+        Map<String, ProcurementSuggestion> before = byKey(base.result.getSuggestions());
+        Map<String, ProcurementSuggestion> after = byKey(scenario.getSuggestions());
+
+        List<ProcurementSuggestion> added = new ArrayList<>();
+        List<ProcurementSuggestion> changed = new ArrayList<>();
+        List<ProcurementSuggestion> removed = new ArrayList<>();
+        Set<String> items = new HashSet<>();
+        after.forEach((key, suggestion) -> {
+            ProcurementSuggestion old = before.get(key);
+            if (old == null) {
+                added.add(suggestion);
+                items.add(suggestion.getItemCode());
+            } else if (!sameSuggestion(old, suggestion)) {
+                changed.add(suggestion);
+                items.add(suggestion.getItemCode());
+            }
+        });
+        before.forEach((key, suggestion) -> {
+            if (!after.containsKey(key)) {
+                removed.add(suggestion);
+                items.add(suggestion.getItemCode());
+            }
+        });
+
+        return MrpSuggestionDiff.builder()
+            .runId(scenarioId)
+            .baseRunId(base.summary.getBaseId())
+            .dirtyItemCount(items.size())
+            .added(added)
+            .changed(changed)
+            .removed(removed)
+            .fullRunRequired(false)
+            .build();
+    }
+
+    private static Map<String, ProcurementSuggestion> byKey(List<ProcurementSuggestion> suggestions) {
+        Map<String, ProcurementSuggestion> map = new LinkedHashMap<>();
+        for (ProcurementSuggestion suggestion : suggestions) {
+            map.put(suggestion.getItemCode() + "|" + suggestion.getPlantCode() + "|" + suggestion.getRequiredDate(),
+                suggestion);
+        }
+        return map;
+    }
+
+    private static boolean sameSuggestion(ProcurementSuggestion a, ProcurementSuggestion b) {
+        return a.getSuggestedQty().compareTo(b.getSuggestedQty()) == 0
+            && Objects.equals(a.getSuggestedDate(), b.getSuggestedDate())
+            && Objects.equals(a.getSupplierCode(), b.getSupplierCode());
+    }
+
+    private static MrpSimulationResponse failed(String scenarioId, MrpSimulationRequest request,
+            String message, long start) {
+        return MrpSimulationResponse.builder()
+            .scenarioId(scenarioId)
+            .scenarioName(request.getScenarioName())
+            .baseId(request.getBaseId())
+            .status("FAILED")
+            .errorMessage(message)
+            .durationMs(System.currentTimeMillis() - start)
+            .build();
+    }
+
+    /**
+     * 模拟基线（只读，供并发场景共享）
+     */
+    private static class Base {
+        private final MrpRunRequest request;
+        private final List<MpsRequirement> mps;
+        private final BomGraphSnapshot bomGraph;
+        // 工厂编码 → 数据上下文（不分区时键为 null）
+        private final Map<String, MrpDataContext> contexts;
+        private final MrpPlanResult result;
+        private final MrpSimulationBase summary;
+
+        Base(MrpRunRequest request, List<MpsRequirement> mps, BomGraphSnapshot bomGraph,
+             Map<String, MrpDataContext> contexts, MrpPlanResult result, MrpSimulationBase summary) {
+            this.request = request;
+            this.mps = mps;
+            this.bomGraph = bomGraph;
+            this.contexts = contexts;
+            this.result = result;
+            this.summary = summary;
+        }
+    }
+}
@@ -0,0 +1,344 @@
+package com.hjscm.service;
+
+import com.hjscm.config.MrpAsyncConfig;
+import com.hjscm.dto.*;
+import com.hjscm.event.InventoryChangeEvent;
+import com.hjscm.event.MrpRunCompletedEvent;
+import com.hjscm.service.mrp.BomGraphSnapshot;
+import com.hjscm.service.mrp.MrpDataContext;
+import com.hjscm.service.mrp.MrpNettingState;
+import com.hjscm.service.mrp.MrpRunProgress;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * 净改变 MRP 服务
+ *
+ * 功能：
+ * - 保存最近一次 LLC 全量运行的净算状态作为基线
+ * - 库存变更事件到达时只登记变更物料（高频收货不触发全量重算）
+ * - 重算时把变更物料及其全部下级子件标记为脏，仅重新净算脏子图
+ * - 输出采购建议差异（新增 / 变更 / 取消），而非重新生成全部建议
+ *
+ * - 异步重算在独立单线程执行器上合并执行（MrpAsyncConfig），先等待防抖间隔再处理全部已登记物料
+ * - 无基线或 BOM 快照版本已变时，异步路径自动提交一次 LLC 全量作业（MrpJobService），
+ *   完成后发布的运行完成事件即成为新基线；手动接口只返回 fullRunRequired，由调用方决定
+ *
+ * 说明：库存变化只影响该物料自身净需求及由此派生的下级毛需求，
+ * 父项（where-used 上级）的净需求不受影响，故脏集合向下闭包；
+ * 重算脏物料毛需求时经反向边回读父项净需求。
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class NetChangeMrpService {
+
+    private final MRPEngineService mrpEngineService;
+    private final MrpDataService mrpDataService;
+    private final BomGraphService bomGraphService;
+    private final TraceIdService traceIdService;
+    private final ApplicationEventPublisher eventPublisher;
+    private final MrpJobService mrpJobService;
+
+    // 异步重算前的防抖等待，期间到达的库存变更合并到同一次重算
+    @Value("${mrp.net-change.debounce-ms:2000}")
+    private long debounceMs = 2000;
+
+    // 需全量重算时自动提交 LLC 全量作业
+    @Value("${mrp.net-change.auto-full-run:true}")
+    private boolean autoFullRun = true;
+
+    // 自动全量作业的工厂（净改变基线仅支持单工厂运行；为空时不按工厂过滤）
+    @Value("${mrp.net-change.full-run-plant:}")
+    private String fullRunPlant = "";
+
+    // 待重算物料（库存变更登记）
+    private final Set<String> pendingMaterials = ConcurrentHashMap.newKeySet();
+
+    private volatile Baseline baseline;
+
+    // 已提交、尚未结束的自动全量作业
+    private volatile String fullRunJobId;
+
+    /**
+     * 记录 LLC 全量运行结果为新基线（发布方事务提交后；无事务时立即）
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public synchronized void onMrpRunCompleted(MrpRunCompletedEvent event) {
+        if (event.getNettingState() == null) {
+            return;
+        }
+        Map<String, ProcurementSuggestion> byItem = new HashMap<>();
+        for (ProcurementSuggestion suggestion : event.getSuggestions()) {
+            byItem.put(suggestion.getItemCode(), suggestion);
+        }
+        baseline = new Baseline(event.getRunId(), event.getPlantCode(), event.getNettingState(), byItem);
+        pendingMaterials.clear();
+        fullRunJobId = null;
+        log.info("[MRP-NetChange] Baseline updated. runId={}, plant={}, suggestions={}",
+            event.getRunId(), event.getPlantCode(), byItem.size());
+    }
+
+    /**
+     * 库存变更（事务提交后）→ 登记待重算物料
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onInventoryChanged(InventoryChangeEvent event) {
+        if (event.getMaterialCode() != null) {
+            pendingMaterials.add(event.getMaterialCode());
+        }
+    }
+
+    /**
+     * 异步执行净改变重算（独立单线程执行器，已有排队任务时本次触发合并到排队任务）
+     *
+     * 结果经 MrpSuggestionDiff 事件发布；需全量重算时自动提交 LLC 全量作业。
+     */
+    @Async(MrpAsyncConfig.NET_CHANGE_EXECUTOR)
+    public void runNetChangeAsync() {
+        if (debounceMs > 0) {
+            try {
+                Thread.sleep(debounceMs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+        try {
+            MrpSuggestionDiff diff = runNetChange();
+            if (Boolean.TRUE.equals(diff.getFullRunRequired()) && autoFullRun) {
+                submitFullRun(diff.getMessage());
+            }
+        } catch (RuntimeException e) {
+            log.error("[MRP-NetChange] Async run failed", e);
+        }
+    }
+
+    /**
+     * 执行净改变重算：处理全部已登记物料
+     */
+    public synchronized MrpSuggestionDiff runNetChange() {
+        long start = System.currentTimeMillis();
+        String runId = traceIdService.generateRunTraceId();
+        Baseline base = baseline;
+
+        if (base == null) {
+            return fullRunRequired(runId, null, "无 LLC 基线运行，请先执行全量 MRP");
+        }
+        BomGraphSnapshot bomGraph = base.state.getBomGraph();
+        if (bomGraphService.current().getVersion() != bomGraph.getVersion()) {
+            return fullRunRequired(runId, base.runId, "BOM 快照版本已变更，请执行全量 MRP");
+        }
+
+        List<String> changed = new ArrayList<>(pendingMaterials);
+        pendingMaterials.removeAll(changed);
+        if (changed.isEmpty()) {
+            return emptyDiff(runId, base.runId, start);
+        }
+
+        // 1. 脏集合：变更物料及其全部下级子件
+        boolean[] dirty = new boolean[bomGraph.size()];
+        List<String> dirtyStandalone = new ArrayList<>();
+        List<String> dirtyCodes = markDirty(bomGraph, base.state, changed, dirty, dirtyStandalone);
+
+        // 2. 仅预取脏物料数据（与基线同一工厂口径）并重新净算
+        MrpDataContext dataContext = mrpDataService.buildDataContext(dirtyCodes, base.state.getFromDate(),
+            base.plantCode);
+        mrpEngineService.renetByLlc(base.state, dirty, dirtyStandalone, dataContext);
+
+        // 3. 脏尾项重新齐套检查并生成建议
+        List<MrpNetRequirement> dirtyRequirements = new ArrayList<>();
+        List<String> dirtyLeaves = new ArrayList<>();
+        for (int item = 0; item < dirty.length; item++) {
+            if (dirty[item] && !bomGraph.hasChildren(item)) {
+                dirtyLeaves.add(bomGraph.itemCode(item));
+                if (base.state.getLeafRequirement(item) != null) {
+                    dirtyRequirements.add(base.state.getLeafRequirement(item));
+                }
+            }
+        }
+        for (String code : dirtyStandalone) {
+            dirtyLeaves.add(code);
+            if (base.state.getStandaloneRequirement(code) != null) {
+                dirtyRequirements.add(base.state.getStandaloneRequirement(code));
+            }
+        }
+        KitCheckResult kitResult = mrpEngineService.checkKitAvailability(
+            dirtyRequirements, dataContext, MrpRunProgress.none());
+        List<ProcurementSuggestion> suggestions = kitResult.getShortages() != null
+            ? mrpEngineService.generateSuggestions(kitResult.getShortages(), dataContext, MrpRunProgress.none())
+            : Collections.emptyList();
+
+        // 4. 与基线比对得出差异，并更新基线
+        MrpSuggestionDiff diff = diff(runId, base, dirtyLeaves, suggestions);
+        diff.setDirtyItemCount(dirtyCodes.size());
+        diff.setDurationMs(System.currentTimeMillis() - start);
+
+        log.info("[MRP-NetChange] Done. runId={}, changed={}, dirty={}, added={}, changed={}, removed={}, duration={}ms",
+            runId, changed.size(), dirtyCodes.size(), diff.getAdded().size(),
+            diff.getChanged().size(), diff.getRemoved().size(), diff.getDurationMs());
+
+        eventPublisher.publishEvent(diff);
+        return diff;
+    }
+
+    /**
+     * 标记脏集合（向下闭包），返回脏物料编码
+     */
+    private List<String> markDirty(BomGraphSnapshot bomGraph, MrpNettingState state,
+            List<String> changed, boolean[] dirty, List<String> dirtyStandalone) {
+
+        List<String> codes = new ArrayList<>();
+        Deque<Integer> stack = new ArrayDeque<>();
+        for (String code : changed) {
+            int item = bomGraph.indexOf(code);
+            if (item >= 0) {
+                if (!dirty[item]) {
+                    dirty[item] = true;
+                    stack.push(item);
+                }
+            } else if (state.getStandaloneDemand().containsKey(code)) {
+                dirtyStandalone.add(code);
+                codes.add(code);
+            }
+        }
+        while (!stack.isEmpty()) {
+            int item = stack.pop();
+            codes.add(bomGraph.itemCode(item));
+            for (int e = bomGraph.childStart(item), end = bomGraph.childEnd(item); e < end; e++) {
+                int child = bomGraph.childAt(e);
+                if (!dirty[child]) {
+                    dirty[child] = true;
+                    stack.push(child);
+                }
+            }
+        }
+        return codes;
+    }
+
+    private MrpSuggestionDiff diff(String runId, Baseline base, List<String> dirtyLeaves,
+            List<ProcurementSuggestion> suggestions) {
+
+        Map<String, ProcurementSuggestion> latest = new HashMap<>();
+        for (ProcurementSuggestion suggestion : suggestions) {
+            latest.put(suggestion.getItemCode(), suggestion);
+        }
+
+        List<ProcurementSuggestion> added = new ArrayList<>();
+        List<ProcurementSuggestion> changed = new ArrayList<>();
+        List<ProcurementSuggestion> removed = new ArrayList<>();
+        for (String code : dirtyLeaves) {
+            ProcurementSuggestion before = base.suggestions.get(code);
+            ProcurementSuggestion after = latest.get(code);
+            if (before == null && after != null) {
+                added.add(after);
+            } else if (before != null && after == null) {
+                removed.add(before);
+            } else if (before != null && !sameSuggestion(before, after)) {
+                changed.add(after);
+            }
+            if (after != null) {
+                base.suggestions.put(code, after);
+            } else {
+                base.suggestions.remove(code);
+            }
+        }
+
+        return MrpSuggestionDiff.builder()
+            .runId(runId)
+            .baseRunId(base.runId)
+            .added(added)
+            .changed(changed)
+            .removed(removed)
+            .fullRunRequired(false)
+            .build();
+    }
+
+    private static boolean sameSuggestion(ProcurementSuggestion a, ProcurementSuggestion b) {
+        return a.getSuggestedQty().compareTo(b.getSuggestedQty()) == 0
+            && Objects.equals(a.getSuggestedDate(), b.getSuggestedDate())
+            && Objects.equals(a.getSupplierCode(), b.getSupplierCode());
+    }
+
+    private MrpSuggestionDiff emptyDiff(String runId, String baseRunId, long start) {
+        return MrpSuggestionDiff.builder()
+            .runId(runId)
+            .baseRunId(baseRunId)
+            .dirtyItemCount(0)
+            .added(Collections.emptyList())
+            .changed(Collections.emptyList())
+            .removed(Collections.emptyList())
+            .fullRunRequired(false)
+            .durationMs(System.currentTimeMillis() - start)
+            .build();
+    }
+
+    /**
+     * 提交 LLC 全量作业（已有未结束的自动作业时不重复提交）
+     */
+    private synchronized void submitFullRun(String reason) {
+        String jobId = fullRunJobId;
+        if (jobId != null && mrpJobService.getStatus(jobId)
+                .map(status -> "QUEUED".equals(status.getStatus()) || "RUNNING".equals(status.getStatus()))
+                .orElse(false)) {
+            return;
+        }
+        MrpRunRequest request = MrpRunRequest.builder()
+            .runMode("FULL")
+            .planningMode("LLC")
+            .planFromDate(LocalDate.now())
+            .plantCode(fullRunPlant == null || fullRunPlant.isEmpty() ? null : fullRunPlant)
+            .includeKitCheck(true)
+            .generateSuggestions(true)
+            .build();
+        try {
+            fullRunJobId = mrpJobService.submit(request).getRunId();
+            log.info("[MRP-NetChange] Full LLC run submitted. runId={}, reason={}", fullRunJobId, reason);
+        } catch (RejectedExecutionException e) {
+            log.warn("[MRP-NetChange] Full LLC run rejected, queue full. reason={}", reason);
+        }
+    }
+
+    private MrpSuggestionDiff fullRunRequired(String runId, String baseRunId, String message) {
+        log.warn("[MRP-NetChange] Skipped. runId={}, reason={}", runId, message);
+        return MrpSuggestionDiff.builder()
+            .runId(runId)
+            .baseRunId(baseRunId)
+            .dirtyItemCount(0)
+            .added(Collections.emptyList())
+            .changed(Collections.emptyList())
+            .removed(Collections.emptyList())
+            .fullRunRequired(true)
+            .message(message)
+            .build();
+    }
+
+    /**
+     * 净改变基线
+     */
+    private static class Baseline {
+        private final String runId;
+        // 基线运行的工厂，为 null 时全部工厂合计
+        private final String plantCode;
+        private final MrpNettingState state;
+        private final Map<String, ProcurementSuggestion> suggestions;
+
+        Baseline(String runId, String plantCode, MrpNettingState state,
+                 Map<String, ProcurementSuggestion> suggestions) {
+            this.runId = runId;
+            this.plantCode = plantCode;
+            this.state = state;
+            this.suggestions = suggestions;
+        }
+    }
+}
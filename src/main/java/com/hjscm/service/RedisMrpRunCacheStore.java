@@ -0,0 +1,76 @@
+package com.hjscm.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hjscm.dto.*;
+import com.hjscm.service.mrp.MrpRunCacheStore;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Optional;
+
+/**
+ * MRP 运行缓存 Redis 存储（docker-compose 中的 Redis，多个后端节点共享）
+ *
+ * 开启：mrp.run-cache.redis.enabled=true。条目以 JSON 存放并设置过期时间，
+ * Redis 不可用时记录告警并按未命中处理。
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "mrp.run-cache.redis.enabled", havingValue = "true")
+public class RedisMrpRunCacheStore implements MrpRunCacheStore {
+
+    private static final String ENTRY_KEY = "hjscm:mrp:run-cache:";
+    private static final String RUN_KEY = "hjscm:mrp:run-cache:run:";
+
+    private final StringRedisTemplate redisTemplate;
+    private final ObjectMapper objectMapper;
+
+    @Value("${mrp.run-cache.redis.ttl-minutes:60}")
+    private long ttlMinutes = 60;
+
+    public RedisMrpRunCacheStore(StringRedisTemplate redisTemplate, ObjectMapper objectMapper) {
+        this.redisTemplate = redisTemplate;
+        this.objectMapper = objectMapper;
+    }
+
+    @Override
+    public Optional<MrpRunCacheEntry> get(String fingerprint) {
+        try {
+            String json = redisTemplate.opsForValue().get(ENTRY_KEY + fingerprint);
+            return json != null
+                ? Optional.of(objectMapper.readValue(json, MrpRunCacheEntry.class))
+                : Optional.empty();
+        } catch (Exception e) {
+            log.warn("[MRP-Cache] Redis get failed, treated as miss. fingerprint={}, error={}",
+                fingerprint, e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    @Override
+    public Optional<String> fingerprintOfRun(String runId) {
+        try {
+            return Optional.ofNullable(redisTemplate.opsForValue().get(RUN_KEY + runId));
+        } catch (Exception e) {
+            log.warn("[MRP-Cache] Redis lookup failed. runId={}, error={}", runId, e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    @Override
+    public void put(MrpRunCacheEntry entry) {
+        try {
+            Duration ttl = Duration.ofMinutes(ttlMinutes);
+            redisTemplate.opsForValue().set(ENTRY_KEY + entry.getFingerprint(),
+                objectMapper.writeValueAsString(entry), ttl);
+            redisTemplate.opsForValue().set(RUN_KEY + entry.getResponse().getRunId(), entry.getFingerprint(), ttl);
+        } catch (Exception e) {
+            log.warn("[MRP-Cache] Redis put failed. fingerprint={}, error={}",
+                entry.getFingerprint(), e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,258 @@
+package com.hjscm.service.atp;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * 分时段 ATP 台账（单个物料 / 工厂）
+ *
+ * 组成：
+ * - 可用库存（数量 − 已预留）与销售已分配量：无日期，自起点生效
+ * - 按日期排序的事件：在途到货（+）、MRP 预留（−）
+ *
+ * ATP(d) = 可用库存 − 已分配 + Σ到货(≤ d) − Σ预留(≤ d)
+ *
+ * 事件变更为 TreeMap 上的 O(log n) 增量；首次查询时一次性重建前缀数组：
+ * 累计到货、累计预留，以及"自第 i 个事件日起的最小 ATP"（后缀最小值，随 i 单调不减）。
+ * 时点 ATP 与最早可承诺日均为二分查找。
+ *
+ * 非线程安全，由 AtpLedgerService 按台账加锁。
+ */
+public final class AtpLedger {
+
+    private static final int RECEIPT = 0;
+    private static final int RESERVATION = 1;
+
+    private final String materialCode;
+    private final String plantCode;
+    private final LocalDateTime loadedAt;
+    private LocalDateTime loadCompletedAt;
+
+    private BigDecimal onHand;
+    private BigDecimal allocated;
+    private final TreeMap<LocalDate, BigDecimal[]> events = new TreeMap<>();
+
+    // 前缀数组（dirty 时重建）
+    private LocalDate[] dates;
+    private BigDecimal[] cumReceipt;
+    private BigDecimal[] cumReserved;
+    private BigDecimal[] minAtpFrom;
+    private boolean dirty = true;
+
+    public AtpLedger(String materialCode, String plantCode, BigDecimal onHand, BigDecimal allocated,
+                     LocalDateTime loadedAt) {
+        this.materialCode = materialCode;
+        this.plantCode = plantCode;
+        this.onHand = nz(onHand);
+        this.allocated = nz(allocated);
+        this.loadedAt = loadedAt;
+        this.loadCompletedAt = loadedAt;
+    }
+
+    /**
+     * 复制台账（批量承诺时在副本上顺序占用，不影响缓存中的台账）
+     */
+    public AtpLedger copy() {
+        AtpLedger copy = new AtpLedger(materialCode, plantCode, onHand, allocated, loadedAt);
+        copy.loadCompletedAt = loadCompletedAt;
+        for (Map.Entry<LocalDate, BigDecimal[]> e : events.entrySet()) {
+            copy.events.put(e.getKey(), e.getValue().clone());
+        }
+        return copy;
+    }
+
+    public String getMaterialCode() {
+        return materialCode;
+    }
+
+    public String getPlantCode() {
+        return plantCode;
+    }
+
+    /**
+     * 加载开始时刻（此后提交的变更可能未包含在加载结果中）
+     */
+    public LocalDateTime getLoadedAt() {
+        return loadedAt;
+    }
+
+    /**
+     * 加载完成时刻（此后才发生的变更一定未包含在加载结果中）
+     */
+    public LocalDateTime getLoadCompletedAt() {
+        return loadCompletedAt;
+    }
+
+    public void completeLoad(LocalDateTime completedAt) {
+        this.loadCompletedAt = completedAt;
+    }
+
+    public BigDecimal getOnHand() {
+        return onHand;
+    }
+
+    public BigDecimal getAllocated() {
+        return allocated;
+    }
+
+    public int eventDates() {
+        return events.size();
+    }
+
+    // === 增量维护 ===
+
+    public void adjustOnHand(BigDecimal delta) {
+        onHand = onHand.add(nz(delta));
+        dirty = true;
+    }
+
+    public void adjustAllocated(BigDecimal delta) {
+        allocated = allocated.add(nz(delta));
+        dirty = true;
+    }
+
+    /**
+     * 在途到货变更（新增为正，取消 / 收货为负）
+     */
+    public void adjustReceipt(LocalDate date, BigDecimal delta) {
+        adjust(date, RECEIPT, delta);
+    }
+
+    /**
+     * MRP 预留变更（新增为正，释放为负）
+     */
+    public void adjustReservation(LocalDate date, BigDecimal delta) {
+        adjust(date, RESERVATION, delta);
+    }
+
+    private void adjust(LocalDate date, int kind, BigDecimal delta) {
+        if (date == null || delta == null || delta.signum() == 0) {
+            return;
+        }
+        BigDecimal[] qty = events.computeIfAbsent(date, d -> new BigDecimal[] {BigDecimal.ZERO, BigDecimal.ZERO});
+        qty[kind] = qty[kind].add(delta);
+        if (qty[RECEIPT].signum() == 0 && qty[RESERVATION].signum() == 0) {
+            events.remove(date);
+        }
+        dirty = true;
+    }
+
+    // === 查询 ===
+
+    /**
+     * 截至 date（含）的累计在途到货
+     */
+    public BigDecimal receiptsThrough(LocalDate date) {
+        int i = indexAtOrBefore(date);
+        return i < 0 ? BigDecimal.ZERO : cumReceipt[i];
+    }
+
+    /**
+     * 截至 date（含）的累计 MRP 预留
+     */
+    public BigDecimal reservedThrough(LocalDate date) {
+        int i = indexAtOrBefore(date);
+        return i < 0 ? BigDecimal.ZERO : cumReserved[i];
+    }
+
+    /**
+     * date 当日的 ATP
+     */
+    public BigDecimal atpAt(LocalDate date) {
+        int i = indexAtOrBefore(date);
+        return i < 0 ? base() : atpAtIndex(i);
+    }
+
+    /**
+     * 最早可承诺日：不早于 from、且此后任一日 ATP 均不低于 qty 的最早日期
+     *
+     * 承诺会永久占用供给，只看当日 ATP 会让后续已有需求透支，故取后缀最小值。
+     *
+     * @return 不晚于 horizonEnd 的可承诺日；计划期内无法满足时返回 null
+     */
+    public LocalDate promiseDate(BigDecimal qty, LocalDate from, LocalDate horizonEnd) {
+        int k = indexAtOrBefore(from);
+        BigDecimal atFrom = k < 0 ? base() : atpAtIndex(k);
+        BigDecimal later = k + 1 < dates.length ? minAtpFrom[k + 1] : null;
+        if (atFrom.compareTo(qty) >= 0 && (later == null || later.compareTo(qty) >= 0)) {
+            return from;
+        }
+        // minAtpFrom 单调不减：二分查找 (k, n) 内首个满足的事件日
+        int lo = k + 1;
+        int hi = dates.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (minAtpFrom[mid].compareTo(qty) >= 0) {
+                hi = mid;
+            } else {
+                lo = mid + 1;
+            }
+        }
+        if (lo == dates.length || (horizonEnd != null && dates[lo].isAfter(horizonEnd))) {
+            return null;
+        }
+        return dates[lo];
+    }
+
+    private BigDecimal base() {
+        return onHand.subtract(allocated);
+    }
+
+    private BigDecimal atpAtIndex(int i) {
+        return base().add(cumReceipt[i]).subtract(cumReserved[i]);
+    }
+
+    /**
+     * 最后一个不晚于 date 的事件下标，无则 -1
+     */
+    private int indexAtOrBefore(LocalDate date) {
+        rebuildIfDirty();
+        int lo = 0;
+        int hi = dates.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (dates[mid].isAfter(date)) {
+                hi = mid;
+            } else {
+                lo = mid + 1;
+            }
+        }
+        return lo - 1;
+    }
+
+    private void rebuildIfDirty() {
+        if (!dirty) {
+            return;
+        }
+        int n = events.size();
+        dates = new LocalDate[n];
+        cumReceipt = new BigDecimal[n];
+        cumReserved = new BigDecimal[n];
+        minAtpFrom = new BigDecimal[n];
+
+        BigDecimal receipt = BigDecimal.ZERO;
+        BigDecimal reserved = BigDecimal.ZERO;
+        int i = 0;
+        for (Map.Entry<LocalDate, BigDecimal[]> e : events.entrySet()) {
+            receipt = receipt.add(e.getValue()[RECEIPT]);
+            reserved = reserved.add(e.getValue()[RESERVATION]);
+            dates[i] = e.getKey();
+            cumReceipt[i] = receipt;
+            cumReserved[i] = reserved;
+            i++;
+        }
+        BigDecimal base = base();
+        for (int j = n - 1; j >= 0; j--) {
+            BigDecimal atp = base.add(cumReceipt[j]).subtract(cumReserved[j]);
+            minAtpFrom[j] = j == n - 1 || atp.compareTo(minAtpFrom[j + 1]) < 0 ? atp : minAtpFrom[j + 1];
+        }
+        dirty = false;
+    }
+
+    private static BigDecimal nz(BigDecimal value) {
+        return value != null ? value : BigDecimal.ZERO;
+    }
+}
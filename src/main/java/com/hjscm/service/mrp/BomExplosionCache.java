@@ -0,0 +1,204 @@
+package com.hjscm.service.mrp;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * BOM 展开记忆化缓存 - 子装配的单位尾项需求向量
+ *
+ * 每个物料（及剩余可展开层数）缓存一个"每单位父项需要多少各尾项"的向量：
+ * 父项向量 = Σ 子项用量系数 × 子项向量，共用子装配只展开一次，
+ * 多个成品共用同一子装配时展开量由按路径指数增长降为接近线性。
+ *
+ * 缓存绑定一个 BOM 图快照版本，BOM 变更（BOMService.createBOM/updateBOM 发布 BomChangeEvent）
+ * 后由 BomGraphService 丢弃，下次按新快照重新计算。
+ *
+ * 计算时沿当前展开路径检测循环引用，发现即抛出 IllegalStateException，
+ * 不再依赖 maxLevel 截断。
+ */
+public final class BomExplosionCache {
+
+    private final BomGraphSnapshot bomGraph;
+    // 物料到尾项的最长层数（图有环时为 null，按请求层数缓存）
+    private final int[] heights;
+    // (物料下标 << 32 | 有效层数) → 单位向量
+    private final Map<Long, ExplosionVector> vectors = new ConcurrentHashMap<>();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public BomExplosionCache(BomGraphSnapshot bomGraph) {
+        this.bomGraph = bomGraph;
+        this.heights = bomGraph.hasCycle() ? null : computeHeights(bomGraph);
+    }
+
+    /**
+     * 物料每单位展开 maxLevel 层后的尾项向量
+     *
+     * @throws IllegalStateException 展开路径上存在循环引用
+     */
+    public ExplosionVector vectorOf(int item, int maxLevel) {
+        return vectorOf(item, Math.max(0, maxLevel), new LinkedHashSet<>());
+    }
+
+    private ExplosionVector vectorOf(int item, int maxLevel, Set<Integer> path) {
+        // 剩余层数不小于子树高度时结果与层数无关，归并为同一键
+        int levels = heights != null ? Math.min(maxLevel, heights[item]) : maxLevel;
+        if (!bomGraph.hasChildren(item)) {
+            levels = 0;
+        }
+        Long key = ((long) item << 32) | levels;
+        ExplosionVector vector = vectors.get(key);
+        if (vector != null) {
+            hits.increment();
+            return vector;
+        }
+        misses.increment();
+
+        if (levels == 0) {
+            vector = new ExplosionVector(new int[] {item}, new int[] {0}, new long[] {MrpQuantity.FACTOR_ONE});
+        } else {
+            if (!path.add(item)) {
+                throw cycle(path, item);
+            }
+            VectorBuilder builder = new VectorBuilder();
+            for (int e = bomGraph.childStart(item), end = bomGraph.childEnd(item); e < end; e++) {
+                int child = bomGraph.childAt(e);
+                if (path.contains(child)) {
+                    throw cycle(path, child);
+                }
+                ExplosionVector childVector = vectorOf(child, levels - 1, path);
+                long factor = bomGraph.factorAt(e);
+                for (int i = 0; i < childVector.size(); i++) {
+                    builder.add(childVector.leafAt(i), childVector.levelAt(i) + 1,
+                        MrpQuantity.applyFactor(childVector.factorAt(i), factor));
+                }
+            }
+            path.remove(item);
+            vector = builder.build();
+        }
+
+        // 并发计算同一键时结果相同，保留先写入者
+        ExplosionVector existing = vectors.putIfAbsent(key, vector);
+        return existing != null ? existing : vector;
+    }
+
+    private IllegalStateException cycle(Set<Integer> path, int repeated) {
+        StringBuilder sb = new StringBuilder();
+        boolean inCycle = false;
+        for (int item : path) {
+            inCycle |= item == repeated;
+            if (inCycle) {
+                sb.append(bomGraph.itemCode(item)).append(" -> ");
+            }
+        }
+        sb.append(bomGraph.itemCode(repeated));
+        return new IllegalStateException("BOM 存在循环引用，无法展开: " + sb);
+    }
+
+    /**
+     * 按低层码逆序（子项先于父项）计算各物料到尾项的最长层数
+     */
+    private static int[] computeHeights(BomGraphSnapshot bomGraph) {
+        int[] heights = new int[bomGraph.size()];
+        int[] order = bomGraph.itemsInLowLevelCodeOrder();
+        for (int k = order.length - 1; k >= 0; k--) {
+            int item = order[k];
+            int height = 0;
+            for (int e = bomGraph.childStart(item), end = bomGraph.childEnd(item); e < end; e++) {
+                height = Math.max(height, heights[bomGraph.childAt(e)] + 1);
+            }
+            heights[item] = height;
+        }
+        return heights;
+    }
+
+    public long getVersion() {
+        return bomGraph.getVersion();
+    }
+
+    /**
+     * 已缓存向量数
+     */
+    public int size() {
+        return vectors.size();
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    /**
+     * 单位尾项向量：尾项下标、相对层级、每单位父项的累计用量系数（8 位小数定点）
+     *
+     * 同一尾项在同一层级只出现一次（多条路径已合并）。
+     */
+    public static final class ExplosionVector {
+
+        private final int[] leaves;
+        private final int[] levels;
+        private final long[] factors;
+
+        private ExplosionVector(int[] leaves, int[] levels, long[] factors) {
+            this.leaves = leaves;
+            this.levels = levels;
+            this.factors = factors;
+        }
+
+        public int size() {
+            return leaves.length;
+        }
+
+        public int leafAt(int i) {
+            return leaves[i];
+        }
+
+        public int levelAt(int i) {
+            return levels[i];
+        }
+
+        public long factorAt(int i) {
+            return factors[i];
+        }
+    }
+
+    /**
+     * 按（尾项，层级）合并累加的向量构建器
+     */
+    private static final class VectorBuilder {
+
+        private final Map<Long, Integer> slots = new HashMap<>();
+        private int[] leaves = new int[8];
+        private int[] levels = new int[8];
+        private long[] factors = new long[8];
+        private int size;
+
+        void add(int leaf, int level, long factor) {
+            Long key = ((long) leaf << 32) | level;
+            Integer slot = slots.get(key);
+            if (slot != null) {
+                factors[slot] = MrpQuantity.add(factors[slot], factor);
+                return;
+            }
+            if (size == leaves.length) {
+                leaves = Arrays.copyOf(leaves, size * 2);
+                levels = Arrays.copyOf(levels, size * 2);
+                factors = Arrays.copyOf(factors, size * 2);
+            }
+            slots.put(key, size);
+            leaves[size] = leaf;
+            levels[size] = level;
+            factors[size] = factor;
+            size++;
+        }
+
+        ExplosionVector build() {
+            return new ExplosionVector(Arrays.copyOf(leaves, size), Arrays.copyOf(levels, size),
+                Arrays.copyOf(factors, size));
+        }
+    }
+}
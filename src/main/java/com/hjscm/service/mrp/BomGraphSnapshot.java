@@ -0,0 +1,468 @@
+package com.hjscm.service.mrp;
+
+import com.hjscm.entity.BomLine;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.*;
+
+/**
+ * BOM 图快照 - 不可变、带版本号
+ *
+ * 功能：
+ * - 一次性加载全部有效 BOM 行，MRP 运算期间纯内存展开
+ * - 物料编码映射为 int 下标，父→子边以 CSR 邻接数组存储
+ * - 每条边携带单位用量 / 产出率（构建时已填充默认值），及二者乘积的定点系数
+ * - 同时保存子→父反向边（单层 where-used），供净改变 MRP 回溯父项
+ * - 构建时一次性计算低层码（LLC），供逐层净需求计算使用
+ * - 构建时划分连通分量：不共用任何物料的产品族互不影响，可并行计算
+ *
+ * 快照一经构建不再修改，可被多个 MRP 运行线程安全共享。
+ */
+public final class BomGraphSnapshot {
+
+    private static final BigDecimal DEFAULT_YIELD_RATE = BigDecimal.ONE;
+
+    private final long version;
+    private final LocalDateTime builtAt;
+    // 内容哈希：与边顺序、物料下标、版本号无关，相同 BOM 内容在各节点一致
+    private final long contentHash;
+
+    private final String[] itemCodes;
+    private final Map<String, Integer> indexByCode;
+
+    // 第 i 个物料的子边区间为 [childOffsets[i], childOffsets[i + 1])
+    private final int[] childOffsets;
+    private final int[] childItems;
+    private final BigDecimal[] usages;
+    private final BigDecimal[] yieldRates;
+    // 用量 × 产出率（MrpQuantity 定点系数）
+    private final long[] factors;
+
+    // 反向边：第 i 个物料的父边区间为 [parentOffsets[i], parentOffsets[i + 1])，存放边下标
+    private final int[] edgeParents;
+    private final int[] parentOffsets;
+    private final int[] parentEdges;
+
+    // 低层码：物料在所有 BOM 中出现的最深层级（顶层为 0）
+    private final int[] lowLevelCodes;
+    private final int maxLowLevelCode;
+    // 按低层码升序排列的物料下标
+    private final int[] itemsByLowLevelCode;
+    // 处于循环引用中的物料下标（无循环时为空）
+    private final int[] cyclicItems;
+
+    // 连通分量（无向）：第 c 个分量的物料（按低层码升序）为
+    // componentItems[componentOffsets[c] .. componentOffsets[c + 1])
+    private final int[] componentOf;
+    private final int[] componentOffsets;
+    private final int[] componentItems;
+    // 含循环引用物料的连通分量
+    private final boolean[] cyclicComponents;
+
+    private BomGraphSnapshot(long version, String[] itemCodes, Map<String, Integer> indexByCode,
+            int[] childOffsets, int[] childItems, BigDecimal[] usages, BigDecimal[] yieldRates) {
+        this.version = version;
+        this.builtAt = LocalDateTime.now();
+        this.itemCodes = itemCodes;
+        this.indexByCode = indexByCode;
+        this.childOffsets = childOffsets;
+        this.childItems = childItems;
+        this.usages = usages;
+        this.yieldRates = yieldRates;
+
+        int n = itemCodes.length;
+        int m = childItems.length;
+
+        this.factors = new long[m];
+        for (int e = 0; e < m; e++) {
+            factors[e] = MrpQuantity.factorOf(usages[e].multiply(yieldRates[e]));
+        }
+        long hash = 0;
+        for (int i = 0; i < n; i++) {
+            for (int e = childOffsets[i]; e < childOffsets[i + 1]; e++) {
+                hash += mix(((long) itemCodes[i].hashCode() << 32)
+                    ^ (itemCodes[childItems[e]].hashCode() & 0xFFFFFFFFL), factors[e]);
+            }
+        }
+        this.contentHash = hash;
+
+        // 反向边（按子项分桶的边下标）
+        this.edgeParents = new int[m];
+        for (int i = 0; i < n; i++) {
+            for (int e = childOffsets[i]; e < childOffsets[i + 1]; e++) {
+                edgeParents[e] = i;
+            }
+        }
+        this.parentOffsets = new int[n + 1];
+        for (int child : childItems) {
+            parentOffsets[child + 1]++;
+        }
+        for (int i = 0; i < n; i++) {
+            parentOffsets[i + 1] += parentOffsets[i];
+        }
+        this.parentEdges = new int[m];
+        int[] cursor = Arrays.copyOf(parentOffsets, n);
+        for (int e = 0; e < m; e++) {
+            parentEdges[cursor[childItems[e]]++] = e;
+        }
+
+        this.lowLevelCodes = new int[n];
+        this.cyclicItems = computeLowLevelCodes();
+
+        int max = 0;
+        for (int llc : lowLevelCodes) {
+            max = Math.max(max, llc);
+        }
+        this.maxLowLevelCode = max;
+
+        // 计数排序：按低层码分桶，桶内保持下标顺序
+        int[] bucketStart = new int[max + 2];
+        for (int llc : lowLevelCodes) {
+            bucketStart[llc + 1]++;
+        }
+        for (int l = 0; l <= max; l++) {
+            bucketStart[l + 1] += bucketStart[l];
+        }
+        this.itemsByLowLevelCode = new int[n];
+        for (int i = 0; i < n; i++) {
+            itemsByLowLevelCode[bucketStart[lowLevelCodes[i]]++] = i;
+        }
+
+        // 连通分量：并查集合并每条边两端，分量编号按首个物料下标顺序分配
+        this.componentOf = computeComponents();
+        int components = 0;
+        for (int c : componentOf) {
+            components = Math.max(components, c + 1);
+        }
+        this.componentOffsets = new int[components + 1];
+        for (int c : componentOf) {
+            componentOffsets[c + 1]++;
+        }
+        for (int c = 0; c < components; c++) {
+            componentOffsets[c + 1] += componentOffsets[c];
+        }
+        this.componentItems = new int[n];
+        int[] componentCursor = Arrays.copyOf(componentOffsets, components);
+        for (int item : itemsByLowLevelCode) {
+            componentItems[componentCursor[componentOf[item]]++] = item;
+        }
+        this.cyclicComponents = new boolean[components];
+        for (int item : cyclicItems) {
+            cyclicComponents[componentOf[item]] = true;
+        }
+    }
+
+    private int[] computeComponents() {
+        int n = itemCodes.length;
+        int[] root = new int[n];
+        for (int i = 0; i < n; i++) {
+            root[i] = i;
+        }
+        for (int i = 0; i < n; i++) {
+            for (int e = childOffsets[i]; e < childOffsets[i + 1]; e++) {
+                int a = find(root, i);
+                int b = find(root, childItems[e]);
+                if (a != b) {
+                    root[Math.max(a, b)] = Math.min(a, b);
+                }
+            }
+        }
+
+        int[] component = new int[n];
+        int[] idOfRoot = new int[n];
+        Arrays.fill(idOfRoot, -1);
+        int next = 0;
+        for (int i = 0; i < n; i++) {
+            int r = find(root, i);
+            if (idOfRoot[r] < 0) {
+                idOfRoot[r] = next++;
+            }
+            component[i] = idOfRoot[r];
+        }
+        return component;
+    }
+
+    private static int find(int[] root, int i) {
+        while (root[i] != i) {
+            root[i] = root[root[i]];
+            i = root[i];
+        }
+        return i;
+    }
+
+    /**
+     * 拓扑排序（Kahn）计算低层码：llc(子) = max(llc(父) + 1)
+     *
+     * @return 未能完成拓扑排序的物料（即位于循环中或受循环影响的物料）
+     */
+    private int[] computeLowLevelCodes() {
+        int n = itemCodes.length;
+        int[] inDegree = new int[n];
+        for (int child : childItems) {
+            inDegree[child]++;
+        }
+
+        int[] queue = new int[n];
+        int head = 0;
+        int tail = 0;
+        for (int i = 0; i < n; i++) {
+            if (inDegree[i] == 0) {
+                queue[tail++] = i;
+            }
+        }
+
+        while (head < tail) {
+            int item = queue[head++];
+            for (int e = childOffsets[item]; e < childOffsets[item + 1]; e++) {
+                int child = childItems[e];
+                lowLevelCodes[child] = Math.max(lowLevelCodes[child], lowLevelCodes[item] + 1);
+                if (--inDegree[child] == 0) {
+                    queue[tail++] = child;
+                }
+            }
+        }
+
+        if (tail == n) {
+            return new int[0];
+        }
+        int[] cyclic = new int[n - tail];
+        int k = 0;
+        for (int i = 0; i < n; i++) {
+            if (inDegree[i] > 0) {
+                cyclic[k++] = i;
+            }
+        }
+        return cyclic;
+    }
+
+    /**
+     * 由 BOM 行构建快照
+     *
+     * @param version 快照版本号
+     * @param lines 有效 BOM 行
+     */
+    public static BomGraphSnapshot build(long version, Collection<BomLine> lines) {
+        Map<String, Integer> index = new HashMap<>();
+        List<String> codes = new ArrayList<>();
+        List<BomLine> edges = new ArrayList<>(lines.size());
+
+        for (BomLine line : lines) {
+            if (line.getParentItem() == null || line.getChildItem() == null) {
+                continue;
+            }
+            indexOf(index, codes, line.getParentItem());
+            indexOf(index, codes, line.getChildItem());
+            edges.add(line);
+        }
+
+        int n = codes.size();
+        int m = edges.size();
+
+        // 1. 统计出度并求前缀和
+        int[] offsets = new int[n + 1];
+        for (BomLine line : edges) {
+            offsets[index.get(line.getParentItem()) + 1]++;
+        }
+        for (int i = 0; i < n; i++) {
+            offsets[i + 1] += offsets[i];
+        }
+
+        // 2. 填充边（保持 BOM 行原有顺序）
+        int[] cursor = Arrays.copyOf(offsets, n);
+        int[] children = new int[m];
+        BigDecimal[] usages = new BigDecimal[m];
+        BigDecimal[] yieldRates = new BigDecimal[m];
+        for (BomLine line : edges) {
+            int e = cursor[index.get(line.getParentItem())]++;
+            children[e] = index.get(line.getChildItem());
+            usages[e] = line.getUsagePerParent() != null ? line.getUsagePerParent() : BigDecimal.ONE;
+            yieldRates[e] = line.getYieldRate() != null ? line.getYieldRate() : DEFAULT_YIELD_RATE;
+        }
+
+        return new BomGraphSnapshot(version, codes.toArray(new String[0]),
+            Collections.unmodifiableMap(index), offsets, children, usages, yieldRates);
+    }
+
+    /**
+     * 单条边的哈希（逐边求和，结果与边顺序无关）
+     */
+    private static long mix(long edge, long factor) {
+        long h = edge * 0x9E3779B97F4A7C15L + factor;
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    private static int indexOf(Map<String, Integer> index, List<String> codes, String code) {
+        Integer i = index.get(code);
+        if (i == null) {
+            i = codes.size();
+            index.put(code, i);
+            codes.add(code);
+        }
+        return i;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public LocalDateTime getBuiltAt() {
+        return builtAt;
+    }
+
+    /**
+     * BOM 内容哈希（跨节点 / 跨版本号可比）
+     */
+    public long getContentHash() {
+        return contentHash;
+    }
+
+    /**
+     * 物料数
+     */
+    public int size() {
+        return itemCodes.length;
+    }
+
+    /**
+     * 边数（BOM 行数）
+     */
+    public int edgeCount() {
+        return childItems.length;
+    }
+
+    /**
+     * 物料编码 → 下标，不在图中返回 -1
+     */
+    public int indexOf(String itemCode) {
+        Integer i = indexByCode.get(itemCode);
+        return i != null ? i : -1;
+    }
+
+    public String itemCode(int item) {
+        return itemCodes[item];
+    }
+
+    public boolean hasChildren(int item) {
+        return childOffsets[item + 1] > childOffsets[item];
+    }
+
+    public int childStart(int item) {
+        return childOffsets[item];
+    }
+
+    public int childEnd(int item) {
+        return childOffsets[item + 1];
+    }
+
+    public int childAt(int edge) {
+        return childItems[edge];
+    }
+
+    public BigDecimal usageAt(int edge) {
+        return usages[edge];
+    }
+
+    public BigDecimal yieldRateAt(int edge) {
+        return yieldRates[edge];
+    }
+
+    /**
+     * 边系数（用量 × 产出率），MrpQuantity 定点
+     */
+    public long factorAt(int edge) {
+        return factors[edge];
+    }
+
+    public boolean hasParents(int item) {
+        return parentOffsets[item + 1] > parentOffsets[item];
+    }
+
+    public int parentStart(int item) {
+        return parentOffsets[item];
+    }
+
+    public int parentEnd(int item) {
+        return parentOffsets[item + 1];
+    }
+
+    /**
+     * 反向边位置 → 边下标（可用 edgeParent / usageAt / yieldRateAt 读取）
+     */
+    public int parentEdgeAt(int position) {
+        return parentEdges[position];
+    }
+
+    public int edgeParent(int edge) {
+        return edgeParents[edge];
+    }
+
+    public int lowLevelCode(int item) {
+        return lowLevelCodes[item];
+    }
+
+    public int maxLowLevelCode() {
+        return maxLowLevelCode;
+    }
+
+    /**
+     * 按低层码升序排列的物料下标（副本）
+     */
+    public int[] itemsInLowLevelCodeOrder() {
+        return itemsByLowLevelCode.clone();
+    }
+
+    public int componentCount() {
+        return componentOffsets.length - 1;
+    }
+
+    public int componentOf(int item) {
+        return componentOf[item];
+    }
+
+    /**
+     * 连通分量内的物料下标，按低层码升序（副本）
+     */
+    public int[] componentItems(int component) {
+        return Arrays.copyOfRange(componentItems,
+            componentOffsets[component], componentOffsets[component + 1]);
+    }
+
+    public boolean hasCycle() {
+        return cyclicItems.length > 0;
+    }
+
+    /**
+     * 连通分量内是否有循环引用（循环只影响所在分量的低层码）
+     */
+    public boolean hasCycle(int component) {
+        return cyclicComponents[component];
+    }
+
+    /**
+     * 连通分量内位于循环引用中的物料编码
+     */
+    public List<String> cyclicItemCodes(int component) {
+        List<String> codes = new ArrayList<>();
+        for (int item : cyclicItems) {
+            if (componentOf[item] == component) {
+                codes.add(itemCodes[item]);
+            }
+        }
+        return codes;
+    }
+
+    /**
+     * 位于循环引用中的物料编码
+     */
+    public List<String> cyclicItemCodes() {
+        List<String> codes = new ArrayList<>(cyclicItems.length);
+        for (int item : cyclicItems) {
+            codes.add(itemCodes[item]);
+        }
+        return codes;
+    }
+}
@@ -0,0 +1,82 @@
+package com.hjscm.service.mrp;
+
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+
+/**
+ * MRP 时段划分 - 计划期内等长时段（日 / 周）
+ *
+ * 时段 t 覆盖 [start + t × bucketDays, start + (t + 1) × bucketDays)。
+ * 早于计划起始日的日期归入第 0 时段（逾期）；晚于计划期的日期不计入。
+ */
+public final class MrpBuckets {
+
+    public static final String BUCKET_DAY = "DAY";
+    public static final String BUCKET_WEEK = "WEEK";
+
+    // 未指定计划截止日时的默认计划期
+    public static final int DEFAULT_WEEKS = 13;
+
+    private final LocalDate start;
+    private final int bucketDays;
+    private final int count;
+
+    private MrpBuckets(LocalDate start, int bucketDays, int count) {
+        this.start = start;
+        this.bucketDays = bucketDays;
+        this.count = count;
+    }
+
+    /**
+     * @param bucketSize DAY / WEEK（null 按 WEEK）
+     * @param from 计划起始日
+     * @param to 计划截止日（含），null 时取 DEFAULT_WEEKS 周
+     */
+    public static MrpBuckets of(String bucketSize, LocalDate from, LocalDate to) {
+        int bucketDays = BUCKET_DAY.equals(bucketSize) ? 1 : 7;
+        LocalDate end = to != null ? to : from.plusWeeks(DEFAULT_WEEKS).minusDays(1);
+        long days = ChronoUnit.DAYS.between(from, end) + 1;
+        if (days <= 0) {
+            throw new IllegalArgumentException("计划截止日早于起始日: " + from + " ~ " + to);
+        }
+        return new MrpBuckets(from, bucketDays, (int) ((days + bucketDays - 1) / bucketDays));
+    }
+
+    public LocalDate getStart() {
+        return start;
+    }
+
+    public int getBucketDays() {
+        return bucketDays;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    /**
+     * 日期所在时段；早于起始日为 0，超出计划期为 -1
+     */
+    public int bucketOf(LocalDate date) {
+        if (date == null) {
+            return 0;
+        }
+        long days = ChronoUnit.DAYS.between(start, date);
+        if (days < 0) {
+            return 0;
+        }
+        long bucket = days / bucketDays;
+        return bucket < count ? (int) bucket : -1;
+    }
+
+    public LocalDate startOf(int bucket) {
+        return start.plusDays((long) bucket * bucketDays);
+    }
+
+    /**
+     * 提前期（天）换算为时段数，向上取整
+     */
+    public int leadTimeBuckets(int leadTimeDays) {
+        return leadTimeDays <= 0 ? 0 : (leadTimeDays + bucketDays - 1) / bucketDays;
+    }
+}
@@ -0,0 +1,445 @@
+package com.hjscm.service.mrp;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.*;
+
+/**
+ * MRP 数据上下文 - 单次运行的库存/在途/约束数据
+ *
+ * 由 MrpDataService 在运行开始时以少量集合查询一次性构建，
+ * 引擎净算、齐套、建议阶段只读本对象，不再逐物料查询数据库。
+ *
+ * 数据按物料下标存放在数组中；未预取的物料返回与 MrpDataService 一致的默认值。
+ * 在途除按物料合计外，另按到货日期保存为预计到货（供分时段 MRP 使用）。
+ * 数量以 MrpQuantity 定点 long 存放：引擎热路径读 *Qty 方法，BigDecimal 读取方法仅供边界使用。
+ * 批量规则按物料保存，未配置的物料按需（LFL）并应用 MOQ。
+ * 假设分析经 overlay() 在本上下文上叠加修改：只复制被修改的数组，其余与原上下文共享。
+ */
+public final class MrpDataContext {
+
+    public static final BigDecimal DEFAULT_ON_HAND = BigDecimal.valueOf(500);
+    public static final int DEFAULT_LEAD_TIME = 7;
+    public static final int DEFAULT_MOQ = 100;
+
+    private static final long DEFAULT_ON_HAND_QTY = MrpQuantity.of(DEFAULT_ON_HAND);
+
+    private final LocalDate fromDate;
+    private final String[] materialCodes;
+    private final Map<String, Integer> indexByCode;
+
+    private final long[] onHand;
+    private final long[] inTransit;
+    private final long[] allocated;
+    private final long[] safetyStock;
+    private final long[] available;
+    private final int[] leadTime;
+    private final int[] moq;
+    private final MrpLotSizePolicy[] lotSizePolicies;
+
+    // 预计到货：第 i 个物料为 [receiptOffsets[i], receiptOffsets[i + 1])，按录入顺序
+    private final int[] receiptOffsets;
+    private final LocalDate[] receiptDates;
+    private final long[] receiptQty;
+
+    private final int queryCount;
+
+    private MrpDataContext(Builder builder) {
+        this.fromDate = builder.fromDate;
+        this.materialCodes = builder.materialCodes;
+        this.indexByCode = Collections.unmodifiableMap(builder.indexByCode);
+        this.onHand = builder.onHand;
+        this.inTransit = builder.inTransit;
+        this.allocated = builder.allocated;
+        this.safetyStock = builder.safetyStock;
+        this.available = builder.available;
+        this.leadTime = builder.leadTime;
+        this.moq = builder.moq;
+        this.lotSizePolicies = builder.lotSizePolicies;
+        this.queryCount = builder.queryCount;
+
+        int n = materialCodes.length;
+        int m = builder.receiptItems.size();
+        this.receiptOffsets = new int[n + 1];
+        for (int k = 0; k < m; k++) {
+            receiptOffsets[builder.receiptItems.get(k) + 1]++;
+        }
+        for (int i = 0; i < n; i++) {
+            receiptOffsets[i + 1] += receiptOffsets[i];
+        }
+        this.receiptDates = new LocalDate[m];
+        this.receiptQty = new long[m];
+        int[] cursor = Arrays.copyOf(receiptOffsets, n);
+        for (int k = 0; k < m; k++) {
+            int pos = cursor[builder.receiptItems.get(k)]++;
+            receiptDates[pos] = builder.receiptDates.get(k);
+            receiptQty[pos] = builder.receiptQty.get(k);
+        }
+    }
+
+    /**
+     * 覆盖层构建：未修改的数组与 base 共享
+     */
+    private MrpDataContext(MrpDataContext base, long[] onHand, long[] inTransit, long[] available,
+            LocalDate[] receiptDates) {
+        this.fromDate = base.fromDate;
+        this.materialCodes = base.materialCodes;
+        this.indexByCode = base.indexByCode;
+        this.onHand = onHand;
+        this.inTransit = inTransit;
+        this.allocated = base.allocated;
+        this.safetyStock = base.safetyStock;
+        this.available = available;
+        this.leadTime = base.leadTime;
+        this.moq = base.moq;
+        this.lotSizePolicies = base.lotSizePolicies;
+        this.queryCount = 0;
+        this.receiptOffsets = base.receiptOffsets;
+        this.receiptDates = receiptDates;
+        this.receiptQty = base.receiptQty;
+    }
+
+    public static Builder builder(Collection<String> materialCodes, LocalDate fromDate) {
+        return new Builder(materialCodes, fromDate);
+    }
+
+    public LocalDate getFromDate() {
+        return fromDate;
+    }
+
+    /**
+     * 构建本上下文发出的数据库查询次数
+     */
+    public int getQueryCount() {
+        return queryCount;
+    }
+
+    public int size() {
+        return materialCodes.length;
+    }
+
+    /**
+     * 物料编码 → 下标，未预取返回 -1
+     */
+    public int indexOf(String materialCode) {
+        Integer i = indexByCode.get(materialCode);
+        return i != null ? i : -1;
+    }
+
+    public String materialCode(int index) {
+        return materialCodes[index];
+    }
+
+    // === 按物料编码查询（定点） ===
+
+    public long onHandQty(String materialCode) {
+        int i = indexOf(materialCode);
+        return i >= 0 ? onHand[i] : DEFAULT_ON_HAND_QTY;
+    }
+
+    public long inTransitQty(String materialCode) {
+        int i = indexOf(materialCode);
+        return i >= 0 ? inTransit[i] : 0L;
+    }
+
+    public long allocatedQty(String materialCode) {
+        int i = indexOf(materialCode);
+        return i >= 0 ? allocated[i] : 0L;
+    }
+
+    public long safetyStockQty(String materialCode) {
+        int i = indexOf(materialCode);
+        return i >= 0 ? safetyStock[i] : 0L;
+    }
+
+    public long availableQty(String materialCode) {
+        int i = indexOf(materialCode);
+        return i >= 0 ? available[i] : DEFAULT_ON_HAND_QTY;
+    }
+
+    // === 按物料编码查询（BigDecimal） ===
+
+    public BigDecimal getOnHand(String materialCode) {
+        return MrpQuantity.toBigDecimal(onHandQty(materialCode));
+    }
+
+    public BigDecimal getInTransit(String materialCode) {
+        return MrpQuantity.toBigDecimal(inTransitQty(materialCode));
+    }
+
+    public BigDecimal getAllocated(String materialCode) {
+        return MrpQuantity.toBigDecimal(allocatedQty(materialCode));
+    }
+
+    public BigDecimal getSafetyStock(String materialCode) {
+        return MrpQuantity.toBigDecimal(safetyStockQty(materialCode));
+    }
+
+    public BigDecimal getAvailable(String materialCode) {
+        return MrpQuantity.toBigDecimal(availableQty(materialCode));
+    }
+
+    public int getLeadTime(String materialCode) {
+        int i = indexOf(materialCode);
+        return i >= 0 ? leadTime[i] : DEFAULT_LEAD_TIME;
+    }
+
+    public int getMoq(String materialCode) {
+        int i = indexOf(materialCode);
+        return i >= 0 ? moq[i] : DEFAULT_MOQ;
+    }
+
+    /**
+     * 物料批量规则，未配置时为按需（LFL）+ MOQ
+     */
+    public MrpLotSizePolicy lotSizePolicy(String materialCode) {
+        int i = indexOf(materialCode);
+        if (i >= 0 && lotSizePolicies[i] != null) {
+            return lotSizePolicies[i];
+        }
+        return MrpLotSizePolicy.lotForLot(getMoq(materialCode));
+    }
+
+    // === 预计到货（按物料下标） ===
+
+    public int receiptStart(int index) {
+        return receiptOffsets[index];
+    }
+
+    public int receiptEnd(int index) {
+        return receiptOffsets[index + 1];
+    }
+
+    public LocalDate receiptDate(int position) {
+        return receiptDates[position];
+    }
+
+    /**
+     * 预计到货数量（定点）
+     */
+    public long receiptQty(int position) {
+        return receiptQty[position];
+    }
+
+    /**
+     * 以本上下文为底创建写时复制覆盖层（本上下文保持不变）
+     */
+    public Overlay overlay() {
+        return new Overlay(this);
+    }
+
+    /**
+     * 写时复制覆盖层：每类数组首次修改时复制一份，未修改的继续共享
+     */
+    public static final class Overlay {
+
+        private final MrpDataContext base;
+        private long[] onHand;
+        private long[] inTransit;
+        private long[] available;
+        private LocalDate[] receiptDates;
+
+        private Overlay(MrpDataContext base) {
+            this.base = base;
+            this.onHand = base.onHand;
+            this.inTransit = base.inTransit;
+            this.available = base.available;
+            this.receiptDates = base.receiptDates;
+        }
+
+        /**
+         * 调整库存（现有量与可用量同时增减）
+         *
+         * @param delta 调整量（定点，负数为减少）
+         * @return 物料不在上下文中时为 false
+         */
+        public boolean adjustInventory(String materialCode, long delta) {
+            int i = base.indexOf(materialCode);
+            if (i < 0) {
+                return false;
+            }
+            if (onHand == base.onHand) onHand = onHand.clone();
+            if (available == base.available) available = available.clone();
+            onHand[i] = MrpQuantity.add(onHand[i], delta);
+            available[i] = MrpQuantity.add(available[i], delta);
+            return true;
+        }
+
+        /**
+         * 在途到货推迟
+         *
+         * @param arrivalDate 原到货日期，为 null 时推迟该物料全部在途
+         * @param horizonEnd 计划截止日，推迟后晚于该日的在途不再计入在途合计（为 null 不限）
+         * @return 受影响的在途笔数
+         */
+        public int delayInTransit(String materialCode, LocalDate arrivalDate, int days, LocalDate horizonEnd) {
+            int i = base.indexOf(materialCode);
+            if (i < 0) {
+                return 0;
+            }
+            int affected = 0;
+            for (int k = base.receiptStart(i), end = base.receiptEnd(i); k < end; k++) {
+                LocalDate date = receiptDates[k];
+                if (date == null || (arrivalDate != null && !arrivalDate.equals(date))) {
+                    continue;
+                }
+                if (receiptDates == base.receiptDates) receiptDates = receiptDates.clone();
+                LocalDate delayed = date.plusDays(days);
+                receiptDates[k] = delayed;
+                // 基线在途合计不限到货日期，只有推出计划期的到货需要扣除
+                if (horizonEnd != null && !date.isAfter(horizonEnd) && delayed.isAfter(horizonEnd)) {
+                    if (inTransit == base.inTransit) inTransit = inTransit.clone();
+                    inTransit[i] = MrpQuantity.subtract(inTransit[i], base.receiptQty[k]);
+                }
+                affected++;
+            }
+            return affected;
+        }
+
+        public MrpDataContext build() {
+            return new MrpDataContext(base, onHand, inTransit, available, receiptDates);
+        }
+    }
+
+    /**
+     * 构建器（仅供 MrpDataService 填充预取结果）
+     */
+    public static final class Builder {
+
+        private final LocalDate fromDate;
+        private final String[] materialCodes;
+        private final Map<String, Integer> indexByCode;
+
+        private final long[] onHand;
+        private final long[] inTransit;
+        private final long[] allocated;
+        private final long[] safetyStock;
+        private final long[] available;
+        private final int[] leadTime;
+        private final int[] moq;
+        private final MrpLotSizePolicy[] lotSizePolicies;
+
+        private final List<Integer> receiptItems = new ArrayList<>();
+        private final List<LocalDate> receiptDates = new ArrayList<>();
+        private final List<Long> receiptQty = new ArrayList<>();
+
+        private int queryCount;
+
+        private Builder(Collection<String> codes, LocalDate fromDate) {
+            this.fromDate = fromDate;
+            this.indexByCode = new HashMap<>(codes.size() * 2);
+            List<String> distinct = new ArrayList<>(codes.size());
+            for (String code : codes) {
+                if (code != null && indexByCode.putIfAbsent(code, distinct.size()) == null) {
+                    distinct.add(code);
+                }
+            }
+            this.materialCodes = distinct.toArray(new String[0]);
+
+            int n = materialCodes.length;
+            this.onHand = filled(n, DEFAULT_ON_HAND_QTY);
+            this.inTransit = new long[n];
+            this.allocated = new long[n];
+            this.safetyStock = new long[n];
+            this.available = filled(n, DEFAULT_ON_HAND_QTY);
+            this.leadTime = new int[n];
+            this.moq = new int[n];
+            this.lotSizePolicies = new MrpLotSizePolicy[n];
+            Arrays.fill(leadTime, DEFAULT_LEAD_TIME);
+            Arrays.fill(moq, DEFAULT_MOQ);
+        }
+
+        private static long[] filled(int n, long value) {
+            long[] array = new long[n];
+            Arrays.fill(array, value);
+            return array;
+        }
+
+        public List<String> materialCodes() {
+            return Arrays.asList(materialCodes);
+        }
+
+        private int index(String materialCode) {
+            Integer i = indexByCode.get(materialCode);
+            return i != null ? i : -1;
+        }
+
+        public Builder onHand(String materialCode, BigDecimal qty) {
+            int i = index(materialCode);
+            if (i >= 0 && qty != null) onHand[i] = MrpQuantity.of(qty);
+            return this;
+        }
+
+        public Builder addInTransit(String materialCode, BigDecimal qty) {
+            int i = index(materialCode);
+            if (i >= 0 && qty != null) inTransit[i] = MrpQuantity.add(inTransit[i], MrpQuantity.of(qty));
+            return this;
+        }
+
+        /**
+         * 在途订单：计入在途合计，并按到货日期登记为预计到货
+         */
+        public Builder addInTransit(String materialCode, LocalDate arrivalDate, BigDecimal qty) {
+            int i = index(materialCode);
+            if (i >= 0 && qty != null) {
+                long scaled = MrpQuantity.of(qty);
+                inTransit[i] = MrpQuantity.add(inTransit[i], scaled);
+                receiptItems.add(i);
+                receiptDates.add(arrivalDate);
+                receiptQty.add(scaled);
+            }
+            return this;
+        }
+
+        public Builder allocated(String materialCode, BigDecimal qty) {
+            int i = index(materialCode);
+            if (i >= 0 && qty != null) allocated[i] = MrpQuantity.of(qty);
+            return this;
+        }
+
+        public Builder addAllocated(String materialCode, BigDecimal qty) {
+            int i = index(materialCode);
+            if (i >= 0 && qty != null) allocated[i] = MrpQuantity.add(allocated[i], MrpQuantity.of(qty));
+            return this;
+        }
+
+        public Builder safetyStock(String materialCode, BigDecimal qty) {
+            int i = index(materialCode);
+            if (i >= 0 && qty != null) safetyStock[i] = MrpQuantity.of(qty);
+            return this;
+        }
+
+        public Builder available(String materialCode, BigDecimal qty) {
+            int i = index(materialCode);
+            if (i >= 0 && qty != null) available[i] = MrpQuantity.of(qty);
+            return this;
+        }
+
+        public Builder leadTime(String materialCode, Integer days) {
+            int i = index(materialCode);
+            if (i >= 0 && days != null) leadTime[i] = days;
+            return this;
+        }
+
+        public Builder moq(String materialCode, Integer qty) {
+            int i = index(materialCode);
+            if (i >= 0 && qty != null) moq[i] = qty;
+            return this;
+        }
+
+        public Builder lotSizePolicy(String materialCode, MrpLotSizePolicy policy) {
+            int i = index(materialCode);
+            if (i >= 0) lotSizePolicies[i] = policy;
+            return this;
+        }
+
+        public Builder countQuery() {
+            queryCount++;
+            return this;
+        }
+
+        public MrpDataContext build() {
+            return new MrpDataContext(this);
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package com.hjscm.service.mrp;
+
+import java.util.*;
+import java.util.function.ObjLongConsumer;
+
+/**
+ * 按物料汇总的毛需求（MrpQuantity 定点）
+ *
+ * BOM 展开直接累加到本对象，每个物料只分配一个计数单元，
+ * 不再为每次合并创建中间 MrpRequirement。按物料首次出现顺序遍历。
+ */
+public final class MrpGrossRequirements {
+
+    private final Map<String, long[]> grossByItem = new LinkedHashMap<>();
+
+    public void add(String itemCode, long qty) {
+        long[] gross = grossByItem.get(itemCode);
+        if (gross == null) {
+            grossByItem.put(itemCode, new long[] {qty});
+        } else {
+            gross[0] = MrpQuantity.add(gross[0], qty);
+        }
+    }
+
+    /**
+     * 物料数
+     */
+    public int size() {
+        return grossByItem.size();
+    }
+
+    public void forEach(ObjLongConsumer<String> action) {
+        for (Map.Entry<String, long[]> entry : grossByItem.entrySet()) {
+            action.accept(entry.getKey(), entry.getValue()[0]);
+        }
+    }
+}
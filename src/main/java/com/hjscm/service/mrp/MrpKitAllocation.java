@@ -0,0 +1,146 @@
+package com.hjscm.service.mrp;
+
+import com.hjscm.dto.*;
+
+import java.time.LocalDate;
+import java.util.*;
+
+/**
+ * 按优先级的齐套分配 - 多个 MPS 竞争同一组件时依次占用库存
+ *
+ * MPS 按（优先级，交期，原顺序）排序后逐单分配：每个组件维护一份运行余额
+ * （现有量 + 在途 - 已分配，按工厂取各自数据上下文），订单对组件的追溯毛需求
+ * 从余额中扣减，余额不足的部分即该订单缺料。后序订单只能看到前序订单剩下的库存。
+ *
+ * 订单齐套率 = 各组件已分配 / 需求的最小值，取最小值的组件为约束组件。
+ * 一次遍历全部追溯条目，复杂度 O(追溯条目数) + O(MPS 数 × log MPS 数) 的排序。
+ * 追溯只到尾项组件，中间件库存不参与分配（与追溯索引一致）。
+ */
+public final class MrpKitAllocation {
+
+    private static final int DEFAULT_PRIORITY_RANK = 2;
+
+    private MrpKitAllocation() {
+    }
+
+    /**
+     * 分配并返回各 MPS 的齐套结果（按分配顺序）
+     *
+     * @param dataContexts 工厂编码 → 数据上下文（不分区时键为 null）
+     */
+    public static List<KitOrderAllocation> allocate(MrpPegging pegging, Map<String, MrpDataContext> dataContexts) {
+        int m = pegging.mpsCount();
+        int c = pegging.componentCount();
+
+        // 1. 排序：优先级 → 交期 → 原顺序
+        Integer[] order = new Integer[m];
+        int[] rank = new int[m];
+        LocalDate[] due = new LocalDate[m];
+        for (int i = 0; i < m; i++) {
+            order[i] = i;
+            MpsRequirement mps = pegging.mps(i);
+            rank[i] = priorityRank(mps.getPriority());
+            due[i] = mps.getDueDate() != null ? mps.getDueDate() : mps.getRequirementDate();
+        }
+        Arrays.sort(order, Comparator.<Integer>comparingInt(i -> rank[i])
+            .thenComparing(i -> due[i], Comparator.nullsLast(Comparator.naturalOrder()))
+            .thenComparingInt(i -> i));
+
+        // 2. 逐单分配（余额按工厂分开，首次用到时从上下文取可用量）
+        Map<String, long[]> balancesByPlant = new HashMap<>();
+        List<KitOrderAllocation> allocations = new ArrayList<>(m);
+        for (int seq = 0; seq < m; seq++) {
+            int i = order[seq];
+            MpsRequirement mps = pegging.mps(i);
+            String plantKey = dataContexts.containsKey(mps.getPlantCode()) ? mps.getPlantCode() : null;
+            MrpDataContext dataContext = dataContexts.get(plantKey);
+            long[] balance = balancesByPlant.computeIfAbsent(plantKey, k -> {
+                long[] b = new long[c];
+                Arrays.fill(b, MrpQuantity.NONE);
+                return b;
+            });
+
+            double completeness = 1.0;
+            int binding = -1;
+            long bindingRequired = 0;
+            long bindingAllocated = 0;
+            int shortComponents = 0;
+            for (int k = pegging.componentStart(i); k < pegging.componentEnd(i); k++) {
+                int component = pegging.componentAt(k);
+                long required = pegging.componentQtyAt(k);
+                if (required <= 0) {
+                    continue;
+                }
+                if (balance[component] == MrpQuantity.NONE) {
+                    balance[component] = dataContext != null
+                        ? Math.max(0, availableQty(pegging.componentCode(component), dataContext)) : 0L;
+                }
+                long allocated = Math.min(required, balance[component]);
+                balance[component] -= allocated;
+                if (allocated < required) {
+                    shortComponents++;
+                }
+                double ratio = (double) allocated / required;
+                if (ratio < completeness) {
+                    completeness = ratio;
+                    binding = component;
+                    bindingRequired = required;
+                    bindingAllocated = allocated;
+                }
+            }
+
+            allocations.add(KitOrderAllocation.builder()
+                .mpsId(mps.getId())
+                .materialCode(mps.getMaterialCode())
+                .sourceDocument(mps.getSourceDocument())
+                .plantCode(mps.getPlantCode())
+                .priority(mps.getPriority())
+                .dueDate(due[i])
+                .sequence(seq + 1)
+                .completeness(completeness)
+                .kitComplete(shortComponents == 0)
+                .shortComponentCount(shortComponents)
+                .bindingComponent(binding >= 0 ? pegging.componentCode(binding) : null)
+                .bindingRequiredQty(binding >= 0 ? MrpQuantity.toBigDecimal(bindingRequired) : null)
+                .bindingAllocatedQty(binding >= 0 ? MrpQuantity.toBigDecimal(bindingAllocated) : null)
+                .build());
+        }
+        return allocations;
+    }
+
+    /**
+     * 优先级排名（越小越先分配）：CRITICAL / URGENT < HIGH < MEDIUM < LOW，数字优先级按数值
+     */
+    static int priorityRank(String priority) {
+        if (priority == null) {
+            return DEFAULT_PRIORITY_RANK;
+        }
+        switch (priority.trim().toUpperCase()) {
+            case "CRITICAL":
+            case "URGENT":
+                return 0;
+            case "HIGH":
+                return 1;
+            case "MEDIUM":
+            case "NORMAL":
+                return 2;
+            case "LOW":
+                return 3;
+            default:
+                try {
+                    return Integer.parseInt(priority.trim());
+                } catch (NumberFormatException e) {
+                    return DEFAULT_PRIORITY_RANK;
+                }
+        }
+    }
+
+    /**
+     * 可分配量 = 现有量 + 在途 - 已分配（定点）
+     */
+    private static long availableQty(String itemCode, MrpDataContext dataContext) {
+        return MrpQuantity.subtract(
+            MrpQuantity.add(dataContext.onHandQty(itemCode), dataContext.inTransitQty(itemCode)),
+            dataContext.allocatedQty(itemCode));
+    }
+}
@@ -0,0 +1,132 @@
+package com.hjscm.service.mrp;
+
+import java.math.BigDecimal;
+
+/**
+ * 物料批量规则及参数（来自 MRPConstraint）
+ *
+ * 数量为 MrpQuantity 定点；成本为 double（只用于比较，不进入结果数量）。
+ * 规则所需参数缺失时 MrpLotSizing 退化为按需（LFL）。
+ */
+public final class MrpLotSizePolicy {
+
+    /**
+     * 批量规则
+     */
+    public enum Rule {
+        // 按需：每期缺多少订多少
+        LFL,
+        // 固定批量：按 batchSize 的整数倍订货
+        FOQ,
+        // 经济批量：按 √(2DS/H) 的整数倍订货
+        EOQ,
+        // 定期批量：每次合并 P 期需求
+        POQ,
+        // Wagner-Whitin 动态规划：订货 + 持有成本最小
+        WW;
+
+        /**
+         * 解析规则编码，空或无法识别时为 LFL
+         */
+        public static Rule parse(String code) {
+            if (code == null || code.isBlank()) {
+                return LFL;
+            }
+            try {
+                return valueOf(code.trim().toUpperCase());
+            } catch (IllegalArgumentException e) {
+                return LFL;
+            }
+        }
+    }
+
+    private final Rule rule;
+    private final long moq;
+    private final long packQty;
+    private final long fixedQty;
+    private final double orderCost;
+    private final double holdingCostPerDay;
+    private final int periods;
+
+    private MrpLotSizePolicy(Rule rule, long moq, long packQty, long fixedQty,
+            double orderCost, double holdingCostPerDay, int periods) {
+        this.rule = rule;
+        this.moq = moq;
+        this.packQty = packQty;
+        this.fixedQty = fixedQty;
+        this.orderCost = orderCost;
+        this.holdingCostPerDay = holdingCostPerDay;
+        this.periods = periods;
+    }
+
+    /**
+     * 按需批量，仅应用 MOQ
+     */
+    public static MrpLotSizePolicy lotForLot(int moq) {
+        return new MrpLotSizePolicy(Rule.LFL, MrpQuantity.of(moq), MrpQuantity.ONE, 0L, 0, 0, 0);
+    }
+
+    /**
+     * @param rule 规则编码（LFL / FOQ / EOQ / POQ / WW）
+     * @param moq 最小起订量
+     * @param packUnit 包装单位，订货量向上取整到其整数倍
+     * @param fixedQty 固定批量（FOQ）
+     * @param orderCost 单次订货成本（EOQ / POQ / WW）
+     * @param holdingCostPerDay 单位日持有成本（EOQ / POQ / WW）
+     * @param periods POQ 合并期数
+     */
+    public static MrpLotSizePolicy of(String rule, Integer moq, Integer packUnit, Integer fixedQty,
+            BigDecimal orderCost, BigDecimal holdingCostPerDay, Integer periods) {
+        return new MrpLotSizePolicy(
+            Rule.parse(rule),
+            moq != null && moq > 0 ? MrpQuantity.of(moq) : 0L,
+            packUnit != null && packUnit > 1 ? MrpQuantity.of(packUnit) : MrpQuantity.ONE,
+            fixedQty != null && fixedQty > 0 ? MrpQuantity.of(fixedQty) : 0L,
+            orderCost != null ? orderCost.doubleValue() : 0,
+            holdingCostPerDay != null ? holdingCostPerDay.doubleValue() : 0,
+            periods != null ? periods : 0);
+    }
+
+    public Rule getRule() {
+        return rule;
+    }
+
+    /**
+     * 最小起订量（定点）
+     */
+    public long getMoq() {
+        return moq;
+    }
+
+    /**
+     * 包装量（定点），无包装要求时为 MrpQuantity.ONE
+     */
+    public long getPackQty() {
+        return packQty;
+    }
+
+    /**
+     * 固定批量（定点），未配置为 0
+     */
+    public long getFixedQty() {
+        return fixedQty;
+    }
+
+    public double getOrderCost() {
+        return orderCost;
+    }
+
+    public double getHoldingCostPerDay() {
+        return holdingCostPerDay;
+    }
+
+    public int getPeriods() {
+        return periods;
+    }
+
+    @Override
+    public String toString() {
+        return "MrpLotSizePolicy[" + rule + ", moq=" + MrpQuantity.toBigDecimal(moq)
+            + ", pack=" + MrpQuantity.toBigDecimal(packQty) + "]";
+    }
+}
@@ -0,0 +1,283 @@
+package com.hjscm.service.mrp;
+
+import java.util.*;
+
+/**
+ * MRP 批量计算 - 将各期净需求合并 / 取整为计划订单
+ *
+ * 支持规则（MrpLotSizePolicy.Rule）：
+ * - LFL 按需：每期缺多少订多少
+ * - FOQ 固定批量：库存不足时订固定批量的整数倍
+ * - EOQ 经济批量：Q = √(2DS/H)，D 为日均需求，之后同 FOQ
+ * - POQ 定期批量：每次合并 P 期需求，P 未配置时取 EOQ / 期均需求
+ * - WW Wagner-Whitin：O(n²) 动态规划求订货 + 持有成本最小的合并方式
+ *
+ * 规则给出订单后统一应用 MOQ 与包装量取整，取整多出的数量顺延抵扣后续订单。
+ *
+ * 输入为一批物料的 CSR 数组（物料 i 的各期为 [offset(i), offset(i + 1))），
+ * 按规则分组后逐组计算，同一规则的物料走同一紧凑循环，5 万物料也只需一次调用。
+ */
+public final class MrpLotSizing {
+
+    private MrpLotSizing() {
+    }
+
+    /**
+     * 计算一批物料的计划订单
+     *
+     * @return 与各期一一对应的订单量（定点），0 表示该期不下单
+     */
+    public static long[] plan(Batch batch) {
+        long[] orders = new long[batch.periodCount];
+        MrpLotSizePolicy.Rule[] rules = MrpLotSizePolicy.Rule.values();
+
+        // 按规则计数排序，同规则物料连续处理
+        int[] counts = new int[rules.length + 1];
+        for (int i = 0; i < batch.itemCount; i++) {
+            counts[batch.policies[i].getRule().ordinal() + 1]++;
+        }
+        for (int r = 0; r < rules.length; r++) {
+            counts[r + 1] += counts[r];
+        }
+        int[] byRule = new int[batch.itemCount];
+        for (int i = 0; i < batch.itemCount; i++) {
+            byRule[counts[batch.policies[i].getRule().ordinal()]++] = i;
+        }
+
+        for (int item : byRule) {
+            MrpLotSizePolicy policy = batch.policies[item];
+            int from = batch.offsets[item];
+            int to = batch.offsets[item + 1];
+            if (from == to) {
+                continue;
+            }
+            switch (policy.getRule()) {
+                case FOQ:
+                    fixedOrderQuantity(batch.demand, from, to, orders, policy.getFixedQty());
+                    break;
+                case EOQ:
+                    fixedOrderQuantity(batch.demand, from, to, orders,
+                        economicOrderQuantity(policy, batch.days, batch.demand, from, to));
+                    break;
+                case POQ:
+                    periodOrderQuantity(batch.demand, from, to, orders,
+                        poqPeriods(policy, batch.days, batch.demand, from, to));
+                    break;
+                case WW:
+                    if (policy.getOrderCost() > 0) {
+                        wagnerWhitin(batch.days, batch.demand, from, to, orders,
+                            policy.getOrderCost(), Math.max(0, policy.getHoldingCostPerDay()));
+                    } else {
+                        lotForLot(batch.demand, from, to, orders);
+                    }
+                    break;
+                default:
+                    lotForLot(batch.demand, from, to, orders);
+            }
+            applyMoqAndPack(orders, from, to, policy.getMoq(), policy.getPackQty());
+        }
+        return orders;
+    }
+
+    private static void lotForLot(long[] demand, int from, int to, long[] orders) {
+        System.arraycopy(demand, from, orders, from, to - from);
+    }
+
+    /**
+     * 固定批量：期初库存不足本期需求时订 lot 的最小整数倍；lot 无效时按需
+     */
+    private static void fixedOrderQuantity(long[] demand, int from, int to, long[] orders, long lot) {
+        if (lot <= 0) {
+            lotForLot(demand, from, to, orders);
+            return;
+        }
+        long onHand = 0;
+        for (int t = from; t < to; t++) {
+            if (demand[t] > onHand) {
+                long lots = (demand[t] - onHand + lot - 1) / lot;
+                orders[t] = Math.multiplyExact(lots, lot);
+                onHand = MrpQuantity.add(onHand, orders[t]);
+            }
+            onHand -= demand[t];
+        }
+    }
+
+    /**
+     * EOQ（定点）；成本参数缺失时返回 0（退化为按需）
+     */
+    private static long economicOrderQuantity(MrpLotSizePolicy policy, int[] days, long[] demand,
+            int from, int to) {
+        if (policy.getOrderCost() <= 0 || policy.getHoldingCostPerDay() <= 0) {
+            return 0L;
+        }
+        double dailyDemand = MrpQuantity.toDouble(total(demand, from, to))
+            / Math.max(1, days[to - 1] - days[from] + 1);
+        double eoq = Math.sqrt(2 * dailyDemand * policy.getOrderCost() / policy.getHoldingCostPerDay());
+        return Math.max(MrpQuantity.ONE, Math.round(eoq * MrpQuantity.ONE));
+    }
+
+    /**
+     * POQ 合并期数：已配置取配置值，否则 EOQ / 期均需求（至少 1 期）
+     */
+    private static int poqPeriods(MrpLotSizePolicy policy, int[] days, long[] demand, int from, int to) {
+        if (policy.getPeriods() > 0) {
+            return policy.getPeriods();
+        }
+        long eoq = economicOrderQuantity(policy, days, demand, from, to);
+        if (eoq <= 0) {
+            return 1;
+        }
+        double perPeriod = (double) total(demand, from, to) / (to - from);
+        return (int) Math.max(1, Math.round(eoq / perPeriod));
+    }
+
+    /**
+     * 定期批量：首个有需求的期下单，合并其后 periods 期需求
+     */
+    private static void periodOrderQuantity(long[] demand, int from, int to, long[] orders, int periods) {
+        int t = from;
+        while (t < to) {
+            if (demand[t] == 0) {
+                t++;
+                continue;
+            }
+            int end = Math.min(to, t + periods);
+            orders[t] = total(demand, t, end);
+            t = end;
+        }
+    }
+
+    /**
+     * Wagner-Whitin：F(j) = min_i F(i-1) + S + H × Σ_{k=i..j} d(k) × (day(k) - day(i))
+     *
+     * 对每个 j 自后向前枚举 i，持有成本随 i 前移增量累加，总计 O(n²)。
+     */
+    private static void wagnerWhitin(int[] days, long[] demand, int from, int to, long[] orders,
+            double orderCost, double holdingCostPerDay) {
+        int n = to - from;
+        double[] cost = new double[n + 1];
+        int[] start = new int[n + 1];
+
+        for (int j = 1; j <= n; j++) {
+            double held = 0;
+            double sum = MrpQuantity.toDouble(demand[from + j - 1]);
+            double best = cost[j - 1] + orderCost;
+            int bestStart = j;
+            for (int i = j - 1; i >= 1; i--) {
+                // 订单提前到第 i 期：i+1..j 期需求各多持有 day(i+1) - day(i) 天
+                held += sum * (days[from + i] - days[from + i - 1]);
+                sum += MrpQuantity.toDouble(demand[from + i - 1]);
+                double candidate = cost[i - 1] + orderCost + holdingCostPerDay * held;
+                if (candidate < best) {
+                    best = candidate;
+                    bestStart = i;
+                }
+            }
+            cost[j] = best;
+            start[j] = bestStart;
+        }
+
+        for (int j = n; j > 0; j = start[j] - 1) {
+            int i = start[j];
+            orders[from + i - 1] = total(demand, from + i - 1, from + j);
+        }
+    }
+
+    /**
+     * MOQ / 包装量取整，多出的数量抵扣后续订单
+     */
+    private static void applyMoqAndPack(long[] orders, int from, int to, long moq, long packQty) {
+        long surplus = 0;
+        for (int t = from; t < to; t++) {
+            if (orders[t] == 0) {
+                continue;
+            }
+            if (orders[t] <= surplus) {
+                surplus -= orders[t];
+                orders[t] = 0;
+                continue;
+            }
+            long qty = Math.max(orders[t] - surplus, moq);
+            if (packQty > MrpQuantity.ONE) {
+                qty = Math.multiplyExact((qty + packQty - 1) / packQty, packQty);
+            }
+            surplus = MrpQuantity.add(surplus, qty - orders[t]);
+            orders[t] = qty;
+        }
+    }
+
+    private static long total(long[] demand, int from, int to) {
+        long sum = 0;
+        for (int t = from; t < to; t++) {
+            sum = MrpQuantity.add(sum, demand[t]);
+        }
+        return sum;
+    }
+
+    /**
+     * 批量输入：逐物料登记规则，再按日期升序登记各期净需求
+     */
+    public static final class Batch {
+
+        private MrpLotSizePolicy[] policies;
+        private int[] offsets;
+        private int[] days;
+        private long[] demand;
+        private int itemCount;
+        private int periodCount;
+
+        public Batch(int expectedItems, int expectedPeriods) {
+            this.policies = new MrpLotSizePolicy[Math.max(1, expectedItems)];
+            this.offsets = new int[Math.max(1, expectedItems) + 1];
+            this.days = new int[Math.max(1, expectedPeriods)];
+            this.demand = new long[Math.max(1, expectedPeriods)];
+        }
+
+        /**
+         * 开始登记一个物料，返回其在批内的序号
+         */
+        public int addItem(MrpLotSizePolicy policy) {
+            if (itemCount == policies.length) {
+                policies = Arrays.copyOf(policies, itemCount * 2);
+                offsets = Arrays.copyOf(offsets, itemCount * 2 + 1);
+            }
+            policies[itemCount] = policy;
+            itemCount++;
+            offsets[itemCount] = periodCount;
+            return itemCount - 1;
+        }
+
+        /**
+         * 为当前物料登记一期净需求
+         *
+         * @param day 相对计划起始日的天数（同一物料内不递减）
+         * @param qty 净需求（定点）
+         */
+        public void addPeriod(int day, long qty) {
+            if (periodCount == days.length) {
+                days = Arrays.copyOf(days, periodCount * 2);
+                demand = Arrays.copyOf(demand, periodCount * 2);
+            }
+            days[periodCount] = day;
+            demand[periodCount] = Math.max(0, qty);
+            periodCount++;
+            offsets[itemCount] = periodCount;
+        }
+
+        public int itemCount() {
+            return itemCount;
+        }
+
+        public int periodCount() {
+            return periodCount;
+        }
+
+        public int periodStart(int item) {
+            return offsets[item];
+        }
+
+        public int periodEnd(int item) {
+            return offsets[item + 1];
+        }
+    }
+}
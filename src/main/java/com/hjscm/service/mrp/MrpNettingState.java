@@ -0,0 +1,144 @@
+package com.hjscm.service.mrp;
+
+import com.hjscm.dto.*;
+
+import java.time.LocalDate;
+import java.util.*;
+
+/**
+ * LLC 净算状态 - 一次 MRP 运行的逐物料毛需求/净需求
+ *
+ * 由 MRPEngineService.planByLlc 生成，净改变 MRP 在其上只重算受影响的子图。
+ * 数组按 BomGraphSnapshot 物料下标存放；不在 BOM 图中的 MPS 物料单独按编码保存。
+ * 数量为 MrpQuantity 定点 long，MrpQuantity.NONE 表示无需求。
+ *
+ * 非线程安全：同一时刻只允许一个线程修改（由 NetChangeMrpService 串行化）。
+ */
+public final class MrpNettingState {
+
+    private final BomGraphSnapshot bomGraph;
+    private final LocalDate fromDate;
+
+    private final long[] independentDemand;
+    private final long[] gross;
+    private final long[] net;
+    private final MrpNetRequirement[] leafRequirements;
+
+    private final Map<String, Long> standaloneDemand = new LinkedHashMap<>();
+    private final Map<String, MrpNetRequirement> standaloneRequirements = new HashMap<>();
+
+    public MrpNettingState(BomGraphSnapshot bomGraph, LocalDate fromDate) {
+        int n = bomGraph.size();
+        this.bomGraph = bomGraph;
+        this.fromDate = fromDate;
+        this.independentDemand = new long[n];
+        this.gross = new long[n];
+        this.net = new long[n];
+        Arrays.fill(independentDemand, MrpQuantity.NONE);
+        Arrays.fill(gross, MrpQuantity.NONE);
+        Arrays.fill(net, MrpQuantity.NONE);
+        this.leafRequirements = new MrpNetRequirement[n];
+    }
+
+    public BomGraphSnapshot getBomGraph() {
+        return bomGraph;
+    }
+
+    public LocalDate getFromDate() {
+        return fromDate;
+    }
+
+    /**
+     * 登记 MPS 独立需求（同时计入毛需求）
+     */
+    public void addIndependentDemand(String materialCode, long qty) {
+        int item = bomGraph.indexOf(materialCode);
+        if (item < 0) {
+            standaloneDemand.merge(materialCode, qty, MrpQuantity::add);
+            return;
+        }
+        independentDemand[item] = accumulate(independentDemand[item], qty);
+        addGross(item, qty);
+    }
+
+    private static long accumulate(long current, long qty) {
+        return current != MrpQuantity.NONE ? MrpQuantity.add(current, qty) : qty;
+    }
+
+    public long getIndependentDemand(int item) {
+        return independentDemand[item];
+    }
+
+    public boolean hasGross(int item) {
+        return gross[item] != MrpQuantity.NONE;
+    }
+
+    public long getGross(int item) {
+        return gross[item];
+    }
+
+    public void addGross(int item, long qty) {
+        gross[item] = accumulate(gross[item], qty);
+    }
+
+    /**
+     * 重置毛需求为独立需求（净改变重算前调用）
+     */
+    public void resetGross(int item) {
+        gross[item] = independentDemand[item];
+    }
+
+    /**
+     * 净需求（未净算或无净需求时为 MrpQuantity.NONE）
+     */
+    public long getNet(int item) {
+        return net[item];
+    }
+
+    public void setNet(int item, long qty) {
+        net[item] = qty;
+    }
+
+    public MrpNetRequirement getLeafRequirement(int item) {
+        return leafRequirements[item];
+    }
+
+    public void setLeafRequirement(int item, MrpNetRequirement requirement) {
+        leafRequirements[item] = requirement;
+    }
+
+    public Map<String, Long> getStandaloneDemand() {
+        return Collections.unmodifiableMap(standaloneDemand);
+    }
+
+    public MrpNetRequirement getStandaloneRequirement(String materialCode) {
+        return standaloneRequirements.get(materialCode);
+    }
+
+    public void setStandaloneRequirement(String materialCode, MrpNetRequirement requirement) {
+        if (requirement == null) {
+            standaloneRequirements.remove(materialCode);
+        } else {
+            standaloneRequirements.put(materialCode, requirement);
+        }
+    }
+
+    /**
+     * 全部净需求（尾项按低层码顺序，随后为独立物料）
+     */
+    public List<MrpNetRequirement> netRequirements() {
+        List<MrpNetRequirement> result = new ArrayList<>();
+        for (int item : bomGraph.itemsInLowLevelCodeOrder()) {
+            if (leafRequirements[item] != null) {
+                result.add(leafRequirements[item]);
+            }
+        }
+        for (String code : standaloneDemand.keySet()) {
+            MrpNetRequirement requirement = standaloneRequirements.get(code);
+            if (requirement != null) {
+                result.add(requirement);
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,150 @@
+package com.hjscm.service.mrp;
+
+import com.hjscm.dto.*;
+
+import java.util.*;
+
+/**
+ * MRP 计算分区 - 工厂 × BOM 连通分量
+ *
+ * 不同工厂库存独立，不共用任何物料的产品族（BOM 连通分量）净算互不影响，
+ * 因此每个分区可在独立线程上展开、净算、齐套并生成建议。
+ * 同一工厂的分区共用一个 MrpNettingState，但只写各自分量的物料下标，互不重叠。
+ *
+ * 分区按（工厂编码，分量编号）排序，合并结果时按此顺序拼接，保证并行结果确定。
+ */
+public final class MrpPartition implements Comparable<MrpPartition> {
+
+    // 不在 BOM 图中的 MPS 物料归入同一工厂的独立分区
+    public static final int STANDALONE = Integer.MAX_VALUE;
+    // 不分区（整图一个分区，与串行运行一致）
+    public static final int WHOLE = -1;
+
+    private static final Comparator<MrpPartition> ORDER = Comparator
+        .comparing((MrpPartition p) -> p.plantCode, Comparator.nullsFirst(Comparator.naturalOrder()))
+        .thenComparingInt(p -> p.component);
+
+    private final String plantCode;
+    private final int component;
+    private final List<MpsRequirement> mpsRequirements = new ArrayList<>();
+
+    // 各阶段结果（由 MRPEngineService 在分区线程内写入）
+    private MrpGrossRequirements grossRequirements = new MrpGrossRequirements();
+    private List<MrpNetRequirement> netRequirements = Collections.emptyList();
+    private KitCheckResult kitResult;
+    private List<ProcurementSuggestion> suggestions = Collections.emptyList();
+
+    private MrpPartition(String plantCode, int component) {
+        this.plantCode = plantCode;
+        this.component = component;
+    }
+
+    /**
+     * 整个运行作为一个分区（不区分工厂）
+     */
+    public static MrpPartition whole(List<MpsRequirement> mpsRequirements) {
+        MrpPartition partition = new MrpPartition(null, WHOLE);
+        partition.mpsRequirements.addAll(mpsRequirements);
+        return partition;
+    }
+
+    /**
+     * 按 MPS 工厂与顶层物料所在连通分量划分，返回有序分区列表
+     */
+    public static List<MrpPartition> partition(BomGraphSnapshot bomGraph,
+            List<MpsRequirement> mpsRequirements) {
+
+        Map<String, Map<Integer, MrpPartition>> byPlant = new HashMap<>();
+        List<MrpPartition> partitions = new ArrayList<>();
+        for (MpsRequirement mps : mpsRequirements) {
+            int item = bomGraph.indexOf(mps.getMaterialCode());
+            int component = item >= 0 ? bomGraph.componentOf(item) : STANDALONE;
+            MrpPartition partition = byPlant
+                .computeIfAbsent(mps.getPlantCode(), k -> new HashMap<>())
+                .get(component);
+            if (partition == null) {
+                partition = new MrpPartition(mps.getPlantCode(), component);
+                byPlant.get(mps.getPlantCode()).put(component, partition);
+                partitions.add(partition);
+            }
+            partition.mpsRequirements.add(mps);
+        }
+        partitions.sort(ORDER);
+        return partitions;
+    }
+
+    /**
+     * 本分区按低层码升序需净算的物料下标
+     */
+    public int[] itemsInLowLevelCodeOrder(BomGraphSnapshot bomGraph) {
+        if (component == WHOLE) {
+            return bomGraph.itemsInLowLevelCodeOrder();
+        }
+        if (component == STANDALONE) {
+            return new int[0];
+        }
+        return bomGraph.componentItems(component);
+    }
+
+    /**
+     * 本分区是否负责不在 BOM 图中的 MPS 物料
+     */
+    public boolean includesStandalone() {
+        return component == WHOLE || component == STANDALONE;
+    }
+
+    public String getPlantCode() {
+        return plantCode;
+    }
+
+    public int getComponent() {
+        return component;
+    }
+
+    public List<MpsRequirement> getMpsRequirements() {
+        return mpsRequirements;
+    }
+
+    public MrpGrossRequirements getGrossRequirements() {
+        return grossRequirements;
+    }
+
+    public void setGrossRequirements(MrpGrossRequirements grossRequirements) {
+        this.grossRequirements = grossRequirements;
+    }
+
+    public List<MrpNetRequirement> getNetRequirements() {
+        return netRequirements;
+    }
+
+    public void setNetRequirements(List<MrpNetRequirement> netRequirements) {
+        this.netRequirements = netRequirements;
+    }
+
+    public KitCheckResult getKitResult() {
+        return kitResult;
+    }
+
+    public void setKitResult(KitCheckResult kitResult) {
+        this.kitResult = kitResult;
+    }
+
+    public List<ProcurementSuggestion> getSuggestions() {
+        return suggestions;
+    }
+
+    public void setSuggestions(List<ProcurementSuggestion> suggestions) {
+        this.suggestions = suggestions;
+    }
+
+    @Override
+    public int compareTo(MrpPartition other) {
+        return ORDER.compare(this, other);
+    }
+
+    @Override
+    public String toString() {
+        return "MrpPartition[plant=" + plantCode + ", component=" + component
+            + ", mps=" + mpsRequirements.size() + "]";
+    }
+}
@@ -0,0 +1,24 @@
+package com.hjscm.service.mrp;
+
+import java.util.function.Supplier;
+
+/**
+ * MRP 阶段执行器
+ *
+ * 决定每个阶段如何执行：同步运行直接在调用方事务中执行，
+ * 异步作业则为每个阶段开启独立的短事务。
+ */
+public interface MrpPhaseRunner {
+
+    /**
+     * 直接执行（沿用调用方事务）
+     */
+    MrpPhaseRunner DIRECT = new MrpPhaseRunner() {
+        @Override
+        public <T> T run(String phase, Supplier<T> body) {
+            return body.get();
+        }
+    };
+
+    <T> T run(String phase, Supplier<T> body);
+}
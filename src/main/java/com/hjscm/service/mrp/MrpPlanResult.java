@@ -0,0 +1,62 @@
+package com.hjscm.service.mrp;
+
+import com.hjscm.dto.*;
+
+import java.util.*;
+
+/**
+ * MRP 计算结果（净需求 / 齐套 / 采购建议），尚未持久化
+ *
+ * 正式运行在保存阶段写库；模拟运行直接与基线结果比对。
+ */
+public final class MrpPlanResult {
+
+    private final List<MrpNetRequirement> netRequirements;
+    private final KitCheckResult kitResult;
+    private final List<ProcurementSuggestion> suggestions;
+    // 工厂编码 → LLC 净算状态（仅 LLC 模式）
+    private final Map<String, MrpNettingState> nettingStates;
+    // 组件需求 ↔ MPS 多级追溯
+    private final MrpPegging pegging;
+    // 计算中跳过的内容（如 BOM 循环引用涉及的 MPS）
+    private final List<String> warnings;
+
+    public MrpPlanResult(List<MrpNetRequirement> netRequirements, KitCheckResult kitResult,
+            List<ProcurementSuggestion> suggestions, Map<String, MrpNettingState> nettingStates,
+            MrpPegging pegging, List<String> warnings) {
+        this.netRequirements = netRequirements;
+        this.kitResult = kitResult;
+        this.suggestions = suggestions;
+        this.nettingStates = nettingStates;
+        this.pegging = pegging;
+        this.warnings = warnings;
+    }
+
+    public List<MrpNetRequirement> getNetRequirements() {
+        return netRequirements;
+    }
+
+    public KitCheckResult getKitResult() {
+        return kitResult;
+    }
+
+    public List<KitShortage> getShortages() {
+        return kitResult.getShortages() != null ? kitResult.getShortages() : Collections.emptyList();
+    }
+
+    public List<ProcurementSuggestion> getSuggestions() {
+        return suggestions;
+    }
+
+    public Map<String, MrpNettingState> getNettingStates() {
+        return nettingStates;
+    }
+
+    public MrpPegging getPegging() {
+        return pegging;
+    }
+
+    public List<String> getWarnings() {
+        return warnings;
+    }
+}
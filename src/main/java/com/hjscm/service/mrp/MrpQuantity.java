@@ -0,0 +1,121 @@
+package com.hjscm.service.mrp;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+
+/**
+ * MRP 定点数量 - 以 long 存放、固定 4 位小数（与原 setScale(4, HALF_UP) 一致）
+ *
+ * 展开、汇总、净算全程使用定点 long，仅在 DTO / 持久化边界转换为 BigDecimal，
+ * 避免热路径上每次乘加都分配 BigDecimal。
+ *
+ * 用量系数（用量 × 产出率）以 8 位小数定点存放；数量 × 系数的中间积超出 long 时
+ * 改用 BigInteger 计算，结果仍超出 long 范围则抛出 ArithmeticException。
+ */
+public final class MrpQuantity {
+
+    public static final int SCALE = 4;
+    public static final long ONE = 10_000L;
+
+    public static final int FACTOR_SCALE = 8;
+    public static final long FACTOR_ONE = 100_000_000L;
+
+    // 表示"无数量"（区别于 0）
+    public static final long NONE = Long.MIN_VALUE;
+
+    private MrpQuantity() {
+    }
+
+    /**
+     * BigDecimal → 定点（4 位小数，HALF_UP）
+     */
+    public static long of(BigDecimal qty) {
+        try {
+            return qty.setScale(SCALE, RoundingMode.HALF_UP).unscaledValue().longValueExact();
+        } catch (ArithmeticException e) {
+            throw overflow(qty);
+        }
+    }
+
+    /**
+     * 整数数量 → 定点
+     */
+    public static long of(long units) {
+        try {
+            return Math.multiplyExact(units, ONE);
+        } catch (ArithmeticException e) {
+            throw overflow(units);
+        }
+    }
+
+    /**
+     * 用量系数 → 定点（8 位小数，HALF_UP）
+     */
+    public static long factorOf(BigDecimal factor) {
+        try {
+            return factor.setScale(FACTOR_SCALE, RoundingMode.HALF_UP).unscaledValue().longValueExact();
+        } catch (ArithmeticException e) {
+            throw overflow(factor);
+        }
+    }
+
+    public static BigDecimal toBigDecimal(long qty) {
+        return BigDecimal.valueOf(qty, SCALE);
+    }
+
+    public static double toDouble(long qty) {
+        return (double) qty / ONE;
+    }
+
+    public static double factorToDouble(long factor) {
+        return (double) factor / FACTOR_ONE;
+    }
+
+    public static long add(long a, long b) {
+        long r = a + b;
+        if (((a ^ r) & (b ^ r)) < 0) {
+            throw overflow(toBigDecimal(a) + " + " + toBigDecimal(b));
+        }
+        return r;
+    }
+
+    public static long subtract(long a, long b) {
+        long r = a - b;
+        if (((a ^ b) & (a ^ r)) < 0) {
+            throw overflow(toBigDecimal(a) + " - " + toBigDecimal(b));
+        }
+        return r;
+    }
+
+    /**
+     * 数量 × 系数，结果保留 4 位小数（HALF_UP）
+     */
+    public static long applyFactor(long qty, long factor) {
+        long hi = Math.multiplyHigh(qty, factor);
+        long lo = qty * factor;
+        if ((hi == 0 && lo >= 0) || (hi == -1 && lo < 0)) {
+            return divideHalfUp(lo, FACTOR_ONE);
+        }
+        BigInteger product = BigInteger.valueOf(qty).multiply(BigInteger.valueOf(factor));
+        BigDecimal result = new BigDecimal(product, SCALE + FACTOR_SCALE).setScale(SCALE, RoundingMode.HALF_UP);
+        try {
+            return result.unscaledValue().longValueExact();
+        } catch (ArithmeticException e) {
+            throw overflow(result);
+        }
+    }
+
+    private static long divideHalfUp(long dividend, long divisor) {
+        long q = dividend / divisor;
+        long r = dividend % divisor;
+        if (Math.abs(r) * 2 >= divisor) {
+            q += dividend < 0 ? -1 : 1;
+        }
+        return q;
+    }
+
+    private static ArithmeticException overflow(Object value) {
+        return new ArithmeticException("MRP 数量超出定点范围: " + value);
+    }
+}
@@ -0,0 +1,22 @@
+package com.hjscm.service.mrp;
+
+import com.hjscm.dto.*;
+
+import java.util.Optional;
+
+/**
+ * MRP 运行缓存的共享存储（可选，多节点共享同一份缓存）
+ *
+ * 实现不得抛出异常影响 MRP 运行：存储不可用时 get 返回空、put 静默失败即可。
+ */
+public interface MrpRunCacheStore {
+
+    Optional<MrpRunCacheEntry> get(String fingerprint);
+
+    /**
+     * 运行 ID → 输入指纹
+     */
+    Optional<String> fingerprintOfRun(String runId);
+
+    void put(MrpRunCacheEntry entry);
+}
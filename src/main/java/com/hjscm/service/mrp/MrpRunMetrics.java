@@ -0,0 +1,109 @@
+package com.hjscm.service.mrp;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * 单次 MRP 运行的分阶段耗时与计数
+ *
+ * 阶段耗时由 timed(phaseRunner) 包装的执行器自动记录；
+ * MPS 读取在准备阶段内单独计时（PREPARE 耗时包含 MPS_FETCH）。
+ * 运行结束后由 MrpMetricsService 写入 Micrometer，并作为阶段明细附在 MrpRunResponse 上。
+ */
+public final class MrpRunMetrics {
+
+    public static final String PHASE_MPS_FETCH = "MPS_FETCH";
+
+    // 计数项
+    public static final String ITEMS_EXPLODED = "itemsExploded";
+    public static final String DB_CALLS = "dbCalls";
+    public static final String EXPLOSION_CACHE_HITS = "explosionCacheHits";
+    public static final String EXPLOSION_CACHE_MISSES = "explosionCacheMisses";
+    public static final String MAX_FAN_OUT = "maxFanOut";
+
+    private final long startNanos = System.nanoTime();
+    private final Map<String, Long> phaseNanos = Collections.synchronizedMap(new LinkedHashMap<>());
+    private final AtomicLong itemsExploded = new AtomicLong();
+    private final AtomicLong dbCalls = new AtomicLong();
+    private final AtomicLong explosionCacheHits = new AtomicLong();
+    private final AtomicLong explosionCacheMisses = new AtomicLong();
+    private final AtomicLong maxFanOut = new AtomicLong();
+    private volatile boolean runCacheHit;
+
+    /**
+     * 包装阶段执行器：每个阶段执行完（含失败）记录耗时
+     */
+    public MrpPhaseRunner timed(MrpPhaseRunner delegate) {
+        return new MrpPhaseRunner() {
+            @Override
+            public <T> T run(String phase, Supplier<T> body) {
+                long start = System.nanoTime();
+                try {
+                    return delegate.run(phase, body);
+                } finally {
+                    recordPhase(phase, System.nanoTime() - start);
+                }
+            }
+        };
+    }
+
+    public void recordPhase(String phase, long nanos) {
+        phaseNanos.merge(phase, nanos, Long::sum);
+    }
+
+    public void addDbCalls(long n) {
+        dbCalls.addAndGet(n);
+    }
+
+    public void addExplosionCache(long hits, long misses) {
+        explosionCacheHits.addAndGet(hits);
+        explosionCacheMisses.addAndGet(misses);
+    }
+
+    /**
+     * 由追溯索引统计展开量：追溯条目数为展开产生的（MPS，组件）数，单个 MPS 的组件数即展开扇出
+     */
+    public void recordExplosion(MrpPegging pegging) {
+        itemsExploded.addAndGet(pegging.pegCount());
+        long fanOut = 0;
+        for (int i = 0; i < pegging.mpsCount(); i++) {
+            fanOut = Math.max(fanOut, pegging.componentEnd(i) - pegging.componentStart(i));
+        }
+        maxFanOut.accumulateAndGet(fanOut, Math::max);
+    }
+
+    public void markRunCacheHit() {
+        runCacheHit = true;
+    }
+
+    public boolean isRunCacheHit() {
+        return runCacheHit;
+    }
+
+    public long elapsedNanos() {
+        return System.nanoTime() - startNanos;
+    }
+
+    /**
+     * 阶段耗时（纳秒，按阶段开始顺序）
+     */
+    public Map<String, Long> getPhaseNanos() {
+        synchronized (phaseNanos) {
+            return new LinkedHashMap<>(phaseNanos);
+        }
+    }
+
+    /**
+     * 计数快照
+     */
+    public Map<String, Long> getCounters() {
+        Map<String, Long> counters = new LinkedHashMap<>();
+        counters.put(ITEMS_EXPLODED, itemsExploded.get());
+        counters.put(DB_CALLS, dbCalls.get());
+        counters.put(EXPLOSION_CACHE_HITS, explosionCacheHits.get());
+        counters.put(EXPLOSION_CACHE_MISSES, explosionCacheMisses.get());
+        counters.put(MAX_FAN_OUT, maxFanOut.get());
+        return counters;
+    }
+}
@@ -0,0 +1,211 @@
+package com.hjscm.service.mrp;
+
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * MRP 运行进度 - 分阶段计数与取消标记
+ *
+ * 引擎在各阶段循环中调用 step()，同时检查取消请求；
+ * 作业服务 / 状态查询线程并发读取计数。
+ */
+public class MrpRunProgress {
+
+    public static final String PHASE_PREPARE = "PREPARE";
+    public static final String PHASE_EXPLODE = "EXPLODE";
+    public static final String PHASE_NET = "NET";
+    public static final String PHASE_KIT = "KIT";
+    public static final String PHASE_SUGGEST = "SUGGEST";
+    public static final String PHASE_SAVE = "SAVE";
+
+    public static final String STATUS_QUEUED = "QUEUED";
+    public static final String STATUS_RUNNING = "RUNNING";
+    public static final String STATUS_COMPLETED = "COMPLETED";
+    public static final String STATUS_FAILED = "FAILED";
+    public static final String STATUS_CANCELLED = "CANCELLED";
+
+    private static final MrpRunProgress NONE = new MrpRunProgress(null) {
+        @Override
+        public void startPhase(String phase, long total) {
+        }
+
+        @Override
+        public void step() {
+        }
+
+        @Override
+        public void stepBy(long n) {
+        }
+
+        @Override
+        public void endPhase() {
+        }
+    };
+
+    private final String runId;
+    private final LocalDateTime submittedAt = LocalDateTime.now();
+    private final Map<String, PhaseCounter> phases = Collections.synchronizedMap(new LinkedHashMap<>());
+
+    private volatile String status = STATUS_QUEUED;
+    private volatile PhaseCounter currentPhase;
+    private volatile boolean cancelRequested;
+    private volatile LocalDateTime startedAt;
+    private volatile LocalDateTime finishedAt;
+    private volatile String errorMessage;
+
+    public MrpRunProgress(String runId) {
+        this.runId = runId;
+    }
+
+    /**
+     * 不记录进度、不可取消（同步运行使用）
+     */
+    public static MrpRunProgress none() {
+        return NONE;
+    }
+
+    public void start() {
+        startedAt = LocalDateTime.now();
+        status = STATUS_RUNNING;
+    }
+
+    public void startPhase(String phase, long total) {
+        checkCancelled();
+        endPhase();
+        PhaseCounter counter = new PhaseCounter(phase, total);
+        phases.put(phase, counter);
+        currentPhase = counter;
+    }
+
+    /**
+     * 当前阶段完成一个单位，并检查取消请求
+     */
+    public void step() {
+        stepBy(1);
+    }
+
+    public void stepBy(long n) {
+        PhaseCounter counter = currentPhase;
+        if (counter != null) {
+            counter.done.addAndGet(n);
+        }
+        checkCancelled();
+    }
+
+    public void endPhase() {
+        PhaseCounter counter = currentPhase;
+        if (counter != null && counter.endedAt == null) {
+            counter.endedAt = LocalDateTime.now();
+            counter.durationMs = System.currentTimeMillis() - counter.startMillis;
+        }
+    }
+
+    /**
+     * 已请求取消时抛出 CancellationException
+     */
+    public void checkCancelled() {
+        if (cancelRequested) {
+            throw new CancellationException("MRP 运行已取消: " + runId);
+        }
+    }
+
+    public void cancel() {
+        cancelRequested = true;
+    }
+
+    public void finish(String finalStatus, String error) {
+        endPhase();
+        currentPhase = null;
+        errorMessage = error;
+        finishedAt = LocalDateTime.now();
+        status = finalStatus;
+    }
+
+    public boolean isFinished() {
+        return finishedAt != null;
+    }
+
+    public boolean isCancelRequested() {
+        return cancelRequested;
+    }
+
+    public String getRunId() {
+        return runId;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public String getCurrentPhase() {
+        PhaseCounter counter = currentPhase;
+        return counter != null ? counter.phase : null;
+    }
+
+    public LocalDateTime getSubmittedAt() {
+        return submittedAt;
+    }
+
+    public LocalDateTime getStartedAt() {
+        return startedAt;
+    }
+
+    public LocalDateTime getFinishedAt() {
+        return finishedAt;
+    }
+
+    public String getErrorMessage() {
+        return errorMessage;
+    }
+
+    /**
+     * 各阶段计数快照（按阶段开始顺序）
+     */
+    public List<PhaseCounter> getPhases() {
+        synchronized (phases) {
+            return new ArrayList<>(phases.values());
+        }
+    }
+
+    /**
+     * 阶段计数
+     */
+    public static final class PhaseCounter {
+        private final String phase;
+        private final long total;
+        private final AtomicLong done = new AtomicLong();
+        private final long startMillis = System.currentTimeMillis();
+        private volatile LocalDateTime endedAt;
+        private volatile long durationMs = -1;
+
+        private PhaseCounter(String phase, long total) {
+            this.phase = phase;
+            this.total = total;
+        }
+
+        public String getPhase() {
+            return phase;
+        }
+
+        public long getTotal() {
+            return total;
+        }
+
+        public long getDone() {
+            return done.get();
+        }
+
+        public boolean isFinished() {
+            return endedAt != null;
+        }
+
+        /**
+         * 阶段耗时，进行中时为已耗时
+         */
+        public long getDurationMs() {
+            return durationMs >= 0 ? durationMs : System.currentTimeMillis() - startMillis;
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.hjscm.service.mrp;
+
+import com.hjscm.dto.*;
+
+import java.time.LocalDateTime;
+import java.util.*;
+
+/**
+ * 供应商货源清单索引 - 物料 → 首选供应商
+ *
+ * 货源数据每个物料只维护一个首选供应商（mrp_constraints.preferred_supplier_id），
+ * 构建时一次解析供应商主数据，每条缺料按物料哈希查找，不再逐条查询、过滤排序。
+ * 起订量由批量规则（MrpLotSizing）处理，选择供应商时不再比较。
+ *
+ * 未单独维护货源的物料使用默认货源（可不配置）。索引构建后不再修改，可被并发运行共享。
+ */
+public final class MrpSourceList {
+
+    private final Map<String, SupplierInfo> supplierByMaterial;
+    private final SupplierInfo defaultSupplier;
+    private final LocalDateTime builtAt = LocalDateTime.now();
+
+    private MrpSourceList(Map<String, SupplierInfo> supplierByMaterial, SupplierInfo defaultSupplier) {
+        this.supplierByMaterial = supplierByMaterial;
+        this.defaultSupplier = defaultSupplier;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * 物料的供应商
+     *
+     * @return 首选供应商；未维护时为默认货源，两者都没有时为 null
+     */
+    public SupplierInfo select(String materialCode) {
+        SupplierInfo supplier = supplierByMaterial.get(materialCode);
+        return supplier != null ? supplier : defaultSupplier;
+    }
+
+    /**
+     * 物料的全部供应商（至多一家）
+     */
+    public List<SupplierInfo> suppliersOf(String materialCode) {
+        SupplierInfo supplier = select(materialCode);
+        return supplier != null ? List.of(supplier) : Collections.emptyList();
+    }
+
+    /**
+     * 单独维护货源的物料数
+     */
+    public int size() {
+        return supplierByMaterial.size();
+    }
+
+    public LocalDateTime getBuiltAt() {
+        return builtAt;
+    }
+
+    /**
+     * 构建器
+     */
+    public static final class Builder {
+
+        private final Map<String, SupplierInfo> supplierByMaterial = new HashMap<>();
+        private SupplierInfo defaultSupplier;
+
+        private Builder() {
+        }
+
+        /**
+         * 登记物料的首选供应商（同一物料重复登记时保留先登记者）
+         */
+        public Builder add(String materialCode, SupplierInfo supplier) {
+            supplierByMaterial.putIfAbsent(materialCode, supplier);
+            return this;
+        }
+
+        /**
+         * 未单独维护货源的物料使用的供应商
+         */
+        public Builder defaultSupplier(SupplierInfo supplier) {
+            this.defaultSupplier = supplier;
+            return this;
+        }
+
+        public MrpSourceList build() {
+            return new MrpSourceList(new HashMap<>(supplierByMaterial), defaultSupplier);
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.hjscm.service.mrp;
+
+import java.time.LocalDate;
+import java.util.*;
+
+/**
+ * 分时段 MRP 计划 - 单工厂全部物料的分时段记录
+ *
+ * 记录按 BomGraphSnapshot 物料下标存放，首次产生毛需求时创建；
+ * 不在 BOM 图中的 MPS 物料按编码单独保存。
+ *
+ * 同一工厂的并行分区只访问各自分量的物料下标；独立物料只由独立分区访问。
+ */
+public final class MrpTimePhasedPlan {
+
+    private final BomGraphSnapshot bomGraph;
+    private final MrpBuckets buckets;
+    private final MrpTimePhasedRecord[] records;
+    private final Map<String, MrpTimePhasedRecord> standaloneRecords = new LinkedHashMap<>();
+
+    // 交期超出计划期而未计入的 MPS 需求条数
+    private int beyondHorizon;
+
+    public MrpTimePhasedPlan(BomGraphSnapshot bomGraph, MrpBuckets buckets) {
+        this.bomGraph = bomGraph;
+        this.buckets = buckets;
+        this.records = new MrpTimePhasedRecord[bomGraph.size()];
+    }
+
+    public BomGraphSnapshot getBomGraph() {
+        return bomGraph;
+    }
+
+    public MrpBuckets getBuckets() {
+        return buckets;
+    }
+
+    /**
+     * 登记 MPS 独立需求到交期所在时段
+     *
+     * @param qty 需求量（定点）
+     * @return 交期超出计划期时返回 false（不计入）
+     */
+    public boolean addIndependentDemand(String materialCode, LocalDate dueDate, long qty) {
+        int bucket = buckets.bucketOf(dueDate);
+        if (bucket < 0) {
+            beyondHorizon++;
+            return false;
+        }
+        int item = bomGraph.indexOf(materialCode);
+        MrpTimePhasedRecord record = item >= 0
+            ? recordOf(item)
+            : standaloneRecords.computeIfAbsent(materialCode, code -> new MrpTimePhasedRecord(code, buckets.size()));
+        record.addGross(bucket, qty);
+        return true;
+    }
+
+    /**
+     * 物料记录（不存在时创建）
+     */
+    public MrpTimePhasedRecord recordOf(int item) {
+        MrpTimePhasedRecord record = records[item];
+        if (record == null) {
+            record = new MrpTimePhasedRecord(bomGraph.itemCode(item), buckets.size());
+            records[item] = record;
+        }
+        return record;
+    }
+
+    /**
+     * 物料记录，无毛需求时为 null
+     */
+    public MrpTimePhasedRecord getRecord(int item) {
+        return records[item];
+    }
+
+    public Collection<MrpTimePhasedRecord> getStandaloneRecords() {
+        return Collections.unmodifiableCollection(standaloneRecords.values());
+    }
+
+    public int getBeyondHorizon() {
+        return beyondHorizon;
+    }
+}
@@ -0,0 +1,130 @@
+package com.hjscm.service.mrp;
+
+import java.util.Arrays;
+
+/**
+ * 分时段 MRP 记录 - 单物料在计划期内各时段的数量
+ *
+ * 行：毛需求、预计到货（在途）、预计在库、净需求、计划订单收货、计划订单下达。
+ * 各行以定点 long 数组（MrpQuantity，4 位小数）按时段存放，计划期 13～52 周时每物料仅数百字节；
+ * 与 BFS / LLC 路径一致，仅在输出净需求时转换为 BigDecimal。
+ *
+ * 净算规则（逐时段）：
+ *   预计可用 = 上期在库 + 预计到货 - 毛需求
+ *   预计可用 < 安全库存 时，净需求 = 安全库存 - 预计可用，按净需求安排计划收货
+ * 计划下达 = 计划收货按提前期时段数整体左移；早于第 0 时段的部分计入第 0 时段（逾期下达）。
+ */
+public final class MrpTimePhasedRecord {
+
+    private final String itemCode;
+
+    private final long[] gross;
+    private final long[] scheduledReceipts;
+    private final long[] projectedOnHand;
+    private final long[] netRequirements;
+    private final long[] plannedReceipts;
+    private final long[] plannedReleases;
+
+    private int leadTimeBuckets;
+    private long pastDueRelease;
+
+    public MrpTimePhasedRecord(String itemCode, int buckets) {
+        this.itemCode = itemCode;
+        this.gross = new long[buckets];
+        this.scheduledReceipts = new long[buckets];
+        this.projectedOnHand = new long[buckets];
+        this.netRequirements = new long[buckets];
+        this.plannedReceipts = new long[buckets];
+        this.plannedReleases = new long[buckets];
+    }
+
+    public void addGross(int bucket, long qty) {
+        gross[bucket] = MrpQuantity.add(gross[bucket], qty);
+    }
+
+    public void addScheduledReceipt(int bucket, long qty) {
+        scheduledReceipts[bucket] = MrpQuantity.add(scheduledReceipts[bucket], qty);
+    }
+
+    /**
+     * 逐时段净算并按提前期偏移得出计划下达
+     *
+     * @param onHand 期初可用量（现有量 - 已分配量，定点）
+     * @param safetyStock 安全库存（定点）
+     * @param leadTimeBuckets 提前期时段数
+     */
+    public void plan(long onHand, long safetyStock, int leadTimeBuckets) {
+        this.leadTimeBuckets = leadTimeBuckets;
+        int n = gross.length;
+        long poh = onHand;
+        for (int t = 0; t < n; t++) {
+            long available = MrpQuantity.subtract(MrpQuantity.add(poh, scheduledReceipts[t]), gross[t]);
+            long net = MrpQuantity.subtract(safetyStock, available);
+            if (net > 0) {
+                netRequirements[t] = net;
+                plannedReceipts[t] = net;
+                available = safetyStock;
+            } else {
+                netRequirements[t] = 0;
+                plannedReceipts[t] = 0;
+            }
+            projectedOnHand[t] = available;
+            poh = available;
+        }
+
+        // 提前期偏移：release[t] = receipt[t + LT]
+        int lt = Math.min(leadTimeBuckets, n);
+        pastDueRelease = 0;
+        for (int t = 0; t < lt; t++) {
+            pastDueRelease = MrpQuantity.add(pastDueRelease, plannedReceipts[t]);
+        }
+        System.arraycopy(plannedReceipts, lt, plannedReleases, 0, n - lt);
+        Arrays.fill(plannedReleases, n - lt, n, 0);
+        if (n > 0) {
+            plannedReleases[0] = MrpQuantity.add(plannedReleases[0], pastDueRelease);
+        }
+    }
+
+    public String getItemCode() {
+        return itemCode;
+    }
+
+    public int size() {
+        return gross.length;
+    }
+
+    public int getLeadTimeBuckets() {
+        return leadTimeBuckets;
+    }
+
+    public long gross(int bucket) {
+        return gross[bucket];
+    }
+
+    public long scheduledReceipt(int bucket) {
+        return scheduledReceipts[bucket];
+    }
+
+    public long projectedOnHand(int bucket) {
+        return projectedOnHand[bucket];
+    }
+
+    public long netRequirement(int bucket) {
+        return netRequirements[bucket];
+    }
+
+    public long plannedReceipt(int bucket) {
+        return plannedReceipts[bucket];
+    }
+
+    public long plannedRelease(int bucket) {
+        return plannedReleases[bucket];
+    }
+
+    /**
+     * 因提前期不足而应在计划期之前下达、现已计入第 0 时段的数量
+     */
+    public long getPastDueRelease() {
+        return pastDueRelease;
+    }
+}
@@ -0,0 +1,109 @@
+package com.hjscm.mdm.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hjscm.mdm.dto.BOMImportResultDTO;
+import com.hjscm.mdm.entity.BOMEntity;
+import com.hjscm.mdm.repository.BOMImportJdbcRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * BOM批量导入单元测试
+ */
+@ExtendWith(MockitoExtension.class)
+class BOMImportServiceTest {
+
+    @Mock
+    private BOMImportJdbcRepository importRepository;
+    @Mock
+    private BOMVersionService versionService;
+    @Mock
+    private BOMWhereUsedIndex whereUsedIndex;
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private BOMImportService importService;
+
+    @BeforeEach
+    void setUp() {
+        importService = new BOMImportService(importRepository, versionService, whereUsedIndex,
+                eventPublisher, new ObjectMapper(), transactionManager);
+    }
+
+    @Test
+    void testCsvGroupsRowsAndReportsRowErrors() throws Exception {
+        // Given: BOM-1 两行子件，BOM-2 用量非法，BOM-3 已存在
+        when(transactionManager.getTransaction(any())).thenReturn(new SimpleTransactionStatus());
+        when(importRepository.findExistingBomIds(anyCollection())).thenReturn(List.of("BOM-3"));
+        String csv = "bomId,bomName,material,bomLevel,componentMaterial,componentQty\n"
+                + "BOM-1,\"Frame, welded\",FG1,1,P1,2\n"
+                + "BOM-1,,,,P2,1.5\n"
+                + "BOM-2,Bad,FG2,1,P3,abc\n"
+                + "BOM-3,Dup,FG3,1,P4,1\n";
+
+        // When
+        BOMImportResultDTO result = importService.importBOMs(
+                new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8)), BOMImportService.FORMAT_CSV, "tester");
+
+        // Then
+        assertEquals(4, result.getTotalRows());
+        assertEquals(1, result.getImportedBoms());
+        assertEquals(2, result.getImportedItems());
+        assertEquals(2, result.getFailedBoms());
+        assertEquals(List.of(4L, 5L), result.getErrors().stream().map(BOMImportResultDTO.RowError::getLine).toList());
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<BOMEntity>> headers = ArgumentCaptor.forClass(List.class);
+        verify(importRepository).insertBoms(headers.capture());
+        assertEquals("Frame, welded", headers.getValue().get(0).getBomName());
+        verify(versionService).lockPublication();
+    }
+
+    @Test
+    void testNdjsonValidation() throws Exception {
+        // Given: 第 2 行子件为父级物料本身，第 3 行 JSON 损坏
+        String ndjson = "{\"bomId\":\"B1\",\"material\":\"FG\",\"items\":[{\"componentMaterial\":\"P1\",\"componentQty\":1}]}\n"
+                + "{\"bomId\":\"B2\",\"material\":\"FG\",\"items\":[{\"componentMaterial\":\"FG\",\"componentQty\":1}]}\n"
+                + "{\"bomId\":\n";
+        when(transactionManager.getTransaction(any())).thenReturn(new SimpleTransactionStatus());
+
+        // When
+        BOMImportResultDTO result = importService.importBOMs(
+                new ByteArrayInputStream(ndjson.getBytes(StandardCharsets.UTF_8)), BOMImportService.FORMAT_NDJSON, "tester");
+
+        // Then
+        assertEquals(1, result.getImportedBoms());
+        assertEquals(2, result.getErrorCount());
+        assertEquals("B2", result.getErrors().get(0).getBomId());
+    }
+
+    @Test
+    void testCsvQuotedNewline() throws Exception {
+        BufferedReader reader = new BufferedReader(new StringReader("a,\"x\ny\",\"q\"\"\"\nnext\n"));
+        long[] line = {0};
+
+        assertEquals(List.of("a", "x\ny", "q\""), BOMImportService.readCsvRecord(reader, line));
+        assertEquals(2, line[0]);
+        assertEquals(List.of("next"), BOMImportService.readCsvRecord(reader, line));
+        assertNull(BOMImportService.readCsvRecord(reader, line));
+    }
+}
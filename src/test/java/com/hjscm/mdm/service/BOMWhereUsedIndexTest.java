@@ -0,0 +1,157 @@
+package com.hjscm.mdm.service;
+
+import com.hjscm.mdm.repository.BOMItemRepository;
+import com.hjscm.mdm.repository.BOMWhereUsedRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * BOM反查闭包索引单元测试
+ */
+@ExtendWith(MockitoExtension.class)
+class BOMWhereUsedIndexTest {
+
+    @Mock
+    private BOMItemRepository bomItemRepository;
+    @Mock
+    private BOMWhereUsedRepository whereUsedRepository;
+
+    private BOMWhereUsedIndex index;
+    private final AtomicLong versions = new AtomicLong();
+
+    @BeforeEach
+    void setUp() {
+        lenient().when(whereUsedRepository.nextVersion()).thenAnswer(inv -> versions.incrementAndGet());
+        // FG1 → SUB → R1，FG2 → R1，FG2 → SUB
+        when(bomItemRepository.findActiveEdges()).thenReturn(List.of(
+            new Object[] {"FG1", "SUB"},
+            new Object[] {"SUB", "R1"},
+            new Object[] {"FG2", "R1"},
+            new Object[] {"FG2", "SUB"}));
+        // 闭包表（由迁移脚本回填）：FG2 → R1 有直接与经 SUB 两条路径
+        doAnswer(inv -> {
+            BOMWhereUsedRepository.ClosureRowHandler handler = inv.getArgument(0);
+            handler.accept("FG1", "SUB", 1L);
+            handler.accept("SUB", "R1", 1L);
+            handler.accept("FG1", "R1", 1L);
+            handler.accept("FG2", "SUB", 1L);
+            handler.accept("FG2", "R1", 2L);
+            return null;
+        }).when(whereUsedRepository).forEach(any());
+        index = new BOMWhereUsedIndex(bomItemRepository, whereUsedRepository);
+    }
+
+    private static BOMWhereUsedIndex.Edge edge(String parent, String child) {
+        return new BOMWhereUsedIndex.Edge(parent, child);
+    }
+
+    @Test
+    void testLoadAndLookup() {
+        assertEquals(Set.of("SUB", "FG1", "FG2"), index.whereUsed("R1"));
+        assertEquals(Set.of("FG1", "FG2"), index.topLevelWhereUsed("R1"));
+        assertTrue(index.isUsedIn("R1", "FG1"));
+        assertTrue(index.whereUsed("FG1").isEmpty());
+        // 读路径只读：不写闭包、不取版本锁
+        verify(whereUsedRepository, never()).applyDeltas(anyMap());
+        verify(whereUsedRepository, never()).nextVersion();
+    }
+
+    @Test
+    void testIncrementalRemoveKeepsOtherPaths() {
+        // When: 删除 SUB → R1，FG2 仍直接使用 R1
+        index.applyChanges(List.of(edge("SUB", "R1")), List.of());
+
+        // Then
+        assertEquals(Set.of("FG2"), index.whereUsed("R1"));
+        assertFalse(index.isUsedIn("R1", "FG1"));
+
+        // When: FG2 改用 SUB2，SUB2 → R1
+        index.applyChanges(List.of(edge("FG2", "R1")), List.of(edge("FG2", "SUB2"), edge("SUB2", "R1")));
+
+        // Then
+        assertEquals(Set.of("SUB2", "FG2"), index.whereUsed("R1"));
+    }
+
+    @Test
+    void testCycleRejectedAndStateRestored() {
+        // When: 删除 FG2 → R1 并新增 R1 → FG1（FG1 → SUB → R1 存在，构成循环）
+        assertThrows(RuntimeException.class,
+            () -> index.applyChanges(List.of(edge("FG2", "R1")), List.of(edge("R1", "FG1"))));
+
+        // Then: 已应用的删除被撤销
+        assertEquals(Set.of("SUB", "FG1", "FG2"), index.whereUsed("R1"));
+        assertTrue(index.whereUsed("FG1").isEmpty());
+    }
+
+    @Test
+    void testFailedWriteWithoutTransactionRestoresState() {
+        // Given
+        index.whereUsed("R1");
+        doThrow(new RuntimeException("db down")).when(whereUsedRepository).applyDeltas(anyMap());
+
+        // When
+        assertThrows(RuntimeException.class, () -> index.applyChanges(List.of(edge("SUB", "R1")), List.of()));
+
+        // Then: 内存闭包恢复
+        assertEquals(Set.of("SUB", "FG1", "FG2"), index.whereUsed("R1"));
+    }
+
+    @Test
+    void testUncommittedChangesHiddenFromReaders() {
+        index.whereUsed("R1");
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            // When: 事务内删除 SUB → R1，尚未提交
+            index.applyChanges(List.of(edge("SUB", "R1")), List.of());
+
+            // Then: 读者仍看到已提交的闭包
+            assertEquals(Set.of("SUB", "FG1", "FG2"), index.whereUsed("R1"));
+            assertEquals(Set.of("FG1", "FG2"), index.topLevelWhereUsed("R1"));
+
+            // When: 提交
+            TransactionSynchronizationManager.getSynchronizations()
+                .forEach(s -> s.afterCompletion(TransactionSynchronization.STATUS_COMMITTED));
+
+            // Then
+            assertEquals(Set.of("FG2"), index.whereUsed("R1"));
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    void testReloadWhenPersistedVersionMovedOnAnotherNode() {
+        // Given: 本节点加载后，另一节点删除了 SUB → R1 并提交（持久化版本前进）
+        index.whereUsed("R1");
+        when(bomItemRepository.findActiveEdges()).thenReturn(List.of(
+            new Object[] {"FG1", "SUB"},
+            new Object[] {"FG2", "R1"},
+            new Object[] {"FG2", "SUB"}));
+        doAnswer(inv -> {
+            BOMWhereUsedRepository.ClosureRowHandler handler = inv.getArgument(0);
+            handler.accept("FG1", "SUB", 1L);
+            handler.accept("FG2", "SUB", 1L);
+            handler.accept("FG2", "R1", 1L);
+            return null;
+        }).when(whereUsedRepository).forEach(any());
+        versions.addAndGet(3);
+
+        // When: 本节点写入时取得的版本不是自己上次写入的下一版本
+        index.applyChanges(List.of(), List.of(edge("FG3", "FG2")));
+
+        // Then: 先按闭包表重新加载，再叠加本次变更
+        assertEquals(Set.of("FG2", "FG3"), index.whereUsed("R1"));
+        assertEquals(Set.of("FG3"), index.topLevelWhereUsed("R1"));
+    }
+}
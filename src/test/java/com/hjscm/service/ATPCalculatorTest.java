@@ -1,15 +1,17 @@
 package com.hjscm.service;
 
 import com.hjscm.entity.*;
+import com.hjscm.event.InventoryChangeEvent;
 import com.hjscm.repository.*;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
-import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
 import java.math.BigDecimal;
 import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.util.*;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -34,9 +36,16 @@ class ATPCalculatorTest {
     @Mock
     private MrpReservationRepository reservationRepository;
 
-    @InjectMocks
+    private AtpLedgerService ledgerService;
     private ATPCalculator atpCalculator;
 
+    @BeforeEach
+    void setUp() {
+        ledgerService = new AtpLedgerService(
+            balanceRepository, inTransitRepository, salesOrderRepository, reservationRepository);
+        atpCalculator = new ATPCalculator(ledgerService);
+    }
+
     @Test
     void testCalculateATP_SufficientStock() {
         // Given
@@ -47,22 +56,21 @@ class ATPCalculatorTest {
             .requestedDate(LocalDate.now().plusDays(7))
             .build();
 
-        when(balanceRepository.findByMaterialCodeAndPlantCode("HJ-LA23", "QINGDAO"))
-            .thenReturn(Optional.of(InventoryBalance.builder()
+        when(balanceRepository.findAllByMaterialCodeAndPlantCode("HJ-LA23", "QINGDAO"))
+            .thenReturn(List.of(InventoryBalance.builder()
                 .quantity(BigDecimal.valueOf(3840))
                 .reservedQty(BigDecimal.ZERO)
                 .build()));
 
-        when(inTransitRepository.findByMaterialCodeAndArrivalDateAfter(
-            eq("HJ-LA23"), any()))
+        when(inTransitRepository.findByMaterialCodeAndPlantCode("HJ-LA23", "QINGDAO"))
             .thenReturn(Collections.emptyList());
 
         when(salesOrderRepository.findAllocatedByMaterialAndDate(
             eq("HJ-LA23"), any(), any()))
             .thenReturn(Collections.emptyList());
 
-        when(reservationRepository.findByMaterialCodeAndPlantCodeAndDate(
-            eq("HJ-LA23"), any(), any()))
+        when(reservationRepository.findOpenByMaterialAndPlant(
+            eq("HJ-LA23"), eq("QINGDAO"), any()))
             .thenReturn(Collections.emptyList());
 
         // When
@@ -84,22 +92,21 @@ class ATPCalculatorTest {
             .requestedDate(LocalDate.now().plusDays(7))
             .build();
 
-        when(balanceRepository.findByMaterialCodeAndPlantCode("HJ-LA23", "QINGDAO"))
-            .thenReturn(Optional.of(InventoryBalance.builder()
+        when(balanceRepository.findAllByMaterialCodeAndPlantCode("HJ-LA23", "QINGDAO"))
+            .thenReturn(List.of(InventoryBalance.builder()
                 .quantity(BigDecimal.valueOf(3840))
                 .reservedQty(BigDecimal.ZERO)
                 .build()));
 
-        when(inTransitRepository.findByMaterialCodeAndArrivalDateAfter(
-            eq("HJ-LA23"), any()))
+        when(inTransitRepository.findByMaterialCodeAndPlantCode("HJ-LA23", "QINGDAO"))
             .thenReturn(Collections.emptyList());
 
         when(salesOrderRepository.findAllocatedByMaterialAndDate(
             eq("HJ-LA23"), any(), any()))
             .thenReturn(Collections.emptyList());
 
-        when(reservationRepository.findByMaterialCodeAndPlantCodeAndDate(
-            eq("HJ-LA23"), any(), any()))
+        when(reservationRepository.findOpenByMaterialAndPlant(
+            eq("HJ-LA23"), eq("QINGDAO"), any()))
             .thenReturn(Collections.emptyList());
 
         // When
@@ -121,19 +128,20 @@ class ATPCalculatorTest {
             .requestedDate(LocalDate.now().plusDays(7))
             .build();
 
-        when(balanceRepository.findByMaterialCodeAndPlantCode("HJ-LA15", "QINGDAO"))
-            .thenReturn(Optional.of(InventoryBalance.builder()
+        when(balanceRepository.findAllByMaterialCodeAndPlantCode("HJ-LA15", "QINGDAO"))
+            .thenReturn(List.of(InventoryBalance.builder()
                 .quantity(BigDecimal.valueOf(2000))
                 .reservedQty(BigDecimal.ZERO)
                 .build()));
 
-        when(inTransitRepository.findByMaterialCodeAndArrivalDateAfter(
-            eq("HJ-LA15"), any()))
+        when(inTransitRepository.findByMaterialCodeAndPlantCode("HJ-LA15", "QINGDAO"))
             .thenReturn(Arrays.asList(
-                InTransitOrder.builder()
+                InTransitOrderEntity.builder()
                     .materialCode("HJ-LA15")
-                    .quantity(BigDecimal.valueOf(2000))
-                    .arrivalDate(LocalDate.now().plusDays(3))
+                    .plantCode("QINGDAO")
+                    .orderQuantity(BigDecimal.valueOf(2000))
+                    .estimatedArrivalDate(LocalDate.now().plusDays(3))
+                    .status("PENDING")
                     .build()
             ));
 
@@ -141,8 +149,8 @@ class ATPCalculatorTest {
             eq("HJ-LA15"), any(), any()))
             .thenReturn(Collections.emptyList());
 
-        when(reservationRepository.findByMaterialCodeAndPlantCodeAndDate(
-            eq("HJ-LA15"), any(), any()))
+        when(reservationRepository.findOpenByMaterialAndPlant(
+            eq("HJ-LA15"), eq("QINGDAO"), any()))
             .thenReturn(Collections.emptyList());
 
         // When
@@ -153,4 +161,208 @@ class ATPCalculatorTest {
         // ATP = 2000 + 2000 - 0 - 0 = 4000
         assertEquals(0, BigDecimal.valueOf(4000).compareTo(result.getAtpQty()));
     }
+
+    @Test
+    void testPromiseDate_WaitsForInTransitAndProtectsLaterReservations() {
+        // Given: 库存 1000；第 5 天到货 2000；第 10 天预留 1500
+        LocalDate today = LocalDate.now();
+        when(balanceRepository.findAllByMaterialCodeAndPlantCode("HJ-LA23", "QINGDAO"))
+            .thenReturn(List.of(InventoryBalance.builder()
+                .quantity(BigDecimal.valueOf(1000))
+                .reservedQty(BigDecimal.ZERO)
+                .build()));
+        when(inTransitRepository.findByMaterialCodeAndPlantCode("HJ-LA23", "QINGDAO"))
+            .thenReturn(List.of(InTransitOrderEntity.builder()
+                .orderQuantity(BigDecimal.valueOf(2000))
+                .estimatedArrivalDate(today.plusDays(5))
+                .status("PENDING")
+                .build()));
+        when(salesOrderRepository.findAllocatedByMaterialAndDate(eq("HJ-LA23"), any(), any()))
+            .thenReturn(Collections.emptyList());
+        when(reservationRepository.findOpenByMaterialAndPlant(eq("HJ-LA23"), eq("QINGDAO"), any()))
+            .thenReturn(List.of(MrpReservation.builder()
+                .quantity(BigDecimal.valueOf(1500))
+                .reservationDate(today.plusDays(10))
+                .build()));
+
+        // When: 需求 1200 于第 1 天；需求 1600 于第 1 天
+        ATPCalculator.ATPResult early = atpCalculator.calculateATP(request("HJ-LA23", 1200, today.plusDays(1)));
+        ATPCalculator.ATPResult large = atpCalculator.calculateATP(request("HJ-LA23", 1600, today.plusDays(1)));
+
+        // Then: 1200 须等第 5 天到货；第 5 天 ATP 3000，但第 10 天预留后仅 1500，1600 无法承诺
+        assertFalse(early.isCanFulfill());
+        assertEquals(today.plusDays(5), early.getPromisedDate());
+        assertNull(large.getPromisedDate());
+        // 台账只加载一次
+        verify(balanceRepository, times(1)).findByMaterialCodeAndPlantCode("HJ-LA23", "QINGDAO");
+    }
+
+    @Test
+    void testCalculateBatchATP_SequentialConsumptionWithBulkLoad() {
+        // Given: HJ-LA23 库存 1000，第 5 天到货 500；HJ-LA15 无库存
+        LocalDate today = LocalDate.now();
+        when(balanceRepository.findByMaterialCodeInAndPlantCodeIn(anyCollection(), anyCollection()))
+            .thenReturn(List.of(InventoryBalance.builder()
+                .materialCode("HJ-LA23")
+                .plantCode("QINGDAO")
+                .quantity(BigDecimal.valueOf(1000))
+                .reservedQty(BigDecimal.ZERO)
+                .build()));
+        when(inTransitRepository.findByMaterialCodeInAndPlantCodeInAndStatusIn(anyCollection(), anyCollection(), anyCollection()))
+            .thenReturn(List.of(InTransitOrderEntity.builder()
+                .materialCode("HJ-LA23")
+                .plantCode("QINGDAO")
+                .orderQuantity(BigDecimal.valueOf(500))
+                .estimatedArrivalDate(today.plusDays(5))
+                .status("PENDING")
+                .build()));
+        when(salesOrderRepository.findAllocatedByMaterialAndDate(any(), eq("QINGDAO"), any()))
+            .thenReturn(Collections.emptyList());
+        when(reservationRepository.findOpenByMaterialsAndPlants(anyCollection(), anyCollection(), any()))
+            .thenReturn(Collections.emptyList());
+
+        // When: 同一物料三行（600 + 600 + 400）与另一物料一行
+        List<ATPCalculator.ATPResult> results = atpCalculator.calculateBatchATP(List.of(
+            request("HJ-LA23", 600, today.plusDays(1)),
+            request("HJ-LA23", 600, today.plusDays(1)),
+            request("HJ-LA15", 10, today.plusDays(1)),
+            request("HJ-LA23", 400, today.plusDays(1))));
+
+        // Then: 第 1 行当日满足；第 2 行剩余 400，等第 5 天到货；第 4 行已无余量
+        assertTrue(results.get(0).isCanFulfill());
+        assertEquals(today.plusDays(5), results.get(1).getPromisedDate());
+        assertEquals(0, BigDecimal.valueOf(400).compareTo(results.get(1).getAtpQty()));
+        assertNull(results.get(2).getPromisedDate());
+        assertFalse(results.get(3).isCanFulfill());
+        assertNull(results.get(3).getPromisedDate());
+        // 批量路径不走逐个物料的库存 / 在途 / 预留查询
+        verify(balanceRepository, never()).findByMaterialCodeAndPlantCode(any(), any());
+        verify(inTransitRepository, never()).findByMaterialCodeAndPlantCode(any(), any());
+    }
+
+    @Test
+    void testCalculateBatchATP_MultipleBalanceRowsUseLatest() {
+        // Given: 同一物料 / 工厂两条余额，时点最新的一条排在前面
+        LocalDate today = LocalDate.now();
+        when(balanceRepository.findByMaterialCodeInAndPlantCodeIn(anyCollection(), anyCollection()))
+            .thenReturn(List.of(
+                InventoryBalance.builder()
+                    .materialCode("HJ-LA23")
+                    .plantCode("QINGDAO")
+                    .quantity(BigDecimal.valueOf(300))
+                    .reservedQty(BigDecimal.ZERO)
+                    .asOfDate(today)
+                    .build(),
+                InventoryBalance.builder()
+                    .materialCode("HJ-LA23")
+                    .plantCode("QINGDAO")
+                    .quantity(BigDecimal.valueOf(1000))
+                    .reservedQty(BigDecimal.ZERO)
+                    .asOfDate(today.minusDays(1))
+                    .build()));
+        when(inTransitRepository.findByMaterialCodeInAndPlantCodeInAndStatusIn(anyCollection(), anyCollection(), anyCollection()))
+            .thenReturn(Collections.emptyList());
+        when(salesOrderRepository.findAllocatedByMaterialAndDate(any(), eq("QINGDAO"), any()))
+            .thenReturn(Collections.emptyList());
+        when(reservationRepository.findOpenByMaterialsAndPlants(anyCollection(), anyCollection(), any()))
+            .thenReturn(Collections.emptyList());
+
+        // When
+        List<ATPCalculator.ATPResult> results = atpCalculator.calculateBatchATP(List.of(
+            request("HJ-LA23", 500, today.plusDays(1))));
+
+        // Then: 按最新余额 300 计算，而非前一日的 1000
+        assertFalse(results.get(0).isCanFulfill());
+        assertEquals(0, BigDecimal.valueOf(300).compareTo(results.get(0).getAtpQty()));
+    }
+
+    @Test
+    void testCalculateATP_MultipleBalanceRowsUseLatest() {
+        // Given: 单条计算与批量计算使用相同的最新余额规则
+        LocalDate today = LocalDate.now();
+        when(balanceRepository.findAllByMaterialCodeAndPlantCode("HJ-LA23", "QINGDAO"))
+            .thenReturn(List.of(
+                InventoryBalance.builder()
+                    .materialCode("HJ-LA23")
+                    .plantCode("QINGDAO")
+                    .quantity(BigDecimal.valueOf(1000))
+                    .reservedQty(BigDecimal.ZERO)
+                    .asOfDate(today.minusDays(1))
+                    .build(),
+                InventoryBalance.builder()
+                    .materialCode("HJ-LA23")
+                    .plantCode("QINGDAO")
+                    .quantity(BigDecimal.valueOf(300))
+                    .reservedQty(BigDecimal.ZERO)
+                    .asOfDate(today)
+                    .build()));
+        when(inTransitRepository.findByMaterialCodeAndPlantCode("HJ-LA23", "QINGDAO"))
+            .thenReturn(Collections.emptyList());
+        when(salesOrderRepository.findAllocatedByMaterialAndDate(eq("HJ-LA23"), any(), any()))
+            .thenReturn(Collections.emptyList());
+        when(reservationRepository.findOpenByMaterialAndPlant(eq("HJ-LA23"), eq("QINGDAO"), any()))
+            .thenReturn(Collections.emptyList());
+
+        // When
+        ATPCalculator.ATPResult result = atpCalculator.calculateATP(request("HJ-LA23", 500, today.plusDays(1)));
+
+        // Then: 按最新余额 300 计算
+        assertFalse(result.isCanFulfill());
+        assertEquals(0, BigDecimal.valueOf(300).compareTo(result.getAtpQty()));
+    }
+
+    private static ATPCalculator.ATPRequest request(String material, long qty, LocalDate date) {
+        return ATPCalculator.ATPRequest.builder()
+            .materialCode(material)
+            .plantCode("QINGDAO")
+            .requestedQty(BigDecimal.valueOf(qty))
+            .requestedDate(date)
+            .build();
+    }
+
+    @Test
+    void testInventoryEvent_OverlappingLoadDropsLedger() {
+        // Given: 现有 100，需求 1000（ATP 即可用量）
+        ATPCalculator.ATPRequest request = ATPCalculator.ATPRequest.builder()
+            .materialCode("HJ-M05")
+            .plantCode("QINGDAO")
+            .requestedQty(BigDecimal.valueOf(1000))
+            .requestedDate(LocalDate.now().plusDays(7))
+            .build();
+        when(balanceRepository.findAllByMaterialCodeAndPlantCode("HJ-M05", "QINGDAO"))
+            .thenReturn(List.of(InventoryBalance.builder()
+                .quantity(BigDecimal.valueOf(100))
+                .reservedQty(BigDecimal.ZERO)
+                .build()));
+        when(inTransitRepository.findByMaterialCodeAndPlantCode("HJ-M05", "QINGDAO"))
+            .thenReturn(Collections.emptyList());
+        when(salesOrderRepository.findAllocatedByMaterialAndDate(eq("HJ-M05"), any(), any()))
+            .thenReturn(Collections.emptyList());
+        when(reservationRepository.findOpenByMaterialAndPlant(eq("HJ-M05"), eq("QINGDAO"), any()))
+            .thenReturn(Collections.emptyList());
+        atpCalculator.calculateATP(request);
+
+        // When: 提交前发布于加载完成之前的变更，无法判断加载是否已读到
+        ledgerService.onInventoryChanged(InventoryChangeEvent.builder()
+            .materialCode("HJ-M05").plantCode("QINGDAO")
+            .changeQty(BigDecimal.valueOf(50))
+            .occurredAt(LocalDateTime.now().minusSeconds(1))
+            .build());
+
+        // Then: 台账被丢弃，重新加载
+        atpCalculator.calculateATP(request);
+        verify(balanceRepository, times(2)).findByMaterialCodeAndPlantCode("HJ-M05", "QINGDAO");
+
+        // When: 加载完成之后发生的变更
+        ledgerService.onInventoryChanged(InventoryChangeEvent.builder()
+            .materialCode("HJ-M05").plantCode("QINGDAO")
+            .changeQty(BigDecimal.valueOf(50))
+            .occurredAt(LocalDateTime.now().plusSeconds(1))
+            .build());
+
+        // Then: 增量计入，不再访问数据库
+        ATPCalculator.ATPResult result = atpCalculator.calculateATP(request);
+        assertEquals(0, BigDecimal.valueOf(150).compareTo(result.getAtpQty()));
+        verify(balanceRepository, times(2)).findByMaterialCodeAndPlantCode("HJ-M05", "QINGDAO");
+    }
 }
@@ -2,6 +2,8 @@ package com.hjscm.service;
 
 import com.hjscm.dto.*;
 import com.hjscm.entity.*;
+import com.hjscm.service.mrp.BomExplosionCache;
+import com.hjscm.service.mrp.BomGraphSnapshot;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
@@ -34,6 +36,8 @@ class MrpEngineServiceTest {
     private com.hjscm.repository.BomRepository bomRepository;
     @Mock
     private com.hjscm.repository.ProcurementSuggestionRepository procurementRepository;
+    @Mock
+    private BomGraphService bomGraphService;
     
     @InjectMocks
     private MRPEngineService mrpEngine;
@@ -47,8 +51,10 @@ class MrpEngineServiceTest {
             .usagePerParent(BigDecimal.ONE)
             .yieldRate(BigDecimal.ONE)
             .build();
-        when(bomRepository.findByParentItemAndActive("HJ-LA23", true))
-            .thenReturn(List.of(bomLine));
+        when(bomGraphService.current())
+            .thenReturn(BomGraphSnapshot.build(1L, List.of(bomLine)));
+        when(bomGraphService.explosionCache(any()))
+            .thenAnswer(invocation -> new BomExplosionCache(invocation.getArgument(0)));
         
         // When
         List<MrpRequirement> result = mrpEngine.explodeBom(
@@ -77,10 +83,10 @@ class MrpEngineServiceTest {
             .yieldRate(BigDecimal.ONE)
             .build());
         
-        when(bomRepository.findByParentItemAndActive("HJ-LA23", true))
-            .thenReturn(List.of(bomLines.get(0)));
-        when(bomRepository.findByParentItemAndActive("HJ-M05", true))
-            .thenReturn(List.of(bomLines.get(1)));
+        when(bomGraphService.current())
+            .thenReturn(BomGraphSnapshot.build(1L, bomLines));
+        when(bomGraphService.explosionCache(any()))
+            .thenAnswer(invocation -> new BomExplosionCache(invocation.getArgument(0)));
         
         // When
         List<MrpRequirement> result = mrpEngine.explodeBom(
@@ -101,6 +107,8 @@ class MrpEngineServiceTest {
             .leadTime(2)
             .build();
         
+        when(bomGraphService.current())
+            .thenReturn(BomGraphSnapshot.build(1L, List.of()));
         when(inventoryRepository.findByMaterialCodeAndAsOfDate(eq("HJ-M05"), any()))
             .thenReturn(Optional.of(InventoryBalance.builder()
                 .quantity(BigDecimal.valueOf(30))
@@ -0,0 +1,99 @@
+package com.hjscm.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.hjscm.dto.*;
+import com.hjscm.repository.MrpResultJdbcRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.io.ByteArrayOutputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * MRP 结果流式导出单元测试
+ */
+@ExtendWith(MockitoExtension.class)
+class MrpExportServiceTest {
+
+    @Mock
+    private MrpResultJdbcRepository resultJdbcRepository;
+
+    private MrpExportService exportService;
+
+    @BeforeEach
+    void setUp() {
+        ObjectMapper objectMapper = new ObjectMapper().registerModule(new JavaTimeModule())
+            .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+        exportService = new MrpExportService(resultJdbcRepository, objectMapper);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void givenSuggestions(ProcurementSuggestion... rows) {
+        doAnswer(invocation -> {
+            Consumer<ProcurementSuggestion> sink = invocation.getArgument(4);
+            for (ProcurementSuggestion row : rows) {
+                sink.accept(row);
+            }
+            return null;
+        }).when(resultJdbcRepository).streamSuggestions(eq("RUN-1"), eq("HIGH"), eq("SUP-A"), anyInt(), any());
+    }
+
+    private static ProcurementSuggestion suggestion(String itemCode, String itemName) {
+        return ProcurementSuggestion.builder()
+            .itemCode(itemCode)
+            .itemName(itemName)
+            .suggestedQty(new BigDecimal("1E+3"))
+            .requiredDate(LocalDate.of(2026, 1, 15))
+            .urgencyLevel("HIGH")
+            .supplierCode("SUP-A")
+            .build();
+    }
+
+    @Test
+    void testCsvExportEscapesAndFilters() throws Exception {
+        // Given
+        givenSuggestions(suggestion("P1", "Bolt, M6"), suggestion("P2", "Nut \"hex\""));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        // When
+        long rows = exportService.export("RUN-1", MrpExportService.DATASET_SUGGESTIONS,
+            MrpExportService.FORMAT_CSV, "HIGH", "SUP-A", out);
+
+        // Then
+        String[] lines = out.toString(StandardCharsets.UTF_8).split("\r\n");
+        assertEquals(2, rows);
+        assertEquals(3, lines.length);
+        assertTrue(lines[0].startsWith("itemCode,itemName,plantCode,suggestedQty"));
+        assertTrue(lines[1].startsWith("P1,\"Bolt, M6\",,1000,,2026-01-15,HIGH,SUP-A"));
+        assertTrue(lines[2].startsWith("P2,\"Nut \"\"hex\"\"\","));
+    }
+
+    @Test
+    void testNdjsonExportOneObjectPerLine() throws Exception {
+        // Given
+        givenSuggestions(suggestion("P1", "Bolt"), suggestion("P2", "Nut"));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        // When
+        exportService.export("RUN-1", MrpExportService.DATASET_SUGGESTIONS,
+            MrpExportService.FORMAT_NDJSON, "HIGH", "SUP-A", out);
+
+        // Then
+        String[] lines = out.toString(StandardCharsets.UTF_8).split("\n");
+        assertEquals(2, lines.length);
+        assertTrue(lines[0].startsWith("{\"itemCode\":\"P1\""));
+        assertTrue(lines[1].contains("\"requiredDate\":\"2026-01-15\""));
+    }
+}
@@ -0,0 +1,91 @@
+package com.hjscm.service;
+
+import com.hjscm.dto.*;
+import com.hjscm.entity.BomLine;
+import com.hjscm.service.mrp.BomGraphSnapshot;
+import com.hjscm.service.mrp.MrpRunCacheStore;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.beans.factory.ObjectProvider;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * MRP 运行缓存单元测试
+ */
+@ExtendWith(MockitoExtension.class)
+class MrpRunCacheServiceTest {
+
+    @Mock
+    private ObjectProvider<MrpRunCacheStore> storeProvider;
+
+    private MrpRunCacheService cacheService;
+
+    private final MrpRunRequest request = MrpRunRequest.builder()
+        .runMode("FORECAST")
+        .planFromDate(LocalDate.of(2026, 1, 1))
+        .planToDate(LocalDate.of(2026, 3, 31))
+        .build();
+    private final List<MpsRequirement> mps = List.of(MpsRequirement.builder()
+        .id("MPS-001").materialCode("FG").quantity(100).build());
+
+    @BeforeEach
+    void setUp() {
+        when(storeProvider.getIfAvailable()).thenReturn(null);
+        cacheService = new MrpRunCacheService(storeProvider);
+    }
+
+    private static BomGraphSnapshot graph(long version, int usage) {
+        return BomGraphSnapshot.build(version, List.of(BomLine.builder()
+            .parentItem("FG").childItem("P1").usagePerParent(BigDecimal.valueOf(usage)).active(true).build()));
+    }
+
+    private static MrpRunResponse response(String runId) {
+        return MrpRunResponse.builder().runId(runId).status("COMPLETED").build();
+    }
+
+    @Test
+    void testFingerprintFollowsInputVersions() {
+        // When
+        String base = cacheService.fingerprint(request, mps, graph(1L, 2), "inv:1");
+        String rebuiltSameContent = cacheService.fingerprint(request, mps, graph(2L, 2), "inv:1");
+        String bomChanged = cacheService.fingerprint(request, mps, graph(3L, 3), "inv:1");
+        String inventoryChanged = cacheService.fingerprint(request, mps, graph(1L, 2), "inv:2");
+
+        // Then: 快照版本号不同但内容相同时指纹不变
+        assertEquals(base, rebuiltSameContent);
+        assertNotEquals(base, bomChanged);
+        assertNotEquals(base, inventoryChanged);
+    }
+
+    @Test
+    void testHitAndLruEviction() {
+        // Given
+        for (int i = 1; i <= 33; i++) {
+            cacheService.put("fp-" + i, response("RUN-" + i), new KitCheckResult(), List.of());
+        }
+
+        // Then: 默认 32 条上限，最早的条目被淘汰
+        assertFalse(cacheService.get("fp-1").isPresent());
+        assertEquals("RUN-33", cacheService.get("fp-33").get().getResponse().getRunId());
+        assertEquals("fp-2", cacheService.findByRunId("RUN-2").get().getFingerprint());
+        assertEquals(32, cacheService.size());
+        assertEquals(1, cacheService.getHitCount());
+        assertEquals(1, cacheService.getMissCount());
+    }
+
+    @Test
+    void testFailedRunNotCached() {
+        cacheService.put("fp", MrpRunResponse.builder().runId("RUN-X").status("FAILED").build(),
+            null, null);
+        assertFalse(cacheService.get("fp").isPresent());
+    }
+}
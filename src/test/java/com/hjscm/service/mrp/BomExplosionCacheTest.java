@@ -0,0 +1,107 @@
+package com.hjscm.service.mrp;
+
+import com.hjscm.entity.BomLine;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * BOM 展开记忆化缓存单元测试
+ */
+class BomExplosionCacheTest {
+
+    private static BomLine line(String parent, String child, int usage) {
+        return BomLine.builder()
+            .parentItem(parent)
+            .childItem(child)
+            .usagePerParent(BigDecimal.valueOf(usage))
+            .active(true)
+            .build();
+    }
+
+    @Test
+    void testSharedSubAssemblyComputedOnce() {
+        // Given: 两个成品共用子装配 SA，SA 下有两个尾项
+        BomGraphSnapshot graph = BomGraphSnapshot.build(1L, List.of(
+            line("FG-1", "SA", 2),
+            line("FG-2", "SA", 3),
+            line("SA", "P1", 4),
+            line("SA", "P2", 1)));
+        BomExplosionCache cache = new BomExplosionCache(graph);
+
+        // When
+        BomExplosionCache.ExplosionVector fg1 = cache.vectorOf(graph.indexOf("FG-1"), 10);
+        long missesAfterFirst = cache.getMissCount();
+        BomExplosionCache.ExplosionVector fg2 = cache.vectorOf(graph.indexOf("FG-2"), 10);
+
+        // Then: 第二个成品只新算自身向量，SA 命中缓存
+        assertEquals(missesAfterFirst + 1, cache.getMissCount());
+        assertEquals(2, fg1.size());
+        assertEquals("P1", graph.itemCode(fg1.leafAt(0)));
+        assertEquals(2, fg1.levelAt(0));
+        assertEquals(MrpQuantity.factorOf(BigDecimal.valueOf(8)), fg1.factorAt(0));
+        assertEquals(MrpQuantity.factorOf(BigDecimal.valueOf(12)), fg2.factorAt(0));
+        assertEquals(MrpQuantity.factorOf(BigDecimal.valueOf(3)), fg2.factorAt(1));
+    }
+
+    @Test
+    void testPathsToSameLeafMerged() {
+        // Given: P1 既是 FG 的直接子项，又经 SA 到达，层级不同分开保留
+        BomGraphSnapshot graph = BomGraphSnapshot.build(1L, List.of(
+            line("FG", "SA-1", 1),
+            line("FG", "SA-2", 1),
+            line("SA-1", "P1", 2),
+            line("SA-2", "P1", 3),
+            line("FG", "P1", 5)));
+        BomExplosionCache cache = new BomExplosionCache(graph);
+
+        // When
+        BomExplosionCache.ExplosionVector vector = cache.vectorOf(graph.indexOf("FG"), 10);
+
+        // Then
+        Map<Integer, Long> byLevel = new HashMap<>();
+        for (int i = 0; i < vector.size(); i++) {
+            assertEquals("P1", graph.itemCode(vector.leafAt(i)));
+            byLevel.put(vector.levelAt(i), vector.factorAt(i));
+        }
+        assertEquals(2, byLevel.size());
+        assertEquals(MrpQuantity.factorOf(BigDecimal.valueOf(5)), byLevel.get(1));
+        assertEquals(MrpQuantity.factorOf(BigDecimal.valueOf(5)), byLevel.get(2));
+    }
+
+    @Test
+    void testMaxLevelTruncates() {
+        // Given
+        BomGraphSnapshot graph = BomGraphSnapshot.build(1L, List.of(
+            line("FG", "SA", 2),
+            line("SA", "P1", 3)));
+        BomExplosionCache cache = new BomExplosionCache(graph);
+
+        // When: 只展开一层，SA 视为尾项
+        BomExplosionCache.ExplosionVector vector = cache.vectorOf(graph.indexOf("FG"), 1);
+
+        // Then
+        assertEquals(1, vector.size());
+        assertEquals("SA", graph.itemCode(vector.leafAt(0)));
+        assertEquals(MrpQuantity.factorOf(BigDecimal.valueOf(2)), vector.factorAt(0));
+    }
+
+    @Test
+    void testCycleDetected() {
+        // Given: A → B → C → A
+        BomGraphSnapshot graph = BomGraphSnapshot.build(1L, List.of(
+            line("FG", "A", 1),
+            line("A", "B", 1),
+            line("B", "C", 1),
+            line("C", "A", 1)));
+        BomExplosionCache cache = new BomExplosionCache(graph);
+
+        // When / Then
+        IllegalStateException e = assertThrows(IllegalStateException.class,
+            () -> cache.vectorOf(graph.indexOf("FG"), 99));
+        assertTrue(e.getMessage().contains("A -> B -> C -> A"));
+    }
+}
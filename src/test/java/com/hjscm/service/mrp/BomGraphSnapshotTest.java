@@ -0,0 +1,116 @@
+package com.hjscm.service.mrp;
+
+import com.hjscm.entity.BomLine;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * BOM 图快照单元测试
+ */
+class BomGraphSnapshotTest {
+
+    private static BomLine line(String parent, String child, int usage) {
+        return BomLine.builder()
+            .parentItem(parent)
+            .childItem(child)
+            .usagePerParent(BigDecimal.valueOf(usage))
+            .active(true)
+            .build();
+    }
+
+    @Test
+    void testAdjacency() {
+        // Given
+        BomGraphSnapshot graph = BomGraphSnapshot.build(1L, List.of(
+            line("HJ-LA23", "HJ-M05", 1),
+            line("HJ-LA23", "HJ-SP03", 4)));
+
+        // Then
+        int root = graph.indexOf("HJ-LA23");
+        assertEquals(3, graph.size());
+        assertEquals(2, graph.edgeCount());
+        assertTrue(graph.hasChildren(root));
+        assertEquals(-1, graph.indexOf("UNKNOWN"));
+
+        int e = graph.childStart(root) + 1;
+        assertEquals("HJ-SP03", graph.itemCode(graph.childAt(e)));
+        assertEquals(0, BigDecimal.valueOf(4).compareTo(graph.usageAt(e)));
+        assertEquals(0, BigDecimal.ONE.compareTo(graph.yieldRateAt(e)));
+    }
+
+    @Test
+    void testLowLevelCode_SharedComponentAtDeepestLevel() {
+        // Given: SP03 既是 LA23 的直接子件，也是 M05 的子件
+        BomGraphSnapshot graph = BomGraphSnapshot.build(1L, List.of(
+            line("HJ-LA23", "HJ-SP03", 2),
+            line("HJ-LA23", "HJ-M05", 1),
+            line("HJ-M05", "HJ-SP03", 1)));
+
+        // Then
+        assertEquals(0, graph.lowLevelCode(graph.indexOf("HJ-LA23")));
+        assertEquals(1, graph.lowLevelCode(graph.indexOf("HJ-M05")));
+        assertEquals(2, graph.lowLevelCode(graph.indexOf("HJ-SP03")));
+        assertEquals(2, graph.maxLowLevelCode());
+
+        int[] order = graph.itemsInLowLevelCodeOrder();
+        for (int k = 1; k < order.length; k++) {
+            assertTrue(graph.lowLevelCode(order[k - 1]) <= graph.lowLevelCode(order[k]));
+        }
+        assertFalse(graph.hasCycle());
+    }
+
+    @Test
+    void testConnectedComponents() {
+        // Given: LA23 与 LA30 共用 SP03，M15 独立成族
+        BomGraphSnapshot graph = BomGraphSnapshot.build(1L, List.of(
+            line("HJ-LA23", "HJ-SP03", 2),
+            line("HJ-LA30", "HJ-SP03", 1),
+            line("HJ-M15", "HJ-GB01", 1)));
+
+        // Then
+        assertEquals(2, graph.componentCount());
+        int family = graph.componentOf(graph.indexOf("HJ-LA23"));
+        assertEquals(family, graph.componentOf(graph.indexOf("HJ-LA30")));
+        assertEquals(family, graph.componentOf(graph.indexOf("HJ-SP03")));
+        assertNotEquals(family, graph.componentOf(graph.indexOf("HJ-M15")));
+
+        int[] items = graph.componentItems(family);
+        assertEquals(3, items.length);
+        assertEquals("HJ-SP03", graph.itemCode(items[2]));
+    }
+
+    @Test
+    void testCycleDetection() {
+        // Given
+        BomGraphSnapshot graph = BomGraphSnapshot.build(1L, List.of(
+            line("HJ-LA23", "HJ-M05", 1),
+            line("HJ-M05", "HJ-GB01", 1),
+            line("HJ-GB01", "HJ-M05", 1)));
+
+        // Then
+        assertTrue(graph.hasCycle());
+        assertEquals(Set.of("HJ-M05", "HJ-GB01"), new HashSet<>(graph.cyclicItemCodes()));
+    }
+
+    @Test
+    void testCycleConfinedToComponent() {
+        // Given: 两个互不相连的产品族，仅 HJ-LA23 一族有循环引用
+        BomGraphSnapshot graph = BomGraphSnapshot.build(1L, List.of(
+            line("HJ-LA23", "HJ-M05", 1),
+            line("HJ-M05", "HJ-GB01", 1),
+            line("HJ-GB01", "HJ-M05", 1),
+            line("HJ-LA24", "HJ-M06", 1)));
+
+        // Then: 循环只标记所在分量
+        int cyclic = graph.componentOf(graph.indexOf("HJ-LA23"));
+        int acyclic = graph.componentOf(graph.indexOf("HJ-LA24"));
+        assertTrue(graph.hasCycle(cyclic));
+        assertFalse(graph.hasCycle(acyclic));
+        assertEquals(Set.of("HJ-M05", "HJ-GB01"), new HashSet<>(graph.cyclicItemCodes(cyclic)));
+        assertTrue(graph.cyclicItemCodes(acyclic).isEmpty());
+    }
+}
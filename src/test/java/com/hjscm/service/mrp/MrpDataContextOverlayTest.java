@@ -0,0 +1,65 @@
+package com.hjscm.service.mrp;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * MRP 数据上下文覆盖层（假设分析）单元测试
+ */
+class MrpDataContextOverlayTest {
+
+    private static final LocalDate FROM = LocalDate.of(2026, 1, 1);
+
+    private static MrpDataContext baseContext() {
+        return MrpDataContext.builder(List.of("HJ-M05", "HJ-M06"), FROM)
+            .onHand("HJ-M05", BigDecimal.valueOf(100))
+            .available("HJ-M05", BigDecimal.valueOf(80))
+            .addInTransit("HJ-M05", FROM.plusDays(5), BigDecimal.valueOf(30))
+            .addInTransit("HJ-M05", FROM.plusDays(20), BigDecimal.valueOf(40))
+            .build();
+    }
+
+    @Test
+    void testAdjustInventory_BaseUnchanged() {
+        // Given
+        MrpDataContext base = baseContext();
+
+        // When
+        MrpDataContext.Overlay overlay = base.overlay();
+        assertTrue(overlay.adjustInventory("HJ-M05", MrpQuantity.of(-50)));
+        assertFalse(overlay.adjustInventory("UNKNOWN", MrpQuantity.of(10)));
+        MrpDataContext scenario = overlay.build();
+
+        // Then
+        assertEquals(MrpQuantity.of(50), scenario.onHandQty("HJ-M05"));
+        assertEquals(MrpQuantity.of(30), scenario.availableQty("HJ-M05"));
+        assertEquals(MrpQuantity.of(100), base.onHandQty("HJ-M05"));
+        assertEquals(MrpQuantity.of(80), base.availableQty("HJ-M05"));
+    }
+
+    @Test
+    void testDelayInTransit_PastHorizonLeavesInTransitTotal() {
+        // Given: 计划截止日为第 10 天
+        MrpDataContext base = baseContext();
+        LocalDate horizonEnd = FROM.plusDays(10);
+
+        // When: 第 5 天的到货推迟 7 天，超出计划期
+        MrpDataContext.Overlay overlay = base.overlay();
+        int affected = overlay.delayInTransit("HJ-M05", FROM.plusDays(5), 7, horizonEnd);
+        MrpDataContext scenario = overlay.build();
+
+        // Then
+        assertEquals(1, affected);
+        int i = scenario.indexOf("HJ-M05");
+        int k = scenario.receiptStart(i);
+        assertEquals(FROM.plusDays(12), scenario.receiptDate(k));
+        assertEquals(FROM.plusDays(5), base.receiptDate(k));
+        assertEquals(MrpQuantity.of(40), scenario.inTransitQty("HJ-M05"));
+        assertEquals(MrpQuantity.of(70), base.inTransitQty("HJ-M05"));
+    }
+}
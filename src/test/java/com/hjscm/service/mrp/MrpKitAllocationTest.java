@@ -0,0 +1,76 @@
+package com.hjscm.service.mrp;
+
+import com.hjscm.dto.*;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 按优先级齐套分配单元测试
+ */
+class MrpKitAllocationTest {
+
+    private static final LocalDate FROM = LocalDate.of(2026, 1, 1);
+
+    private static MpsRequirement mps(String id, String priority, int dueInDays) {
+        return MpsRequirement.builder()
+            .id(id)
+            .materialCode("FG-" + id)
+            .quantity(1)
+            .priority(priority)
+            .dueDate(FROM.plusDays(dueInDays))
+            .build();
+    }
+
+    @Test
+    void testHigherPriorityAllocatedFirst() {
+        // Given: 三个订单各需 P1 60，库存仅 100；LOW 订单最早到期但最后分配
+        List<MpsRequirement> mpsList = List.of(
+            mps("A", "LOW", 1),
+            mps("B", "HIGH", 10),
+            mps("C", "HIGH", 5));
+        MrpPegging pegging = new MrpPegging.Builder(mpsList)
+            .add(0, "P1", MrpQuantity.of(60))
+            .add(1, "P1", MrpQuantity.of(60))
+            .add(1, "P2", MrpQuantity.of(10))
+            .add(2, "P1", MrpQuantity.of(60))
+            .build();
+        MrpDataContext context = MrpDataContext.builder(List.of("P1", "P2"), FROM)
+            .onHand("P1", BigDecimal.valueOf(80))
+            .addInTransit("P1", BigDecimal.valueOf(20))
+            .onHand("P2", BigDecimal.valueOf(50))
+            .build();
+        Map<String, MrpDataContext> contexts = new HashMap<>();
+        contexts.put(null, context);
+
+        // When
+        List<KitOrderAllocation> allocations = MrpKitAllocation.allocate(pegging, contexts);
+
+        // Then: C（HIGH，交期早）→ B（HIGH）→ A（LOW）
+        assertEquals(List.of("C", "B", "A"), allocations.stream().map(KitOrderAllocation::getMpsId).toList());
+        assertTrue(allocations.get(0).getKitComplete());
+        assertNull(allocations.get(0).getBindingComponent());
+
+        KitOrderAllocation b = allocations.get(1);
+        assertFalse(b.getKitComplete());
+        assertEquals("P1", b.getBindingComponent());
+        assertEquals(40.0 / 60, b.getCompleteness(), 1e-9);
+        assertEquals(1, b.getShortComponentCount());
+
+        KitOrderAllocation a = allocations.get(2);
+        assertEquals(0.0, a.getCompleteness());
+        assertEquals(0, a.getBindingAllocatedQty().compareTo(BigDecimal.ZERO));
+    }
+
+    @Test
+    void testPriorityRank() {
+        assertTrue(MrpKitAllocation.priorityRank("URGENT") < MrpKitAllocation.priorityRank("HIGH"));
+        assertTrue(MrpKitAllocation.priorityRank("high") < MrpKitAllocation.priorityRank("MEDIUM"));
+        assertEquals(MrpKitAllocation.priorityRank("MEDIUM"), MrpKitAllocation.priorityRank(null));
+        assertTrue(MrpKitAllocation.priorityRank("MEDIUM") < MrpKitAllocation.priorityRank("LOW"));
+    }
+}
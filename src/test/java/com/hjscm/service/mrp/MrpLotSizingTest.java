@@ -0,0 +1,97 @@
+package com.hjscm.service.mrp;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * MRP 批量计算单元测试
+ */
+class MrpLotSizingTest {
+
+    private static long qty(long units) {
+        return MrpQuantity.of(units);
+    }
+
+    private static MrpLotSizing.Batch weekly(MrpLotSizePolicy policy, long... demand) {
+        MrpLotSizing.Batch batch = new MrpLotSizing.Batch(1, demand.length);
+        batch.addItem(policy);
+        for (int t = 0; t < demand.length; t++) {
+            batch.addPeriod(t * 7, qty(demand[t]));
+        }
+        return batch;
+    }
+
+    @Test
+    void testLotForLot_MoqSurplusCoversNextPeriod() {
+        // Given: MOQ 100，首期只缺 30，多订的 70 覆盖第二期的 50
+        MrpLotSizing.Batch batch = weekly(MrpLotSizePolicy.lotForLot(100), 30, 50, 40);
+
+        // When
+        long[] orders = MrpLotSizing.plan(batch);
+
+        // Then
+        assertArrayEquals(new long[] {qty(100), 0, qty(100)}, orders);
+    }
+
+    @Test
+    void testFixedOrderQuantity() {
+        // Given: 固定批量 120，无 MOQ
+        MrpLotSizePolicy policy = MrpLotSizePolicy.of("FOQ", 0, null, 120, null, null, null);
+        MrpLotSizing.Batch batch = weekly(policy, 100, 100, 30);
+
+        // When
+        long[] orders = MrpLotSizing.plan(batch);
+
+        // Then: 期初 0 → 订 120 剩 20；缺 80 → 订 120 剩 40；够用
+        assertArrayEquals(new long[] {qty(120), qty(120), 0}, orders);
+    }
+
+    @Test
+    void testPeriodOrderQuantity() {
+        // Given: 每次合并 2 期
+        MrpLotSizePolicy policy = MrpLotSizePolicy.of("POQ", 0, 25, null, null, null, 2);
+        MrpLotSizing.Batch batch = weekly(policy, 40, 30, 20, 10, 5);
+
+        // When
+        long[] orders = MrpLotSizing.plan(batch);
+
+        // Then: 70 → 75（包装 25）多 5，30 扣除后订 25，末期 5 取整为 25
+        assertArrayEquals(new long[] {qty(75), 0, qty(25), 0, qty(25)}, orders);
+    }
+
+    @Test
+    void testWagnerWhitin_TradesOrderingAgainstHolding() {
+        // 持有成本低：合并为一笔
+        MrpLotSizePolicy cheapHolding = MrpLotSizePolicy.of("WW", 0, null, null,
+            BigDecimal.valueOf(50), new BigDecimal("0.01"), null);
+        assertArrayEquals(new long[] {qty(300), 0, 0},
+            MrpLotSizing.plan(weekly(cheapHolding, 100, 100, 100)));
+
+        // 持有成本高：逐期订货
+        MrpLotSizePolicy costlyHolding = MrpLotSizePolicy.of("WW", 0, null, null,
+            BigDecimal.valueOf(50), BigDecimal.ONE, null);
+        assertArrayEquals(new long[] {qty(100), qty(100), qty(100)},
+            MrpLotSizing.plan(weekly(costlyHolding, 100, 100, 100)));
+    }
+
+    @Test
+    void testBatchMixesRules() {
+        // Given: 同一批内不同规则的物料互不影响
+        MrpLotSizing.Batch batch = new MrpLotSizing.Batch(2, 4);
+        batch.addItem(MrpLotSizePolicy.of("FOQ", 0, null, 500, null, null, null));
+        batch.addPeriod(0, qty(10));
+        batch.addPeriod(7, qty(10));
+        batch.addItem(MrpLotSizePolicy.lotForLot(0));
+        batch.addPeriod(0, qty(10));
+        batch.addPeriod(7, qty(10));
+
+        // When
+        long[] orders = MrpLotSizing.plan(batch);
+
+        // Then
+        assertArrayEquals(new long[] {qty(500), 0, qty(10), qty(10)}, orders);
+    }
+}
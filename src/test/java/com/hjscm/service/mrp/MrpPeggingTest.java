@@ -0,0 +1,88 @@
+package com.hjscm.service.mrp;
+
+import com.hjscm.dto.*;
+import com.hjscm.entity.BomLine;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 多级追溯索引单元测试
+ */
+class MrpPeggingTest {
+
+    private static BomLine line(String parent, String child, int usage) {
+        return BomLine.builder()
+            .parentItem(parent)
+            .childItem(child)
+            .usagePerParent(BigDecimal.valueOf(usage))
+            .active(true)
+            .build();
+    }
+
+    private static MpsRequirement mps(String id, String materialCode, int quantity) {
+        return MpsRequirement.builder()
+            .id(id)
+            .materialCode(materialCode)
+            .quantity(quantity)
+            .build();
+    }
+
+    @Test
+    void testPeggingBothDirections() {
+        // Given: FG-1 / FG-2 共用子装配 SA，P1 另作 FG-1 直接子项；STANDALONE 不在 BOM 中
+        BomGraphSnapshot graph = BomGraphSnapshot.build(1L, List.of(
+            line("FG-1", "SA", 2),
+            line("FG-1", "P1", 1),
+            line("FG-2", "SA", 1),
+            line("SA", "P1", 3),
+            line("SA", "P2", 1)));
+        List<MpsRequirement> mpsList = List.of(
+            mps("MPS-1", "FG-1", 10),
+            mps("MPS-2", "FG-2", 5),
+            mps("MPS-3", "STANDALONE", 7));
+
+        // When
+        MrpPegging pegging = MrpPegging.build(graph, new BomExplosionCache(graph), mpsList, Integer.MAX_VALUE);
+
+        // Then: 组件 → MPS（P1: MPS-1 经两条路径合并为 10×2×3 + 10 = 70，MPS-2 为 15）
+        int p1 = pegging.componentIndex("P1");
+        assertEquals(2, pegging.mpsEnd(p1) - pegging.mpsStart(p1));
+        assertEquals(0, pegging.mpsAt(pegging.mpsStart(p1)));
+        assertEquals(MrpQuantity.of(70), pegging.mpsQtyAt(pegging.mpsStart(p1)));
+        assertEquals(1, pegging.mpsAt(pegging.mpsStart(p1) + 1));
+        assertEquals(MrpQuantity.of(15), pegging.mpsQtyAt(pegging.mpsStart(p1) + 1));
+        assertEquals(MrpQuantity.of(85), pegging.totalQty(p1));
+
+        // MPS → 组件
+        Map<String, Long> mps1 = new HashMap<>();
+        for (int k = pegging.componentStart(0); k < pegging.componentEnd(0); k++) {
+            mps1.put(pegging.componentCode(pegging.componentAt(k)), pegging.componentQtyAt(k));
+        }
+        assertEquals(Map.of("P1", MrpQuantity.of(70), "P2", MrpQuantity.of(20)), mps1);
+        assertEquals(1, pegging.componentEnd(2) - pegging.componentStart(2));
+        assertEquals("STANDALONE", pegging.componentCode(pegging.componentAt(pegging.componentStart(2))));
+
+        assertEquals(-1, pegging.componentIndex("UNKNOWN"));
+        assertEquals(5, pegging.pegCount());
+    }
+
+    @Test
+    void testEmptyMpsInBetween() {
+        // Given: 中间 MPS 无组件
+        MrpPegging pegging = new MrpPegging.Builder(List.of(
+                mps("A", "X", 1), mps("B", "Y", 1), mps("C", "Z", 1)))
+            .add(0, "P1", MrpQuantity.of(1))
+            .add(2, "P1", MrpQuantity.of(2))
+            .build();
+
+        // Then
+        assertEquals(1, pegging.componentEnd(0) - pegging.componentStart(0));
+        assertEquals(0, pegging.componentEnd(1) - pegging.componentStart(1));
+        assertEquals(1, pegging.componentEnd(2) - pegging.componentStart(2));
+        assertEquals(MrpQuantity.of(3), pegging.totalQty(pegging.componentIndex("P1")));
+    }
+}
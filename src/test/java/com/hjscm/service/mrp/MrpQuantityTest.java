@@ -0,0 +1,47 @@
+package com.hjscm.service.mrp;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * MRP 定点数量单元测试
+ */
+class MrpQuantityTest {
+
+    @Test
+    void testApplyFactor_MatchesBigDecimalRounding() {
+        // Given: 原实现 qty × usage × yield 后 setScale(4, HALF_UP)
+        BigDecimal qty = new BigDecimal("1234.5678");
+        BigDecimal usage = new BigDecimal("2.5");
+        BigDecimal yieldRate = new BigDecimal("0.97");
+        BigDecimal expected = qty.multiply(usage).multiply(yieldRate).setScale(4, RoundingMode.HALF_UP);
+
+        // When
+        long result = MrpQuantity.applyFactor(MrpQuantity.of(qty), MrpQuantity.factorOf(usage.multiply(yieldRate)));
+
+        // Then
+        assertEquals(0, expected.compareTo(MrpQuantity.toBigDecimal(result)));
+    }
+
+    @Test
+    void testApplyFactor_WideProductFallsBackExactly() {
+        // 中间积超出 long，但结果仍在范围内
+        long qty = MrpQuantity.of(new BigDecimal("50000000"));
+        long factor = MrpQuantity.factorOf(new BigDecimal("3.25"));
+
+        assertEquals(0, new BigDecimal("162500000.0000")
+            .compareTo(MrpQuantity.toBigDecimal(MrpQuantity.applyFactor(qty, factor))));
+    }
+
+    @Test
+    void testOverflowDetected() {
+        assertThrows(ArithmeticException.class, () -> MrpQuantity.add(Long.MAX_VALUE - 1, 2));
+        assertThrows(ArithmeticException.class, () -> MrpQuantity.of(new BigDecimal("1e16")));
+        assertThrows(ArithmeticException.class,
+            () -> MrpQuantity.applyFactor(Long.MAX_VALUE / 2, MrpQuantity.factorOf(new BigDecimal("10"))));
+    }
+}
@@ -0,0 +1,62 @@
+package com.hjscm.service.mrp;
+
+import com.hjscm.dto.*;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * MRP 运行指标单元测试
+ */
+class MrpRunMetricsTest {
+
+    @Test
+    void testTimedRunnerRecordsPhasesInOrder() {
+        // Given
+        MrpRunMetrics metrics = new MrpRunMetrics();
+        MrpPhaseRunner runner = metrics.timed(MrpPhaseRunner.DIRECT);
+
+        // When: 同名阶段累加，失败的阶段同样计时
+        runner.run(MrpRunProgress.PHASE_PREPARE, () -> null);
+        runner.run(MrpRunProgress.PHASE_NET, () -> null);
+        runner.run(MrpRunProgress.PHASE_PREPARE, () -> null);
+        assertThrows(IllegalStateException.class, () -> runner.run(MrpRunProgress.PHASE_SAVE, () -> {
+            throw new IllegalStateException("db down");
+        }));
+
+        // Then
+        assertEquals(List.of(MrpRunProgress.PHASE_PREPARE, MrpRunProgress.PHASE_NET, MrpRunProgress.PHASE_SAVE),
+            new ArrayList<>(metrics.getPhaseNanos().keySet()));
+    }
+
+    @Test
+    void testRecordExplosionCounters() {
+        // Given: A 展开 3 个组件，B 展开 1 个
+        List<MpsRequirement> mpsList = List.of(
+            MpsRequirement.builder().id("A").materialCode("FG-A").quantity(1).build(),
+            MpsRequirement.builder().id("B").materialCode("FG-B").quantity(1).build());
+        MrpPegging pegging = new MrpPegging.Builder(mpsList)
+            .add(0, "P1", MrpQuantity.of(1))
+            .add(0, "P2", MrpQuantity.of(1))
+            .add(0, "P3", MrpQuantity.of(1))
+            .add(1, "P1", MrpQuantity.of(1))
+            .build();
+        MrpRunMetrics metrics = new MrpRunMetrics();
+
+        // When
+        metrics.recordExplosion(pegging);
+        metrics.addDbCalls(5);
+        metrics.addExplosionCache(7, 2);
+
+        // Then
+        Map<String, Long> counters = metrics.getCounters();
+        assertEquals(4L, counters.get(MrpRunMetrics.ITEMS_EXPLODED));
+        assertEquals(3L, counters.get(MrpRunMetrics.MAX_FAN_OUT));
+        assertEquals(5L, counters.get(MrpRunMetrics.DB_CALLS));
+        assertEquals(7L, counters.get(MrpRunMetrics.EXPLOSION_CACHE_HITS));
+        assertEquals(2L, counters.get(MrpRunMetrics.EXPLOSION_CACHE_MISSES));
+        assertEquals(5, counters.size());
+    }
+}
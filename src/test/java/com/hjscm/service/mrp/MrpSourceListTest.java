@@ -0,0 +1,68 @@
+package com.hjscm.service.mrp;
+
+import com.hjscm.dto.*;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 供应商货源清单索引单元测试
+ */
+class MrpSourceListTest {
+
+    private static SupplierInfo supplier(String code, int moq, int leadTime) {
+        return SupplierInfo.builder()
+            .supplierCode(code)
+            .moq(BigDecimal.valueOf(moq))
+            .leadTime(leadTime)
+            .build();
+    }
+
+    @Test
+    void testSelectPreferredSupplier() {
+        // Given: 每个物料一个首选供应商（mrp_constraints.preferred_supplier_id）
+        MrpSourceList sourceList = MrpSourceList.builder()
+            .add("HJ-M05", supplier("SUP-A", 100, 7))
+            .add("HJ-M06", supplier("SUP-B", 200, 14))
+            .build();
+
+        // Then
+        assertEquals("SUP-A", sourceList.select("HJ-M05").getSupplierCode());
+        assertEquals("SUP-B", sourceList.select("HJ-M06").getSupplierCode());
+        assertEquals(List.of("SUP-A"), sourceList.suppliersOf("HJ-M05").stream()
+            .map(SupplierInfo::getSupplierCode).toList());
+        assertEquals(2, sourceList.size());
+    }
+
+    @Test
+    void testDuplicateRegistrationKeepsFirst() {
+        // Given
+        MrpSourceList sourceList = MrpSourceList.builder()
+            .add("HJ-M05", supplier("SUP-A", 100, 7))
+            .add("HJ-M05", supplier("SUP-B", 200, 14))
+            .build();
+
+        // Then
+        assertEquals("SUP-A", sourceList.select("HJ-M05").getSupplierCode());
+        assertEquals(1, sourceList.size());
+    }
+
+    @Test
+    void testDefaultSupplierAndMissingMaterial() {
+        // Given
+        MrpSourceList withDefault = MrpSourceList.builder()
+            .add("HJ-M05", supplier("SUP-A", 100, 7))
+            .defaultSupplier(supplier("SUP-DEFAULT", 0, 7))
+            .build();
+        MrpSourceList empty = MrpSourceList.builder().build();
+
+        // Then: 首选供应商优先，未维护的物料取默认货源
+        assertEquals("SUP-A", withDefault.select("HJ-M05").getSupplierCode());
+        assertEquals("SUP-DEFAULT", withDefault.select("ANY").getSupplierCode());
+        assertNull(empty.select("ANY"));
+        assertTrue(empty.suppliersOf("ANY").isEmpty());
+    }
+}
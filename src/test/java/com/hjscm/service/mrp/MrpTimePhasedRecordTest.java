@@ -0,0 +1,65 @@
+package com.hjscm.service.mrp;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 分时段 MRP 记录单元测试
+ */
+class MrpTimePhasedRecordTest {
+
+    private static long qty(long units) {
+        return MrpQuantity.of(units);
+    }
+
+    @Test
+    void testPlan_ScheduledReceiptAndLeadTimeOffset() {
+        // Given: 6 周，期初 100，第 1 周到货 50，第 2 / 4 周各需求 120
+        MrpTimePhasedRecord record = new MrpTimePhasedRecord("HJ-SP03", 6);
+        record.addScheduledReceipt(1, qty(50));
+        record.addGross(2, qty(120));
+        record.addGross(4, qty(120));
+
+        // When: 提前期 2 周
+        record.plan(qty(100), qty(0), 2);
+
+        // Then
+        assertEquals(qty(150), record.projectedOnHand(1));
+        assertEquals(qty(0), record.plannedReceipt(2));
+        assertEquals(qty(30), record.projectedOnHand(2));
+        assertEquals(qty(90), record.netRequirement(4));
+        assertEquals(qty(90), record.plannedReceipt(4));
+        assertEquals(qty(90), record.plannedRelease(2));
+        assertEquals(qty(0), record.plannedRelease(4));
+        assertEquals(qty(0), record.getPastDueRelease());
+    }
+
+    @Test
+    void testPlan_SafetyStockAndPastDueRelease() {
+        // Given: 第 0 周需求 100，期初 30，安全库存 20
+        MrpTimePhasedRecord record = new MrpTimePhasedRecord("HJ-M05", 4);
+        record.addGross(0, qty(100));
+
+        // When: 提前期 1 周，收货已来不及
+        record.plan(qty(30), qty(20), 1);
+
+        // Then
+        assertEquals(qty(90), record.plannedReceipt(0));
+        assertEquals(qty(20), record.projectedOnHand(0));
+        assertEquals(qty(90), record.getPastDueRelease());
+        assertEquals(qty(90), record.plannedRelease(0));
+    }
+
+    @Test
+    void testBuckets() {
+        MrpBuckets weeks = MrpBuckets.of(MrpBuckets.BUCKET_WEEK, LocalDate.of(2026, 10, 19), null);
+        assertEquals(MrpBuckets.DEFAULT_WEEKS, weeks.size());
+        assertEquals(0, weeks.bucketOf(LocalDate.of(2026, 10, 1)));
+        assertEquals(1, weeks.bucketOf(LocalDate.of(2026, 10, 26)));
+        assertEquals(-1, weeks.bucketOf(LocalDate.of(2027, 6, 1)));
+        assertEquals(2, weeks.leadTimeBuckets(10));
+    }
+}